@@ -0,0 +1,126 @@
+package com.fitbit.api.benchmark;
+
+import com.fitbit.api.client.FitbitAPIEntityCache;
+import com.fitbit.api.client.FitbitApiCredentialsCacheMapImpl;
+import com.fitbit.api.client.FitbitApiEntityCacheKey;
+import com.fitbit.api.client.FitbitApiEntityCacheMapImpl;
+import com.fitbit.api.client.FitbitApiEntityCacheTieredImpl;
+import com.fitbit.api.client.LocalUserDetail;
+import com.fitbit.api.model.APICollectionType;
+import com.fitbit.api.model.APIFormat;
+import com.fitbit.api.model.APIResourceCredentials;
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and updates of the entity caches and the credentials cache, from four threads, for 1000 users with a
+ * month of entries each. Keys are picked at random, so that most of them miss the hot tier of the tiered cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CacheBenchmark {
+
+    static final int USERS = 1000;
+    static final int DAYS = 30;
+
+    public enum Implementation {
+        MAP,
+        TIERED
+    }
+
+    @State(Scope.Benchmark)
+    public static class Caches {
+        @Param
+        public Implementation implementation;
+
+        public FitbitAPIEntityCache entityCache;
+        public final APIResourceCredentials[] credentials = new APIResourceCredentials[USERS];
+        public final FitbitApiEntityCacheKey[] keys = new FitbitApiEntityCacheKey[DAYS];
+        public Object entity;
+        private File file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            if (implementation == Implementation.TIERED) {
+                file = File.createTempFile("fitbit4j-cache", ".dat");
+                entityCache = new FitbitApiEntityCacheTieredImpl(file, USERS * DAYS / 10);
+            } else {
+                entityCache = new FitbitApiEntityCacheMapImpl();
+            }
+            entity = Fixture.ACTIVITIES.entity();
+            LocalDate start = new LocalDate(2012, 3, 1);
+            for (int day = 0; day < DAYS; day++) {
+                keys[day] = FitbitApiEntityCacheKey.of("-", APICollectionType.activities, start.plusDays(day), APIFormat.JSON);
+            }
+            for (int i = 0; i < USERS; i++) {
+                credentials[i] = new APIResourceCredentials("user" + i, "temp" + i, "secret" + i);
+                for (FitbitApiEntityCacheKey key : keys) {
+                    entityCache.put(credentials[i], key, entity);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            if (entityCache instanceof FitbitApiEntityCacheTieredImpl) {
+                ((FitbitApiEntityCacheTieredImpl) entityCache).close();
+            }
+            if (null != file && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Credentials {
+        public final FitbitApiCredentialsCacheMapImpl credentialsCache = new FitbitApiCredentialsCacheMapImpl();
+        public final LocalUserDetail[] users = new LocalUserDetail[USERS];
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            for (int i = 0; i < USERS; i++) {
+                users[i] = new LocalUserDetail("user" + i);
+                credentialsCache.saveResourceCredentials(users[i], new APIResourceCredentials("user" + i, "temp" + i, "secret" + i));
+            }
+        }
+    }
+
+    @Benchmark
+    public Object entityGet(Caches caches) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return caches.entityCache.get(caches.credentials[random.nextInt(USERS)], caches.keys[random.nextInt(DAYS)]);
+    }
+
+    @Benchmark
+    public Object entityPut(Caches caches) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return caches.entityCache.put(caches.credentials[random.nextInt(USERS)], caches.keys[random.nextInt(DAYS)], caches.entity);
+    }
+
+    @Benchmark
+    public APIResourceCredentials credentialsGet(Credentials credentials) {
+        return credentials.credentialsCache.getResourceCredentials(credentials.users[ThreadLocalRandom.current().nextInt(USERS)]);
+    }
+}
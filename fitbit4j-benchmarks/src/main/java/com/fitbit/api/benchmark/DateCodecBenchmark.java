@@ -0,0 +1,106 @@
+package com.fitbit.api.benchmark;
+
+import com.fitbit.api.common.service.FitbitApiService;
+import com.fitbit.api.common.service.FitbitDateCodec;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+import org.joda.time.format.DateTimeFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing a year of dates and a day of minutes: a formatter per call as APIUtil and the agent used to,
+ * the shared Joda-Time formatters, and the codec. Run with {@code -prof gc} to compare allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DateCodecBenchmark {
+
+    private final String[] dateTexts = new String[366];
+    private final LocalDate[] dates = new LocalDate[366];
+    private final String[] timeTexts = new String[1440];
+    private final LocalTime[] times = new LocalTime[1440];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        LocalDate date = new LocalDate(2012, 1, 1);
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = date.plusDays(i);
+            dateTexts[i] = dates[i].toString();
+        }
+        for (int i = 0; i < times.length; i++) {
+            times[i] = new LocalTime(i / 60, i % 60);
+            timeTexts[i] = times[i].toString("HH:mm");
+        }
+    }
+
+    private int nextDay() {
+        next = next + 1 >= dates.length ? 0 : next + 1;
+        return next;
+    }
+
+    private int nextMinute() {
+        next = next + 1 >= times.length ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public LocalDate parseDateFormatterPerCall() {
+        return new LocalDate(DateTimeFormat.forPattern("yyyy-MM-dd").parseMillis(dateTexts[nextDay()]));
+    }
+
+    @Benchmark
+    public LocalDate parseDateSharedFormatter() {
+        return FitbitApiService.LOCAL_DATE_FORMATTER.parseLocalDate(dateTexts[nextDay()]);
+    }
+
+    @Benchmark
+    public LocalDate parseDateCodec() {
+        return FitbitDateCodec.parseDate(dateTexts[nextDay()]);
+    }
+
+    @Benchmark
+    public String formatDateFormatterPerCall() {
+        return DateTimeFormat.forPattern("yyyy-MM-dd").print(dates[nextDay()]);
+    }
+
+    @Benchmark
+    public String formatDateCodec() {
+        return FitbitDateCodec.formatDate(dates[nextDay()]);
+    }
+
+    @Benchmark
+    public LocalTime parseTimeSharedFormatter() {
+        return FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.parseDateTime(timeTexts[nextMinute()]).toLocalTime();
+    }
+
+    @Benchmark
+    public LocalTime parseTimeCodec() {
+        return FitbitDateCodec.parseTime(timeTexts[nextMinute()]);
+    }
+
+    @Benchmark
+    public String formatTimeSharedFormatter() {
+        return FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.print(times[nextMinute()]);
+    }
+
+    @Benchmark
+    public String formatTimeCodec() {
+        return FitbitDateCodec.formatTime(times[nextMinute()]);
+    }
+}
@@ -0,0 +1,138 @@
+package com.fitbit.api.benchmark;
+
+import com.fitbit.api.FitbitAPIException;
+import com.fitbit.api.client.http.Response;
+import com.fitbit.api.common.model.activities.Activities;
+import com.fitbit.api.common.model.body.BodyWithGoals;
+import com.fitbit.api.common.model.foods.Foods;
+import com.fitbit.api.common.model.sleep.Sleep;
+import com.fitbit.api.common.model.timeseries.Data;
+import com.fitbit.api.common.model.timeseries.IntradaySummary;
+import com.fitbit.api.common.model.timeseries.TimeSeriesResourceType;
+import com.fitbit.api.common.model.user.UserInfo;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Recorded API responses under /fixtures, and how to turn each into its model entity.
+ */
+public enum Fixture {
+    ACTIVITIES("activities.json") {
+        @Override
+        public Object parse(String json) throws FitbitAPIException {
+            return Activities.constructActivities(response(json));
+        }
+    },
+    FOODS("foods.json") {
+        @Override
+        public Object parse(String json) throws FitbitAPIException {
+            return Foods.constructFoods(response(json));
+        }
+    },
+    FOODS_LARGE("foods-large.json") {
+        @Override
+        public Object parse(String json) throws FitbitAPIException {
+            return Foods.constructFoods(response(json));
+        }
+    },
+    SLEEP("sleep.json") {
+        @Override
+        public Object parse(String json) throws FitbitAPIException {
+            return Sleep.constructSleep(response(json));
+        }
+    },
+    BODY("body.json") {
+        @Override
+        public Object parse(String json) throws FitbitAPIException, JSONException {
+            return BodyWithGoals.constructBodyWithGoals(response(json));
+        }
+    },
+    USER("user.json") {
+        @Override
+        public Object parse(String json) throws JSONException {
+            return new UserInfo(new JSONObject(json));
+        }
+    },
+    TIME_SERIES_WEIGHT_MONTH("timeseries-weight-1m.json") {
+        @Override
+        public Object parse(String json) throws FitbitAPIException, JSONException {
+            return Data.jsonArrayToDataList(response(json).asJSONObject().getJSONArray("body-weight"));
+        }
+    },
+    TIME_SERIES_STEPS_YEAR("timeseries-steps-1y.json") {
+        @Override
+        public Object parse(String json) throws FitbitAPIException, JSONException {
+            return Data.jsonArrayToDataList(response(json).asJSONObject().getJSONArray("activities-steps"));
+        }
+    },
+    INTRADAY_STEPS("intraday-steps.json") {
+        @Override
+        public Object parse(String json) throws JSONException {
+            return new IntradaySummary(new JSONObject(json), TimeSeriesResourceType.STEPS);
+        }
+    },
+    INTRADAY_CALORIES("intraday-calories.json") {
+        @Override
+        public Object parse(String json) throws JSONException {
+            return new IntradaySummary(new JSONObject(json), TimeSeriesResourceType.CALORIES_OUT);
+        }
+    };
+
+    private final String resource;
+
+    Fixture(String resource) {
+        this.resource = resource;
+    }
+
+    public abstract Object parse(String json) throws FitbitAPIException, JSONException;
+
+    public String json() {
+        return new String(bytes(), StandardCharsets.UTF_8);
+    }
+
+    public byte[] bytes() {
+        try (InputStream in = Fixture.class.getResourceAsStream("/fixtures/" + resource)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing fixture " + resource);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read fixture " + resource, e);
+        }
+    }
+
+    public Object entity() {
+        try {
+            return parse(json());
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to parse fixture " + resource, e);
+        }
+    }
+
+    /**
+     * @param body response body
+     * @return a successful response with the body, not backed by a connection
+     */
+    public static Response response(String body) {
+        return new FixtureResponse(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class FixtureResponse extends Response {
+        FixtureResponse(byte[] body) {
+            statusCode = 200;
+            is = new ByteArrayInputStream(body);
+        }
+    }
+}
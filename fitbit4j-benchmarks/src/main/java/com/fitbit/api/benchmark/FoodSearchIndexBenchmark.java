@@ -0,0 +1,63 @@
+package com.fitbit.api.benchmark;
+
+import com.fitbit.api.client.service.FitbitApiFoodSearchIndex;
+import com.fitbit.api.common.model.foods.Food;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autocomplete queries against a local food index of generated food names, from a single typed letter to
+ * several words.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FoodSearchIndexBenchmark {
+
+    private static final String[] WORDS = {
+            "apple", "banana", "bread", "broccoli", "butter", "chicken", "cheese", "chocolate", "coffee", "egg",
+            "milk", "oatmeal", "orange", "pasta", "rice", "salad", "salmon", "soup", "tomato", "yogurt"
+    };
+    private static final String[] BRANDS = {null, "Kraft", "Dannon", "Starbucks", "Quaker"};
+
+    @Param({"1000", "10000"})
+    public int foods;
+
+    @Param({"c", "che", "chicken so", "grilled"})
+    public String query;
+
+    private FitbitApiFoodSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        index = new FitbitApiFoodSearchIndex();
+        Random random = new Random(42);
+        FitbitApiFoodSearchIndex.Source[] sources = FitbitApiFoodSearchIndex.Source.values();
+        for (int i = 0; i < foods; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + ' ' + WORDS[random.nextInt(WORDS.length)] + ", " + (i % 7 == 0 ? "grilled" : "plain");
+            Food food = new Food(i, name, BRANDS[random.nextInt(BRANDS.length)], "PUBLIC", random.nextInt(500), 1, null, new int[0]);
+            index.add(food, sources[random.nextInt(sources.length)]);
+        }
+    }
+
+    @Benchmark
+    public List<Food> search() {
+        return index.search(query, 10);
+    }
+}
@@ -0,0 +1,80 @@
+package com.fitbit.api.benchmark;
+
+import com.fitbit.api.common.model.codec.BinaryModelCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restoring a cached entity from its stored form: the raw JSON response, the JSON response kept with java.io
+ * serialization (the model classes are not Serializable themselves) and the binary model format.
+ * The setup prints the size of each form. Run with {@code -prof gc} to compare allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelCodecBenchmark {
+
+    @Param
+    public Fixture fixture;
+
+    private byte[] json;
+    private byte[] javaSerialized;
+    private byte[] binary;
+    private Object entity;
+
+    @Setup
+    public void setUp() throws Exception {
+        json = fixture.bytes();
+        entity = fixture.entity();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(fixture.json());
+        }
+        javaSerialized = bytes.toByteArray();
+        binary = BinaryModelCodec.encode(entity);
+        System.out.printf("%n%s: json %d bytes, java.io %d bytes, binary %d bytes%n",
+                fixture, json.length, javaSerialized.length, binary.length);
+    }
+
+    @Benchmark
+    public Object decodeJson() throws Exception {
+        return fixture.parse(new String(json, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public Object decodeJavaSerialized() throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(javaSerialized))) {
+            return fixture.parse((String) in.readObject());
+        }
+    }
+
+    @Benchmark
+    public Object decodeBinary() throws IOException {
+        return BinaryModelCodec.decode(binary);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() throws IOException {
+        return BinaryModelCodec.encode(entity);
+    }
+}
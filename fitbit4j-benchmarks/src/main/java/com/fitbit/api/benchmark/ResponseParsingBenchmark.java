@@ -0,0 +1,54 @@
+package com.fitbit.api.benchmark;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The stages of turning a response into a model entity, for every model factory: reading the body into a string,
+ * parsing the string into a JSONObject and the complete construction of the entity from the string.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseParsingBenchmark {
+
+    @Param
+    public Fixture fixture;
+
+    private String json;
+
+    @Setup
+    public void setUp() {
+        json = fixture.json();
+    }
+
+    @Benchmark
+    public String readBody() throws Exception {
+        return Fixture.response(json).asString();
+    }
+
+    @Benchmark
+    public JSONObject parseJson() throws Exception {
+        return new JSONObject(json);
+    }
+
+    @Benchmark
+    public Object constructEntity() throws Exception {
+        return fixture.parse(json);
+    }
+}
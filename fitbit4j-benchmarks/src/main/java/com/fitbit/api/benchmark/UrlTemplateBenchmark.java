@@ -0,0 +1,99 @@
+package com.fitbit.api.benchmark;
+
+import com.fitbit.api.APIUrlTemplates;
+import com.fitbit.api.APIUtil;
+import com.fitbit.api.common.model.timeseries.TimePeriod;
+import com.fitbit.api.common.model.timeseries.TimeSeriesResourceType;
+import com.fitbit.api.model.APICollectionType;
+import com.fitbit.api.model.APIFormat;
+import com.fitbit.api.model.APIVersion;
+import com.fitbit.api.model.FitbitUser;
+import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Url construction for every collection type and time series resource type: the previous
+ * concatenation-based construction against the precompiled templates.
+ * Run with {@code -prof gc} to compare allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlTemplateBenchmark {
+
+    static final String BASE_URL = "http://api.fitbit.com";
+
+    @State(Scope.Thread)
+    public static class CollectionState {
+        @Param
+        public APICollectionType collectionType;
+
+        public final FitbitUser user = FitbitUser.CURRENT_AUTHORIZED_USER;
+        public final LocalDate date = new LocalDate(2012, 3, 7);
+        public final APIUrlTemplates templates = APIUrlTemplates.get(BASE_URL, APIVersion.BETA_1, APIFormat.JSON);
+    }
+
+    @State(Scope.Thread)
+    public static class TimeSeriesState {
+        @Param
+        public TimeSeriesResourceType resourceType;
+
+        public final FitbitUser user = new FitbitUser("228TQ4");
+        public final String date = "2012-03-07";
+        public final APIUrlTemplates templates = APIUrlTemplates.get(BASE_URL, APIVersion.BETA_1, APIFormat.JSON);
+    }
+
+    @Benchmark
+    public String collectionUrlConcatenation(CollectionState state) {
+        StringBuilder sb = new StringBuilder(70);
+        sb.append("/" + state.user.getResourceOwnerType().name() + "/" + state.user.getId());
+        sb.append("/" + state.collectionType.getUrlPath());
+        sb.append("/date/" + DateTimeFormat.forPattern("yyyy-MM-dd").print(state.date));
+        String relativeUrl = sb.toString();
+        sb = new StringBuilder(70);
+        sb.append(BASE_URL);
+        sb.append("/" + APIVersion.BETA_1.getVersion());
+        sb.append(relativeUrl);
+        sb.append("." + APIFormat.JSON.toString().toLowerCase());
+        return sb.toString();
+    }
+
+    @Benchmark
+    public String collectionUrlThroughApiUtil(CollectionState state) {
+        return APIUtil.constructFullUrl(BASE_URL, APIVersion.BETA_1, state.user, state.collectionType, state.date, APIFormat.JSON);
+    }
+
+    @Benchmark
+    public String collectionUrlTemplate(CollectionState state) {
+        return state.templates.collectionForDate(state.collectionType).render(state.user, state.date);
+    }
+
+    @Benchmark
+    public String intradayUrlConcatenation(TimeSeriesState state) {
+        return BASE_URL + '/' + APIVersion.BETA_1.getVersion()
+                + '/' + state.user.getResourceOwnerType().name() + '/' + state.user.getId()
+                + state.resourceType.getResourcePath()
+                + "/date/" + state.date
+                + '/' + TimePeriod.INTRADAY.getShortForm()
+                + '.' + APIFormat.JSON.toString().toLowerCase();
+    }
+
+    @Benchmark
+    public String intradayUrlTemplate(TimeSeriesState state) {
+        return state.templates.timeSeries(state.resourceType).render(state.user, state.date, TimePeriod.INTRADAY.getShortForm());
+    }
+}
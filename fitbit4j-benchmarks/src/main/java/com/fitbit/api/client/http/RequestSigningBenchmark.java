@@ -0,0 +1,62 @@
+package com.fitbit.api.client.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OAuth signing and form encoding of requests with a growing number of parameters. Lives in the package of
+ * {@link OAuth} because the header generation is package-private.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestSigningBenchmark {
+
+    static final String URL = "http://api.fitbit.com/1/user/-/foods/log.json";
+
+    @Param({"0", "5", "20"})
+    public int parameterCount;
+
+    private final OAuth oauth = new OAuth("8c5a7c5c0d9b4c8e9f3a2d1e0b7c6a55", "d3b1f0a9c8e74b6a9e2f1c0d5b4a3e21");
+    private final AccessToken token = new AccessToken("5f3e2d1c0b9a8f7e6d5c4b3a29180716", "0a1b2c3d4e5f60718293a4b5c6d7e8f9");
+    private PostParameter[] parameters;
+
+    @Setup
+    public void setUp() {
+        String[] names = {"foodId", "mealTypeId", "unitId", "amount", "date", "foodName", "brandName", "calories"};
+        String[] values = {"81187", "1", "226", "1.5", "2012-03-07", "Caffe Latte & Biscotti", "Starbucks Coffee", "180"};
+        parameters = new PostParameter[parameterCount];
+        for (int i = 0; i < parameterCount; i++) {
+            parameters[i] = new PostParameter(names[i % names.length] + (i < names.length ? "" : String.valueOf(i)), values[i % values.length]);
+        }
+    }
+
+    @Benchmark
+    public String authorizationHeader() {
+        return oauth.generateAuthorizationHeader("POST", URL, parameters, "1234567890", "1331164800", token);
+    }
+
+    @Benchmark
+    public String authorizationHeaderWithNonce() {
+        return oauth.generateAuthorizationHeader("POST", URL, parameters, token);
+    }
+
+    @Benchmark
+    public String encodeParameters() {
+        return HttpClient.encodeParameters(parameters);
+    }
+}
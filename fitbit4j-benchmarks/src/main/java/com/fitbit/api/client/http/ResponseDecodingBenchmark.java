@@ -0,0 +1,117 @@
+package com.fitbit.api.client.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reading intraday bodies of 1 to 5 MB into a string: the line by line reader over a {@link GZIPInputStream} the
+ * response used to read bodies with, against the {@link ResponseBodyDecoder} on a stream and on a cached body. Lives
+ * in the package of {@link Response} because the decoder and cache entries are package-private.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseDecodingBenchmark {
+
+    @Param({"1", "5"})
+    public int megabytes;
+
+    @Param({"true", "false"})
+    public boolean gzip;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] json = intradayJson(megabytes * 1024 * 1024);
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4);
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(json);
+            out.close();
+            body = compressed.toByteArray();
+        } else {
+            body = json;
+        }
+    }
+
+    /**
+     * Intraday time series at one second resolution, one entry per line the way a pretty printed body has them
+     */
+    static byte[] intradayJson(int size) {
+        Random random = new Random(7);
+        StringBuilder json = new StringBuilder(size + 256);
+        json.append("{\"activities-steps\":[{\"dateTime\":\"2012-03-07\",\"value\":\"12898\"}],\n");
+        json.append("\"activities-steps-intraday\":{\"dataset\":[\n");
+        for (int second = 0; json.length() < size; second++) {
+            if (second > 0) {
+                json.append(",\n");
+            }
+            int time = second % 86400;
+            json.append("{\"time\":\"").append(two(time / 3600)).append(':').append(two(time / 60 % 60)).append(':')
+                    .append(two(time % 60)).append("\",\"value\":").append(random.nextInt(8) == 0 ? random.nextInt(180) : 0)
+                    .append('}');
+        }
+        json.append("\n],\"datasetInterval\":1,\"datasetType\":\"second\"}}\n");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String two(int value) {
+        return value < 10 ? "0" + value : String.valueOf(value);
+    }
+
+    @Benchmark
+    public String lineReader() throws IOException {
+        InputStream stream = new ByteArrayInputStream(body);
+        if (gzip) {
+            stream = new GZIPInputStream(stream);
+        }
+        BufferedReader br = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        StringBuffer buf = new StringBuffer();
+        String line;
+        while (null != (line = br.readLine())) {
+            buf.append(line).append('\n');
+        }
+        br.close();
+        return buf.toString();
+    }
+
+    @Benchmark
+    public String decodeStream() throws IOException {
+        ResponseBodyDecoder decoder = ResponseBodyDecoder.get();
+        decoder.decode(new ByteArrayInputStream(body), gzip, 0, 0);
+        return decoder.asString();
+    }
+
+    @Benchmark
+    public String cachedResponse() throws Exception {
+        HttpResponseCache.Entry entry = new HttpResponseCache.Entry("", null, body, gzip,
+                Collections.<String, String>emptyMap(), 0, Long.MAX_VALUE);
+        return new Response(entry).asString();
+    }
+}
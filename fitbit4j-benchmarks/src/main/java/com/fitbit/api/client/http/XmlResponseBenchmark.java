@@ -0,0 +1,83 @@
+package com.fitbit.api.client.http;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An intraday XML body of 1 or 5 MB read as a DOM, bound into the tree the model classes read with StAX, and searched
+ * for the summary with the element handler. Run with <code>-prof gc</code> for the allocation of each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class XmlResponseBenchmark {
+
+    @Param({"1", "5"})
+    public int megabytes;
+
+    private byte[] body;
+    private Map<String, String> headers;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        int size = megabytes * 1024 * 1024;
+        StringBuilder xml = new StringBuilder(size + 256);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<result>\n");
+        xml.append("<activities-steps><item><dateTime>2012-03-07</dateTime><value>12898</value></item></activities-steps>\n");
+        xml.append("<activities-steps-intraday><dataset>\n");
+        for (int second = 0; xml.length() < size; second++) {
+            int time = second % 86400;
+            xml.append("<item><time>").append(two(time / 3600)).append(':').append(two(time / 60 % 60)).append(':')
+                    .append(two(time % 60)).append("</time><value>")
+                    .append(random.nextInt(8) == 0 ? random.nextInt(180) : 0).append("</value></item>\n");
+        }
+        xml.append("</dataset><datasetInterval>1</datasetInterval><datasetType>second</datasetType>");
+        xml.append("</activities-steps-intraday>\n</result>\n");
+        body = xml.toString().getBytes(StandardCharsets.UTF_8);
+        headers = Collections.singletonMap("content-type", "text/xml;charset=UTF-8");
+    }
+
+    private static String two(int value) {
+        return value < 10 ? "0" + value : String.valueOf(value);
+    }
+
+    private Response response() throws Exception {
+        return new Response(new HttpResponseCache.Entry("", null, body, false, headers, 0, Long.MAX_VALUE));
+    }
+
+    @Benchmark
+    public Document document() throws Exception {
+        return response().asDocument();
+    }
+
+    @Benchmark
+    public JSONObject bind() throws Exception {
+        return response().asJSONObject();
+    }
+
+    @Benchmark
+    public Map<String, String> values() throws Exception {
+        return response().asXmlValues("activities-steps/item/value");
+    }
+}
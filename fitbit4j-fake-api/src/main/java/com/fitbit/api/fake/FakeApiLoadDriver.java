@@ -0,0 +1,253 @@
+package com.fitbit.api.fake;
+
+import com.fitbit.api.FitbitAPIException;
+import com.fitbit.api.client.FitbitApiClientAgent;
+import com.fitbit.api.client.FitbitApiCredentialsCacheMapImpl;
+import com.fitbit.api.client.FitbitApiThreadFactory;
+import com.fitbit.api.client.LocalUserDetail;
+import com.fitbit.api.client.http.HttpResponseCache;
+import com.fitbit.api.client.metrics.FitbitApiEndpointStats;
+import com.fitbit.api.client.metrics.FitbitApiMetricsRecorder;
+import com.fitbit.api.client.metrics.LatencyHistogram;
+import com.fitbit.api.common.model.timeseries.TimePeriod;
+import com.fitbit.api.common.model.timeseries.TimeSeriesResourceType;
+import com.fitbit.api.model.FitbitUser;
+import org.joda.time.LocalDate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a mix of client calls from a number of threads against a {@link FakeFitbitApiServer} in the same JVM, then
+ * reports throughput, latency percentiles and the allocation rate of the calling threads. Options, all optional:
+ * <pre>
+ * threads=16 users=100 warmup=5 seconds=20 medianMillis=0 p99Millis=0 errorRate=0 rateLimit=0 bodyBytesPerSecond=0
+ * responseCache=0 gzip=0 maxAge=0
+ * </pre>
+ * The latency of the fake API is log-normal when both medianMillis and p99Millis are set. errorRate is the
+ * probability of a burst of five 503 responses. rateLimit is the number of requests per user per second. With
+ * responseCache=1 the client answers its GETs from an {@link HttpResponseCache}. With gzip=1 the fake API compresses
+ * its bodies, maxAge is the max-age in seconds it sends with the responses to GETs.
+ */
+public class FakeApiLoadDriver {
+
+    private static final LocalDate DATE = new LocalDate(2012, 3, 7);
+    private static final Method THREAD_ALLOCATED_BYTES = threadAllocatedBytesMethod();
+
+    private final FitbitApiClientAgent agent;
+    private final LocalUserDetail[] users;
+    private final int threads;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    public FakeApiLoadDriver(FitbitApiClientAgent agent, LocalUserDetail[] users, int threads) {
+        this.agent = agent;
+        this.users = users;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                System.err.println("Expected name=value, got " + arg);
+                System.exit(1);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        int threads = option(options, "threads", 16);
+        int userCount = option(options, "users", 100);
+        int warmupSeconds = option(options, "warmup", 5);
+        int seconds = option(options, "seconds", 20);
+        int medianMillis = option(options, "medianMillis", 0);
+        int p99Millis = option(options, "p99Millis", 0);
+        double errorRate = Double.parseDouble(options.containsKey("errorRate") ? options.get("errorRate") : "0");
+        int rateLimit = option(options, "rateLimit", 0);
+        int bodyBytesPerSecond = option(options, "bodyBytesPerSecond", 0);
+        boolean responseCache = option(options, "responseCache", 0) != 0;
+        boolean gzip = option(options, "gzip", 0) != 0;
+        int maxAge = option(options, "maxAge", 0);
+
+        FakeFitbitApiServer server = new FakeFitbitApiServer().start();
+        try {
+            if (medianMillis > 0 && p99Millis > medianMillis) {
+                server.setLatency(LatencyDistribution.logNormal(medianMillis, p99Millis));
+            } else if (medianMillis > 0) {
+                server.setLatency(LatencyDistribution.fixed(medianMillis));
+            }
+            server.setErrorBursts(errorRate, 5, 503);
+            server.setRateLimit(rateLimit, 1000);
+            server.setBodyBytesPerSecond(bodyBytesPerSecond);
+            server.setCompression(gzip);
+            server.setMaxAge(maxAge);
+
+            FitbitApiCredentialsCacheMapImpl credentialsCache = new FitbitApiCredentialsCacheMapImpl();
+            FitbitApiClientAgent agent = server.newClientAgent(credentialsCache);
+            FitbitApiMetricsRecorder metrics = new FitbitApiMetricsRecorder();
+            agent.setMetrics(metrics);
+            HttpResponseCache cache = responseCache ? new HttpResponseCache() : null;
+            agent.setResponseCache(cache);
+            LocalUserDetail[] users = new LocalUserDetail[userCount];
+            for (int i = 0; i < userCount; i++) {
+                users[i] = server.addUser("user" + i, credentialsCache);
+            }
+
+            FakeApiLoadDriver driver = new FakeApiLoadDriver(agent, users, threads);
+            System.out.println("Warming up for " + warmupSeconds + "s with " + threads + " threads");
+            driver.run(TimeUnit.SECONDS.toMillis(warmupSeconds));
+            driver.reset();
+            metrics.reset();
+            long requestsBefore = server.getRequestCount();
+            System.out.println("Measuring for " + seconds + "s");
+            long elapsedNanos = driver.run(TimeUnit.SECONDS.toMillis(seconds));
+
+            driver.report(elapsedNanos);
+            System.out.println(String.format(Locale.ENGLISH, "server: %d requests, %d not modified, %d bad signatures, %d injected errors, %d rate limited",
+                    server.getRequestCount() - requestsBefore, server.getNotModifiedCount(), server.getRejectedSignatureCount(),
+                    server.getInjectedErrorCount(), server.getRateLimitedCount()));
+            if (null != cache) {
+                System.out.println(String.format(Locale.ENGLISH, "cache: %d hits, %d revalidated, %d misses, %d entries, %d KB",
+                        cache.getHitCount(), cache.getRevalidatedCount(), cache.getMissCount(), cache.size(), cache.getBytes() / 1024));
+            }
+            for (FitbitApiEndpointStats stats : metrics.getEndpoints()) {
+                System.out.println("  " + stats);
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Calls the API from all threads until the time is up
+     *
+     * @return elapsed time in nanoseconds
+     */
+    public long run(final long millis) throws InterruptedException {
+        final boolean allocationSupported = threadAllocatedBytes() >= 0;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.MILLISECONDS.toNanos(millis);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new FitbitApiThreadFactory("fitbit4j-load-driver"));
+        try {
+            for (int t = 0; t < threads; t++) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            long allocatedBefore = threadAllocatedBytes();
+                            Random random = new Random();
+                            while (System.nanoTime() < end) {
+                                long callStart = System.nanoTime();
+                                try {
+                                    call(random);
+                                } catch (FitbitAPIException e) {
+                                    errors.incrementAndGet();
+                                }
+                                latency.record(System.nanoTime() - callStart);
+                            }
+                            if (allocationSupported) {
+                                allocatedBytes.addAndGet(threadAllocatedBytes() - allocatedBefore);
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            executor.shutdown();
+        }
+        if (!allocationSupported) {
+            allocatedBytes.set(-1);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * One call of the workload mix, weighted roughly like the traffic of a dashboard: mostly reads of a day, some
+     * time series, a few searches and logs.
+     */
+    void call(Random random) throws FitbitAPIException {
+        LocalUserDetail user = users[random.nextInt(users.length)];
+        FitbitUser me = FitbitUser.CURRENT_AUTHORIZED_USER;
+        LocalDate date = DATE.minusDays(random.nextInt(30));
+        int dice = random.nextInt(100);
+        if (dice < 25) {
+            agent.getActivities(user, me, date);
+        } else if (dice < 45) {
+            agent.getFoods(user, me, date);
+        } else if (dice < 55) {
+            agent.getSleep(user, me, date);
+        } else if (dice < 65) {
+            agent.getUserInfo(user);
+        } else if (dice < 75) {
+            agent.getIntraDayTimeSeries(user, me, TimeSeriesResourceType.STEPS, date);
+        } else if (dice < 85) {
+            agent.getTimeSeries(user, me, TimeSeriesResourceType.STEPS, date, TimePeriod.ONE_MONTH);
+        } else if (dice < 95) {
+            agent.searchFoods(user, random.nextBoolean() ? "apple" : "chicken");
+        } else {
+            agent.logWater(user, 250, date);
+        }
+    }
+
+    public void reset() {
+        latency.reset();
+        errors.set(0);
+        allocatedBytes.set(0);
+    }
+
+    public void report(long elapsedNanos) {
+        long calls = latency.getCount();
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(String.format(Locale.ENGLISH, "%d calls, %d errors, %.1f calls/s", calls, errors.get(), calls / seconds));
+        System.out.println(String.format(Locale.ENGLISH, "latency ms: mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f",
+                latency.getMeanMillis(), latency.getPercentileMillis(0.5), latency.getPercentileMillis(0.9),
+                latency.getPercentileMillis(0.99), latency.getPercentileMillis(0.999), latency.getMaxMillis()));
+        long allocated = allocatedBytes.get();
+        if (allocated < 0) {
+            System.out.println("allocation: not supported by this JVM");
+        } else {
+            System.out.println(String.format(Locale.ENGLISH, "allocation: %.1f MB/s, %.1f KB/call",
+                    allocated / seconds / (1024 * 1024), calls == 0 ? 0 : allocated / 1024.0 / calls));
+        }
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, -1 if the JVM does not count them
+     */
+    private static long threadAllocatedBytes() {
+        if (null == THREAD_ALLOCATED_BYTES) {
+            return -1;
+        }
+        try {
+            return (Long) THREAD_ALLOCATED_BYTES.invoke(ManagementFactory.getThreadMXBean(), Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static Method threadAllocatedBytesMethod() {
+        try {
+            // com.sun.management.ThreadMXBean of HotSpot since 6u25, not part of the Java 6 API
+            return Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int option(Map<String, String> options, String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+}
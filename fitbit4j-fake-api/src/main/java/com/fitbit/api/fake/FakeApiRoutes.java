@@ -0,0 +1,243 @@
+package com.fitbit.api.fake;
+
+import org.joda.time.LocalDate;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Answers the API endpoints called by the client with the recorded responses under /fixtures, and with generated
+ * data where the response depends on the request, such as time series ranges and new log entries.
+ */
+final class FakeApiRoutes {
+
+    private static final Pattern VERSION = Pattern.compile("^/\\d+(/.*)$");
+    private static final Pattern COLLECTION = Pattern.compile("^/user/[^/]+/(activities|foods/log|sleep|body)/date/\\d{4}-\\d{2}-\\d{2}\\.json$");
+    private static final Pattern PROFILE = Pattern.compile("^/user/[^/]+/profile\\.json$");
+    private static final Pattern INTRADAY = Pattern.compile("^/user/[^/]+/(.+)/date/([^/]+)/1d(?:/\\d+min)?(?:/time/\\d{2}:\\d{2}/\\d{2}:\\d{2})?\\.json$");
+    private static final Pattern TIME_SERIES = Pattern.compile("^/user/[^/]+/(.+)/date/([^/]+)/([^/]+)\\.json$");
+    private static final Pattern FOOD_SEARCH = Pattern.compile("^/foods/search\\.json$");
+    private static final Pattern LOG = Pattern.compile("^/user/-/(foods/log|foods/log/water|activities|body/log/weight)\\.json$");
+    private static final Pattern DELETE_LOG = Pattern.compile("^/user/-/(foods/log|foods/log/water|activities|body/log/weight|body/log/fat)/\\d+\\.json$");
+
+    static final class Reply {
+        final int status;
+        final byte[] body;
+
+        Reply(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private final Map<String, byte[]> fixtures = new HashMap<String, byte[]>();
+    private final JSONArray searchableFoods;
+    private final JSONObject foodLogTemplate;
+    private final JSONObject activityLogTemplate;
+    private final AtomicLong logIds = new AtomicLong(1000000);
+
+    FakeApiRoutes() throws IOException, JSONException {
+        for (String name : new String[]{"activities", "foods", "sleep", "body", "user", "intraday-steps", "intraday-calories", "foods-search"}) {
+            fixtures.put(name, load(name + ".json"));
+        }
+        searchableFoods = json("foods-search").getJSONArray("foods");
+        foodLogTemplate = json("foods").getJSONArray("foods").getJSONObject(0);
+        activityLogTemplate = json("activities").getJSONArray("activities").getJSONObject(0);
+    }
+
+    /**
+     * @param method request method
+     * @param path request path including the API version
+     * @param parameters query and form parameters
+     *
+     * @return the reply, null if there is no such endpoint
+     */
+    Reply route(String method, String path, Map<String, String> parameters) throws JSONException {
+        Matcher version = VERSION.matcher(path);
+        if (!version.matches()) {
+            return null;
+        }
+        path = version.group(1);
+        Matcher matcher;
+        if ("GET".equals(method)) {
+            if ((matcher = COLLECTION.matcher(path)).matches()) {
+                String collection = matcher.group(1);
+                return ok("foods/log".equals(collection) ? fixtures.get("foods") : fixtures.get(collection));
+            } else if (PROFILE.matcher(path).matches()) {
+                return ok(fixtures.get("user"));
+            } else if ((matcher = INTRADAY.matcher(path)).matches()) {
+                return ok(intraday(matcher.group(1), matcher.group(2)));
+            } else if ((matcher = TIME_SERIES.matcher(path)).matches()) {
+                return ok(timeSeries(matcher.group(1), matcher.group(2), matcher.group(3)));
+            } else if (FOOD_SEARCH.matcher(path).matches()) {
+                return ok(searchFoods(parameters.get("query")));
+            }
+        } else if ("POST".equals(method)) {
+            if ((matcher = LOG.matcher(path)).matches()) {
+                return new Reply(201, bytes(logEntry(matcher.group(1), parameters)));
+            }
+        } else if ("DELETE".equals(method)) {
+            if (DELETE_LOG.matcher(path).matches()) {
+                return new Reply(204, new byte[0]);
+            }
+        }
+        return null;
+    }
+
+    private byte[] intraday(String resourcePath, String date) throws JSONException {
+        if ("activities/steps".equals(resourcePath)) {
+            return fixtures.get("intraday-steps");
+        } else if ("activities/calories".equals(resourcePath)) {
+            return fixtures.get("intraday-calories");
+        }
+        String key = resourcePath.replace('/', '-');
+        JSONArray dataset = new JSONArray();
+        long seed = date.hashCode();
+        for (int minute = 0; minute < 24 * 60; minute++) {
+            JSONObject entry = new JSONObject();
+            entry.put("time", String.format("%02d:%02d:00", minute / 60, minute % 60));
+            entry.put("value", (int) Math.abs((seed + minute * 7919L) % 40));
+            dataset.put(entry);
+        }
+        JSONObject day = new JSONObject();
+        day.put("dateTime", date);
+        day.put("value", "0");
+        JSONObject response = new JSONObject();
+        response.put(key, new JSONArray().put(day));
+        response.put(key + "-intraday", new JSONObject().put("dataset", dataset));
+        return bytes(response);
+    }
+
+    private byte[] timeSeries(String resourcePath, String startDate, String periodOrEndDate) throws JSONException {
+        int days = daysOf(periodOrEndDate);
+        boolean decimal = resourcePath.startsWith("body/");
+        LocalDate start = "today".equals(startDate) ? new LocalDate(2012, 3, 7) : new LocalDate(startDate);
+        JSONArray series = new JSONArray();
+        for (int day = 0; day < days; day++) {
+            long hash = (startDate.hashCode() + 31L * day) & 0x7fffffffL;
+            JSONObject entry = new JSONObject();
+            entry.put("dateTime", start.plusDays(day).toString());
+            entry.put("value", decimal ? String.valueOf(60 + hash % 300 / 10.0) : String.valueOf(hash % 15000));
+            series.put(entry);
+        }
+        return bytes(new JSONObject().put(resourcePath.replace('/', '-'), series));
+    }
+
+    private static int daysOf(String periodOrEndDate) {
+        if (periodOrEndDate.matches("\\d{4}-\\d{2}-\\d{2}")) {
+            // an end date, the length of the range does not matter to the client
+            return 30;
+        }
+        int amount = periodOrEndDate.length() > 1 ? parseInt(periodOrEndDate.substring(0, periodOrEndDate.length() - 1)) : 1;
+        switch (periodOrEndDate.charAt(periodOrEndDate.length() - 1)) {
+            case 'd':
+                return amount;
+            case 'w':
+                return amount * 7;
+            case 'm':
+                return amount * 30;
+            case 'y':
+                return amount * 365;
+            default:
+                // max
+                return 3 * 365;
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private byte[] searchFoods(String query) throws JSONException {
+        String lowerCaseQuery = null == query ? "" : query.toLowerCase(Locale.ENGLISH);
+        JSONArray foods = new JSONArray();
+        for (int i = 0; i < searchableFoods.length(); i++) {
+            JSONObject food = searchableFoods.getJSONObject(i);
+            if (food.getString("name").toLowerCase(Locale.ENGLISH).contains(lowerCaseQuery)) {
+                foods.put(food);
+            }
+        }
+        return bytes(new JSONObject().put("foods", foods));
+    }
+
+    private JSONObject logEntry(String collection, Map<String, String> parameters) throws JSONException {
+        long logId = logIds.incrementAndGet();
+        if ("foods/log".equals(collection)) {
+            JSONObject log = new JSONObject(foodLogTemplate.toString());
+            log.put("logId", logId);
+            if (parameters.containsKey("date")) {
+                log.put("logDate", parameters.get("date"));
+            }
+            return new JSONObject().put("foodLog", log);
+        } else if ("foods/log/water".equals(collection)) {
+            JSONObject log = new JSONObject();
+            log.put("logId", logId);
+            log.put("amount", Double.parseDouble(parameters.containsKey("amount") ? parameters.get("amount") : "0"));
+            return new JSONObject().put("waterLog", log);
+        } else if ("activities".equals(collection)) {
+            JSONObject log = new JSONObject(activityLogTemplate.toString());
+            log.put("logId", logId);
+            return new JSONObject().put("activityLog", log);
+        }
+        JSONObject log = new JSONObject();
+        log.put("logId", logId);
+        log.put("weight", Double.parseDouble(parameters.containsKey("weight") ? parameters.get("weight") : "0"));
+        log.put("bmi", 23.4);
+        log.put("date", parameters.containsKey("date") ? parameters.get("date") : "2012-03-07");
+        log.put("time", "23:59:59");
+        return new JSONObject().put("weightLog", log);
+    }
+
+    private JSONObject json(String fixture) throws JSONException {
+        try {
+            return new JSONObject(new String(fixtures.get(fixture), "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Reply ok(byte[] body) {
+        return new Reply(200, body);
+    }
+
+    static byte[] bytes(JSONObject json) {
+        try {
+            return json.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] load(String resource) throws IOException {
+        InputStream in = FakeApiRoutes.class.getResourceAsStream("/fixtures/" + resource);
+        if (null == in) {
+            throw new IOException("Missing fixture " + resource);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
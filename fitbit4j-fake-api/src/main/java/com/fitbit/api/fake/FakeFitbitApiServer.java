@@ -0,0 +1,559 @@
+package com.fitbit.api.fake;
+
+import com.fitbit.api.client.FitbitApiClientAgent;
+import com.fitbit.api.client.FitbitApiClientConfiguration;
+import com.fitbit.api.client.FitbitApiCredentialsCache;
+import com.fitbit.api.client.FitbitApiThreadFactory;
+import com.fitbit.api.client.LocalUserDetail;
+import com.fitbit.api.model.APIResourceCredentials;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stand-in for the Fitbit API on the http server of the JDK, for tests and load tests of code built on the client.
+ * Answers the endpoints called by {@link FitbitApiClientAgent} with recorded responses and ETags, checks OAuth
+ * signatures and can be made to misbehave: rate limits, bursts of server errors, slow responses and slowly written
+ * bodies.
+ * <p/>
+ * Typical use:
+ * <pre>
+ * FakeFitbitApiServer server = new FakeFitbitApiServer().start();
+ * FitbitApiClientAgent agent = server.newClientAgent(credentialsCache);
+ * LocalUserDetail user = server.addUser("user1", credentialsCache);
+ * agent.getActivities(user, FitbitUser.CURRENT_AUTHORIZED_USER, date);
+ * ...
+ * server.close();
+ * </pre>
+ */
+public class FakeFitbitApiServer implements Closeable {
+
+    private static final Log log = LogFactory.getLog(FakeFitbitApiServer.class);
+
+    public static final String CONSUMER_KEY = "fake-consumer-key";
+    public static final String CONSUMER_SECRET = "fake-consumer-secret";
+
+    private static final Pattern OAUTH_TOKEN = Pattern.compile("oauth_token=\"([^\"]*)\"");
+    private static final Pattern RATE_LIMIT_STATUS = Pattern.compile("^/\\d+/account/(?:client|clientAndViewer)RateLimitStatus\\.json$");
+    private static final String ANONYMOUS = "";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final FakeApiRoutes routes;
+    private final OAuthVerifier verifier = new OAuthVerifier();
+    private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private volatile boolean signatureValidation = true;
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile double errorBurstProbability;
+    private volatile int errorBurstLength;
+    private volatile int errorBurstStatusCode = 503;
+    private final AtomicInteger errorBurstRemaining = new AtomicInteger();
+    private volatile int rateLimit;
+    private volatile long rateLimitWindowMillis = 60 * 60 * 1000L;
+    private final ConcurrentMap<String, RateLimitWindow> rateLimitWindows = new ConcurrentHashMap<String, RateLimitWindow>();
+    private volatile int bodyBytesPerSecond;
+    private volatile boolean compression;
+    private volatile int maxAgeSeconds;
+
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong rejectedSignatureCount = new AtomicLong();
+    private final AtomicLong injectedErrorCount = new AtomicLong();
+    private final AtomicLong rateLimitedCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+
+    /**
+     * Fake API on a free port of the loopback interface
+     */
+    public FakeFitbitApiServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * @param port port on the loopback interface, 0 for any free port
+     */
+    public FakeFitbitApiServer(int port) throws IOException {
+        try {
+            routes = new FakeApiRoutes();
+        } catch (JSONException e) {
+            throw new IOException("Invalid fixture: " + e.getMessage());
+        }
+        verifier.addConsumer(CONSUMER_KEY, CONSUMER_SECRET);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        executor = Executors.newCachedThreadPool(new FitbitApiThreadFactory("fitbit4j-fake-api"));
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                FakeFitbitApiServer.this.handle(exchange);
+            }
+        });
+    }
+
+    public FakeFitbitApiServer start() {
+        server.start();
+        log.info("Fake Fitbit API listening on " + getBaseUrl());
+        return this;
+    }
+
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return host and port, the apiBaseUrl to create a {@link FitbitApiClientAgent} with
+     */
+    public String getHost() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + getHost();
+    }
+
+    /**
+     * @param credentialsCache cache the agent finds the access tokens of users in
+     *
+     * @return client agent talking to this server as consumer {@link #CONSUMER_KEY}
+     */
+    public FitbitApiClientAgent newClientAgent(FitbitApiCredentialsCache credentialsCache) {
+        return newClientAgent(credentialsCache, FitbitApiClientConfiguration.fromConfiguration());
+    }
+
+    /**
+     * @see #newClientAgent(FitbitApiCredentialsCache)
+     */
+    public FitbitApiClientAgent newClientAgent(FitbitApiCredentialsCache credentialsCache, FitbitApiClientConfiguration configuration) {
+        FitbitApiClientAgent agent = new FitbitApiClientAgent(getHost(), getBaseUrl(), credentialsCache, configuration);
+        agent.setOAuthConsumer(CONSUMER_KEY, CONSUMER_SECRET);
+        return agent;
+    }
+
+    /**
+     * Issues an access token for a user and saves it to the credentials cache, as if the user had authorized the
+     * consumer.
+     *
+     * @param localUserId id of the user in the calling application
+     * @param credentialsCache cache to save the credentials to
+     *
+     * @return the user
+     */
+    public LocalUserDetail addUser(String localUserId, FitbitApiCredentialsCache credentialsCache) {
+        String[] token = issueToken("access");
+        APIResourceCredentials credentials = new APIResourceCredentials(localUserId, null, null);
+        credentials.setAccessToken(token[0]);
+        credentials.setAccessTokenSecret(token[1]);
+        LocalUserDetail user = new LocalUserDetail(localUserId);
+        credentialsCache.saveResourceCredentials(user, credentials);
+        return user;
+    }
+
+    public void addConsumer(String key, String secret) {
+        verifier.addConsumer(key, secret);
+    }
+
+    public void addAccessToken(String token, String secret) {
+        verifier.addToken(token, secret);
+    }
+
+    /**
+     * @param signatureValidation false to accept requests without checking their OAuth signatures, true by default
+     */
+    public void setSignatureValidation(boolean signatureValidation) {
+        this.signatureValidation = signatureValidation;
+    }
+
+    /**
+     * @param latency time taken before each response, none by default
+     */
+    public void setLatency(LatencyDistribution latency) {
+        this.latency = null == latency ? LatencyDistribution.none() : latency;
+    }
+
+    /**
+     * Fails requests in bursts, the way an API behind an overloaded or restarting server does.
+     *
+     * @param probability probability that a request starts a burst, 0 to turn bursts off
+     * @param length number of consecutive failed requests in a burst
+     * @param statusCode status of the failed responses, e.g. 500 or 503
+     */
+    public void setErrorBursts(double probability, int length, int statusCode) {
+        this.errorBurstLength = Math.max(1, length);
+        this.errorBurstStatusCode = statusCode;
+        this.errorBurstProbability = probability;
+        if (probability <= 0) {
+            errorBurstRemaining.set(0);
+        }
+    }
+
+    /**
+     * Limits the number of requests per access token in a window, answering with the Fitbit-Rate-Limit-* headers
+     * and 429 once the limit is used up.
+     *
+     * @param limit requests per window, 0 for no limit
+     * @param windowMillis length of the window
+     */
+    public void setRateLimit(int limit, long windowMillis) {
+        this.rateLimitWindowMillis = windowMillis;
+        this.rateLimit = limit;
+        rateLimitWindows.clear();
+    }
+
+    /**
+     * @param bodyBytesPerSecond rate the bodies of responses are written at, 0 to write them at once
+     */
+    public void setBodyBytesPerSecond(int bodyBytesPerSecond) {
+        this.bodyBytesPerSecond = bodyBytesPerSecond;
+    }
+
+    /**
+     * @param compression true to gzip the bodies of responses to requests that accept it, false by default
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @param maxAgeSeconds max-age of the Cache-Control header sent with the responses to GETs, 0 to send none
+     */
+    public void setMaxAge(int maxAgeSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getRejectedSignatureCount() {
+        return rejectedSignatureCount.get();
+    }
+
+    public long getInjectedErrorCount() {
+        return injectedErrorCount.get();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimitedCount.get();
+    }
+
+    /**
+     * @return number of conditional GETs answered with 304 Not Modified
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            serve(exchange);
+        } catch (Exception e) {
+            log.warn("Failed to answer " + exchange.getRequestMethod() + ' ' + exchange.getRequestURI(), e);
+            try {
+                send(exchange, 500, error("system", "Fake API failure: " + e));
+            } catch (IOException ignored) {
+                // headers already sent
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException, JSONException, InterruptedException {
+        requestCount.incrementAndGet();
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        List<String[]> parameters = new ArrayList<String[]>();
+        parseParameters(exchange.getRequestURI().getRawQuery(), parameters);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (null != contentType && contentType.startsWith("application/x-www-form-urlencoded")) {
+            parseParameters(readBody(exchange.getRequestBody()), parameters);
+        }
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+
+        if ("/oauth/request_token".equals(path) || "/oauth/access_token".equals(path)) {
+            serveOAuth(exchange, method, path, authorization, parameters);
+            return;
+        }
+
+        String token;
+        if (signatureValidation) {
+            try {
+                token = verifier.verify(method, url(exchange, path), authorization, parameters, false);
+            } catch (IllegalArgumentException e) {
+                rejectedSignatureCount.incrementAndGet();
+                send(exchange, 401, error("oauth", e.getMessage()));
+                return;
+            }
+        } else {
+            Matcher matcher = null == authorization ? null : OAUTH_TOKEN.matcher(authorization);
+            token = null != matcher && matcher.find() ? OAuthVerifier.decode(matcher.group(1)) : null;
+        }
+
+        RateLimitWindow window = null;
+        if (rateLimit > 0) {
+            window = rateLimitWindow(null == token ? ANONYMOUS : token);
+            int remaining = window.acquire();
+            exchange.getResponseHeaders().set("Fitbit-Rate-Limit-Limit", String.valueOf(rateLimit));
+            exchange.getResponseHeaders().set("Fitbit-Rate-Limit-Remaining", String.valueOf(Math.max(0, remaining)));
+            exchange.getResponseHeaders().set("Fitbit-Rate-Limit-Reset", String.valueOf(window.resetSeconds()));
+            if (remaining < 0) {
+                rateLimitedCount.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(window.resetSeconds()));
+                send(exchange, 429, error("request", "Too Many Requests"));
+                return;
+            }
+        }
+
+        if (injectError()) {
+            injectedErrorCount.incrementAndGet();
+            send(exchange, errorBurstStatusCode, error("system", "Injected failure"));
+            return;
+        }
+
+        long delay = latency.nextMillis(random.get());
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+
+        if ("GET".equals(method) && RATE_LIMIT_STATUS.matcher(path).matches()) {
+            send(exchange, 200, rateLimitStatus(window));
+            return;
+        }
+        Map<String, String> parameterMap = new HashMap<String, String>();
+        for (String[] parameter : parameters) {
+            parameterMap.put(parameter[0], parameter[1]);
+        }
+        FakeApiRoutes.Reply reply = routes.route(method, path, parameterMap);
+        if (null == reply) {
+            send(exchange, 404, error("request", "No such endpoint: " + method + ' ' + path));
+        } else if ("GET".equals(method) && 200 == reply.status) {
+            String eTag = '"' + Integer.toHexString(Arrays.hashCode(reply.body)) + '"';
+            exchange.getResponseHeaders().set("ETag", eTag);
+            if (maxAgeSeconds > 0) {
+                exchange.getResponseHeaders().set("Cache-Control", "private, max-age=" + maxAgeSeconds);
+            }
+            if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedCount.incrementAndGet();
+                write(exchange, 304, new byte[0]);
+            } else {
+                send(exchange, 200, reply.body);
+            }
+        } else {
+            send(exchange, reply.status, reply.body);
+        }
+    }
+
+    private void serveOAuth(HttpExchange exchange, String method, String path, String authorization, List<String[]> parameters) throws IOException {
+        boolean accessToken = "/oauth/access_token".equals(path);
+        try {
+            verifier.verify(method, url(exchange, path), authorization, parameters, accessToken);
+        } catch (IllegalArgumentException e) {
+            rejectedSignatureCount.incrementAndGet();
+            send(exchange, 401, e.getMessage().getBytes("UTF-8"));
+            return;
+        }
+        String[] token = issueToken(accessToken ? "access" : "temp");
+        StringBuilder body = new StringBuilder();
+        body.append("oauth_token=").append(OAuthVerifier.encode(token[0]));
+        body.append("&oauth_token_secret=").append(OAuthVerifier.encode(token[1]));
+        if (accessToken) {
+            body.append("&encoded_user_id=").append(Long.toString(tokens.get(), Character.MAX_RADIX).toUpperCase());
+        } else {
+            body.append("&oauth_callback_confirmed=true");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/x-www-form-urlencoded");
+        write(exchange, 200, body.toString().getBytes("UTF-8"));
+    }
+
+    private String[] issueToken(String kind) {
+        long id = tokens.incrementAndGet();
+        String[] token = {kind + "-token-" + id, kind + "-secret-" + Long.toHexString(random.get().nextLong())};
+        verifier.addToken(token[0], token[1]);
+        return token;
+    }
+
+    private boolean injectError() {
+        while (true) {
+            int remaining = errorBurstRemaining.get();
+            if (remaining <= 0) {
+                break;
+            }
+            if (errorBurstRemaining.compareAndSet(remaining, remaining - 1)) {
+                return true;
+            }
+        }
+        if (errorBurstProbability > 0 && random.get().nextDouble() < errorBurstProbability) {
+            errorBurstRemaining.set(errorBurstLength - 1);
+            return true;
+        }
+        return false;
+    }
+
+    private RateLimitWindow rateLimitWindow(String token) {
+        RateLimitWindow window = rateLimitWindows.get(token);
+        if (null == window) {
+            RateLimitWindow created = new RateLimitWindow();
+            window = rateLimitWindows.putIfAbsent(token, created);
+            if (null == window) {
+                window = created;
+            }
+        }
+        return window;
+    }
+
+    private byte[] rateLimitStatus(RateLimitWindow window) throws JSONException {
+        JSONObject status = new JSONObject();
+        status.put("hourlyLimit", rateLimit > 0 ? rateLimit : 150);
+        status.put("remainingHits", null == window ? 150 : Math.max(0, window.remaining()));
+        status.put("resetTime", new DateTime(null == window ? System.currentTimeMillis() + rateLimitWindowMillis : window.resetAt, DateTimeZone.UTC).toString());
+        return FakeApiRoutes.bytes(new JSONObject().put("rateLimitStatus", status));
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (compression && body.length > 0 && null != acceptEncoding && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(body);
+            gzip.close();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            body = compressed.toByteArray();
+        }
+        write(exchange, status, body);
+    }
+
+    private void write(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        int bytesPerSecond = bodyBytesPerSecond;
+        if (bytesPerSecond <= 0) {
+            out.write(body);
+        } else {
+            // twenty chunks a second
+            int chunk = Math.max(1, bytesPerSecond / 20);
+            for (int offset = 0; offset < body.length; offset += chunk) {
+                out.write(body, offset, Math.min(chunk, body.length - offset));
+                out.flush();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while writing the body");
+                }
+            }
+        }
+        out.close();
+    }
+
+    private static byte[] error(String errorType, String message) {
+        try {
+            JSONObject error = new JSONObject();
+            error.put("errorType", errorType);
+            error.put("message", message);
+            return FakeApiRoutes.bytes(new JSONObject().put("errors", new JSONArray().put(error)));
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String url(HttpExchange exchange, String path) {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        return "http://" + (null == host ? exchange.getLocalAddress().getHostName() + ':' + exchange.getLocalAddress().getPort() : host) + path;
+    }
+
+    private static void parseParameters(String encoded, List<String[]> parameters) {
+        if (null == encoded || encoded.length() == 0) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            if (pair.length() == 0) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                parameters.add(new String[]{OAuthVerifier.decode(pair), ""});
+            } else {
+                parameters.add(new String[]{OAuthVerifier.decode(pair.substring(0, equals)), OAuthVerifier.decode(pair.substring(equals + 1))});
+            }
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Requests made with one token in the current rate limit window
+     */
+    private final class RateLimitWindow {
+        private long resetAt = System.currentTimeMillis() + rateLimitWindowMillis;
+        private int used;
+
+        /**
+         * @return requests left in the window after this one, negative if the limit was already used up
+         */
+        synchronized int acquire() {
+            long now = System.currentTimeMillis();
+            if (now >= resetAt) {
+                resetAt = now + rateLimitWindowMillis;
+                used = 0;
+            }
+            used++;
+            return rateLimit - used;
+        }
+
+        synchronized int remaining() {
+            return rateLimit - used;
+        }
+
+        synchronized long resetSeconds() {
+            return Math.max(0, (resetAt - System.currentTimeMillis() + 999) / 1000);
+        }
+    }
+}
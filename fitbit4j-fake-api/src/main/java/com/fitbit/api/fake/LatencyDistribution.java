@@ -0,0 +1,61 @@
+package com.fitbit.api.fake;
+
+import java.util.Random;
+
+/**
+ * Time the fake API takes before it answers a request
+ */
+public abstract class LatencyDistribution {
+
+    /**
+     * @param random source of randomness of the calling thread
+     *
+     * @return delay of the next response in milliseconds
+     */
+    public abstract long nextMillis(Random random);
+
+    public static LatencyDistribution none() {
+        return fixed(0);
+    }
+
+    public static LatencyDistribution fixed(final long millis) {
+        return new LatencyDistribution() {
+            @Override
+            public long nextMillis(Random random) {
+                return millis;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed(" + millis + "ms)";
+            }
+        };
+    }
+
+    /**
+     * Log-normal latencies, the usual shape of service response times: most requests close to the median and a long
+     * tail of slow ones.
+     *
+     * @param medianMillis median latency
+     * @param p99Millis 99th percentile latency, larger than the median
+     */
+    public static LatencyDistribution logNormal(final double medianMillis, final double p99Millis) {
+        if (medianMillis <= 0 || p99Millis <= medianMillis) {
+            throw new IllegalArgumentException("Need 0 < median < p99: " + medianMillis + ", " + p99Millis);
+        }
+        final double mu = Math.log(medianMillis);
+        // the 99th percentile of the standard normal distribution
+        final double sigma = (Math.log(p99Millis) - mu) / 2.326;
+        return new LatencyDistribution() {
+            @Override
+            public long nextMillis(Random random) {
+                return Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+            }
+
+            @Override
+            public String toString() {
+                return "logNormal(median=" + medianMillis + "ms, p99=" + p99Millis + "ms)";
+            }
+        };
+    }
+}
@@ -0,0 +1,152 @@
+package com.fitbit.api.fake;
+
+import com.fitbit.api.client.http.BASE64Encoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks OAuth 1.0 HMAC-SHA1 signatures the way the API does. Written independently of the client's signing code so
+ * that it catches mistakes in it.
+ */
+final class OAuthVerifier {
+
+    private static final Comparator<String[]> BY_NAME_AND_VALUE = new Comparator<String[]>() {
+        public int compare(String[] a, String[] b) {
+            int byName = a[0].compareTo(b[0]);
+            return byName != 0 ? byName : a[1].compareTo(b[1]);
+        }
+    };
+
+    private final Map<String, String> consumerSecrets = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> tokenSecrets = new ConcurrentHashMap<String, String>();
+
+    void addConsumer(String key, String secret) {
+        consumerSecrets.put(key, secret);
+    }
+
+    void addToken(String token, String secret) {
+        tokenSecrets.put(token, secret);
+    }
+
+    /**
+     * @param method request method
+     * @param url absolute request URL without query
+     * @param authorization Authorization header
+     * @param parameters query and form parameters, decoded
+     * @param requireToken true if the request must be made with a token
+     *
+     * @return the token the request was signed with, null for requests signed by the consumer only
+     *
+     * @throws IllegalArgumentException describing why the request is not authorized
+     */
+    String verify(String method, String url, String authorization, List<String[]> parameters, boolean requireToken) {
+        if (null == authorization || !authorization.startsWith("OAuth ")) {
+            throw new IllegalArgumentException("Missing OAuth Authorization header");
+        }
+        List<String[]> signed = new ArrayList<String[]>(parameters);
+        String consumerKey = null;
+        String token = null;
+        String signature = null;
+        for (String part : authorization.substring(6).split(",")) {
+            int equals = part.indexOf('=');
+            if (equals < 0) {
+                continue;
+            }
+            String name = part.substring(0, equals).trim();
+            String value = decode(unquote(part.substring(equals + 1).trim()));
+            if ("oauth_signature".equals(name)) {
+                signature = value;
+            } else if (!"realm".equals(name)) {
+                signed.add(new String[]{name, value});
+                if ("oauth_consumer_key".equals(name)) {
+                    consumerKey = value;
+                } else if ("oauth_token".equals(name)) {
+                    token = value;
+                }
+            }
+        }
+        String consumerSecret = null == consumerKey ? null : consumerSecrets.get(consumerKey);
+        if (null == consumerSecret) {
+            throw new IllegalArgumentException("Unknown consumer key " + consumerKey);
+        }
+        String tokenSecret = "";
+        if (null != token) {
+            tokenSecret = tokenSecrets.get(token);
+            if (null == tokenSecret) {
+                throw new IllegalArgumentException("Unknown token " + token);
+            }
+        } else if (requireToken) {
+            throw new IllegalArgumentException("Missing oauth_token");
+        }
+        if (null == signature) {
+            throw new IllegalArgumentException("Missing oauth_signature");
+        }
+        String expected = sign(baseString(method, url, signed), consumerSecret, tokenSecret);
+        if (!expected.equals(signature)) {
+            throw new IllegalArgumentException("Invalid signature " + signature);
+        }
+        return token;
+    }
+
+    static String baseString(String method, String url, List<String[]> parameters) {
+        List<String[]> encoded = new ArrayList<String[]>(parameters.size());
+        for (String[] parameter : parameters) {
+            encoded.add(new String[]{encode(parameter[0]), encode(parameter[1])});
+        }
+        Collections.sort(encoded, BY_NAME_AND_VALUE);
+        StringBuilder normalized = new StringBuilder();
+        for (String[] pair : encoded) {
+            if (normalized.length() > 0) {
+                normalized.append('&');
+            }
+            normalized.append(pair[0]).append('=').append(pair[1]);
+        }
+        return method.toUpperCase() + '&' + encode(url) + '&' + encode(normalized.toString());
+    }
+
+    static String sign(String baseString, String consumerSecret, String tokenSecret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec((encode(consumerSecret) + '&' + encode(tokenSecret)).getBytes("UTF-8"), "HmacSHA1"));
+            return new BASE64Encoder().encode(mac.doFinal(baseString.getBytes("UTF-8")));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Percent encoding of RFC 3986
+     */
+    static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String unquote(String value) {
+        return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"") ? value.substring(1, value.length() - 1) : value;
+    }
+}
@@ -0,0 +1,140 @@
+package com.fitbit.api;
+
+import com.fitbit.api.model.FitbitResourceOwner;
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable, precompiled API url. The pattern is split once into literal parts around its {@code {}} placeholders;
+ * rendering appends the literals and the parameters into a per-thread buffer without intermediate strings.
+ * <p>
+ * Parameters are rendered by type: a {@link FitbitResourceOwner} as {@code /<ownerType>/<id>} (nothing when null),
+ * a {@link LocalDate} as {@code yyyy-MM-dd}, anything else with {@code toString()}.
+ */
+public final class APIUrlTemplate {
+
+    private static final String PLACEHOLDER = "{}";
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(APIUtil.TYPICAL_URL_LENGTH * 2);
+        }
+    };
+
+    private final String pattern;
+    private final String[] literals;
+    private final int literalsLength;
+
+    private APIUrlTemplate(String pattern, String[] literals) {
+        this.pattern = pattern;
+        this.literals = literals;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalsLength = length;
+    }
+
+    /**
+     * Compiles a url pattern with {@code {}} placeholders, e.g. {@code http://api.fitbit.com/1{}/activities/date/{}.json}
+     *
+     * @param pattern url pattern
+     *
+     * @return compiled template
+     */
+    public static APIUrlTemplate compile(String pattern) {
+        List<String> literals = new ArrayList<String>();
+        int start = 0;
+        int placeholder;
+        while ((placeholder = pattern.indexOf(PLACEHOLDER, start)) >= 0) {
+            literals.add(pattern.substring(start, placeholder));
+            start = placeholder + PLACEHOLDER.length();
+        }
+        literals.add(pattern.substring(start));
+        return new APIUrlTemplate(pattern, literals.toArray(new String[literals.size()]));
+    }
+
+    public int getParameterCount() {
+        return literals.length - 1;
+    }
+
+    public String render(Object param) {
+        checkParameterCount(1);
+        StringBuilder sb = buffer();
+        sb.append(literals[0]);
+        appendParameter(sb, param);
+        sb.append(literals[1]);
+        return sb.toString();
+    }
+
+    public String render(Object param1, Object param2) {
+        checkParameterCount(2);
+        StringBuilder sb = buffer();
+        sb.append(literals[0]);
+        appendParameter(sb, param1);
+        sb.append(literals[1]);
+        appendParameter(sb, param2);
+        sb.append(literals[2]);
+        return sb.toString();
+    }
+
+    public String render(Object param1, Object param2, Object param3) {
+        checkParameterCount(3);
+        StringBuilder sb = buffer();
+        sb.append(literals[0]);
+        appendParameter(sb, param1);
+        sb.append(literals[1]);
+        appendParameter(sb, param2);
+        sb.append(literals[2]);
+        appendParameter(sb, param3);
+        sb.append(literals[3]);
+        return sb.toString();
+    }
+
+    public String render(Object... params) {
+        checkParameterCount(params.length);
+        StringBuilder sb = buffer();
+        sb.append(literals[0]);
+        for (int i = 0; i < params.length; i++) {
+            appendParameter(sb, params[i]);
+            sb.append(literals[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    private void checkParameterCount(int count) {
+        if (count != literals.length - 1) {
+            throw new IllegalArgumentException("Template '" + pattern + "' expects " + (literals.length - 1) + " parameters, got " + count);
+        }
+    }
+
+    private StringBuilder buffer() {
+        StringBuilder sb = BUFFER.get();
+        if (sb.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            sb = new StringBuilder(literalsLength + APIUtil.TYPICAL_URL_LENGTH);
+            BUFFER.set(sb);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
+    private static void appendParameter(StringBuilder sb, Object param) {
+        if (param instanceof FitbitResourceOwner) {
+            FitbitResourceOwner owner = (FitbitResourceOwner) param;
+            sb.append('/').append(owner.getResourceOwnerType().name()).append('/').append(owner.getId());
+        } else if (param instanceof LocalDate) {
+            APIUtil.appendDate(sb, (LocalDate) param);
+        } else if (param != null) {
+            sb.append(param);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
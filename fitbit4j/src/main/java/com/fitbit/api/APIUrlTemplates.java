@@ -0,0 +1,148 @@
+package com.fitbit.api;
+
+import com.fitbit.api.common.model.timeseries.TimeSeriesResourceType;
+import com.fitbit.api.model.APICollectionType;
+import com.fitbit.api.model.APIFormat;
+import com.fitbit.api.model.APIVersion;
+import com.fitbit.api.model.ApiCollectionProperty;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precompiled url templates of all collection, subscription and time series endpoints for one
+ * API base url, version and format. Instances are immutable and shared through {@link #get}.
+ */
+public final class APIUrlTemplates {
+
+    private static final ConcurrentMap<String, APIUrlTemplates[]> REGISTRY = new ConcurrentHashMap<String, APIUrlTemplates[]>();
+
+    private final String baseUrl;
+    private final APIVersion version;
+    private final APIFormat format;
+
+    private final Map<APICollectionType, APIUrlTemplate> collectionForDate = new EnumMap<APICollectionType, APIUrlTemplate>(APICollectionType.class);
+    private final Map<APICollectionType, Map<ApiCollectionProperty, APIUrlTemplate>> collectionProperty = new EnumMap<APICollectionType, Map<ApiCollectionProperty, APIUrlTemplate>>(APICollectionType.class);
+    private final Map<APICollectionType, APIUrlTemplate> subscriptions = new EnumMap<APICollectionType, APIUrlTemplate>(APICollectionType.class);
+    private final Map<APICollectionType, APIUrlTemplate> subscriptionsWithId = new EnumMap<APICollectionType, APIUrlTemplate>(APICollectionType.class);
+    private final APIUrlTemplate allSubscriptions;
+    private final APIUrlTemplate allSubscriptionsWithId;
+    private final Map<TimeSeriesResourceType, APIUrlTemplate> timeSeries = new EnumMap<TimeSeriesResourceType, APIUrlTemplate>(TimeSeriesResourceType.class);
+    private final Map<TimeSeriesResourceType, APIUrlTemplate> timeSeriesWithTime = new EnumMap<TimeSeriesResourceType, APIUrlTemplate>(TimeSeriesResourceType.class);
+
+    private APIUrlTemplates(String baseUrl, APIVersion version, APIFormat format) {
+        this.baseUrl = baseUrl;
+        this.version = version;
+        this.format = format;
+
+        String prefix = baseUrl + '/' + version.getVersion() + "{}";
+        String suffix = '.' + format.toString().toLowerCase();
+        for (APICollectionType type : APICollectionType.values()) {
+            collectionForDate.put(type, APIUrlTemplate.compile(prefix + '/' + type.getUrlPath() + "/date/{}" + suffix));
+            Map<ApiCollectionProperty, APIUrlTemplate> properties = new EnumMap<ApiCollectionProperty, APIUrlTemplate>(ApiCollectionProperty.class);
+            for (ApiCollectionProperty property : ApiCollectionProperty.values()) {
+                properties.put(property, APIUrlTemplate.compile(prefix + '/' + type.getUrlPath() + '/' + property + suffix));
+            }
+            collectionProperty.put(type, properties);
+            subscriptions.put(type, APIUrlTemplate.compile(prefix + '/' + type.getSubscriptionPath() + "/apiSubscriptions" + suffix));
+            subscriptionsWithId.put(type, APIUrlTemplate.compile(prefix + '/' + type.getSubscriptionPath() + "/apiSubscriptions/{}" + suffix));
+        }
+        allSubscriptions = APIUrlTemplate.compile(prefix + "/apiSubscriptions" + suffix);
+        allSubscriptionsWithId = APIUrlTemplate.compile(prefix + "/apiSubscriptions/{}" + suffix);
+        for (TimeSeriesResourceType type : TimeSeriesResourceType.values()) {
+            timeSeries.put(type, APIUrlTemplate.compile(prefix + type.getResourcePath() + "/date/{}/{}" + suffix));
+            timeSeriesWithTime.put(type, APIUrlTemplate.compile(prefix + type.getResourcePath() + "/date/{}/{}/time/{}/{}" + suffix));
+        }
+    }
+
+    /**
+     * Returns the shared templates of an API base url, version and format, compiling them on first use.
+     *
+     * @param baseUrl e.g. http://api.fitbit.com
+     * @param version API version
+     * @param format response format
+     *
+     * @return url templates
+     */
+    public static APIUrlTemplates get(String baseUrl, APIVersion version, APIFormat format) {
+        APIUrlTemplates[] byVersionAndFormat = REGISTRY.get(baseUrl);
+        if (byVersionAndFormat == null) {
+            byVersionAndFormat = new APIUrlTemplates[APIVersion.values().length * APIFormat.values().length];
+            APIUrlTemplates[] existing = REGISTRY.putIfAbsent(baseUrl, byVersionAndFormat);
+            if (existing != null) {
+                byVersionAndFormat = existing;
+            }
+        }
+        int index = version.ordinal() * APIFormat.values().length + format.ordinal();
+        APIUrlTemplates templates = byVersionAndFormat[index];
+        if (templates == null) {
+            // compiling twice under a race is harmless: both results are equivalent and immutable
+            templates = new APIUrlTemplates(baseUrl, version, format);
+            byVersionAndFormat[index] = templates;
+        }
+        return templates;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public APIVersion getVersion() {
+        return version;
+    }
+
+    public APIFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @param type collection type
+     * @return template taking the resource owner and the date
+     */
+    public APIUrlTemplate collectionForDate(APICollectionType type) {
+        return collectionForDate.get(type);
+    }
+
+    /**
+     * @param type collection type
+     * @param property collection property
+     * @return template taking the resource owner
+     */
+    public APIUrlTemplate collectionProperty(APICollectionType type, ApiCollectionProperty property) {
+        return collectionProperty.get(type).get(property);
+    }
+
+    /**
+     * @param type collection type, null for subscriptions to all collections
+     * @return template taking the resource owner
+     */
+    public APIUrlTemplate subscriptions(APICollectionType type) {
+        return type == null ? allSubscriptions : subscriptions.get(type);
+    }
+
+    /**
+     * @param type collection type, null for subscriptions to all collections
+     * @return template taking the resource owner and the subscription id
+     */
+    public APIUrlTemplate subscription(APICollectionType type) {
+        return type == null ? allSubscriptionsWithId : subscriptionsWithId.get(type);
+    }
+
+    /**
+     * @param type time series resource type
+     * @return template taking the resource owner, the start date and the end date or period
+     */
+    public APIUrlTemplate timeSeries(TimeSeriesResourceType type) {
+        return timeSeries.get(type);
+    }
+
+    /**
+     * @param type time series resource type
+     * @return template taking the resource owner, the date, the period, the start time and the end time
+     */
+    public APIUrlTemplate timeSeriesWithTime(TimeSeriesResourceType type) {
+        return timeSeriesWithTime.get(type);
+    }
+}
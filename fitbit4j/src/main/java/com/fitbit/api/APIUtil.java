@@ -2,16 +2,13 @@ package com.fitbit.api;
 
 import com.fitbit.api.client.http.OAuth;
 import com.fitbit.api.common.model.timeseries.TimeSeriesResourceType;
+import com.fitbit.api.common.service.FitbitDateCodec;
 import com.fitbit.api.model.APICollectionType;
 import com.fitbit.api.model.APIFormat;
 import com.fitbit.api.model.APIVersion;
 import com.fitbit.api.model.ApiCollectionProperty;
 import com.fitbit.api.model.FitbitResourceOwner;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.joda.time.LocalDate;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -21,8 +18,6 @@ import java.util.UUID;
 
 public class APIUtil {
 
-	private static final Log log = LogFactory.getLog(APIUtil.class);
-	
 	public static final String SIGNATURE_HEADER_NAME = "X-Fitbit-Signature";
 	public static final String UNSPECIFIED_SUBSCRIPTION_ID = "";
 
@@ -32,10 +27,16 @@ public class APIUtil {
 
 
     public static String constructFullUrl(String baseUrl, APIVersion version, FitbitResourceOwner owner, APICollectionType collectionType, LocalDate date, APIFormat format) {
+        if (null != baseUrl && null != version && null != collectionType && null != date && null != format) {
+            return APIUrlTemplates.get(baseUrl, version, format).collectionForDate(collectionType).render(owner, date);
+        }
     	return nullSafeConstructUrl(baseUrl, version, owner, collectionType, date, null, format);
     }
 
     public static String constructFullUrl(String baseUrl, APIVersion version, FitbitResourceOwner owner, APICollectionType collectionType, ApiCollectionProperty collectionProperty, APIFormat format) {
+        if (null != baseUrl && null != version && null != collectionType && null != collectionProperty && null != format) {
+            return APIUrlTemplates.get(baseUrl, version, format).collectionProperty(collectionType, collectionProperty).render(owner);
+        }
         return nullSafeConstructUrl(baseUrl, version, owner, collectionType, collectionProperty, format);
     }
 
@@ -44,6 +45,13 @@ public class APIUtil {
     }
 
     public static String constructFullSubscriptionUrl(String baseUrl, APIVersion version, FitbitResourceOwner owner, APICollectionType collectionType, String subscriptionId, APIFormat format) {
+        if (null != baseUrl && null != version && null != subscriptionId && null != format) {
+            APIUrlTemplates templates = APIUrlTemplates.get(baseUrl, version, format);
+            if (subscriptionId.equals(UNSPECIFIED_SUBSCRIPTION_ID)) {
+                return templates.subscriptions(collectionType).render(owner);
+            }
+            return templates.subscription(collectionType).render(owner, subscriptionId);
+        }
     	return nullSafeConstructUrl(baseUrl, version, owner, collectionType, null, subscriptionId, format);
     }
 
@@ -67,28 +75,13 @@ public class APIUtil {
     	if (null==date || date.length() < 1) {
     		throw new IllegalArgumentException("Invalid empty input.");
     	}
-    	
-    	LocalDate result = null;
-    	
-    	for (String format : DATE_FORMATS) {
-    		if (date.length()==format.length()) {
-    			try {
-	    			long time = DateTimeFormat.forPattern(format).parseMillis(date);
-	    			result = new LocalDate(time);
-	    			break;
-    			} catch (Exception e) {
-    				if (log.isDebugEnabled()) {
-    					log.debug("Pattern '" + format + "' does not match date input '" + date + "': " + e);
-    				}
-    			}
-    		}
+    	if (date.length()==DATE_FORMATS[0].length()) {
+    		return FitbitDateCodec.parseDate(date);
     	}
-    	
-    	if (null==result) {
-    		throw new IllegalArgumentException("Invalid input date: '" + date + "'");
+    	if (date.length()==DATE_FORMATS[1].length()) {
+    		return FitbitDateCodec.parseMonth(date);
     	}
-    	
-    	return result;
+    	throw new IllegalArgumentException("Invalid input date: '" + date + "'");
     }
     
 
@@ -149,13 +142,13 @@ public class APIUtil {
         StringBuilder sb = new StringBuilder(TYPICAL_URL_LENGTH);
 
         if (null!=owner) {
-            sb.append("/" + owner.getResourceOwnerType().name() + "/" + owner.getId());
+            sb.append('/').append(owner.getResourceOwnerType().name()).append('/').append(owner.getId());
         }
         if (null!=collectionType) {
-            sb.append("/" + collectionType.getUrlPath());
+            sb.append('/').append(collectionType.getUrlPath());
         }
         if (null!=collectionProperty) {
-            sb.append("/" + collectionProperty);
+            sb.append('/').append(collectionProperty);
         }
 
         return sb.toString();
@@ -166,23 +159,22 @@ public class APIUtil {
     	StringBuilder sb = new StringBuilder(TYPICAL_URL_LENGTH);
 
     	if (null!=owner) {
-    		sb.append("/" + owner.getResourceOwnerType().name() + "/" + owner.getId());
+    		sb.append('/').append(owner.getResourceOwnerType().name()).append('/').append(owner.getId());
     	}
         if (null!=collectionType) {
             if( null!= subscriptionId ) {
-                sb.append("/"+collectionType.getSubscriptionPath());
+                sb.append('/').append(collectionType.getSubscriptionPath());
             } else {
-                sb.append("/" + collectionType.getUrlPath());
+                sb.append('/').append(collectionType.getUrlPath());
             }
         }
     	if (null!=date) {
-            DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyy-MM-dd");
-            sb.append("/date/" + formatter.print(date));
+            appendDate(sb.append("/date/"), date);
     	}
     	if (null!=subscriptionId) {
     		sb.append("/apiSubscriptions");
     		if (! subscriptionId.equals(UNSPECIFIED_SUBSCRIPTION_ID)) {
-    			sb.append("/" + subscriptionId);
+    			sb.append('/').append(subscriptionId);
     		}
     	}
     	
@@ -197,13 +189,13 @@ public class APIUtil {
     		sb.append(baseUrl);
     	}
     	if (null!=version) {
-    		sb.append("/" + version.getVersion());
+    		sb.append('/').append(version.getVersion());
     	}
     	if (null!=relativeUrl) {
     		sb.append(relativeUrl);
     	}
     	if (null!=format) {
-    		sb.append("." + format.toString().toLowerCase());
+    		sb.append('.').append(format.toString().toLowerCase());
     	}
     	
     	return sb.toString();
@@ -211,25 +203,25 @@ public class APIUtil {
 
     public static String constructTimeSeriesUrl(String baseUrl, APIVersion version, FitbitResourceOwner owner, TimeSeriesResourceType resourceType,
                                                 String startDate, String endDateOrPeriod, APIFormat format) {
-        return baseUrl + '/' + version.getVersion()
-                + '/' + owner.getResourceOwnerType().name() + '/' + owner.getId()
-                + resourceType.getResourcePath()
-                + "/date/" + startDate
-                + '/' + endDateOrPeriod
-                + '.' + format.toString().toLowerCase();
+        return APIUrlTemplates.get(baseUrl, version, format).timeSeries(resourceType).render(owner, startDate, endDateOrPeriod);
     }
 
     public static String constructTimeSeriesUrl(String baseUrl, APIVersion version, FitbitResourceOwner owner, TimeSeriesResourceType resourceType,
                                                 String startDate, String endDateOrPeriod,
                                                 String startTime, String endTime, APIFormat format) {
-        return baseUrl + '/' + version.getVersion()
-                + '/' + owner.getResourceOwnerType().name() + '/' + owner.getId()
-                + resourceType.getResourcePath()
-                + "/date/" + startDate
-                + '/' + endDateOrPeriod
-                + "/time/" + startTime
-                + '/' + endTime
-                + '.' + format.toString().toLowerCase();
+        return APIUrlTemplates.get(baseUrl, version, format).timeSeriesWithTime(resourceType).render(owner, startDate, endDateOrPeriod, startTime, endTime);
+    }
+
+    /**
+     * Appends the date in yyyy-MM-dd form without going through a formatter.
+     *
+     * @param sb buffer to append to
+     * @param date date to append
+     *
+     * @return the buffer
+     */
+    public static StringBuilder appendDate(StringBuilder sb, LocalDate date) {
+        return FitbitDateCodec.appendDate(sb, date);
     }
 
     public static String capitalize(String s) {
@@ -62,9 +62,14 @@ public class Configuration {
         defaultProperty.setProperty("fitbitAPIClient.http.readTimeout", "120000");
         defaultProperty.setProperty("fitbitAPIClient.http.retryCount", "3");
         defaultProperty.setProperty("fitbitAPIClient.http.retryIntervalSecs", "10");
+        defaultProperty.setProperty("fitbitAPIClient.http.callTimeout", "0");
+        defaultProperty.setProperty("fitbitAPIClient.http.responseSpillBytes", String.valueOf(4 * 1024 * 1024));
+        defaultProperty.setProperty("fitbitAPIClient.http.maxResponseBytes", String.valueOf(256 * 1024 * 1024));
         //defaultProperty.setProperty("fitbitAPIClient.oauth.consumerKey","");
         //defaultProperty.setProperty("fitbitAPIClient.oauth.consumerSecret","");
-        defaultProperty.setProperty("fitbitAPIClient.async.numThreads", "1");
+        defaultProperty.setProperty("fitbitAPIClient.async.numThreads", "4");
+        defaultProperty.setProperty("fitbitAPIClient.rateLimit.permitsPerSecond", "5");
+        defaultProperty.setProperty("fitbitAPIClient.rateLimit.burst", "5");
         defaultProperty.setProperty("fitbitAPIClient.clientVersion", Version.getVersion());
         try {
             // Android platform should have dalvik.system.VMRuntime in the classpath.
@@ -205,6 +210,30 @@ public class Configuration {
         return getIntProperty("fitbitAPIClient.http.retryIntervalSecs", retryIntervalSecs);
     }
 
+    public static int getCallTimeout() {
+        return getIntProperty("fitbitAPIClient.http.callTimeout");
+    }
+
+    public static int getCallTimeout(int callTimeout) {
+        return getIntProperty("fitbitAPIClient.http.callTimeout", callTimeout);
+    }
+
+    public static int getResponseSpillBytes() {
+        return getIntProperty("fitbitAPIClient.http.responseSpillBytes");
+    }
+
+    public static int getResponseSpillBytes(int responseSpillBytes) {
+        return getIntProperty("fitbitAPIClient.http.responseSpillBytes", responseSpillBytes);
+    }
+
+    public static int getMaxResponseBytes() {
+        return getIntProperty("fitbitAPIClient.http.maxResponseBytes");
+    }
+
+    public static int getMaxResponseBytes(int maxResponseBytes) {
+        return getIntProperty("fitbitAPIClient.http.maxResponseBytes", maxResponseBytes);
+    }
+
     public static String getUser() {
         return getProperty("fitbitAPIClient.user");
     }
@@ -329,6 +358,14 @@ public class Configuration {
         return getIntProperty("fitbitAPIClient.async.numThreads");
     }
 
+    public static int getRateLimitPermitsPerSecond() {
+        return getIntProperty("fitbitAPIClient.rateLimit.permitsPerSecond");
+    }
+
+    public static int getRateLimitBurst() {
+        return getIntProperty("fitbitAPIClient.rateLimit.burst");
+    }
+
     public static boolean getDebug() {
         return getBoolean("fitbitAPIClient.debug");
 
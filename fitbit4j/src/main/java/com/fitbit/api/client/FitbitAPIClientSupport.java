@@ -29,7 +29,11 @@ package com.fitbit.api.client;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.fitbit.api.client.http.HedgingPolicy;
+import com.fitbit.api.client.http.HttpEventListener;
 import com.fitbit.api.client.http.HttpClient;
+import com.fitbit.api.client.http.HttpResponseCache;
+import com.fitbit.api.client.metrics.FitbitApiMetrics;
 
 /**
  * @author Yusuke Yamamoto - yusuke at mac.com
@@ -37,22 +41,44 @@ import com.fitbit.api.client.http.HttpClient;
 class FitbitAPIClientSupport {
 	protected Log log = LogFactory.getLog(getClass());
 
-	protected HttpClient http = new HttpClient();
-    protected String source = Configuration.getSource();
+	protected HttpClient http;
+    protected String source;
     protected final boolean USE_SSL;
+    private final FitbitApiClientConfiguration configuration;
 
     public FitbitAPIClientSupport(){
-        this(null, null);
+        this(FitbitApiClientConfiguration.fromConfiguration());
     }
 
     FitbitAPIClientSupport(String userId, String password){
-        USE_SSL = Configuration.useSSL();
-        setClientVersion(null);
-        setClientURL(null);
+        this();
         setUserId(userId);
         setPassword(password);
     }
 
+    /**
+     * @param configuration settings taken as they are, without looking at {@link Configuration} again
+     */
+    FitbitAPIClientSupport(FitbitApiClientConfiguration configuration){
+        this.configuration = configuration;
+        http = new HttpClient(configuration);
+        source = configuration.getSource();
+        USE_SSL = configuration.isUseSSL();
+        setRequestHeader("X-Fitbit-Client-Version", configuration.getClientVersion());
+        setRequestHeader("X-Fitbit-Client-URL", configuration.getClientURL());
+        http.setUserId(configuration.getUser());
+        http.setPassword(configuration.getPassword());
+    }
+
+    /**
+     * Returns the settings the client was created with, not changed by the setters called since
+     *
+     * @return configuration of the client
+     */
+    public FitbitApiClientConfiguration getConfiguration() {
+        return configuration;
+    }
+
     /**
      * Sets the User-Agent header. System property -Dfitbit4j.http.userAgent overrides this attribute.
      * @param userAgent new UserAgent
@@ -179,6 +205,70 @@ class FitbitAPIClientSupport {
         http.setReadTimeout(readTimeoutMilliSecs);
     }
 
+    /**
+     * Sets the time, in milliseconds, a request may take including its retries, 0 for no limit.
+     *
+     * @param callTimeoutMilliSecs an int that specifies the call timeout value in milliseconds
+     */
+    public void setHttpCallTimeout(int callTimeoutMilliSecs) {
+        http.setCallTimeout(callTimeoutMilliSecs);
+    }
+
+    /**
+     * Sets the size above which response bodies are written to a temporary file while they are read
+     *
+     * @param responseSpillBytes size in bytes, 0 to keep all bodies in memory
+     */
+    public void setHttpResponseSpillBytes(int responseSpillBytes) {
+        http.setResponseSpillBytes(responseSpillBytes);
+    }
+
+    /**
+     * Sets the largest response body, once decompressed, the client reads
+     *
+     * @param maxResponseBytes size in bytes, 0 for no limit
+     */
+    public void setHttpMaxResponseBytes(int maxResponseBytes) {
+        http.setMaxResponseBytes(maxResponseBytes);
+    }
+
+    /**
+     * Enables hedging of read requests that are slower than most recent ones.
+     *
+     * @param hedgingPolicy hedging policy, null to disable hedging
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        http.setHedgingPolicy(hedgingPolicy);
+    }
+
+    /**
+     * Enables metrics of the requests made, such as a {@link com.fitbit.api.client.metrics.FitbitApiMetricsRecorder}.
+     *
+     * @param metrics metrics receiving the measurements, null to disable them
+     */
+    public void setMetrics(FitbitApiMetrics metrics) {
+        http.setMetrics(metrics);
+    }
+
+    /**
+     * Sets the listener receiving the events of requests, with credentials redacted.
+     *
+     * @param eventListener listener, null to log the events at debug level
+     */
+    public void setHttpEventListener(HttpEventListener eventListener) {
+        http.setEventListener(eventListener);
+    }
+
+    /**
+     * Enables the response cache: GETs are answered from it while the cached response is fresh, and made conditional
+     * on it once it is stale.
+     *
+     * @param responseCache cache, null to disable caching
+     */
+    public void setResponseCache(HttpResponseCache responseCache) {
+        http.setResponseCache(responseCache);
+    }
+
     /**
      * Sets X-Fitbit-Client http header and the source parameter that will be passed by updating methods. System property -DFitbit4j.source overrides this attribute.
      * System property -DFitbit4j.source overrides this attribute.
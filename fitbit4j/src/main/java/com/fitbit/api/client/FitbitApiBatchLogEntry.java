@@ -0,0 +1,151 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.client.http.PostParameter;
+import com.fitbit.api.common.model.activities.ActivityLog;
+import com.fitbit.api.common.model.body.Body;
+import com.fitbit.api.common.model.body.FatLog;
+import com.fitbit.api.common.model.body.WeightLog;
+import com.fitbit.api.common.model.bp.BpLog;
+import com.fitbit.api.common.model.foods.FoodLog;
+import com.fitbit.api.common.model.foods.WaterLog;
+import com.fitbit.api.common.model.glucose.Glucose;
+import com.fitbit.api.common.model.heart.HeartLog;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Log entry of a batched write, taking the same POST parameters as the corresponding single log method
+ * such as {@link FitbitApiClientAgent#logFood(LocalUserDetail, List)}.
+ * <p>
+ * Entries with an idempotency key are written at most once per user: retrying a batch returns the log entries
+ * created by the earlier attempt instead of logging again.
+ */
+public class FitbitApiBatchLogEntry {
+
+    public enum Type {
+        FOOD("/user/-/foods/log", "food") {
+            @Override
+            public Object parse(JSONObject json) throws JSONException {
+                return new FoodLog(json.getJSONObject("foodLog"));
+            }
+        },
+        ACTIVITY("/user/-/activities", "activity") {
+            @Override
+            public Object parse(JSONObject json) throws JSONException {
+                return new ActivityLog(json.getJSONObject("activityLog"));
+            }
+        },
+        WATER("/user/-/foods/log/water", "water") {
+            @Override
+            public Object parse(JSONObject json) throws JSONException {
+                return new WaterLog(json.getJSONObject("waterLog"));
+            }
+        },
+        BODY("/user/-/body", "body measurements") {
+            @Override
+            public Object parse(JSONObject json) throws JSONException {
+                return new Body(json.getJSONObject("body"));
+            }
+        },
+        WEIGHT("/user/-/body/log/weight", "weight") {
+            @Override
+            public Object parse(JSONObject json) throws JSONException {
+                return new WeightLog(json.getJSONObject("weightLog"));
+            }
+        },
+        FAT("/user/-/body/log/fat", "fat") {
+            @Override
+            public Object parse(JSONObject json) throws JSONException {
+                return new FatLog(json.getJSONObject("fatLog"));
+            }
+        },
+        BLOOD_PRESSURE("/user/-/bp", "blood pressure") {
+            @Override
+            public Object parse(JSONObject json) throws JSONException {
+                return new BpLog(json.getJSONObject("bpLog"));
+            }
+        },
+        GLUCOSE("/user/-/glucose", "glucose") {
+            @Override
+            public Object parse(JSONObject json) throws JSONException {
+                return new Glucose(json);
+            }
+        },
+        HEART_RATE("/user/-/heart", "heart rate") {
+            @Override
+            public Object parse(JSONObject json) throws JSONException {
+                return new HeartLog(json.getJSONObject("heartLog"));
+            }
+        };
+
+        private final String path;
+        private final String description;
+
+        Type(String path, String description) {
+            this.path = path;
+            this.description = description;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Creates the log entry returned by the API
+         *
+         * @param json response
+         *
+         * @return log entry, of the type returned by the corresponding single log method
+         *
+         * @throws JSONException if the response is not a log entry of this type
+         */
+        public abstract Object parse(JSONObject json) throws JSONException;
+    }
+
+    private final Type type;
+    private final List<PostParameter> params;
+    private final String idempotencyKey;
+
+    public FitbitApiBatchLogEntry(Type type, List<PostParameter> params) {
+        this(type, params, null);
+    }
+
+    /**
+     * @param type type of the log entry
+     * @param params POST request parameters
+     * @param idempotencyKey key identifying the entry across retries, null to always write it
+     */
+    public FitbitApiBatchLogEntry(Type type, List<PostParameter> params, String idempotencyKey) {
+        if (null == type) {
+            throw new IllegalArgumentException("Log entry type is required");
+        }
+        this.type = type;
+        this.params = Collections.unmodifiableList(new ArrayList<PostParameter>(params));
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public List<PostParameter> getParams() {
+        return params;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    @Override
+    public String toString() {
+        return "FitbitApiBatchLogEntry{" + type + (null == idempotencyKey ? "" : ", key=" + idempotencyKey) + '}';
+    }
+}
@@ -0,0 +1,59 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.FitbitAPIException;
+
+/**
+ * Outcome of one entry of a batched write: the created log entry or the error writing it.
+ */
+public class FitbitApiBatchLogResult {
+
+    private final FitbitApiBatchLogEntry entry;
+    private final Object log;
+    private final FitbitAPIException error;
+    private final boolean replayed;
+
+    public FitbitApiBatchLogResult(FitbitApiBatchLogEntry entry, Object log, boolean replayed) {
+        this.entry = entry;
+        this.log = log;
+        this.error = null;
+        this.replayed = replayed;
+    }
+
+    public FitbitApiBatchLogResult(FitbitApiBatchLogEntry entry, FitbitAPIException error) {
+        this.entry = entry;
+        this.log = null;
+        this.error = error;
+        this.replayed = false;
+    }
+
+    public FitbitApiBatchLogEntry getEntry() {
+        return entry;
+    }
+
+    /**
+     * @return created log entry, of the type returned by the corresponding single log method, null on failure
+     */
+    public Object getLog() {
+        return log;
+    }
+
+    public FitbitAPIException getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return null == error;
+    }
+
+    /**
+     * @return true if the entry was not written because an entry with the same idempotency key already was
+     */
+    public boolean isReplayed() {
+        return replayed;
+    }
+
+    @Override
+    public String toString() {
+        return "FitbitApiBatchLogResult{" + entry + (isSuccess() ? (replayed ? ", replayed" : ", logged") : ", error=" + error) + '}';
+    }
+}
@@ -0,0 +1,93 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.client.http.HttpValidators;
+import com.fitbit.api.common.model.codec.BinaryModelCodec;
+import com.fitbit.api.common.model.codec.BinaryModelInput;
+import com.fitbit.api.common.model.codec.BinaryModelOutput;
+import com.fitbit.api.model.APICollectionType;
+import com.fitbit.api.model.APIFormat;
+
+import java.io.IOException;
+
+/**
+ * Serializer writing cache keys, {@link FitbitApiCachedEntity} wrappers and model entities in the compact
+ * {@link BinaryModelCodec} format. Other values fall back to java.io serialization.
+ */
+public class FitbitApiBinaryEntitySerializer implements FitbitApiEntitySerializer {
+
+    private static final int KIND_MODEL = 0;
+    private static final int KIND_CACHED_ENTITY = 1;
+    private static final int KIND_CACHE_KEY = 2;
+    private static final int KIND_JAVA_SERIALIZED = 3;
+    private static final int KIND_VALIDATED_ENTITY = 4;
+
+    private static final APICollectionType[] COLLECTION_TYPES = APICollectionType.values();
+    private static final APIFormat[] FORMATS = APIFormat.values();
+
+    private final FitbitApiEntitySerializer fallback = new FitbitApiJavaEntitySerializer();
+
+    public byte[] serialize(Object value) throws IOException {
+        Object entity = value instanceof FitbitApiCachedEntity ? ((FitbitApiCachedEntity) value).getEntity() : value;
+        BinaryModelOutput out = BinaryModelOutput.forCurrentThread();
+        out.writeVarInt(BinaryModelCodec.FORMAT_VERSION);
+        if (!(value instanceof FitbitApiEntityCacheKey) && !BinaryModelCodec.supports(entity)) {
+            out.writeByte(KIND_JAVA_SERIALIZED);
+            byte[] serialized = fallback.serialize(value);
+            out.writeBytes(serialized);
+        } else if (value instanceof FitbitApiEntityCacheKey) {
+            FitbitApiEntityCacheKey key = (FitbitApiEntityCacheKey) value;
+            out.writeByte(KIND_CACHE_KEY);
+            out.writeString(key.getOwnerId());
+            out.writeVarInt(key.getCollectionType().ordinal());
+            out.writeSignedInt(key.getEpochDay());
+            out.writeVarInt(key.getFormat().ordinal());
+        } else if (value instanceof FitbitApiCachedEntity) {
+            FitbitApiCachedEntity cached = (FitbitApiCachedEntity) value;
+            HttpValidators validators = cached.getValidators();
+            out.writeByte(null == validators ? KIND_CACHED_ENTITY : KIND_VALIDATED_ENTITY);
+            out.writeSignedLong(cached.getStoredAt());
+            if (null != validators) {
+                out.writeString(validators.getETag());
+                out.writeString(validators.getLastModified());
+            }
+            BinaryModelCodec.writeObject(out, entity);
+        } else {
+            out.writeByte(KIND_MODEL);
+            BinaryModelCodec.writeObject(out, value);
+        }
+        return out.toByteArray();
+    }
+
+    public Object deserialize(byte[] data) throws IOException {
+        BinaryModelInput in = new BinaryModelInput(data);
+        int version = in.readVarInt();
+        if (version != BinaryModelCodec.FORMAT_VERSION) {
+            throw new IOException("Unsupported binary model format version " + version);
+        }
+        int kind = in.readByte();
+        switch (kind) {
+            case KIND_MODEL:
+                return BinaryModelCodec.readObject(in);
+            case KIND_CACHED_ENTITY:
+                long storedAt = in.readSignedLong();
+                return new FitbitApiCachedEntity(BinaryModelCodec.readObject(in), storedAt);
+            case KIND_VALIDATED_ENTITY:
+                long validatedAt = in.readSignedLong();
+                HttpValidators validators = new HttpValidators(in.readString(), in.readString());
+                return new FitbitApiCachedEntity(BinaryModelCodec.readObject(in), validatedAt, validators);
+            case KIND_CACHE_KEY:
+                String ownerId = in.readString();
+                int collectionType = in.readVarInt();
+                int epochDay = in.readSignedInt();
+                int format = in.readVarInt();
+                if (collectionType >= COLLECTION_TYPES.length || format >= FORMATS.length) {
+                    throw new IOException("Unknown collection type or format in serialized cache key");
+                }
+                return FitbitApiEntityCacheKey.of(ownerId, COLLECTION_TYPES[collectionType], epochDay, FORMATS[format]);
+            case KIND_JAVA_SERIALIZED:
+                return fallback.deserialize(in.readBytes());
+            default:
+                throw new IOException("Unknown kind " + kind + " of serialized value");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.client.http.HttpValidators;
+
+import java.io.Serializable;
+
+/**
+ * Entity stored in {@link FitbitAPIEntityCache} along with the time it was fetched from the API and the validators
+ * of the response it was parsed from.
+ */
+public class FitbitApiCachedEntity implements Serializable {
+    private static final long serialVersionUID = 6950246409530946021L;
+
+    private final Object entity;
+    private final long storedAt;
+    private final HttpValidators validators;
+
+    public FitbitApiCachedEntity(Object entity, long storedAt) {
+        this(entity, storedAt, null);
+    }
+
+    public FitbitApiCachedEntity(Object entity, long storedAt, HttpValidators validators) {
+        this.entity = entity;
+        this.storedAt = storedAt;
+        this.validators = validators;
+    }
+
+    public Object getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return time the entity was fetched, in milliseconds since the epoch
+     */
+    public long getStoredAt() {
+        return storedAt;
+    }
+
+    public long getAgeMillis(long now) {
+        return now - storedAt;
+    }
+
+    /**
+     * @return validators to revalidate the entity with, null if the API sent none
+     */
+    public HttpValidators getValidators() {
+        return validators;
+    }
+
+    /**
+     * @param now time the API confirmed the entity has not changed
+     *
+     * @return the same entity, fetched now
+     */
+    public FitbitApiCachedEntity revalidated(long now) {
+        return new FitbitApiCachedEntity(entity, now, validators);
+    }
+
+    @Override
+    public String toString() {
+        return "FitbitApiCachedEntity{entity=" + entity + ", storedAt=" + storedAt + ", validators=" + validators + '}';
+    }
+}
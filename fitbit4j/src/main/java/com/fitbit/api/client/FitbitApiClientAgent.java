@@ -1,5 +1,6 @@
 package com.fitbit.api.client;
 
+import com.fitbit.api.APIUrlTemplates;
 import com.fitbit.api.APIUtil;
 import com.fitbit.api.FitbitAPIException;
 import com.fitbit.api.client.http.*;
@@ -21,20 +22,35 @@ import com.fitbit.api.common.model.units.UnitSystem;
 import com.fitbit.api.common.model.units.VolumeUnits;
 import com.fitbit.api.common.model.user.FriendStats;
 import com.fitbit.api.common.model.user.UserInfo;
-import com.fitbit.api.common.service.FitbitApiService;
+import com.fitbit.api.common.service.FitbitDateCodec;
 import com.fitbit.api.model.*;
 import org.apache.commons.lang.StringUtils;
 import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
-import org.joda.time.format.DateTimeFormat;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 @SuppressWarnings({"NonPrivateFieldAccessedInSynchronizedContext"})
@@ -51,6 +67,20 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     private APIVersion apiVersion = APIVersion.BETA_1;
 
     private FitbitApiCredentialsCache credentialsCache;
+    private FitbitApiRateLimiter rateLimiter = new FitbitApiRateLimiter(getConfiguration().getRateLimitPermitsPerSecond(),
+            getConfiguration().getRateLimitBurst());
+    private transient volatile ExecutorService asyncExecutor;
+    /**
+     * Async executor whose task the current thread runs, so that concurrent calls made from such a task run inline
+     * instead of waiting for threads of the pool they occupy
+     */
+    private static final ThreadLocal<ExecutorService> RUNNING_ON = new ThreadLocal<ExecutorService>();
+    private FitbitApiIdempotencyStore idempotencyStore = new FitbitApiIdempotencyStoreInMemoryImpl();
+    /**
+     * Batched writes in progress by user and idempotency key, so that concurrent batches do not write an entry twice
+     */
+    private transient ConcurrentMap<String, Future<Object>> pendingLogs = new ConcurrentHashMap<String, Future<Object>>();
+    private transient volatile APIUrlTemplates urlTemplates;
 
 
     /**
@@ -70,7 +100,22 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
      * @see <a href="http://wiki.fitbit.com/display/API/API-Client-Reference-App">Fitbit API: API-Client-Reference-App</a>
      */
     public FitbitApiClientAgent(String apiBaseUrl, String webBaseUrl, FitbitApiCredentialsCache credentialsCache) {
-        this("https://" + apiBaseUrl + "/oauth/request_token", webBaseUrl + "/oauth/authorize", "https://" + apiBaseUrl + "/oauth/access_token");
+        this(apiBaseUrl, webBaseUrl, credentialsCache, FitbitApiClientConfiguration.fromConfiguration());
+    }
+
+    /**
+     * Creates FitbitApiClientAgent with custom API hosts, credentials cache and settings. Agents sharing a
+     * configuration are created without reading the system properties again.
+     *
+     * @param apiBaseUrl e.g. api.fitbit.com
+     * @param webBaseUrl e.g. http://www.fitbit.com
+     * @param credentialsCache Credentials cache
+     * @param configuration settings of the agent
+     */
+    public FitbitApiClientAgent(String apiBaseUrl, String webBaseUrl, FitbitApiCredentialsCache credentialsCache,
+                                FitbitApiClientConfiguration configuration) {
+        super(configuration);
+        init("https://" + apiBaseUrl + "/oauth/request_token", webBaseUrl + "/oauth/authorize", "https://" + apiBaseUrl + "/oauth/access_token");
         this.apiBaseUrl = apiBaseUrl;
         if (null == credentialsCache) {
             this.credentialsCache = DEFAULT_CREDENTIALS_CACHE;
@@ -79,6 +124,15 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         }
     }
 
+    /**
+     * Creates FitbitApiClientAgent with default API hosts and credentials cache and custom settings.
+     *
+     * @param configuration settings of the agent
+     */
+    public FitbitApiClientAgent(FitbitApiClientConfiguration configuration) {
+        this(DEFAULT_API_BASE_URL, DEFAULT_WEB_BASE_URL, null, configuration);
+    }
+
     /**
      * @param requestTokenURL e.g. https://api.fitbit.com/oauth/request_token
      * @param authorizationURL e.g. http://www.fitbit.com/oauth/authorize
@@ -125,6 +179,20 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         return apiVersion;
     }
 
+    /**
+     * Returns the precompiled JSON endpoint urls of the API base url and version used by this client
+     *
+     * @return url templates
+     */
+    public APIUrlTemplates getUrlTemplates() {
+        APIUrlTemplates templates = urlTemplates;
+        if (templates == null) {
+            templates = APIUrlTemplates.get(getApiBaseUrl(), getApiVersion(), APIFormat.JSON);
+            urlTemplates = templates;
+        }
+        return templates;
+    }
+
     /**
      * Retrieves a request token
      *
@@ -417,8 +485,8 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         params.add(new PostParameter("steps", steps));
         params.add(new PostParameter("durationMillis", durationMillis));
         params.add(new PostParameter("distance", distance));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
-        params.add(new PostParameter("startTime", FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.print(startTime)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
+        params.add(new PostParameter("startTime", FitbitDateCodec.formatTime(startTime)));
 
         return logActivity(localUser, params);
     }
@@ -454,8 +522,8 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         params.add(new PostParameter("steps", steps));
         params.add(new PostParameter("durationMillis", durationMillis));
         params.add(new PostParameter("distance", distance));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
-        params.add(new PostParameter("startTime", FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.print(startTime)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
+        params.add(new PostParameter("startTime", FitbitDateCodec.formatTime(startTime)));
         params.add(new PostParameter("distanceUnit", distanceUnit));
 
         return logActivity(localUser, params);
@@ -494,8 +562,8 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         params.add(new PostParameter("steps", steps));
         params.add(new PostParameter("durationMillis", durationMillis));
         params.add(new PostParameter("distance", distance));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
-        params.add(new PostParameter("startTime", FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.print(startTime)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
+        params.add(new PostParameter("startTime", FitbitDateCodec.formatTime(startTime)));
         params.add(new PostParameter("manualCalories", manualCalories));
         params.add(new PostParameter("distanceUnit", distanceUnit));
 
@@ -526,8 +594,8 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         List<PostParameter> params = new ArrayList<PostParameter>(5);
         params.add(new PostParameter("activityName", activityName));
         params.add(new PostParameter("durationMillis", durationMillis));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
-        params.add(new PostParameter("startTime", FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.print(startTime)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
+        params.add(new PostParameter("startTime", FitbitDateCodec.formatTime(startTime)));
         params.add(new PostParameter("manualCalories", manualCalories));
 
         return logActivity(localUser, params);
@@ -560,8 +628,8 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         params.add(new PostParameter("activityName", activityName));
         params.add(new PostParameter("durationMillis", durationMillis));
         params.add(new PostParameter("distance", distance));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
-        params.add(new PostParameter("startTime", FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.print(startTime)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
+        params.add(new PostParameter("startTime", FitbitDateCodec.formatTime(startTime)));
         params.add(new PostParameter("manualCalories", manualCalories));
 
         return logActivity(localUser, params);
@@ -596,8 +664,8 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         params.add(new PostParameter("activityName", activityName));
         params.add(new PostParameter("durationMillis", durationMillis));
         params.add(new PostParameter("distance", distance));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
-        params.add(new PostParameter("startTime", FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.print(startTime)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
+        params.add(new PostParameter("startTime", FitbitDateCodec.formatTime(startTime)));
         params.add(new PostParameter("manualCalories", manualCalories));
         params.add(new PostParameter("distanceUnit", distanceUnit));
 
@@ -669,12 +737,9 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
      * @see <a href="http://wiki.fitbit.com/display/API/API-Browse-Activities">Fitbit API: API-Browse-Activities</a>
      */
     public List<ActivityCategory> getActivityCategories(LocalUserDetail localUser) throws FitbitAPIException {
-        if (localUser != null) {
-            setAccessToken(localUser);
-        }
         // Example: GET /1/activities.json
         String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/activities", APIFormat.JSON);
-        Response res = httpGet(url, true);
+        Response res = httpGet(url, getAccessToken(localUser));
         throwExceptionIfError(res);
         try {
             return ActivityCategory.jsonArrayToActivityCategoryList(res.asJSONObject().getJSONArray("categories"));
@@ -914,12 +979,10 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
      * @see <a href="http://wiki.fitbit.com/display/API/API-Search-Foods">Fitbit API: API-Search-Foods</a>
      */
     public List<Food> searchFoods(LocalUserDetail localUser, String query) throws FitbitAPIException {
-        setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/foods/search.json?query=apple
         String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/foods/search", APIFormat.JSON);
-        List<PostParameter> params = new ArrayList<PostParameter>(1);
-        params.add(new PostParameter("query", query));
-        Response res = httpGet(url, params.toArray(new PostParameter[params.size()]), true);
+        PostParameter[] params = {new PostParameter("query", query)};
+        Response res = httpGet(appendParamsToUrl(url, params), getAccessToken(localUser));
         return Food.constructFoodList(res);
     }
 
@@ -957,10 +1020,9 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
      * @see <a href="http://wiki.fitbit.com/display/API/API-Get-Food-Units">Fitbit API: API-Get-Food-Units</a>
      */
     public List<FoodUnit> getFoodUnits() throws FitbitAPIException {
-        clearAccessToken();
         // Example: GET http://api.fitbit.com/1/foods/units.json
         String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/foods/units", APIFormat.JSON);
-        Response res = httpGet(url, true);
+        Response res = httpGet(url, (AccessToken) null);
         throwExceptionIfError(res);
         return FoodUnit.constructFoodUnitList(res);
     }
@@ -986,7 +1048,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         params.add(new PostParameter("mealTypeId", mealTypeId));
         params.add(new PostParameter("unitId", String.valueOf(unitId)));
         params.add(new PostParameter("amount", amount));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
 
         return logFood(localUser, params);
     }
@@ -1021,7 +1083,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         params.add(new PostParameter("mealTypeId", mealTypeId));
         params.add(new PostParameter("unitId", String.valueOf(unitId)));
         params.add(new PostParameter("amount", amount));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
 
         return logFood(localUser, params);
     }
@@ -1130,10 +1192,9 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
      * @see <a href="http://wiki.fitbit.com/display/API/API-Get-Meals">Fitbit API: API-Get-Meals</a>
      */
     public List<Meal> getMeals(LocalUserDetail localUser) throws FitbitAPIException {
-        setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/meals.json
         String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/-/meals", APIFormat.JSON);
-        Response res = httpGet(url, true);
+        Response res = httpGet(url, getAccessToken(localUser));
         throwExceptionIfError(res);
         try {
             return Meal.constructMeals(res.asJSONObject().getJSONArray("meals"));
@@ -1421,23 +1482,34 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     }
 
     public Response getCollectionResponseForDate(LocalUserDetail localUser, FitbitUser fitbitUser, APICollectionType type, LocalDate date) throws FitbitAPIException {
-        setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/foods/log/date/2010-02-25.json
-        String url = APIUtil.constructFullUrl(getApiBaseUrl(), getApiVersion(), fitbitUser, type, date, APIFormat.JSON);
-        Response res = httpGet(url, true);
+        String url = getUrlTemplates().collectionForDate(type).render(fitbitUser, date);
+        Response res = httpGet(url, getAccessToken(localUser));
         throwExceptionIfError(res);
         return res;
     }
 
     public Response getCollectionResponseForProperty(LocalUserDetail localUser, FitbitUser fitbitUser, APICollectionType type, ApiCollectionProperty property) throws FitbitAPIException {
-        setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/foods/log/recent.json
-        String url = APIUtil.constructFullUrl(getApiBaseUrl(), getApiVersion(), fitbitUser, type, property, APIFormat.JSON);
-        Response res = httpGet(url, true);
+        String url = getUrlTemplates().collectionProperty(type, property).render(fitbitUser);
+        Response res = httpGet(url, getAccessToken(localUser));
         throwExceptionIfError(res);
         return res;
     }
 
+    /**
+     * Get the entity of a collection for a given day: {@link Activities}, {@link Foods}, list of {@link Meal},
+     * {@link Sleep}, {@link BodyWithGoals} or list of {@link WeightLog}
+     *
+     * @param localUser authorized user
+     * @param fitbitUser user to retrieve data from
+     * @param type collection type
+     * @param date date to retrieve data for
+     *
+     * @return collection entity or null if the collection can not be retrieved by date
+     *
+     * @throws com.fitbit.api.FitbitAPIException Fitbit API Exception
+     */
     public Object getCollectionForDate(LocalUserDetail localUser, FitbitUser fitbitUser, APICollectionType type, LocalDate date) throws FitbitAPIException {
         switch (type) {
             case activities:
@@ -1446,11 +1518,66 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
                 return getFoods(localUser, fitbitUser, date);
             case meals:
                 return getMeals(localUser);
+            case sleep:
+                return getSleep(localUser, fitbitUser, date);
+            case body:
+                return getBodyWithGoals(localUser, fitbitUser, date);
+            case weight:
+                return getLoggedWeight(localUser, fitbitUser, date);
             default:
                 return null;
         }
     }
 
+    /**
+     * Get the entity of a collection for a given day unless the cached one is still current. The request is made
+     * conditional on the validators of the cached entity, and when the API answers 304 Not Modified the cached entity
+     * is returned without transferring or parsing the collection again. Meals and weight are always fetched.
+     *
+     * @param localUser authorized user
+     * @param fitbitUser user to retrieve data from
+     * @param type collection type
+     * @param date date to retrieve data for
+     * @param cached entity cached earlier, may be null
+     *
+     * @return the cached entity if it is still current, otherwise the collection entity along with its validators
+     *
+     * @throws com.fitbit.api.FitbitAPIException Fitbit API Exception
+     */
+    public FitbitApiCachedEntity getCollectionForDate(LocalUserDetail localUser, FitbitUser fitbitUser, APICollectionType type, LocalDate date, FitbitApiCachedEntity cached) throws FitbitAPIException {
+        if (type != APICollectionType.activities && type != APICollectionType.foods
+                && type != APICollectionType.sleep && type != APICollectionType.body) {
+            return new FitbitApiCachedEntity(getCollectionForDate(localUser, fitbitUser, type, date), System.currentTimeMillis());
+        }
+        String url = getUrlTemplates().collectionForDate(type).render(fitbitUser, date);
+        HttpValidators validators = null == cached ? null : cached.getValidators();
+        Response res = httpGet(url, getAccessToken(localUser), validators);
+        if (HttpServletResponse.SC_NOT_MODIFIED == res.getStatusCode()) {
+            return cached.revalidated(System.currentTimeMillis());
+        }
+        throwExceptionIfError(res);
+        HttpValidators fetched = HttpValidators.of(res);
+        Object entity;
+        switch (type) {
+            case activities:
+                entity = Activities.constructActivities(res);
+                break;
+            case foods:
+                entity = Foods.constructFoods(res);
+                break;
+            case sleep:
+                entity = Sleep.constructSleep(res);
+                break;
+            default:
+                try {
+                    entity = BodyWithGoals.constructBodyWithGoals(res);
+                } catch (JSONException e) {
+                    throw new FitbitAPIException("Error retrieving body with goals with goals: " + e, e);
+                }
+        }
+        return new FitbitApiCachedEntity(entity, System.currentTimeMillis(), fetched);
+    }
+
     /**
      * Retrieve a user's body measurements for a given day
      *
@@ -1531,13 +1658,10 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     }
 
     public BodyWithGoals getBodyWithGoals(LocalUserDetail localUser, FitbitUser fitbitUser, LocalDate date) throws FitbitAPIException {
-        if(localUser != null) {
-            setAccessToken(localUser);
-        }
         // Example: GET /1/user/228TQ4/body/date/2010-02-25.json
-        String url = APIUtil.constructFullUrl(getApiBaseUrl(), getApiVersion(), fitbitUser, APICollectionType.body, date, APIFormat.JSON);
+        String url = getUrlTemplates().collectionForDate(APICollectionType.body).render(fitbitUser, date);
 
-        Response res = httpGet(url, true);
+        Response res = localUser != null ? httpGet(url, getAccessToken(localUser)) : httpGet(url, true);
         throwExceptionIfError(res);
         try {
             return BodyWithGoals.constructBodyWithGoals(res);
@@ -1590,7 +1714,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         if(body.getCalf() > 0) {
             params.add(new PostParameter("calf", body.getCalf()));
         }
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
 
         return logBody(localUser, params);
     }
@@ -1624,7 +1748,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     public void logWeight(LocalUserDetail localUser, float weight, LocalDate date) throws FitbitAPIException {
         List<PostParameter> params = new ArrayList<PostParameter>(2);
         params.add(new PostParameter("weight", weight));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
 
         logBody(localUser, params);
     }
@@ -1645,7 +1769,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     public WaterLog logWater(LocalUserDetail localUser, float amount, VolumeUnits volumeUnit, LocalDate date) throws FitbitAPIException {
         List<PostParameter> params = new ArrayList<PostParameter>(2);
         params.add(new PostParameter("amount", amount));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
         if (volumeUnit != null) {
             params.add(new PostParameter("unit", volumeUnit.getText()));
         }
@@ -1699,7 +1823,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     public Water getLoggedWater(LocalUserDetail localUser, FitbitUser fitbitUser, LocalDate date) throws FitbitAPIException {
         setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/foods/log/water/date/2010-02-25.json
-        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/foods/log/water/date/" + DateTimeFormat.forPattern("yyyy-MM-dd").print(date), APIFormat.JSON);
+        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/foods/log/water/date/" + FitbitDateCodec.formatDate(date), APIFormat.JSON);
 
         Response res = httpGet(url, true);
         throwExceptionIfError(res);
@@ -1750,7 +1874,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         List<PostParameter> params = new ArrayList<PostParameter>(4);
         params.add(new PostParameter("systolic", systolic));
         params.add(new PostParameter("diastolic", diastolic));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
 
         if (time != null) {
             params.add(new PostParameter("time", time));
@@ -1805,7 +1929,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     public Bp getLoggedBp(LocalUserDetail localUser, FitbitUser fitbitUser, LocalDate date) throws FitbitAPIException {
         setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/bp/date/2010-02-25.json
-        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/bp/date/" + DateTimeFormat.forPattern("yyyy-MM-dd").print(date), APIFormat.JSON);
+        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/bp/date/" + FitbitDateCodec.formatDate(date), APIFormat.JSON);
 
         Response res = httpGet(url, true);
         throwExceptionIfError(res);
@@ -1852,7 +1976,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
      */
     public Glucose logGlucose(LocalUserDetail localUser, String tracker, Float glucose, Float hba1c, LocalDate date, String time) throws FitbitAPIException {
         List<PostParameter> params = new ArrayList<PostParameter>(5);
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
         if(tracker != null) {
             params.add(new PostParameter("tracker", tracker));
         }
@@ -1914,7 +2038,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     public Glucose getLoggedGlucose(LocalUserDetail localUser, FitbitUser fitbitUser, LocalDate date) throws FitbitAPIException {
         setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/glucose/date/2010-02-25.json
-        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/glucose/date/" + DateTimeFormat.forPattern("yyyy-MM-dd").print(date), APIFormat.JSON);
+        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/glucose/date/" + FitbitDateCodec.formatDate(date), APIFormat.JSON);
 
         Response res = httpGet(url, true);
         throwExceptionIfError(res);
@@ -1942,7 +2066,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         List<PostParameter> params = new ArrayList<PostParameter>(4);
         params.add(new PostParameter("tracker", tracker));
         params.add(new PostParameter("heartRate", heartRate));
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
 
         if (time != null) {
             params.add(new PostParameter("time", time));
@@ -1995,7 +2119,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     public Heart getLoggedHeartRate(LocalUserDetail localUser, FitbitUser fitbitUser, LocalDate date) throws FitbitAPIException {
         setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/heart/date/2010-02-25.json
-        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/heart/date/" + DateTimeFormat.forPattern("yyyy-MM-dd").print(date), APIFormat.JSON);
+        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/heart/date/" + FitbitDateCodec.formatDate(date), APIFormat.JSON);
 
         Response res = httpGet(url, true);
         throwExceptionIfError(res);
@@ -2214,8 +2338,8 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         setAccessToken(localUser);
 
         List<PostParameter> params = new ArrayList<PostParameter>();
-        params.add(new PostParameter("date", FitbitApiService.LOCAL_DATE_FORMATTER.print(date)));
-        params.add(new PostParameter("startTime", FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.print(startTime)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
+        params.add(new PostParameter("startTime", FitbitDateCodec.formatTime(startTime)));
         params.add(new PostParameter("duration", duration));
 
         // POST /1/user/-/sleep.json
@@ -2661,7 +2785,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
             clearAccessToken();
         }
 
-        String url = APIUtil.constructTimeSeriesUrl(getApiBaseUrl(), getApiVersion(), user, resourceType, startDate, periodOrEndDate, APIFormat.JSON);
+        String url = getUrlTemplates().timeSeries(resourceType).render(user, startDate, periodOrEndDate);
         Response res = httpGet(url, true);
         throwExceptionIfError(res);
         try {
@@ -2672,11 +2796,11 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     }
 
     public IntradaySummary getIntraDayTimeSeries(LocalUserDetail localUser, FitbitUser user, TimeSeriesResourceType resourceType, LocalDate date, LocalTime startTime, LocalTime endTime) throws FitbitAPIException {
-        return getIntraDayTimeSeries(localUser, user, resourceType, date.toString(), FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.print(startTime), FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.print(endTime));
+        return getIntraDayTimeSeries(localUser, user, resourceType, date.toString(), FitbitDateCodec.formatTime(startTime), FitbitDateCodec.formatTime(endTime));
     }
 
     public IntradaySummary getIntraDayTimeSeries(LocalUserDetail localUser, FitbitUser user, TimeSeriesResourceType resourceType, String date, String startTime, String endTime) throws FitbitAPIException {
-        String url = APIUtil.constructTimeSeriesUrl(getApiBaseUrl(), getApiVersion(), user, resourceType, date, TimePeriod.INTRADAY.getShortForm(), startTime, endTime, APIFormat.JSON);
+        String url = getUrlTemplates().timeSeriesWithTime(resourceType).render(user, date, TimePeriod.INTRADAY.getShortForm(), startTime, endTime);
         return getIntraDayTimeSeries(localUser, resourceType, url);
     }
 
@@ -2685,18 +2809,62 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     }
 
     public IntradaySummary getIntraDayTimeSeries(LocalUserDetail localUser, FitbitUser user, TimeSeriesResourceType resourceType, String date) throws FitbitAPIException {
-        String url = APIUtil.constructTimeSeriesUrl(getApiBaseUrl(), getApiVersion(), user, resourceType, date, TimePeriod.INTRADAY.getShortForm(), APIFormat.JSON);
+        String url = getUrlTemplates().timeSeries(resourceType).render(user, date, TimePeriod.INTRADAY.getShortForm());
         return getIntraDayTimeSeries(localUser, resourceType, url);
     }
 
     private IntradaySummary getIntraDayTimeSeries(LocalUserDetail localUser, TimeSeriesResourceType resourceType, String url) throws FitbitAPIException {
-        if (localUser != null) {
-            setAccessToken(localUser);
-        } else {
-            clearAccessToken();
+        return parseIntradaySummary(httpGet(url, getAccessToken(localUser)), resourceType);
+    }
+
+    /**
+     * Get intraday time series of several resources of a user for one day. Resources are fetched concurrently on the
+     * async executor, paced by the rate limiter, and merged into a single minute-aligned view. Called from a task of
+     * the async executor, the resources are fetched one after the other on the calling thread.
+     *
+     * @param localUser authorized user
+     * @param user user to fetch data from
+     * @param date date to fetch data for
+     * @param resourceTypes types of resources to fetch
+     *
+     * @return merged intraday data of the requested resources
+     *
+     * @throws com.fitbit.api.FitbitAPIException Fitbit API Exception
+     * @see <a href="http://wiki.fitbit.com/display/API/API-Get-Intraday-Time-Series">Fitbit API: API-Get-Intraday-Time-Series</a>
+     */
+    public IntradayDaySnapshot getIntraDaySnapshot(LocalUserDetail localUser, FitbitUser user, LocalDate date, Collection<TimeSeriesResourceType> resourceTypes) throws FitbitAPIException {
+        final AccessToken accessToken = getAccessToken(localUser);
+        final FitbitApiRateLimiter limiter = rateLimiter;
+        APIUrlTemplates templates = getUrlTemplates();
+        ExecutorService executor = getAsyncExecutor();
+        Map<TimeSeriesResourceType, Future<IntradaySummary>> futures = new EnumMap<TimeSeriesResourceType, Future<IntradaySummary>>(TimeSeriesResourceType.class);
+        try {
+            for (final TimeSeriesResourceType resourceType : resourceTypes) {
+                if (futures.containsKey(resourceType)) {
+                    continue;
+                }
+                final String url = templates.timeSeries(resourceType).render(user, date, TimePeriod.INTRADAY.getShortForm());
+                futures.put(resourceType, submitAsync(executor, RequestHeaders.propagate(FitbitApiDeadline.propagate(new Callable<IntradaySummary>() {
+                    public IntradaySummary call() throws FitbitAPIException {
+                        limiter.acquire();
+                        return parseIntradaySummary(httpGet(url, accessToken), resourceType);
+                    }
+                }))));
+            }
+            Map<TimeSeriesResourceType, IntradaySummary> summaries = new EnumMap<TimeSeriesResourceType, IntradaySummary>(TimeSeriesResourceType.class);
+            for (Map.Entry<TimeSeriesResourceType, Future<IntradaySummary>> entry : futures.entrySet()) {
+                summaries.put(entry.getKey(), awaitResult(entry.getValue()));
+            }
+            return new IntradayDaySnapshot(date, summaries);
+        } finally {
+            // no-op for completed requests, stops the remaining ones when one of them has failed
+            for (Future<IntradaySummary> future : futures.values()) {
+                future.cancel(true);
+            }
         }
+    }
 
-        Response res = httpGet(url, true);
+    private static IntradaySummary parseIntradaySummary(Response res, TimeSeriesResourceType resourceType) throws FitbitAPIException {
         throwExceptionIfError(res);
         try {
             return new IntradaySummary(res.asJSONObject(), resourceType);
@@ -2705,6 +2873,341 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         }
     }
 
+    /**
+     * Waits for a request submitted to the async executor and unwraps its failure. Waits at most until the
+     * {@link FitbitApiDeadline} of the calling thread.
+     *
+     * @param future pending request
+     *
+     * @return result of the request
+     *
+     * @throws FitbitAPIException if the request failed, the deadline passed or the calling thread was interrupted
+     */
+    protected static <T> T awaitResult(Future<T> future) throws FitbitAPIException {
+        FitbitApiDeadline deadline = FitbitApiDeadline.current();
+        try {
+            return null == deadline ? future.get() : future.get(deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new FitbitAPIException("Deadline exceeded while waiting for API response", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FitbitAPIException("Interrupted while waiting for API response", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FitbitAPIException) {
+                throw (FitbitAPIException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new FitbitAPIException("Error executing API request: " + cause, e);
+        }
+    }
+
+    /**
+     * Runs a task on the async executor, or right away on the calling thread if that already runs a task of the
+     * executor: a task waiting for a free thread of the pool it occupies waits forever once every thread does the same.
+     *
+     * @param executor async executor
+     * @param task task to run
+     *
+     * @return pending or completed result of the task
+     */
+    private static <T> Future<T> submitAsync(ExecutorService executor, Callable<T> task) {
+        if (isRunningOn(executor)) {
+            FutureTask<T> future = new FutureTask<T>(task);
+            future.run();
+            return future;
+        }
+        return executor.submit(runningOn(executor, task));
+    }
+
+    private static boolean isRunningOn(ExecutorService executor) {
+        return RUNNING_ON.get() == executor;
+    }
+
+    /**
+     * Wraps a task submitted to the async executor to mark its thread while it runs
+     */
+    private static <T> Callable<T> runningOn(final ExecutorService executor, final Callable<T> task) {
+        return new Callable<T>() {
+            public T call() throws Exception {
+                ExecutorService previous = RUNNING_ON.get();
+                RUNNING_ON.set(executor);
+                try {
+                    return task.call();
+                } finally {
+                    if (null == previous) {
+                        RUNNING_ON.remove();
+                    } else {
+                        RUNNING_ON.set(previous);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the executor running concurrent requests, creating one with the async threads of the configuration on first use.
+     *
+     * @return async executor
+     */
+    protected ExecutorService getAsyncExecutor() {
+        ExecutorService executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = asyncExecutor;
+                if (executor == null) {
+                    final AtomicReference<ExecutorService> pool = new AtomicReference<ExecutorService>();
+                    executor = Executors.newFixedThreadPool(Math.max(1, getConfiguration().getAsyncThreads()), new FitbitApiThreadFactory("fitbit4j-async") {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            // whatever the threads run, calls they make run inline
+                            return super.newThread(new Runnable() {
+                                public void run() {
+                                    RUNNING_ON.set(pool.get());
+                                    runnable.run();
+                                }
+                            });
+                        }
+                    });
+                    pool.set(executor);
+                    asyncExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Sets the executor running concurrent requests. The caller remains responsible for shutting it down. Calls made
+     * from the requests the client submits to it run inline; calls made from other tasks of the executor wait for its
+     * threads like any other caller.
+     *
+     * @param asyncExecutor async executor
+     */
+    public void setAsyncExecutor(ExecutorService asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    public FitbitApiRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the rate limiter pacing concurrent requests
+     *
+     * @param rateLimiter rate limiter
+     */
+    public void setRateLimiter(FitbitApiRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Writes log entries of a user concurrently on the async executor, at most
+     * the async threads of the configuration at a time and paced by the rate limiter.
+     *
+     * @see #logBatch(LocalUserDetail, List, int)
+     */
+    public List<FitbitApiBatchLogResult> logBatch(LocalUserDetail localUser, List<FitbitApiBatchLogEntry> entries) throws FitbitAPIException {
+        return logBatch(localUser, entries, Math.max(1, getConfiguration().getAsyncThreads()));
+    }
+
+    /**
+     * Writes log entries of a user concurrently on the async executor, paced by the rate limiter. Entries failing to
+     * be written do not stop the others; their errors are reported in the results. Called from a task of the async
+     * executor, the entries are written one after the other on the calling thread.
+     * <p>
+     * Entries with an idempotency key already written for the user, by this batch or an earlier one, are not written
+     * again: their results hold the log entry created the first time.
+     *
+     * @param localUser authorized user
+     * @param entries log entries
+     * @param maxConcurrency maximum number of entries written at the same time
+     *
+     * @return results in the order of the entries
+     *
+     * @throws FitbitAPIException if the calling thread was interrupted
+     */
+    public List<FitbitApiBatchLogResult> logBatch(final LocalUserDetail localUser, List<FitbitApiBatchLogEntry> entries, int maxConcurrency) throws FitbitAPIException {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + maxConcurrency);
+        }
+        final AccessToken accessToken = getAccessToken(localUser);
+        final FitbitApiRateLimiter limiter = rateLimiter;
+        final FitbitApiIdempotencyStore store = idempotencyStore;
+        ExecutorService executor = getAsyncExecutor();
+        // a batch written from a task of the executor writes its entries one after the other on the calling thread
+        boolean inline = isRunningOn(executor);
+        CompletionService<Object> completionService = new ExecutorCompletionService<Object>(executor);
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(entries.size());
+        boolean[] replayed = new boolean[entries.size()];
+        Map<String, Future<Object>> batchKeys = new HashMap<String, Future<Object>>();
+        // tasks this call created, with their idempotency keys: only these are cancelled if the call fails
+        Map<FutureTask<Object>, String> created = new LinkedHashMap<FutureTask<Object>, String>();
+        int running = 0;
+        boolean completed = false;
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                final FitbitApiBatchLogEntry entry = entries.get(i);
+                final String key = entry.getIdempotencyKey();
+                if (null != key) {
+                    Future<Object> earlier = batchKeys.get(key);
+                    if (null == earlier) {
+                        Object stored = null == store ? null : store.getResult(localUser, key);
+                        if (null != stored) {
+                            earlier = completedFuture(stored);
+                        } else {
+                            earlier = pendingLogs.get(pendingKey(localUser, key));
+                        }
+                    }
+                    if (null != earlier) {
+                        batchKeys.put(key, earlier);
+                        futures.add(earlier);
+                        replayed[i] = true;
+                        continue;
+                    }
+                }
+                final FutureTask<Object> task = new FutureTask<Object>(RequestHeaders.propagate(FitbitApiDeadline.propagate(new Callable<Object>() {
+                    public Object call() throws FitbitAPIException {
+                        limiter.acquire();
+                        Object log = postLogEntry(entry, accessToken);
+                        if (null != key && null != store) {
+                            store.storeResult(localUser, key, log);
+                        }
+                        return log;
+                    }
+                })));
+                if (null != key) {
+                    Future<Object> concurrent = pendingLogs.putIfAbsent(pendingKey(localUser, key), task);
+                    if (null == concurrent && null != store) {
+                        // a concurrent batch may have stored the entry and let go of it since the store was checked
+                        Object stored = store.getResult(localUser, key);
+                        if (null != stored) {
+                            pendingLogs.remove(pendingKey(localUser, key), task);
+                            concurrent = completedFuture(stored);
+                        }
+                    }
+                    if (null != concurrent) {
+                        batchKeys.put(key, concurrent);
+                        futures.add(concurrent);
+                        replayed[i] = true;
+                        continue;
+                    }
+                    batchKeys.put(key, task);
+                }
+                created.put(task, key);
+                Runnable write = new Runnable() {
+                    public void run() {
+                        try {
+                            task.run();
+                        } finally {
+                            if (null != key) {
+                                pendingLogs.remove(pendingKey(localUser, key), task);
+                            }
+                        }
+                    }
+                };
+                futures.add(task);
+                if (inline) {
+                    write.run();
+                    continue;
+                }
+                if (running == maxConcurrency) {
+                    completionService.take();
+                    running--;
+                }
+                completionService.submit(runningOn(executor, Executors.callable(write)));
+                running++;
+            }
+            List<FitbitApiBatchLogResult> results = new ArrayList<FitbitApiBatchLogResult>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                FitbitApiBatchLogEntry entry = entries.get(i);
+                try {
+                    results.add(new FitbitApiBatchLogResult(entry, awaitResult(futures.get(i)), replayed[i]));
+                } catch (FitbitAPIException e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                    results.add(new FitbitApiBatchLogResult(entry, e));
+                } catch (CancellationException e) {
+                    // the concurrent batch writing an entry with the same key was interrupted
+                    results.add(new FitbitApiBatchLogResult(entry, new FitbitAPIException("Log entry with idempotency key " + entry.getIdempotencyKey() + " was cancelled", e)));
+                }
+            }
+            completed = true;
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FitbitAPIException("Interrupted while writing log entries", e);
+        } finally {
+            if (!completed) {
+                // entries of concurrent batches keep being written for them
+                for (Map.Entry<FutureTask<Object>, String> task : created.entrySet()) {
+                    task.getKey().cancel(true);
+                    if (null != task.getValue()) {
+                        pendingLogs.remove(pendingKey(localUser, task.getValue()), task.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a single log entry signed with the given token
+     *
+     * @param entry log entry
+     * @param accessToken token of the user
+     *
+     * @return created log entry
+     *
+     * @throws FitbitAPIException if the entry could not be written
+     */
+    protected Object postLogEntry(FitbitApiBatchLogEntry entry, AccessToken accessToken) throws FitbitAPIException {
+        FitbitApiBatchLogEntry.Type type = entry.getType();
+        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), type.getPath(), APIFormat.JSON);
+        List<PostParameter> params = entry.getParams();
+        try {
+            Response res = httpPost(url, params.toArray(new PostParameter[params.size()]), accessToken);
+            return type.parse(res.asJSONObject());
+        } catch (FitbitAPIException e) {
+            throw new FitbitAPIException("Error logging " + type.getDescription() + ": " + e, e, e.getStatusCode());
+        } catch (JSONException e) {
+            throw new FitbitAPIException("Error logging " + type.getDescription() + ": " + e, e);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        pendingLogs = new ConcurrentHashMap<String, Future<Object>>();
+    }
+
+    private static String pendingKey(LocalUserDetail localUser, String idempotencyKey) {
+        return localUser.getUserId() + '\n' + idempotencyKey;
+    }
+
+    private static Future<Object> completedFuture(Object value) {
+        FutureTask<Object> future = new FutureTask<Object>(new Runnable() {
+            public void run() {
+            }
+        }, value);
+        future.run();
+        return future;
+    }
+
+    public FitbitApiIdempotencyStore getIdempotencyStore() {
+        return idempotencyStore;
+    }
+
+    /**
+     * Sets the store of idempotency keys of batched writes
+     *
+     * @param idempotencyStore store, null to ignore idempotency keys of earlier batches
+     */
+    public void setIdempotencyStore(FitbitApiIdempotencyStore idempotencyStore) {
+        this.idempotencyStore = idempotencyStore;
+    }
+
     /* ********************************************************************* */
 
     protected void setAccessToken(LocalUserDetail localUser) {
@@ -2714,6 +3217,21 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         setOAuthAccessToken(resourceCredentials.getAccessToken(), resourceCredentials.getAccessTokenSecret(), resourceCredentials.getLocalUserId());
     }
 
+    /**
+     * Resolves the access token of a user without touching the token shared by the client.
+     *
+     * @param localUser authorized user, may be null
+     *
+     * @return access token or null for consumer-only requests
+     */
+    protected AccessToken getAccessToken(LocalUserDetail localUser) {
+        if (localUser == null) {
+            return null;
+        }
+        APIResourceCredentials resourceCredentials = credentialsCache.getResourceCredentials(localUser);
+        return new AccessToken(resourceCredentials.getAccessToken(), resourceCredentials.getAccessTokenSecret());
+    }
+
     protected void clearAccessToken() {
         // Set the access token in the client to null:
         setOAuthAccessToken(null);
@@ -2784,10 +3302,54 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         return http.get(appendParamsToUrl(url, params), authenticate);
     }
 
+    /**
+     * Issues an HTTP GET request signed with the given access token.
+     *
+     * @param url the request url
+     * @param accessToken token to sign the request with, null for consumer-only requests
+     *
+     * @return the response
+     *
+     * @throws FitbitAPIException when Fitbit service or network is unavailable
+     */
+    protected Response httpGet(String url, AccessToken accessToken) throws FitbitAPIException {
+        return http.get(url, accessToken);
+    }
+
+    /**
+     * Issues a conditional HTTP GET request signed with the given access token.
+     *
+     * @param url the request url
+     * @param accessToken token to sign the request with, null for consumer-only requests
+     * @param validators validators of the response the caller has, null for an unconditional request
+     *
+     * @return the response, with status 304 if the caller's response is still current
+     *
+     * @throws FitbitAPIException when Fitbit service or network is unavailable
+     */
+    protected Response httpGet(String url, AccessToken accessToken, HttpValidators validators) throws FitbitAPIException {
+        return http.get(url, accessToken, validators);
+    }
+
     protected Response httpPost(String url, PostParameter[] params, boolean authenticate) throws FitbitAPIException {
         return http.post(url, params, authenticate);
     }
 
+    /**
+     * Issues an HTTP POST request signed with the given access token.
+     *
+     * @param url the request url
+     * @param params the request parameters
+     * @param accessToken token to sign the request with, null for consumer-only requests
+     *
+     * @return the response
+     *
+     * @throws FitbitAPIException when Fitbit service or network is unavailable
+     */
+    protected Response httpPost(String url, PostParameter[] params, AccessToken accessToken) throws FitbitAPIException {
+        return http.post(url, params, accessToken);
+    }
+
     protected Response httpDelete(String url, boolean authenticate) throws FitbitAPIException {
         return httpDelete(url, null, authenticate);
     }
@@ -2822,10 +3384,12 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     }
 
     /**
-     * Set unit system for future API calls
+     * Set unit system for future API calls. Calls for users with other unit systems at the same time override it with
+     * an Accept-Language header attached to their thread.
      *
      * @param locale requested unit system
      *
+     * @see RequestHeaders#attach()
      * @see <a href="http://wiki.fitbit.com/display/API/API-Unit-System">Fitbit API: API-Unit-System</a>
      */
     public void setLocale(Locale locale) {
@@ -2865,7 +3429,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
      */
     public WeightLog logWeight(LocalUserDetail localUser, double weight, LocalDate date, String time) throws FitbitAPIException {
         List<PostParameter> params = new ArrayList<PostParameter>(4);
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
         params.add(new PostParameter("weight", weight));
 
         if (time != null) {
@@ -2901,11 +3465,10 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
      * @throws com.fitbit.api.FitbitAPIException Fitbit API Exception
      */
     public List<WeightLog> getLoggedWeight(LocalUserDetail localUser, FitbitUser fitbitUser, LocalDate date) throws FitbitAPIException {
-        setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/body/log/weight/date/2010-02-25.json
-        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/body/log/weight/date/" + DateTimeFormat.forPattern("yyyy-MM-dd").print(date), APIFormat.JSON);
+        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/body/log/weight/date/" + FitbitDateCodec.formatDate(date), APIFormat.JSON);
 
-        Response res = httpGet(url, true);
+        Response res = httpGet(url, getAccessToken(localUser));
         throwExceptionIfError(res);
         try {
             return WeightLog.constructWeightLogList(res.asJSONObject().getJSONArray("weight"));
@@ -2930,7 +3493,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/body/log/weight/date/2010-02-25/2010-02-28.json
         String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/body/log/weight/date/" +
-                DateTimeFormat.forPattern("yyyy-MM-dd").print(startDate) + "/" + DateTimeFormat.forPattern("yyyy-MM-dd").print(endDate), APIFormat.JSON);
+                FitbitDateCodec.formatDate(startDate) + "/" + FitbitDateCodec.formatDate(endDate), APIFormat.JSON);
 
         Response res = httpGet(url, true);
         throwExceptionIfError(res);
@@ -2957,7 +3520,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/body/log/weight/date/2010-02-25/30d.json
         String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/body/log/weight/date/" +
-                DateTimeFormat.forPattern("yyyy-MM-dd").print(endDate) + "/" + period.getShortForm(), APIFormat.JSON);
+                FitbitDateCodec.formatDate(endDate) + "/" + period.getShortForm(), APIFormat.JSON);
 
         Response res = httpGet(url, true);
         throwExceptionIfError(res);
@@ -3041,7 +3604,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
      */
     public FatLog logFat(LocalUserDetail localUser, double fat, LocalDate date, String time) throws FitbitAPIException {
         List<PostParameter> params = new ArrayList<PostParameter>(4);
-        params.add(new PostParameter("date", DateTimeFormat.forPattern("yyyy-MM-dd").print(date)));
+        params.add(new PostParameter("date", FitbitDateCodec.formatDate(date)));
         params.add(new PostParameter("fat", fat));
 
         if (time != null) {
@@ -3079,7 +3642,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
     public List<FatLog> getLoggedFat(LocalUserDetail localUser, FitbitUser fitbitUser, LocalDate date) throws FitbitAPIException {
         setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/body/log/fat/date/2010-02-25.json
-        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/body/log/fat/date/" + DateTimeFormat.forPattern("yyyy-MM-dd").print(date), APIFormat.JSON);
+        String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/body/log/fat/date/" + FitbitDateCodec.formatDate(date), APIFormat.JSON);
 
         Response res = httpGet(url, true);
         throwExceptionIfError(res);
@@ -3106,7 +3669,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/body/log/fat/date/2010-02-25/2010-02-28.json
         String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/body/log/fat/date/" +
-                DateTimeFormat.forPattern("yyyy-MM-dd").print(startDate) + "/" + DateTimeFormat.forPattern("yyyy-MM-dd").print(endDate), APIFormat.JSON);
+                FitbitDateCodec.formatDate(startDate) + "/" + FitbitDateCodec.formatDate(endDate), APIFormat.JSON);
 
         Response res = httpGet(url, true);
         throwExceptionIfError(res);
@@ -3133,7 +3696,7 @@ public class FitbitApiClientAgent extends FitbitAPIClientSupport implements Seri
         setAccessToken(localUser);
         // Example: GET /1/user/228TQ4/body/log/fat/date/2010-02-25/30d.json
         String url = APIUtil.contextualizeUrl(getApiBaseUrl(), getApiVersion(), "/user/" + fitbitUser.getId() + "/body/log/fat/date/" +
-                DateTimeFormat.forPattern("yyyy-MM-dd").print(endDate) + "/" + period.getShortForm(), APIFormat.JSON);
+                FitbitDateCodec.formatDate(endDate) + "/" + period.getShortForm(), APIFormat.JSON);
 
         Response res = httpGet(url, true);
         throwExceptionIfError(res);
@@ -0,0 +1,450 @@
+package com.fitbit.api.client;
+
+import java.io.Serializable;
+
+/**
+ * Settings of a client, resolved once when the configuration is built and then shared by any number of agents.
+ * <p>
+ * {@link #fromConfiguration()} reads them from {@link Configuration}, that is from the system properties and
+ * fitbitAPIClient.properties. A builder starts from those and overrides some of them, so that differently tuned
+ * clients can run in one JVM:
+ * <pre>
+ * FitbitApiClientConfiguration bulk = FitbitApiClientConfiguration.builder()
+ *         .setReadTimeout(300000)
+ *         .setRetryCount(5)
+ *         .setAsyncThreads(16)
+ *         .build();
+ * FitbitApiClientAgent agent = new FitbitApiClientAgent("api.fitbit.com", "http://www.fitbit.com", credentialsCache, bulk);
+ * </pre>
+ * Values set on a builder win over the system properties, unlike values passed to the setters of an agent.
+ */
+public final class FitbitApiClientConfiguration implements Serializable {
+    private static final long serialVersionUID = -7120448630539155113L;
+
+    private final String source;
+    private final String clientVersion;
+    private final String clientURL;
+    private final String userAgent;
+    private final String user;
+    private final String password;
+    private final boolean useSSL;
+    private final String proxyHost;
+    private final int proxyPort;
+    private final String proxyUser;
+    private final String proxyPassword;
+    private final int connectionTimeout;
+    private final int readTimeout;
+    private final int callTimeout;
+    private final int retryCount;
+    private final int retryIntervalSecs;
+    private final int responseSpillBytes;
+    private final int maxResponseBytes;
+    private final String oauthConsumerKey;
+    private final String oauthConsumerSecret;
+    private final int asyncThreads;
+    private final int rateLimitPermitsPerSecond;
+    private final int rateLimitBurst;
+
+    private FitbitApiClientConfiguration(Builder builder) {
+        source = builder.source;
+        clientVersion = builder.clientVersion;
+        clientURL = builder.clientURL;
+        userAgent = builder.userAgent;
+        user = builder.user;
+        password = builder.password;
+        useSSL = builder.useSSL;
+        proxyHost = builder.proxyHost;
+        proxyPort = builder.proxyPort;
+        proxyUser = builder.proxyUser;
+        proxyPassword = builder.proxyPassword;
+        connectionTimeout = builder.connectionTimeout;
+        readTimeout = builder.readTimeout;
+        callTimeout = builder.callTimeout;
+        retryCount = builder.retryCount;
+        retryIntervalSecs = builder.retryIntervalSecs;
+        responseSpillBytes = builder.responseSpillBytes;
+        maxResponseBytes = builder.maxResponseBytes;
+        oauthConsumerKey = builder.oauthConsumerKey;
+        oauthConsumerSecret = builder.oauthConsumerSecret;
+        asyncThreads = builder.asyncThreads;
+        rateLimitPermitsPerSecond = builder.rateLimitPermitsPerSecond;
+        rateLimitBurst = builder.rateLimitBurst;
+    }
+
+    /**
+     * @return the settings of {@link Configuration} as they are now
+     */
+    public static FitbitApiClientConfiguration fromConfiguration() {
+        Builder builder = new Builder();
+        builder.source = Configuration.getSource();
+        builder.clientVersion = Configuration.getCilentVersion();
+        builder.clientURL = Configuration.getClientURL();
+        builder.userAgent = Configuration.getUserAgent();
+        builder.user = Configuration.getUser();
+        builder.password = Configuration.getPassword();
+        builder.useSSL = Configuration.useSSL();
+        builder.proxyHost = Configuration.getProxyHost();
+        builder.proxyPort = Configuration.getProxyPort();
+        builder.proxyUser = Configuration.getProxyUser();
+        builder.proxyPassword = Configuration.getProxyPassword();
+        builder.connectionTimeout = Configuration.getConnectionTimeout();
+        builder.readTimeout = Configuration.getReadTimeout();
+        builder.callTimeout = Configuration.getCallTimeout();
+        builder.retryCount = Configuration.getRetryCount();
+        builder.retryIntervalSecs = Configuration.getRetryIntervalSecs();
+        builder.responseSpillBytes = Configuration.getResponseSpillBytes();
+        builder.maxResponseBytes = Configuration.getMaxResponseBytes();
+        builder.oauthConsumerKey = Configuration.getOAuthConsumerKey();
+        builder.oauthConsumerSecret = Configuration.getOAuthConsumerSecret();
+        builder.asyncThreads = Configuration.getNumberOfAsyncThreads();
+        builder.rateLimitPermitsPerSecond = Configuration.getRateLimitPermitsPerSecond();
+        builder.rateLimitBurst = Configuration.getRateLimitBurst();
+        return new FitbitApiClientConfiguration(builder);
+    }
+
+    /**
+     * @return builder starting from the settings of {@link Configuration}
+     */
+    public static Builder builder() {
+        return fromConfiguration().toBuilder();
+    }
+
+    /**
+     * @return builder starting from these settings
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.source = source;
+        builder.clientVersion = clientVersion;
+        builder.clientURL = clientURL;
+        builder.userAgent = userAgent;
+        builder.user = user;
+        builder.password = password;
+        builder.useSSL = useSSL;
+        builder.proxyHost = proxyHost;
+        builder.proxyPort = proxyPort;
+        builder.proxyUser = proxyUser;
+        builder.proxyPassword = proxyPassword;
+        builder.connectionTimeout = connectionTimeout;
+        builder.readTimeout = readTimeout;
+        builder.callTimeout = callTimeout;
+        builder.retryCount = retryCount;
+        builder.retryIntervalSecs = retryIntervalSecs;
+        builder.responseSpillBytes = responseSpillBytes;
+        builder.maxResponseBytes = maxResponseBytes;
+        builder.oauthConsumerKey = oauthConsumerKey;
+        builder.oauthConsumerSecret = oauthConsumerSecret;
+        builder.asyncThreads = asyncThreads;
+        builder.rateLimitPermitsPerSecond = rateLimitPermitsPerSecond;
+        builder.rateLimitBurst = rateLimitBurst;
+        return builder;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getClientVersion() {
+        return clientVersion;
+    }
+
+    public String getClientURL() {
+        return clientURL;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public boolean isUseSSL() {
+        return useSSL;
+    }
+
+    public String getScheme() {
+        return useSSL ? "https://" : "http://";
+    }
+
+    public String getProxyHost() {
+        return proxyHost;
+    }
+
+    public int getProxyPort() {
+        return proxyPort;
+    }
+
+    public String getProxyUser() {
+        return proxyUser;
+    }
+
+    public String getProxyPassword() {
+        return proxyPassword;
+    }
+
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getCallTimeout() {
+        return callTimeout;
+    }
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    public int getRetryIntervalSecs() {
+        return retryIntervalSecs;
+    }
+
+    public int getResponseSpillBytes() {
+        return responseSpillBytes;
+    }
+
+    public int getMaxResponseBytes() {
+        return maxResponseBytes;
+    }
+
+    public String getOAuthConsumerKey() {
+        return oauthConsumerKey;
+    }
+
+    public String getOAuthConsumerSecret() {
+        return oauthConsumerSecret;
+    }
+
+    /**
+     * @return number of threads of the executor running the concurrent requests of an agent
+     */
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public int getRateLimitPermitsPerSecond() {
+        return rateLimitPermitsPerSecond;
+    }
+
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    @Override
+    public String toString() {
+        return "FitbitApiClientConfiguration{" +
+                "source='" + source + '\'' +
+                ", clientVersion='" + clientVersion + '\'' +
+                ", userAgent='" + userAgent + '\'' +
+                ", user='" + user + '\'' +
+                ", useSSL=" + useSSL +
+                ", proxyHost='" + proxyHost + '\'' +
+                ", proxyPort=" + proxyPort +
+                ", connectionTimeout=" + connectionTimeout +
+                ", readTimeout=" + readTimeout +
+                ", callTimeout=" + callTimeout +
+                ", retryCount=" + retryCount +
+                ", retryIntervalSecs=" + retryIntervalSecs +
+                ", responseSpillBytes=" + responseSpillBytes +
+                ", maxResponseBytes=" + maxResponseBytes +
+                ", oauthConsumerKey='" + oauthConsumerKey + '\'' +
+                ", asyncThreads=" + asyncThreads +
+                ", rateLimitPermitsPerSecond=" + rateLimitPermitsPerSecond +
+                ", rateLimitBurst=" + rateLimitBurst +
+                '}';
+    }
+
+    /**
+     * Collects the settings of a configuration. Builders are not thread safe, the configurations they build are
+     * immutable.
+     */
+    public static final class Builder {
+        private String source;
+        private String clientVersion;
+        private String clientURL;
+        private String userAgent;
+        private String user;
+        private String password;
+        private boolean useSSL;
+        private String proxyHost;
+        private int proxyPort;
+        private String proxyUser;
+        private String proxyPassword;
+        private int connectionTimeout;
+        private int readTimeout;
+        private int callTimeout;
+        private int retryCount;
+        private int retryIntervalSecs;
+        private int responseSpillBytes;
+        private int maxResponseBytes;
+        private String oauthConsumerKey;
+        private String oauthConsumerSecret;
+        private int asyncThreads;
+        private int rateLimitPermitsPerSecond;
+        private int rateLimitBurst;
+
+        private Builder() {
+        }
+
+        /**
+         * @throws IllegalArgumentException if a count or rate is out of range
+         */
+        public FitbitApiClientConfiguration build() {
+            if (retryCount < 0) {
+                throw new IllegalArgumentException("RetryCount cannot be negative.");
+            }
+            if (retryIntervalSecs < 0) {
+                throw new IllegalArgumentException("RetryInterval cannot be negative.");
+            }
+            if (rateLimitPermitsPerSecond <= 0) {
+                throw new IllegalArgumentException("Permits per second must be positive.");
+            }
+            return new FitbitApiClientConfiguration(this);
+        }
+
+        /**
+         * @param source value of the X-Fitbit-Client header
+         */
+        public Builder setSource(String source) {
+            this.source = source;
+            return this;
+        }
+
+        /**
+         * @param clientVersion value of the X-Fitbit-Client-Version header
+         */
+        public Builder setClientVersion(String clientVersion) {
+            this.clientVersion = clientVersion;
+            return this;
+        }
+
+        /**
+         * @param clientURL value of the X-Fitbit-Client-URL header
+         */
+        public Builder setClientURL(String clientURL) {
+            this.clientURL = clientURL;
+            return this;
+        }
+
+        public Builder setUserAgent(String userAgent) {
+            this.userAgent = userAgent;
+            return this;
+        }
+
+        /**
+         * @param user user id for basic authentication
+         */
+        public Builder setUser(String user) {
+            this.user = user;
+            return this;
+        }
+
+        public Builder setPassword(String password) {
+            this.password = password;
+            return this;
+        }
+
+        /**
+         * @param useSSL true to request the OAuth tokens over https
+         */
+        public Builder setUseSSL(boolean useSSL) {
+            this.useSSL = useSSL;
+            return this;
+        }
+
+        public Builder setProxy(String proxyHost, int proxyPort) {
+            this.proxyHost = proxyHost;
+            this.proxyPort = proxyPort;
+            return this;
+        }
+
+        public Builder setProxyAuth(String proxyUser, String proxyPassword) {
+            this.proxyUser = proxyUser;
+            this.proxyPassword = proxyPassword;
+            return this;
+        }
+
+        /**
+         * @param connectionTimeout timeout opening a connection, in milliseconds
+         */
+        public Builder setConnectionTimeout(int connectionTimeout) {
+            this.connectionTimeout = connectionTimeout;
+            return this;
+        }
+
+        /**
+         * @param readTimeout timeout reading from a connection, in milliseconds
+         */
+        public Builder setReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * @param callTimeout time a request may take including its retries, in milliseconds, 0 for no limit
+         */
+        public Builder setCallTimeout(int callTimeout) {
+            this.callTimeout = callTimeout;
+            return this;
+        }
+
+        public Builder setRetryCount(int retryCount) {
+            this.retryCount = retryCount;
+            return this;
+        }
+
+        public Builder setRetryIntervalSecs(int retryIntervalSecs) {
+            this.retryIntervalSecs = retryIntervalSecs;
+            return this;
+        }
+
+        /**
+         * @param responseSpillBytes size above which response bodies are written to a temporary file, 0 for none
+         */
+        public Builder setResponseSpillBytes(int responseSpillBytes) {
+            this.responseSpillBytes = responseSpillBytes;
+            return this;
+        }
+
+        /**
+         * @param maxResponseBytes largest response body read, once decompressed, 0 for no limit
+         */
+        public Builder setMaxResponseBytes(int maxResponseBytes) {
+            this.maxResponseBytes = maxResponseBytes;
+            return this;
+        }
+
+        public Builder setOAuthConsumer(String consumerKey, String consumerSecret) {
+            this.oauthConsumerKey = consumerKey;
+            this.oauthConsumerSecret = consumerSecret;
+            return this;
+        }
+
+        /**
+         * @param asyncThreads number of threads of the executor running the concurrent requests of an agent
+         */
+        public Builder setAsyncThreads(int asyncThreads) {
+            this.asyncThreads = asyncThreads;
+            return this;
+        }
+
+        /**
+         * @param permitsPerSecond requests per second of the rate limiter of an agent
+         * @param burst requests the rate limiter lets through back-to-back
+         */
+        public Builder setRateLimit(int permitsPerSecond, int burst) {
+            this.rateLimitPermitsPerSecond = permitsPerSecond;
+            this.rateLimitBurst = burst;
+            return this;
+        }
+    }
+}
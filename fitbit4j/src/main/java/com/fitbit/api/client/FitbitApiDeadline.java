@@ -0,0 +1,154 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.FitbitAPIException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which a call, including its retries, has to complete.
+ * <p>
+ * A deadline attached to the current thread applies to every request the thread makes until it is detached, so that
+ * several calls share one overall budget:
+ * <pre>
+ * FitbitApiDeadline previous = FitbitApiDeadline.after(5, TimeUnit.SECONDS).attach();
+ * try {
+ *     BodyWithGoals body = agent.getBodyWithGoals(user, FitbitUser.CURRENT_AUTHORIZED_USER, date);
+ *     Activities activities = agent.getActivities(user, date);
+ * } finally {
+ *     FitbitApiDeadline.detach(previous);
+ * }
+ * </pre>
+ * The transport shortens its timeouts to the remaining time and does not retry once the retry interval would exceed
+ * it. Requests the client runs on its own executors inherit the deadline of the calling thread.
+ */
+public final class FitbitApiDeadline {
+
+    private static final ThreadLocal<FitbitApiDeadline> CURRENT = new ThreadLocal<FitbitApiDeadline>();
+
+    private final long deadlineNanos;
+
+    private FitbitApiDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static FitbitApiDeadline after(long timeout, TimeUnit unit) {
+        return new FitbitApiDeadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * @return deadline attached to the current thread, null if there is none
+     */
+    public static FitbitApiDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Attaches this deadline to the current thread. A deadline already attached and earlier than this one stays in
+     * effect, so that nested calls can not extend the budget of their caller.
+     *
+     * @return deadline attached before, to be passed to {@link #detach}
+     */
+    public FitbitApiDeadline attach() {
+        FitbitApiDeadline previous = CURRENT.get();
+        CURRENT.set(earlierOf(previous, this));
+        return previous;
+    }
+
+    /**
+     * Restores the deadline attached before {@link #attach}
+     *
+     * @param previous deadline returned by {@link #attach}, may be null
+     */
+    public static void detach(FitbitApiDeadline previous) {
+        if (null == previous) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * @return the earlier of the two deadlines, either may be null
+     */
+    public static FitbitApiDeadline earlierOf(FitbitApiDeadline first, FitbitApiDeadline second) {
+        if (null == first) {
+            return second;
+        } else if (null == second) {
+            return first;
+        }
+        return first.deadlineNanos - second.deadlineNanos <= 0 ? first : second;
+    }
+
+    public long remaining(TimeUnit unit) {
+        return unit.convert(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    public long remainingMillis() {
+        return remaining(TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @param operation description of what was about to happen, for the error message
+     *
+     * @throws FitbitAPIException if the deadline has passed
+     */
+    public void check(String operation) throws FitbitAPIException {
+        if (isExpired()) {
+            throw new FitbitAPIException("Deadline exceeded before " + operation);
+        }
+    }
+
+    /**
+     * Wraps a task to run with the deadline attached to the current thread when it was wrapped
+     *
+     * @param task task to run on another thread
+     *
+     * @return task attaching the deadline while it runs, the task itself if there is no deadline
+     */
+    public static <T> Callable<T> propagate(final Callable<T> task) {
+        final FitbitApiDeadline deadline = current();
+        if (null == deadline) {
+            return task;
+        }
+        return new Callable<T>() {
+            public T call() throws Exception {
+                FitbitApiDeadline previous = deadline.attach();
+                try {
+                    return task.call();
+                } finally {
+                    detach(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * @see #propagate(Callable)
+     */
+    public static Runnable propagate(final Runnable task) {
+        final FitbitApiDeadline deadline = current();
+        if (null == deadline) {
+            return task;
+        }
+        return new Runnable() {
+            public void run() {
+                FitbitApiDeadline previous = deadline.attach();
+                try {
+                    task.run();
+                } finally {
+                    detach(previous);
+                }
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "FitbitApiDeadline{remaining=" + remainingMillis() + "ms}";
+    }
+}
@@ -0,0 +1,115 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.common.service.FitbitDateCodec;
+import com.fitbit.api.model.APICollectionType;
+import com.fitbit.api.model.APIFormat;
+import org.joda.time.LocalDate;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Key of a collection entity in {@link FitbitAPIEntityCache}: the owner, the collection type, the day and the format.
+ * Keys are interned, so equal keys obtained through {@link #of} are usually the same instance, and carry a precomputed hash.
+ */
+public final class FitbitApiEntityCacheKey implements Serializable {
+    private static final long serialVersionUID = -3120857632281398524L;
+
+    private static final Map<FitbitApiEntityCacheKey, WeakReference<FitbitApiEntityCacheKey>> INTERNED =
+            new WeakHashMap<FitbitApiEntityCacheKey, WeakReference<FitbitApiEntityCacheKey>>();
+
+    private final String ownerId;
+    private final APICollectionType collectionType;
+    private final int epochDay;
+    private final APIFormat format;
+    private final transient int hash;
+
+    private FitbitApiEntityCacheKey(String ownerId, APICollectionType collectionType, int epochDay, APIFormat format) {
+        this.ownerId = ownerId;
+        this.collectionType = collectionType;
+        this.epochDay = epochDay;
+        this.format = format;
+        this.hash = computeHash();
+    }
+
+    public static FitbitApiEntityCacheKey of(String ownerId, APICollectionType collectionType, LocalDate date, APIFormat format) {
+        return of(ownerId, collectionType, FitbitDateCodec.epochDay(date), format);
+    }
+
+    public static FitbitApiEntityCacheKey of(String ownerId, APICollectionType collectionType, int epochDay, APIFormat format) {
+        if (ownerId == null || collectionType == null || format == null) {
+            throw new IllegalArgumentException("Owner, collection type and format of a cache key are required.");
+        }
+        return intern(new FitbitApiEntityCacheKey(ownerId, collectionType, epochDay, format));
+    }
+
+    private static FitbitApiEntityCacheKey intern(FitbitApiEntityCacheKey key) {
+        synchronized (INTERNED) {
+            WeakReference<FitbitApiEntityCacheKey> reference = INTERNED.get(key);
+            FitbitApiEntityCacheKey interned = reference == null ? null : reference.get();
+            if (interned == null) {
+                INTERNED.put(key, new WeakReference<FitbitApiEntityCacheKey>(key));
+                interned = key;
+            }
+            return interned;
+        }
+    }
+
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    public APICollectionType getCollectionType() {
+        return collectionType;
+    }
+
+    public int getEpochDay() {
+        return epochDay;
+    }
+
+    public LocalDate getDate() {
+        return new LocalDate(1970, 1, 1).plusDays(epochDay);
+    }
+
+    public APIFormat getFormat() {
+        return format;
+    }
+
+    private int computeHash() {
+        int result = ownerId.hashCode();
+        result = 31 * result + collectionType.ordinal();
+        result = 31 * result + epochDay;
+        result = 31 * result + format.ordinal();
+        return result;
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        return of(ownerId, collectionType, epochDay, format);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FitbitApiEntityCacheKey)) return false;
+
+        FitbitApiEntityCacheKey that = (FitbitApiEntityCacheKey) o;
+        return hash == that.hash
+                && epochDay == that.epochDay
+                && collectionType == that.collectionType
+                && format == that.format
+                && ownerId.equals(that.ownerId);
+    }
+
+    @Override
+    public String toString() {
+        return ownerId + '/' + collectionType + '/' + getDate() + '.' + format.getLabel();
+    }
+}
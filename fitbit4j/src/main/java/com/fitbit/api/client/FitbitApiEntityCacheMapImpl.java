@@ -29,21 +29,27 @@ public class FitbitApiEntityCacheMapImpl implements FitbitAPIEntityCache {
 	public Object get(APIResourceCredentials credentials, Object key) {
 		
 		Object result = getCredentialsMap(credentials).get(key);
-		log.info("Cache get(" + credentials + ": " + key + ") => " + result);
+		if (log.isDebugEnabled()) {
+			log.debug("Cache get(" + credentials + ": " + key + ") => " + result);
+		}
 		return result;
 	}
 
 	@Override
 	public Object put(APIResourceCredentials credentials, Object key, Object value) {
 		Object result = getCredentialsMap(credentials).put(key, value);
-		log.info("Cache put(" + credentials + ": " + key + ", " + value + ") => " + result);
+		if (log.isDebugEnabled()) {
+			log.debug("Cache put(" + credentials + ": " + key + ", " + value + ") => " + result);
+		}
 		return result;
 	}
 
 	@Override
 	public Object remove(APIResourceCredentials credentials, Object key) {
 		Object result = getCredentialsMap(credentials).remove(key);
-		log.info("Cache remove(" + credentials + ": " + key + ") => " + result);
+		if (log.isDebugEnabled()) {
+			log.debug("Cache remove(" + credentials + ": " + key + ") => " + result);
+		}
 		return result;
 	}
 
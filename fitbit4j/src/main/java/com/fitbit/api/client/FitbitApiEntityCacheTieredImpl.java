@@ -0,0 +1,553 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.model.APIResourceCredentials;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Two-tier entity cache: a small on-heap hot tier in front of an append-only file holding every entry in serialized form.
+ * <p>
+ * Writes go through to the file, so the file tier survives restarts and the cache is warm again after a deploy: the
+ * file is replayed on open to rebuild its index. Entries are promoted to the hot tier once they are read from the
+ * file {@link #setPromotionThreshold often enough}; the hot tier gives entries that were hit since the last pass a
+ * second chance and demotes the others when it is full. Obsolete records are compacted away once they take up more
+ * space than the live ones.
+ * <p>
+ * Entries are stored under the local user id of the credentials. Entities the serializer can not handle are kept in
+ * the hot tier only.
+ */
+public class FitbitApiEntityCacheTieredImpl implements FitbitAPIEntityCache, Closeable {
+
+    private static final Log log = LogFactory.getLog(FitbitApiEntityCacheTieredImpl.class);
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+    private static final int KEY_LOCKS = 64;
+
+    private final File file;
+    private final int hotCapacity;
+    private final FitbitApiEntitySerializer serializer;
+
+    private final Map<TierKey, HotEntry> hotTier;
+    private final ConcurrentMap<TierKey, ColdEntry> coldIndex = new ConcurrentHashMap<TierKey, ColdEntry>();
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+    // serialize the writes of a key, so that the hot tier and the file tier agree on its last value
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private long fileSize;
+    private long liveBytes;
+    private volatile int promotionThreshold = 2;
+
+    public FitbitApiEntityCacheTieredImpl(File file, int hotCapacity) throws IOException {
+        this(file, hotCapacity, new FitbitApiBinaryEntitySerializer());
+    }
+
+    /**
+     * Opens the cache, replaying the entries stored by a previous instance
+     *
+     * @param file data file of the second tier
+     * @param hotCapacity maximum number of entries on the heap
+     * @param serializer serializer for keys and entities
+     *
+     * @throws IOException if the data file can not be opened
+     */
+    public FitbitApiEntityCacheTieredImpl(File file, int hotCapacity, FitbitApiEntitySerializer serializer) throws IOException {
+        this.file = file;
+        this.hotCapacity = hotCapacity;
+        this.serializer = serializer;
+        this.hotTier = new LinkedHashMap<TierKey, HotEntry>(16, 0.75f, true);
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+        }
+        open();
+        recover();
+    }
+
+    public void setPromotionThreshold(int promotionThreshold) {
+        this.promotionThreshold = promotionThreshold;
+    }
+
+    public Object get(APIResourceCredentials credentials, Object key) {
+        TierKey tierKey = new TierKey(credentials, key);
+        synchronized (hotTier) {
+            HotEntry hot = hotTier.get(tierKey);
+            if (null != hot) {
+                hot.hits++;
+                return hot.value;
+            }
+        }
+        ColdEntry cold = coldIndex.get(tierKey);
+        if (null == cold) {
+            return null;
+        }
+        Object value = readValue(tierKey, cold);
+        if (null != value && ++cold.hits >= promotionThreshold) {
+            synchronized (hotTier) {
+                // only promote what has not been replaced or removed meanwhile
+                if (coldIndex.get(tierKey) == cold && !hotTier.containsKey(tierKey)) {
+                    addToHotTier(tierKey, new HotEntry(value, true));
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the previous value if it was in the hot tier, null otherwise: the file tier is not read to find it
+     */
+    public Object put(APIResourceCredentials credentials, Object key, Object value) {
+        TierKey tierKey = new TierKey(credentials, key);
+        synchronized (lockFor(tierKey)) {
+            ColdEntry stored = append(RECORD_PUT, tierKey, value);
+            synchronized (hotTier) {
+                HotEntry previous = hotTier.get(tierKey);
+                addToHotTier(tierKey, new HotEntry(value, null != stored));
+                return null == previous ? null : previous.value;
+            }
+        }
+    }
+
+    /**
+     * @return the removed value, read from the file tier if it was not in the hot tier; null if there was none
+     */
+    public Object remove(APIResourceCredentials credentials, Object key) {
+        TierKey tierKey = new TierKey(credentials, key);
+        synchronized (lockFor(tierKey)) {
+            HotEntry hot;
+            synchronized (hotTier) {
+                hot = hotTier.remove(tierKey);
+            }
+            ColdEntry cold = coldIndex.get(tierKey);
+            if (null == cold) {
+                return null == hot ? null : hot.value;
+            }
+            // callers tell evictions from misses by the result, so a value only found in the file is read back
+            Object previous = null == hot ? readValue(tierKey, cold) : hot.value;
+            append(RECORD_REMOVE, tierKey, null);
+            return previous;
+        }
+    }
+
+    public int getHotTierSize() {
+        synchronized (hotTier) {
+            return hotTier.size();
+        }
+    }
+
+    public int size() {
+        return coldIndex.size();
+    }
+
+    /**
+     * Flushes the data file to disk and closes it. Entries stay available for the next instance opened on the same file.
+     *
+     * @throws IOException if the file can not be flushed
+     */
+    public void close() throws IOException {
+        fileLock.writeLock().lock();
+        try {
+            if (null != channel) {
+                channel.force(true);
+                randomAccessFile.close();
+                channel = null;
+            }
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /* ********************************************************************* */
+
+    private Object lockFor(TierKey tierKey) {
+        return keyLocks[(tierKey.hash ^ (tierKey.hash >>> 16)) & (KEY_LOCKS - 1)];
+    }
+
+    private void addToHotTier(TierKey tierKey, HotEntry entry) {
+        hotTier.put(tierKey, entry);
+        // second chance: entries hit since the last pass lose their mark and stay, the first one that was not gets demoted
+        int passes = hotTier.size();
+        Iterator<Map.Entry<TierKey, HotEntry>> iterator = hotTier.entrySet().iterator();
+        while (hotTier.size() > hotCapacity && passes-- > 0 && iterator.hasNext()) {
+            Map.Entry<TierKey, HotEntry> eldest = iterator.next();
+            HotEntry eldestEntry = eldest.getValue();
+            if (eldestEntry.hits > 0 && eldestEntry != entry) {
+                eldestEntry.hits = 0;
+                continue;
+            }
+            iterator.remove();
+            if (!eldestEntry.stored && log.isDebugEnabled()) {
+                log.debug("Dropping entry " + eldest.getKey() + " that is not stored in the file tier");
+            }
+        }
+        if (hotTier.size() > hotCapacity) {
+            // every entry got a second chance, demote the least recently used ones
+            iterator = hotTier.entrySet().iterator();
+            while (hotTier.size() > hotCapacity && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    private Object readValue(TierKey tierKey, ColdEntry cold) {
+        ByteBuffer buffer;
+        fileLock.readLock().lock();
+        try {
+            if (null == channel) {
+                return null;
+            }
+            ColdEntry current = coldIndex.get(tierKey);
+            if (null == current) {
+                return null;
+            }
+            // a compaction may have moved the record since the index was read
+            cold = current;
+            buffer = ByteBuffer.allocate(cold.length);
+            long position = cold.valueOffset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of cache file " + file);
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read cached entry " + tierKey + ": " + e);
+            return null;
+        } finally {
+            fileLock.readLock().unlock();
+        }
+        try {
+            return serializer.deserialize(buffer.array());
+        } catch (IOException e) {
+            log.warn("Unable to deserialize cached entry " + tierKey + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Appends a record to the data file and updates the index
+     *
+     * @return index entry of the stored value, null for removals and values that could not be stored
+     */
+    private ColdEntry append(byte type, TierKey tierKey, Object value) {
+        ByteBuffer record;
+        int valueOffsetInRecord;
+        int valueLength = 0;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeUTF(tierKey.localUserId);
+            byte[] keyBytes = serializer.serialize(tierKey.key);
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            if (type == RECORD_PUT) {
+                byte[] valueBytes = serializer.serialize(value);
+                out.writeInt(valueBytes.length);
+                valueOffsetInRecord = RECORD_HEADER_SIZE + out.size();
+                valueLength = valueBytes.length;
+                out.write(valueBytes);
+            } else {
+                valueOffsetInRecord = -1;
+            }
+            out.flush();
+            record = frame(bytes.toByteArray());
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Keeping entry " + tierKey + " on the heap only: " + e);
+            }
+            if (type == RECORD_PUT && coldIndex.containsKey(tierKey)) {
+                // the stored value is outdated now
+                return append(RECORD_REMOVE, tierKey, null);
+            }
+            return null;
+        }
+
+        ColdEntry entry = null;
+        fileLock.writeLock().lock();
+        try {
+            if (null == channel) {
+                return null;
+            }
+            long recordOffset = fileSize;
+            write(channel, record, recordOffset);
+            fileSize += record.limit();
+            ColdEntry previous;
+            if (type == RECORD_PUT) {
+                entry = new ColdEntry(recordOffset, record.limit(), recordOffset + valueOffsetInRecord, valueLength);
+                previous = coldIndex.put(tierKey, entry);
+                liveBytes += entry.recordLength;
+            } else {
+                previous = coldIndex.remove(tierKey);
+            }
+            if (null != previous) {
+                liveBytes -= previous.recordLength;
+            }
+            if (fileSize > MIN_COMPACTION_SIZE && fileSize - liveBytes > liveBytes) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.warn("Unable to write cache entry " + tierKey + " to " + file + ": " + e);
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+        return entry;
+    }
+
+    private static ByteBuffer frame(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        record.putInt(body.length);
+        record.putInt((int) crc.getValue());
+        record.put(body);
+        record.flip();
+        return record;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void open() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (null != parent && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + parent);
+        }
+        File compacted = compactedFile();
+        if (compacted.exists()) {
+            if (file.exists()) {
+                // a compaction did not finish, the data file is still complete
+                if (!compacted.delete()) {
+                    log.warn("Unable to delete unfinished compaction " + compacted);
+                }
+            } else if (!compacted.renameTo(file)) {
+                // a compaction finished the copy and removed the data file, but did not get to rename the copy
+                throw new IOException("Unable to replace cache file " + file + " with " + compacted);
+            }
+        }
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+    }
+
+    /**
+     * Rebuilds the index from the data file. A torn or corrupt record ends the replay and is truncated.
+     */
+    private void recover() throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, offset);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            while (body.hasRemaining()) {
+                if (channel.read(body, offset + RECORD_HEADER_SIZE + body.position()) < 0) {
+                    break;
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != checksum || !replay(body, offset, RECORD_HEADER_SIZE + length)) {
+                break;
+            }
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        if (offset < size) {
+            log.warn("Truncating cache file " + file + " at " + offset + " of " + size + " bytes");
+            channel.truncate(offset);
+        }
+        fileSize = channel.size();
+        log.info("Opened cache file " + file + " with " + coldIndex.size() + " entries");
+    }
+
+    private boolean replay(ByteBuffer body, long recordOffset, int recordLength) {
+        try {
+            byte type = body.get(0);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array(), 1, body.limit() - 1));
+            String localUserId = in.readUTF();
+            byte[] keyBytes = new byte[in.readInt()];
+            in.readFully(keyBytes);
+            TierKey tierKey = new TierKey(localUserId, serializer.deserialize(keyBytes));
+            ColdEntry previous;
+            if (type == RECORD_PUT) {
+                int valueLength = in.readInt();
+                int valueOffsetInBody = body.limit() - in.available();
+                ColdEntry entry = new ColdEntry(recordOffset, recordLength, recordOffset + RECORD_HEADER_SIZE + valueOffsetInBody, valueLength);
+                previous = coldIndex.put(tierKey, entry);
+                liveBytes += recordLength;
+            } else if (type == RECORD_REMOVE) {
+                previous = coldIndex.remove(tierKey);
+            } else {
+                return false;
+            }
+            if (null != previous) {
+                liveBytes -= previous.recordLength;
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Unreadable record at " + recordOffset + " in cache file " + file + ": " + e);
+            return false;
+        }
+    }
+
+    private File compactedFile() {
+        return new File(file.getPath() + ".compact");
+    }
+
+    /**
+     * Copies the live records to a new file and replaces the data file with it. Called with the write lock held.
+     * <p>
+     * The copy is renamed over the data file, which replaces it atomically where the platform allows. Elsewhere the
+     * data file is deleted first, and {@link #open} completes the rename of the finished copy after a crash.
+     */
+    private void compact() throws IOException {
+        File compacted = compactedFile();
+        RandomAccessFile target = new RandomAccessFile(compacted, "rw");
+        Map<TierKey, ColdEntry> moved = new LinkedHashMap<TierKey, ColdEntry>(coldIndex.size() * 2);
+        long offset = 0;
+        try {
+            FileChannel targetChannel = target.getChannel();
+            targetChannel.truncate(0);
+            for (Map.Entry<TierKey, ColdEntry> indexEntry : coldIndex.entrySet()) {
+                ColdEntry entry = indexEntry.getValue();
+                ByteBuffer record = ByteBuffer.allocate(entry.recordLength);
+                while (record.hasRemaining()) {
+                    if (channel.read(record, entry.recordOffset + record.position()) < 0) {
+                        throw new IOException("Unexpected end of cache file " + file);
+                    }
+                }
+                record.flip();
+                write(targetChannel, record, offset);
+                moved.put(indexEntry.getKey(), new ColdEntry(offset, entry.recordLength, offset + (entry.valueOffset - entry.recordOffset), entry.length, entry.hits));
+                offset += entry.recordLength;
+            }
+            targetChannel.force(true);
+        } finally {
+            target.close();
+        }
+        randomAccessFile.close();
+        channel = null;
+        if (!compacted.renameTo(file) && !(file.delete() && compacted.renameTo(file))) {
+            reopen();
+            throw new IOException("Unable to replace cache file " + file + " with " + compacted);
+        }
+        open();
+        coldIndex.putAll(moved);
+        fileSize = channel.size();
+        liveBytes = offset;
+        if (log.isDebugEnabled()) {
+            log.debug("Compacted cache file " + file + " to " + offset + " bytes");
+        }
+    }
+
+    /**
+     * Opens whichever file a failed compaction left behind and rebuilds the index and sizes from it
+     */
+    private void reopen() throws IOException {
+        coldIndex.clear();
+        fileSize = 0;
+        liveBytes = 0;
+        open();
+        recover();
+    }
+
+    /**
+     * Cache entry identity that does not depend on the credentials instance
+     */
+    private static final class TierKey {
+        final String localUserId;
+        final Object key;
+        final int hash;
+
+        TierKey(APIResourceCredentials credentials, Object key) {
+            this(null == credentials || null == credentials.getLocalUserId() ? "" : credentials.getLocalUserId(), key);
+        }
+
+        TierKey(String localUserId, Object key) {
+            this.localUserId = localUserId;
+            this.key = key;
+            this.hash = 31 * localUserId.hashCode() + (null == key ? 0 : key.hashCode());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TierKey)) return false;
+            TierKey that = (TierKey) o;
+            return hash == that.hash && localUserId.equals(that.localUserId) && (null == key ? null == that.key : key.equals(that.key));
+        }
+
+        @Override
+        public String toString() {
+            return localUserId + ": " + key;
+        }
+    }
+
+    private static final class HotEntry {
+        final Object value;
+        final boolean stored;
+        int hits;
+
+        HotEntry(Object value, boolean stored) {
+            this.value = value;
+            this.stored = stored;
+        }
+    }
+
+    private static final class ColdEntry {
+        final long recordOffset;
+        final int recordLength;
+        final long valueOffset;
+        final int length;
+        volatile int hits;
+
+        ColdEntry(long recordOffset, int recordLength, long valueOffset, int length) {
+            this(recordOffset, recordLength, valueOffset, length, 0);
+        }
+
+        ColdEntry(long recordOffset, int recordLength, long valueOffset, int length, int hits) {
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+            this.valueOffset = valueOffset;
+            this.length = length;
+            this.hits = hits;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.fitbit.api.client;
+
+import java.io.IOException;
+
+/**
+ * Converts cache keys and entities to bytes for caches that keep them outside of the heap.
+ */
+public interface FitbitApiEntitySerializer {
+
+    /**
+     * @param value key or entity
+     *
+     * @return serialized form
+     *
+     * @throws IOException if the value can not be serialized
+     */
+    byte[] serialize(Object value) throws IOException;
+
+    /**
+     * @param data serialized form as returned by {@link #serialize}
+     *
+     * @return key or entity
+     *
+     * @throws IOException if the data can not be read
+     */
+    Object deserialize(byte[] data) throws IOException;
+}
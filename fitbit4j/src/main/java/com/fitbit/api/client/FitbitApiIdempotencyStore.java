@@ -0,0 +1,18 @@
+package com.fitbit.api.client;
+
+/**
+ * Remembers the log entries created for idempotency keys of batched writes, so that retries do not log twice.
+ */
+public interface FitbitApiIdempotencyStore {
+
+    /**
+     * @param user user the entry was logged for
+     * @param idempotencyKey idempotency key of the entry
+     *
+     * @return log entry created for the key, null if the key is unknown
+     */
+    public Object getResult(LocalUserDetail user, String idempotencyKey);
+
+    public void storeResult(LocalUserDetail user, String idempotencyKey, Object result);
+
+}
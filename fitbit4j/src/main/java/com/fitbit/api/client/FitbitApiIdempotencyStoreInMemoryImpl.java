@@ -0,0 +1,83 @@
+package com.fitbit.api.client;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Idempotency store keeping the most recent keys in memory for a limited time.
+ */
+public class FitbitApiIdempotencyStoreInMemoryImpl implements FitbitApiIdempotencyStore, Serializable {
+    private static final long serialVersionUID = 4410537282650163702L;
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final long timeToLiveMillis;
+    private final RecentResults results;
+
+    public FitbitApiIdempotencyStoreInMemoryImpl() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE_MILLIS);
+    }
+
+    /**
+     * @param maxEntries number of keys kept, the least recently stored are dropped first
+     * @param timeToLiveMillis time after which a key is forgotten
+     */
+    public FitbitApiIdempotencyStoreInMemoryImpl(int maxEntries, long timeToLiveMillis) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.results = new RecentResults(maxEntries);
+    }
+
+    @Override
+    public synchronized Object getResult(LocalUserDetail user, String idempotencyKey) {
+        String key = key(user, idempotencyKey);
+        StoredResult stored = results.get(key);
+        if (null == stored) {
+            return null;
+        }
+        if (System.currentTimeMillis() - stored.storedAt >= timeToLiveMillis) {
+            results.remove(key);
+            return null;
+        }
+        return stored.result;
+    }
+
+    @Override
+    public synchronized void storeResult(LocalUserDetail user, String idempotencyKey, Object result) {
+        results.put(key(user, idempotencyKey), new StoredResult(result, System.currentTimeMillis()));
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    private static String key(LocalUserDetail user, String idempotencyKey) {
+        return user.getUserId() + '\n' + idempotencyKey;
+    }
+
+    private static final class RecentResults extends LinkedHashMap<String, StoredResult> {
+        private static final long serialVersionUID = -2385907313412795163L;
+        private final int maxEntries;
+
+        RecentResults(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StoredResult> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private static final class StoredResult implements Serializable {
+        private static final long serialVersionUID = 7751282036925410826L;
+        final Object result;
+        final long storedAt;
+
+        StoredResult(Object result, long storedAt) {
+            this.result = result;
+            this.storedAt = storedAt;
+        }
+    }
+}
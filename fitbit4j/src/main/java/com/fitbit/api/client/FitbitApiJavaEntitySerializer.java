@@ -0,0 +1,34 @@
+package com.fitbit.api.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Serializer based on java.io serialization, usable for any {@link java.io.Serializable} key or entity.
+ */
+public class FitbitApiJavaEntitySerializer implements FitbitApiEntitySerializer {
+
+    public byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    public Object deserialize(byte[] data) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            IOException ioe = new IOException("Unknown class in serialized data: " + e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            in.close();
+        }
+    }
+}
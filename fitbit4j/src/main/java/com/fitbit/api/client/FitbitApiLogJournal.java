@@ -0,0 +1,386 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.client.http.PostParameter;
+import com.fitbit.api.client.http.RequestHeaders;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of log entries waiting to be written to the API.
+ * <p>
+ * Records are framed as {@code [length][crc32][type, sequence, payload]}. Entries are acknowledged by appending an
+ * acknowledgement record, and the file is rewritten with the unacknowledged entries once those take up less than half
+ * of it. Appends return once their record is on disk; concurrent appends share a single sync.
+ * <p>
+ * Entries are journaled with the request headers they are to be sent with. Entries journaled before headers were
+ * kept end with their parameters and are read without headers.
+ */
+final class FitbitApiLogJournal implements Closeable {
+    private static final Log log = LogFactory.getLog(FitbitApiLogJournal.class);
+
+    private static final byte RECORD_ENTRY = 1;
+    private static final byte RECORD_ACK = 2;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final long COMPACTION_THRESHOLD_BYTES = 1024 * 1024;
+
+    private final File file;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+
+    /**
+     * Guards the file position, the sequence and the unacknowledged entries
+     */
+    private final Object appendLock = new Object();
+    /**
+     * Held while syncing or replacing the file, taken before the append lock
+     */
+    private final Object syncLock = new Object();
+    private long fileSize;
+    private long liveBytes;
+    private long nextSequence = 1;
+    private volatile long syncedSize;
+    private final Map<Long, JournaledEntry> unacknowledged = new LinkedHashMap<Long, JournaledEntry>();
+
+    FitbitApiLogJournal(File file) throws IOException {
+        this.file = file;
+        open();
+        recover();
+    }
+
+    /**
+     * @return unacknowledged entries in the order they were appended
+     */
+    List<JournaledEntry> getUnacknowledged() {
+        synchronized (appendLock) {
+            return new ArrayList<JournaledEntry>(unacknowledged.values());
+        }
+    }
+
+    /**
+     * Appends an entry and waits until it is on disk
+     *
+     * @param localUserId id of the local user the entry is logged for
+     * @param entry log entry
+     * @param headers request headers to write the entry with, null for the defaults of the client
+     *
+     * @return journaled entry with its sequence number
+     *
+     * @throws IOException if the entry could not be written
+     */
+    JournaledEntry append(String localUserId, FitbitApiBatchLogEntry entry, RequestHeaders headers) throws IOException {
+        JournaledEntry journaled;
+        long end;
+        synchronized (appendLock) {
+            journaled = new JournaledEntry(nextSequence++, localUserId, entry, headers);
+            ByteBuffer record = encodeEntry(journaled);
+            journaled.recordLength = record.remaining();
+            write(channel, record, fileSize);
+            fileSize += journaled.recordLength;
+            liveBytes += journaled.recordLength;
+            unacknowledged.put(journaled.sequence, journaled);
+            end = fileSize;
+        }
+        sync(end);
+        return journaled;
+    }
+
+    /**
+     * Marks an entry as written to the API, so that it is not replayed after a restart
+     *
+     * @param sequence sequence number of the entry
+     *
+     * @throws IOException if the acknowledgement could not be written
+     */
+    void acknowledge(long sequence) throws IOException {
+        long end;
+        synchronized (appendLock) {
+            JournaledEntry journaled = unacknowledged.remove(sequence);
+            if (null == journaled) {
+                return;
+            }
+            liveBytes -= journaled.recordLength;
+            ByteBuffer record = frame(RECORD_ACK, sequence, new byte[0]);
+            int length = record.remaining();
+            write(channel, record, fileSize);
+            fileSize += length;
+            end = fileSize;
+        }
+        sync(end);
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                if (fileSize > COMPACTION_THRESHOLD_BYTES && liveBytes * 2 < fileSize) {
+                    compact();
+                }
+            }
+        }
+    }
+
+    int size() {
+        synchronized (appendLock) {
+            return unacknowledged.size();
+        }
+    }
+
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                if (channel.isOpen()) {
+                    channel.force(false);
+                }
+                randomAccessFile.close();
+            }
+        }
+    }
+
+    /**
+     * Syncs the file up to the given size, unless a concurrent sync already covered it
+     */
+    private void sync(long size) throws IOException {
+        if (syncedSize >= size) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedSize >= size) {
+                return;
+            }
+            long target;
+            synchronized (appendLock) {
+                target = fileSize;
+            }
+            channel.force(false);
+            syncedSize = target;
+        }
+    }
+
+    private void open() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (null != parent && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + parent);
+        }
+        File compacted = compactedFile();
+        if (compacted.exists()) {
+            if (file.exists()) {
+                // a compaction did not finish, the journal is still complete
+                if (!compacted.delete()) {
+                    log.warn("Unable to delete unfinished compaction " + compacted);
+                }
+            } else if (!compacted.renameTo(file)) {
+                // a compaction finished the copy and removed the journal, but did not get to rename the copy
+                throw new IOException("Unable to replace journal " + file + " with " + compacted);
+            }
+        }
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+    }
+
+    private File compactedFile() {
+        return new File(file.getPath() + ".compact");
+    }
+
+    /**
+     * Reads the unacknowledged entries from the file. A torn or corrupt record ends the recovery and is truncated.
+     */
+    private void recover() throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            channel.read(header, offset);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            while (body.hasRemaining()) {
+                if (channel.read(body, offset + RECORD_HEADER_SIZE + body.position()) < 0) {
+                    break;
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != checksum || !replay(body.array(), RECORD_HEADER_SIZE + length, offset)) {
+                break;
+            }
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        if (offset < size) {
+            log.warn("Truncating journal " + file + " at " + offset + " of " + size + " bytes");
+            channel.truncate(offset);
+        }
+        fileSize = offset;
+        syncedSize = offset;
+        if (!unacknowledged.isEmpty()) {
+            log.info("Recovered " + unacknowledged.size() + " unwritten log entries from journal " + file);
+        }
+    }
+
+    private boolean replay(byte[] body, int recordLength, long offset) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            byte type = in.readByte();
+            long sequence = in.readLong();
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (type == RECORD_ACK) {
+                JournaledEntry acknowledged = unacknowledged.remove(sequence);
+                if (null != acknowledged) {
+                    liveBytes -= acknowledged.recordLength;
+                }
+                return true;
+            } else if (type != RECORD_ENTRY) {
+                return false;
+            }
+            String localUserId = in.readUTF();
+            String typeName = in.readUTF();
+            String idempotencyKey = in.readBoolean() ? in.readUTF() : null;
+            int paramCount = in.readInt();
+            List<PostParameter> params = new ArrayList<PostParameter>(paramCount);
+            for (int i = 0; i < paramCount; i++) {
+                params.add(new PostParameter(in.readUTF(), in.readUTF()));
+            }
+            RequestHeaders headers = null;
+            // records of older versions end with the parameters
+            int headerCount = in.available() > 0 ? in.readInt() : 0;
+            for (int i = 0; i < headerCount; i++) {
+                String name = in.readUTF();
+                String value = in.readUTF();
+                headers = null == headers ? RequestHeaders.of(name, value) : headers.with(name, value);
+            }
+            FitbitApiBatchLogEntry.Type entryType;
+            try {
+                entryType = FitbitApiBatchLogEntry.Type.valueOf(typeName);
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipping log entry " + sequence + " of unknown type " + typeName + " in journal " + file);
+                return true;
+            }
+            JournaledEntry journaled = new JournaledEntry(sequence, localUserId, new FitbitApiBatchLogEntry(entryType, params, idempotencyKey), headers);
+            journaled.recordLength = recordLength;
+            unacknowledged.put(sequence, journaled);
+            liveBytes += recordLength;
+            return true;
+        } catch (IOException e) {
+            log.warn("Unreadable record at " + offset + " in journal " + file + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Rewrites the file with the unacknowledged entries only. Called with both locks held.
+     * <p>
+     * The copy is renamed over the journal, which replaces it atomically where the platform allows. Elsewhere the
+     * journal is deleted first, and {@link #open} completes the rename of the finished copy after a crash.
+     */
+    private void compact() throws IOException {
+        File compacted = compactedFile();
+        RandomAccessFile target = new RandomAccessFile(compacted, "rw");
+        long offset = 0;
+        try {
+            FileChannel targetChannel = target.getChannel();
+            targetChannel.truncate(0);
+            for (JournaledEntry journaled : unacknowledged.values()) {
+                ByteBuffer record = encodeEntry(journaled);
+                write(targetChannel, record, offset);
+                offset += journaled.recordLength;
+            }
+            targetChannel.force(true);
+        } finally {
+            target.close();
+        }
+        randomAccessFile.close();
+        boolean replaced = compacted.renameTo(file) || (file.delete() && compacted.renameTo(file));
+        // whichever file is left holds every unacknowledged entry
+        open();
+        fileSize = channel.size();
+        syncedSize = fileSize;
+        liveBytes = 0;
+        for (JournaledEntry journaled : unacknowledged.values()) {
+            liveBytes += journaled.recordLength;
+        }
+        if (!replaced) {
+            throw new IOException("Unable to replace journal " + file + " with " + compacted);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Compacted journal " + file + " to " + offset + " bytes");
+        }
+    }
+
+    private static ByteBuffer encodeEntry(JournaledEntry journaled) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        FitbitApiBatchLogEntry entry = journaled.entry;
+        out.writeUTF(journaled.localUserId);
+        out.writeUTF(entry.getType().name());
+        out.writeBoolean(null != entry.getIdempotencyKey());
+        if (null != entry.getIdempotencyKey()) {
+            out.writeUTF(entry.getIdempotencyKey());
+        }
+        out.writeInt(entry.getParams().size());
+        for (PostParameter param : entry.getParams()) {
+            out.writeUTF(param.getName());
+            out.writeUTF(param.getValue());
+        }
+        Map<String, String> headers = null == journaled.headers ? Collections.<String, String>emptyMap() : journaled.headers.asMap();
+        out.writeInt(headers.size());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        out.flush();
+        return frame(RECORD_ENTRY, journaled.sequence, bytes.toByteArray());
+    }
+
+    private static ByteBuffer frame(byte type, long sequence, byte[] payload) {
+        int length = 1 + 8 + payload.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.putInt(length);
+        record.putInt(0);
+        record.put(type);
+        record.putLong(sequence);
+        record.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    static final class JournaledEntry {
+        final long sequence;
+        final String localUserId;
+        final FitbitApiBatchLogEntry entry;
+        final RequestHeaders headers;
+        int recordLength;
+
+        JournaledEntry(long sequence, String localUserId, FitbitApiBatchLogEntry entry, RequestHeaders headers) {
+            this.sequence = sequence;
+            this.localUserId = localUserId;
+            this.entry = entry;
+            this.headers = headers;
+        }
+    }
+}
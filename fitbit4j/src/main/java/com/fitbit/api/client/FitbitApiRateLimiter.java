@@ -0,0 +1,91 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.FitbitAPIException;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket used to pace concurrent API requests issued by the client.
+ * Permits are refilled continuously at {@code permitsPerSecond} and up to {@code burst} of them
+ * can be taken back-to-back.
+ */
+public class FitbitApiRateLimiter implements Serializable {
+    private static final long serialVersionUID = 3315254021394727316L;
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private double availablePermits;
+    private long lastRefillNanos;
+
+    public FitbitApiRateLimiter(int permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Permits per second must be positive.");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.availablePermits = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Creates a limiter configured with fitbitAPIClient.rateLimit.permitsPerSecond and fitbitAPIClient.rateLimit.burst
+     *
+     * @return rate limiter with configured defaults
+     */
+    public static FitbitApiRateLimiter fromConfiguration() {
+        return new FitbitApiRateLimiter(Configuration.getRateLimitPermitsPerSecond(), Configuration.getRateLimitBurst());
+    }
+
+    /**
+     * Blocks until a permit is available.
+     *
+     * @throws FitbitAPIException if the calling thread is interrupted while waiting, or the permit would only be
+     * available after the {@link FitbitApiDeadline} of the thread
+     */
+    public void acquire() throws FitbitAPIException {
+        FitbitApiDeadline deadline = FitbitApiDeadline.current();
+        try {
+            long waitNanos;
+            while ((waitNanos = reserve()) > 0) {
+                if (null != deadline && waitNanos >= deadline.remaining(TimeUnit.NANOSECONDS)) {
+                    throw new FitbitAPIException("Deadline exceeded before a rate limit permit is available");
+                }
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FitbitAPIException("Interrupted while waiting for a rate limit permit", e);
+        }
+    }
+
+    /**
+     * Takes a permit if one is available right now.
+     *
+     * @return true if a permit was taken
+     */
+    public boolean tryAcquire() {
+        return reserve() == 0;
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Takes a permit or reports how long to wait before the next one is available.
+     *
+     * @return 0 if a permit was taken, otherwise the number of nanoseconds to wait
+     */
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        availablePermits = Math.min(burst, availablePermits + (now - lastRefillNanos) * permitsPerSecond / NANOS_PER_SECOND);
+        lastRefillNanos = now;
+        if (availablePermits >= 1) {
+            availablePermits -= 1;
+            return 0;
+        }
+        return Math.max(1L, (long) ((1 - availablePermits) * NANOS_PER_SECOND / permitsPerSecond));
+    }
+}
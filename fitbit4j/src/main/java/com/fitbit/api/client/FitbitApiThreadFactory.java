@@ -0,0 +1,23 @@
+package com.fitbit.api.client;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads for the client's background executors, so that an idle client never keeps the JVM alive.
+ */
+public class FitbitApiThreadFactory implements ThreadFactory {
+
+    private final String namePrefix;
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    public FitbitApiThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + '-' + threadNumber.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,338 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.FitbitAPIException;
+import com.fitbit.api.client.http.RequestHeaders;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind mode for log operations: entries are appended to a durable journal and written to the API in the
+ * background, so that callers do not wait for the API.
+ * <p>
+ * Entries of a user are written one at a time in the order they were submitted, entries of different users
+ * concurrently. Failures caused by the network, rate limiting or server errors are retried with exponential backoff,
+ * other failures are reported to the {@link Listener} and dropped. Entries not written when the queue is closed or the
+ * process dies are written once a queue is opened on the same journal again.
+ * <p>
+ * An entry written to the API shortly before a crash may be written again after the restart; give entries idempotency
+ * keys and use a persistent {@link FitbitApiIdempotencyStore} to prevent that.
+ */
+public class FitbitApiWriteBehindQueue implements Closeable {
+    private static final Log log = LogFactory.getLog(FitbitApiWriteBehindQueue.class);
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 20;
+    public static final long DEFAULT_INITIAL_RETRY_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_MAX_RETRY_DELAY_MILLIS = 5 * 60 * 1000L;
+
+    /**
+     * Receives the outcome of entries written in the background
+     */
+    public interface Listener {
+        void logged(LocalUserDetail user, FitbitApiBatchLogEntry entry, Object log);
+
+        /**
+         * Called when an entry is dropped: the API rejected it, writing it failed unexpectedly, or the last retry failed
+         */
+        void failed(LocalUserDetail user, FitbitApiBatchLogEntry entry, FitbitAPIException error);
+    }
+
+    private final FitbitApiClientAgent agent;
+    private final FitbitApiLogJournal journal;
+    private final ScheduledThreadPoolExecutor executor;
+    private final ConcurrentMap<String, UserQueue> userQueues = new ConcurrentHashMap<String, UserQueue>();
+    /**
+     * Notified whenever an entry is written or dropped
+     */
+    private final Object drained = new Object();
+    private volatile Listener listener;
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile long initialRetryDelayMillis = DEFAULT_INITIAL_RETRY_DELAY_MILLIS;
+    private volatile long maxRetryDelayMillis = DEFAULT_MAX_RETRY_DELAY_MILLIS;
+
+    public FitbitApiWriteBehindQueue(FitbitApiClientAgent agent, File journalFile) throws IOException {
+        this(agent, journalFile, Math.max(1, agent.getConfiguration().getAsyncThreads()));
+    }
+
+    /**
+     * Opens the journal and starts writing the entries left in it
+     *
+     * @param agent client writing the entries
+     * @param journalFile journal file, created if missing
+     * @param threads number of users whose entries are written at the same time
+     *
+     * @throws IOException if the journal can not be opened
+     */
+    public FitbitApiWriteBehindQueue(FitbitApiClientAgent agent, File journalFile, int threads) throws IOException {
+        this.agent = agent;
+        this.journal = new FitbitApiLogJournal(journalFile);
+        this.executor = new ScheduledThreadPoolExecutor(threads, new FitbitApiThreadFactory("fitbit4j-write-behind"));
+        for (FitbitApiLogJournal.JournaledEntry journaled : journal.getUnacknowledged()) {
+            enqueue(journaled);
+        }
+    }
+
+    /**
+     * Appends a log entry to the journal and returns once it is on disk. The entry is written to the API in the
+     * background, with the {@link RequestHeaders} attached to the calling thread, which are journaled with it.
+     *
+     * @param user authorized user
+     * @param entry log entry
+     *
+     * @throws FitbitAPIException if the entry could not be written to the journal
+     */
+    public void submit(LocalUserDetail user, FitbitApiBatchLogEntry entry) throws FitbitAPIException {
+        if (executor.isShutdown()) {
+            throw new FitbitAPIException("Write-behind queue is closed");
+        }
+        try {
+            enqueue(journal.append(user.getUserId(), entry, RequestHeaders.current()));
+        } catch (IOException e) {
+            throw new FitbitAPIException("Error journaling " + entry.getType().getDescription() + " log entry: " + e, e);
+        }
+    }
+
+    /**
+     * @return number of entries not written to the API yet
+     */
+    public int getPendingCount() {
+        return journal.size();
+    }
+
+    /**
+     * Waits until all submitted entries are written or dropped
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     *
+     * @return true if no entries are pending
+     *
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (drained) {
+            while (journal.size() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(drained, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops writing entries and closes the journal. Entries not written yet stay in the journal.
+     *
+     * @throws IOException if the journal could not be closed
+     */
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Write-behind threads did not stop, closing the journal anyway");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets how often entries are retried
+     *
+     * @param maxAttempts attempts to write an entry before it is dropped
+     * @param initialRetryDelayMillis delay before the first retry, doubled for every further one
+     * @param maxRetryDelayMillis maximum delay between retries
+     */
+    public void setRetryPolicy(int maxAttempts, long initialRetryDelayMillis, long maxRetryDelayMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Attempts must be positive: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialRetryDelayMillis = initialRetryDelayMillis;
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+    }
+
+    private void enqueue(FitbitApiLogJournal.JournaledEntry journaled) {
+        while (true) {
+            UserQueue queue = userQueues.get(journaled.localUserId);
+            if (null == queue) {
+                queue = new UserQueue(new LocalUserDetail(journaled.localUserId));
+                UserQueue existing = userQueues.putIfAbsent(journaled.localUserId, queue);
+                if (null != existing) {
+                    queue = existing;
+                }
+            }
+            boolean start;
+            synchronized (queue) {
+                if (queue.removed) {
+                    // drained and let go of meanwhile, the next entry of the user starts a new queue
+                    continue;
+                }
+                queue.entries.addLast(new Pending(journaled));
+                start = !queue.draining;
+                queue.draining = true;
+            }
+            if (start) {
+                schedule(queue, 0);
+            }
+            return;
+        }
+    }
+
+    private void schedule(final UserQueue queue, long delayMillis) {
+        try {
+            executor.schedule(new Runnable() {
+                public void run() {
+                    drain(queue);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed, the entries stay in the journal
+            synchronized (queue) {
+                queue.draining = false;
+            }
+        }
+    }
+
+    /**
+     * Writes the entries of a user in order until the queue is empty or an entry has to be retried later
+     */
+    private void drain(UserQueue queue) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Pending pending;
+            synchronized (queue) {
+                pending = queue.entries.peekFirst();
+                if (null == pending) {
+                    // idle users do not keep their queue
+                    queue.draining = false;
+                    queue.removed = true;
+                    userQueues.remove(queue.user.getUserId(), queue);
+                    return;
+                }
+            }
+            FitbitApiBatchLogEntry entry = pending.journaled.entry;
+            try {
+                Object result = write(queue.user, entry, pending.journaled.headers);
+                completed(queue, pending);
+                Listener current = listener;
+                if (null != current) {
+                    current.logged(queue.user, entry, result);
+                }
+            } catch (FitbitAPIException e) {
+                pending.attempts++;
+                if (isRetryable(e) && pending.attempts < maxAttempts) {
+                    long delay = Math.min(maxRetryDelayMillis, initialRetryDelayMillis << Math.min(pending.attempts - 1, 30));
+                    if (log.isDebugEnabled()) {
+                        log.debug("Retrying " + entry + " of user " + queue.user.getUserId() + " in " + delay + "ms: " + e);
+                    }
+                    schedule(queue, delay);
+                    return;
+                }
+                log.warn("Dropping " + entry + " of user " + queue.user.getUserId() + " after " + pending.attempts + " attempts: " + e);
+                dropped(queue, pending, e);
+            } catch (RuntimeException e) {
+                // a bug or a missing token, which retrying would not fix and which would hold up the entries of the user
+                log.error("Dropping " + entry + " of user " + queue.user.getUserId() + " after an unexpected error: " + e, e);
+                dropped(queue, pending, new FitbitAPIException("Unexpected error writing " + entry.getType().getDescription() + " log entry: " + e, e));
+            }
+        }
+        synchronized (queue) {
+            queue.draining = false;
+        }
+    }
+
+    private Object write(LocalUserDetail user, FitbitApiBatchLogEntry entry, RequestHeaders headers) throws FitbitAPIException {
+        String key = entry.getIdempotencyKey();
+        FitbitApiIdempotencyStore store = agent.getIdempotencyStore();
+        if (null != key && null != store) {
+            Object stored = store.getResult(user, key);
+            if (null != stored) {
+                return stored;
+            }
+        }
+        agent.getRateLimiter().acquire();
+        Object result;
+        // the caller's language and units
+        RequestHeaders previous = null == headers ? null : headers.attach();
+        try {
+            result = agent.postLogEntry(entry, agent.getAccessToken(user));
+        } finally {
+            if (null != headers) {
+                RequestHeaders.detach(previous);
+            }
+        }
+        if (null != key && null != store) {
+            store.storeResult(user, key, result);
+        }
+        return result;
+    }
+
+    private void completed(UserQueue queue, Pending pending) {
+        try {
+            journal.acknowledge(pending.journaled.sequence);
+        } catch (IOException e) {
+            // the entry is written again after a restart
+            log.error("Unable to acknowledge log entry " + pending.journaled.sequence + " in the journal: " + e, e);
+        }
+        synchronized (queue) {
+            queue.entries.pollFirst();
+        }
+        synchronized (drained) {
+            drained.notifyAll();
+        }
+    }
+
+    private void dropped(UserQueue queue, Pending pending, FitbitAPIException error) {
+        completed(queue, pending);
+        Listener current = listener;
+        if (null != current) {
+            current.failed(queue.user, pending.journaled.entry, error);
+        }
+    }
+
+    /**
+     * @return true for failures of the network, rate limiting and server errors
+     */
+    private static boolean isRetryable(FitbitAPIException e) {
+        int statusCode = e.getStatusCode();
+        return statusCode < 0 || statusCode == 429 || statusCode >= 500;
+    }
+
+    private static final class UserQueue {
+        final LocalUserDetail user;
+        final Deque<Pending> entries = new ArrayDeque<Pending>();
+        boolean draining;
+        boolean removed;
+
+        UserQueue(LocalUserDetail user) {
+            this.user = user;
+        }
+    }
+
+    private static final class Pending {
+        final FitbitApiLogJournal.JournaledEntry journaled;
+        int attempts;
+
+        Pending(FitbitApiLogJournal.JournaledEntry journaled) {
+            this.journaled = journaled;
+        }
+    }
+}
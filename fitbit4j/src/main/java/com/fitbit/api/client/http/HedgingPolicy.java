@@ -0,0 +1,139 @@
+package com.fitbit.api.client.http;
+
+import com.fitbit.api.client.FitbitApiThreadFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decides when a GET that has not completed yet is sent a second time, the first response winning.
+ * <p>
+ * The hedge delay is a percentile of recent GET latencies, so that only the slowest requests are hedged. Hedges are
+ * paid from a budget that every GET adds a fraction of a request to, which bounds the additional requests to that
+ * fraction of the traffic.
+ */
+public class HedgingPolicy {
+
+    public static final double DEFAULT_PERCENTILE = 0.95;
+    public static final double DEFAULT_BUDGET_RATIO = 0.05;
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_MIN_DELAY_MILLIS = 20;
+
+    private static final int SAMPLE_SIZE = 512;
+    private static final int MIN_SAMPLES = 32;
+    private static final int RECOMPUTE_INTERVAL = 32;
+    private static final double MAX_BUDGET = 10;
+
+    private final double percentile;
+    private final double budgetRatio;
+    private final long initialDelayMillis;
+    private final long minDelayMillis;
+    private volatile ExecutorService executor;
+
+    private final long[] latencies = new long[SAMPLE_SIZE];
+    private int sampleCount;
+    private int samplesSinceRecompute;
+    private volatile long hedgeDelayMillis;
+    private double budget = 1;
+    private long hedged;
+    private long requests;
+
+    public HedgingPolicy() {
+        this(DEFAULT_PERCENTILE, DEFAULT_BUDGET_RATIO, DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MIN_DELAY_MILLIS);
+    }
+
+    /**
+     * @param percentile percentile of recent latencies after which a request is hedged, such as 0.95
+     * @param budgetRatio hedges allowed per request, such as 0.05 for at most 5% more requests
+     * @param initialDelayMillis hedge delay until enough latencies are known
+     * @param minDelayMillis lower bound of the hedge delay
+     */
+    public HedgingPolicy(double percentile, double budgetRatio, long initialDelayMillis, long minDelayMillis) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1: " + percentile);
+        }
+        if (budgetRatio < 0 || budgetRatio > 1) {
+            throw new IllegalArgumentException("Budget ratio must be between 0 and 1: " + budgetRatio);
+        }
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+        this.initialDelayMillis = initialDelayMillis;
+        this.minDelayMillis = minDelayMillis;
+        this.hedgeDelayMillis = Math.max(minDelayMillis, initialDelayMillis);
+    }
+
+    /**
+     * @return time after which a request that has not completed is hedged
+     */
+    public long getHedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    /**
+     * Records the latency of a completed request and credits the budget
+     *
+     * @param latencyMillis time the request took
+     */
+    public synchronized void recordLatency(long latencyMillis) {
+        latencies[sampleCount % SAMPLE_SIZE] = latencyMillis;
+        sampleCount++;
+        if (++samplesSinceRecompute >= RECOMPUTE_INTERVAL && sampleCount >= MIN_SAMPLES) {
+            samplesSinceRecompute = 0;
+            int size = Math.min(sampleCount, SAMPLE_SIZE);
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            hedgeDelayMillis = Math.max(minDelayMillis, sorted[Math.min(size - 1, (int) (percentile * size))]);
+        }
+    }
+
+    /**
+     * Credits the budget for a request about to be sent
+     */
+    synchronized void requestStarted() {
+        requests++;
+        budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+    }
+
+    /**
+     * @return true if the budget allows a hedge, which is then paid for
+     */
+    synchronized boolean tryAcquireHedge() {
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        hedged++;
+        return true;
+    }
+
+    /**
+     * @return share of requests that were hedged
+     */
+    public synchronized double getHedgedRatio() {
+        return requests == 0 ? 0 : (double) hedged / requests;
+    }
+
+    ExecutorService getExecutor() {
+        ExecutorService current = executor;
+        if (null == current) {
+            synchronized (this) {
+                current = executor;
+                if (null == current) {
+                    current = Executors.newCachedThreadPool(new FitbitApiThreadFactory("fitbit4j-hedge"));
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Sets the executor running hedged requests. The caller remains responsible for shutting it down.
+     *
+     * @param executor executor, needs two threads per concurrent request
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+}
@@ -28,6 +28,10 @@ package com.fitbit.api.client.http;
 
 import com.fitbit.api.FitbitAPIException;
 import com.fitbit.api.client.Configuration;
+import com.fitbit.api.client.FitbitApiClientConfiguration;
+import com.fitbit.api.client.FitbitApiDeadline;
+import com.fitbit.api.client.metrics.FitbitApiEndpoint;
+import com.fitbit.api.client.metrics.FitbitApiMetrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -38,9 +42,16 @@ import java.io.UnsupportedEncodingException;
 import java.net.*;
 import java.net.Proxy.Type;
 import java.security.AccessControlException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 /**
  * A utility class to handle HTTP request/response.
  * @author Yusuke Yamamoto - yusuke at mac.com
@@ -69,24 +80,32 @@ public class HttpClient implements Serializable {
     private static final int SERVICE_UNAVAILABLE = 503;// Service Unavailable: The Fitbit servers are up, but overloaded with requests. Try again later. The search and trend methods use this to indicate when you are being rate limited.
 
     private String basic;
-    private int retryCount = Configuration.getRetryCount();
-    private int retryIntervalMillis = Configuration.getRetryIntervalSecs() * 1000;
-    private String userId = Configuration.getUser();
-    private String password = Configuration.getPassword();
-    private String proxyHost = Configuration.getProxyHost();
-    private int proxyPort = Configuration.getProxyPort();
-    private String proxyAuthUser = Configuration.getProxyUser();
-    private String proxyAuthPassword = Configuration.getProxyPassword();
-    private int connectionTimeout = Configuration.getConnectionTimeout();
-    private int readTimeout = Configuration.getReadTimeout();
-    private static final long serialVersionUID = 808018030183407996L;
+    private int retryCount;
+    private int retryIntervalMillis;
+    private String userId;
+    private String password;
+    private String proxyHost;
+    private int proxyPort;
+    private String proxyAuthUser;
+    private String proxyAuthPassword;
+    private int connectionTimeout;
+    private int readTimeout;
+    private int callTimeout;
+    private int responseSpillBytes;
+    private int maxResponseBytes;
+    private transient volatile HedgingPolicy hedgingPolicy;
+    private transient volatile FitbitApiMetrics metrics;
+    private transient volatile HttpEventListener eventListener;
+    private transient volatile HttpResponseCache responseCache;
+    // changed when the request headers became a RequestHeaders, older clients can not be read
+    private static final long serialVersionUID = -4185526320442395370L;
     private static boolean isJDK14orEarlier;
-    private Map<String, String> requestHeaders = new HashMap<String, String>();
+    private volatile RequestHeaders requestHeaders = RequestHeaders.NONE;
     private OAuth oauth;
-    private String requestTokenURL = Configuration.getScheme() + "fitbit.com/oauth/request_token";
-    private String authorizationURL = Configuration.getScheme() + "fitbit.com/oauth/authorize";
-    private String authenticationURL = Configuration.getScheme() + "fitbit.com/oauth/authenticate";
-    private String accessTokenURL = Configuration.getScheme() + "fitbit.com/oauth/access_token";
+    private String requestTokenURL;
+    private String authorizationURL;
+    private String authenticationURL;
+    private String accessTokenURL;
     private OAuthToken oauthToken;
 
     static {
@@ -107,9 +126,33 @@ public class HttpClient implements Serializable {
     }
 
     public HttpClient() {
+        this(FitbitApiClientConfiguration.fromConfiguration());
+    }
+
+    /**
+     * @param configuration settings taken as they are, without looking at {@link Configuration} again
+     */
+    public HttpClient(FitbitApiClientConfiguration configuration) {
         basic = null;
-        setUserAgent(null);
-        setOAuthConsumer(null, null);
+        retryCount = configuration.getRetryCount();
+        retryIntervalMillis = configuration.getRetryIntervalSecs() * 1000;
+        userId = configuration.getUser();
+        password = configuration.getPassword();
+        proxyHost = configuration.getProxyHost();
+        proxyPort = configuration.getProxyPort();
+        proxyAuthUser = configuration.getProxyUser();
+        proxyAuthPassword = configuration.getProxyPassword();
+        connectionTimeout = configuration.getConnectionTimeout();
+        readTimeout = configuration.getReadTimeout();
+        callTimeout = configuration.getCallTimeout();
+        responseSpillBytes = configuration.getResponseSpillBytes();
+        maxResponseBytes = configuration.getMaxResponseBytes();
+        requestTokenURL = configuration.getScheme() + "fitbit.com/oauth/request_token";
+        authorizationURL = configuration.getScheme() + "fitbit.com/oauth/authorize";
+        authenticationURL = configuration.getScheme() + "fitbit.com/oauth/authenticate";
+        accessTokenURL = configuration.getScheme() + "fitbit.com/oauth/access_token";
+        setRequestHeader("User-Agent", configuration.getUserAgent());
+        createOAuth(configuration.getOAuthConsumerKey(), configuration.getOAuthConsumerSecret());
         setRequestHeader("Accept-Encoding","gzip");
     }
 
@@ -142,8 +185,10 @@ public class HttpClient implements Serializable {
      * @param consumerSecret consumer secret
      */
     public void setOAuthConsumer(String consumerKey, String consumerSecret) {
-        consumerKey = Configuration.getOAuthConsumerKey(consumerKey);
-        consumerSecret = Configuration.getOAuthConsumerSecret(consumerSecret);
+        createOAuth(Configuration.getOAuthConsumerKey(consumerKey), Configuration.getOAuthConsumerSecret(consumerSecret));
+    }
+
+    private void createOAuth(String consumerKey, String consumerSecret) {
         if (null != consumerKey && null != consumerSecret
                 && 0 != consumerKey.length() && 0 != consumerSecret.length()) {
             oauth = new OAuth(consumerKey, consumerSecret);
@@ -339,6 +384,111 @@ public class HttpClient implements Serializable {
         this.readTimeout = Configuration.getReadTimeout(readTimeout);
     }
 
+    public int getCallTimeout() {
+        return callTimeout;
+    }
+
+    /**
+     * Sets the time, in milliseconds, a request may take including its retries, 0 for no limit. A shorter
+     * {@link FitbitApiDeadline} attached to the calling thread takes precedence.
+     * System property -DfitbitAPIClient.http.callTimeout overrides this attribute.
+     * @param callTimeout - an int that specifies the call timeout value in milliseconds
+     */
+    public void setCallTimeout(int callTimeout) {
+        this.callTimeout = Configuration.getCallTimeout(callTimeout);
+    }
+
+    public int getResponseSpillBytes() {
+        return responseSpillBytes;
+    }
+
+    /**
+     * Sets the size, in bytes, above which a response body is written to a temporary file while it is read instead of
+     * being kept in memory, 0 to keep all bodies in memory.
+     * System property -DfitbitAPIClient.http.responseSpillBytes overrides this attribute.
+     * @param responseSpillBytes - an int that specifies the size in bytes
+     */
+    public void setResponseSpillBytes(int responseSpillBytes) {
+        this.responseSpillBytes = Configuration.getResponseSpillBytes(responseSpillBytes);
+    }
+
+    public int getMaxResponseBytes() {
+        return maxResponseBytes;
+    }
+
+    /**
+     * Sets the largest response body, in bytes once decompressed, the client reads. Reading a larger body fails with a
+     * {@link FitbitAPIException}, 0 for no limit.
+     * System property -DfitbitAPIClient.http.maxResponseBytes overrides this attribute.
+     * @param maxResponseBytes - an int that specifies the size in bytes
+     */
+    public void setMaxResponseBytes(int maxResponseBytes) {
+        this.maxResponseBytes = Configuration.getMaxResponseBytes(maxResponseBytes);
+    }
+
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Enables hedging of GET requests: a GET that has not completed after the delay of the policy is sent once more
+     * and the first response wins. All API GETs are read-only, so hedging them is safe.
+     * @param hedgingPolicy policy, null to disable hedging
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    public FitbitApiMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Enables metrics: every request is reported with its endpoint, status code, latency, retries and sizes, and the
+     * rate limit headers of its response. Without metrics requests are not measured at all.
+     * @param metrics metrics receiving the measurements, null to disable them
+     */
+    public void setMetrics(FitbitApiMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public HttpEventListener getEventListener() {
+        return eventListener;
+    }
+
+    /**
+     * Sets the listener receiving the events of requests, with credentials redacted. Without a listener, events are
+     * logged if debug logging is enabled.
+     * @param eventListener listener, null to log events at debug level
+     */
+    public void setEventListener(HttpEventListener eventListener) {
+        this.eventListener = eventListener;
+    }
+
+    public HttpResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Enables the response cache: GETs of fresh responses are answered from the cache, GETs of stale responses with
+     * an ETag or Last-Modified header are made conditional and a 304 Not Modified is answered with the kept body.
+     * @param responseCache cache, null to disable caching
+     */
+    public void setResponseCache(HttpResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * @return listener events are passed to, null if they are not wanted and need not be created
+     */
+    private HttpEventListener currentEventListener() {
+        HttpEventListener listener = eventListener;
+        if (null == listener && log.isDebugEnabled()) {
+            return LoggingHttpEventListener.INSTANCE;
+        }
+        return listener;
+    }
+
     private void encodeBasicAuthenticationString() {
         if (null != userId && null != password) {
             basic = "Basic " + new BASE64Encoder().encode((userId + ':' + password).getBytes());
@@ -402,90 +552,373 @@ public class HttpClient implements Serializable {
         return get(url, false);
     }
 
+    /**
+     * Issues an authenticated GET signed with the given token rather than the client-wide one, so
+     * that concurrent requests on behalf of different users can share a single client.
+     *
+     * @param url request url
+     * @param token token to sign the request with, may be null for consumer-only requests
+     * @return response
+     * @throws FitbitAPIException when Fitbit service or network is unavailable
+     */
+    public Response get(String url, AccessToken token) throws FitbitAPIException {
+        return httpRequest(HttpMethod.GET, url, null, true, token);
+    }
+
+    /**
+     * Issues a conditional GET signed with the given token. The response cache is bypassed, the caller keeps what
+     * the validators stand for.
+     *
+     * @param url request url
+     * @param token token to sign the request with, may be null for consumer-only requests
+     * @param validators validators of the response the caller has, null for an unconditional GET
+     * @return response, with status 304 if the caller's response is still current
+     * @throws FitbitAPIException when Fitbit service or network is unavailable
+     */
+    public Response get(String url, AccessToken token, HttpValidators validators) throws FitbitAPIException {
+        return request(HttpMethod.GET, url, null, true, token, currentHeaders(), validators, false);
+    }
+
+    /**
+     * Issues an authenticated POST signed with the given token rather than the client-wide one.
+     *
+     * @param url request url
+     * @param postParameters request parameters
+     * @param token token to sign the request with, may be null for consumer-only requests
+     * @return response
+     * @throws FitbitAPIException when Fitbit service or network is unavailable
+     */
+    public Response post(String url, PostParameter[] postParameters, AccessToken token) throws FitbitAPIException {
+        return httpRequest(HttpMethod.POST, url, postParameters, true, token);
+    }
+
+    /**
+     * Issues an authenticated DELETE signed with the given token rather than the client-wide one.
+     *
+     * @param url request url
+     * @param token token to sign the request with, may be null for consumer-only requests
+     * @return response
+     * @throws FitbitAPIException when Fitbit service or network is unavailable
+     */
+    public Response delete(String url, AccessToken token) throws FitbitAPIException {
+        return httpRequest(HttpMethod.DELETE, url, null, true, token);
+    }
+
     protected Response httpRequest(HttpMethod method, String url, PostParameter[] postParams,
                                  boolean authenticated) throws FitbitAPIException {
-    	if (log.isDebugEnabled()) {
-    		log.debug("HTTP " + method + " " + url);
-    	}
-    	
-        int retriedCount;
-        int retry = retryCount + 1;
-        Response res = null;
-        for (retriedCount = 0; retriedCount < retry; retriedCount++) {
-            int responseCode = -1;
-            try {
-                HttpURLConnection con;
-                OutputStream osw = null;
+        return httpRequest(method, url, postParams, authenticated, oauthToken);
+    }
+
+    protected Response httpRequest(HttpMethod method, String url, PostParameter[] postParams,
+                                 boolean authenticated, OAuthToken token) throws FitbitAPIException {
+        HttpResponseCache cache = responseCache;
+        RequestHeaders headers = currentHeaders();
+        if (null == cache) {
+            return request(method, url, postParams, authenticated, token, headers, null, false);
+        }
+        if (method == HttpMethod.GET) {
+            return cachedRequest(cache, url, authenticated, token, headers);
+        }
+        try {
+            return request(method, url, postParams, authenticated, token, headers, null, false);
+        } finally {
+            // the write may have changed any resource of the user, even if its response was lost
+            cache.invalidate(authenticated ? token : null);
+        }
+    }
+
+    /**
+     * @return the default headers with those attached to the calling thread applied, resolved before the request
+     * leaves the thread
+     */
+    private RequestHeaders currentHeaders() {
+        return requestHeaders.overriddenBy(RequestHeaders.current());
+    }
+
+    private Response request(HttpMethod method, String url, PostParameter[] postParams, boolean authenticated,
+                             OAuthToken token, RequestHeaders headers, HttpValidators validators, boolean bufferBody) throws FitbitAPIException {
+        HedgingPolicy policy = hedgingPolicy;
+        if (null != policy && method == HttpMethod.GET) {
+            return hedgedRequest(policy, url, authenticated, token, headers, validators, bufferBody);
+        }
+        return executeRequest(method, url, postParams, authenticated, token, headers, validators, bufferBody);
+    }
+
+    /**
+     * GET answered from the cache if the cached response is fresh, made conditional on it if it has validators
+     */
+    private Response cachedRequest(HttpResponseCache cache, String url, boolean authenticated, OAuthToken token,
+                                   RequestHeaders headers) throws FitbitAPIException {
+        OAuthToken owner = authenticated ? token : null;
+        String key = HttpResponseCache.key(url, owner, headers);
+        long now = System.currentTimeMillis();
+        HttpResponseCache.Entry cached = cache.get(key);
+        try {
+            if (null != cached && cache.isFresh(cached, now)) {
+                cache.hit();
+                return new Response(cached);
+            }
+            Response res = request(HttpMethod.GET, url, null, authenticated, token, headers,
+                    null == cached ? null : cached.validators, true);
+            if (NOT_MODIFIED == res.getStatusCode() && null != cached) {
+                return new Response(res, cache.revalidated(key, url, cached, res, now));
+            }
+            cache.miss();
+            if (OK == res.getStatusCode()) {
+                cache.store(key, url, owner, res, now);
+            }
+            return res;
+        } catch (IOException ioe) {
+            throw new FitbitAPIException("Error reading cached response of " + url + ": " + ioe.getMessage(), ioe);
+        }
+    }
+
+    /**
+     * Sends a GET and, if it has not completed after the hedge delay and the budget allows it, the same GET again.
+     * The first successful response is returned and the other one disconnected.
+     */
+    private Response hedgedRequest(HedgingPolicy policy, final String url, final boolean authenticated, final OAuthToken token,
+                                   final RequestHeaders headers, final HttpValidators validators,
+                                   final boolean bufferBody) throws FitbitAPIException {
+        final Object lock = new Object();
+        final boolean[] settled = new boolean[1];
+        Callable<Response> attempt = FitbitApiDeadline.propagate(new Callable<Response>() {
+            public Response call() throws FitbitAPIException {
+                Response res = executeRequest(HttpMethod.GET, url, null, authenticated, token, headers, validators, bufferBody);
+                synchronized (lock) {
+                    if (settled[0]) {
+                        // lost against the other request
+                        res.disconnect();
+                        return null;
+                    }
+                }
+                return res;
+            }
+        });
+        CompletionService<Response> completionService = new ExecutorCompletionService<Response>(policy.getExecutor());
+        List<Future<Response>> attempts = new ArrayList<Future<Response>>(2);
+        policy.requestStarted();
+        long start = System.currentTimeMillis();
+        attempts.add(completionService.submit(attempt));
+        Response winner = null;
+        try {
+            Future<Response> done = completionService.poll(policy.getHedgeDelayMillis(), TimeUnit.MILLISECONDS);
+            if (null == done) {
+                FitbitApiDeadline deadline = FitbitApiDeadline.current();
+                if ((null == deadline || !deadline.isExpired()) && policy.tryAcquireHedge()) {
+                    HttpEventListener listener = currentEventListener();
+                    if (null != listener) {
+                        listener.hedging(url, policy.getHedgeDelayMillis());
+                    }
+                    attempts.add(completionService.submit(attempt));
+                }
+                done = completionService.take();
+            }
+            FitbitAPIException failure = null;
+            for (int completed = 1; ; completed++) {
                 try {
-                    con = getConnection(url);
-                    con.setDoInput(true);
-                    setHeaders(method, url, postParams, con, authenticated);
-                    con.setRequestMethod(method.name());
-                    if (null != postParams) {
-                        con.setRequestProperty("Content-Type",
-                                "application/x-www-form-urlencoded");
-                        con.setDoOutput(true);
-                        String postParam = encodeParameters(postParams);
-                        log.debug("HTTP Post Params: " + postParam);
-                        byte[] bytes = postParam.getBytes("UTF-8");
-
-                        con.setRequestProperty("Content-Length",
-                                Integer.toString(bytes.length));
-                        osw = con.getOutputStream();
-                        osw.write(bytes);
-                        osw.flush();
-                        osw.close();
+                    winner = done.get();
+                    policy.recordLatency(System.currentTimeMillis() - start);
+                    return winner;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof FitbitAPIException) {
+                        failure = (FitbitAPIException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        failure = new FitbitAPIException("Error executing HTTP GET " + url + ": " + cause, e);
                     }
-                    res = new Response(con);
-                    responseCode = res.getStatusCode();
-                    if (log.isDebugEnabled()){
-                        log.debug("HTTP Response Headers: ");
-                        Map<String, List<String>> responseHeaders = con.getHeaderFields();
-                        for (String key : responseHeaders.keySet()) {
-                            List<String> values = responseHeaders.get(key);
-                            for (String value : values) {
-                                if (null != key) {
-                                    log.debug("Header: '" + key + "' => '" + value + "'");
-                                } else{
-                                	log.debug("Header value: '" + value + "'");
-                                }
-                            }
+                }
+                if (completed == attempts.size()) {
+                    throw failure;
+                }
+                done = completionService.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FitbitAPIException("Interrupted while waiting for HTTP GET " + url, e);
+        } finally {
+            synchronized (lock) {
+                settled[0] = true;
+            }
+            for (Future<Response> other : attempts) {
+                if (!other.isDone()) {
+                    other.cancel(true);
+                } else if (!other.isCancelled()) {
+                    try {
+                        Response res = other.get();
+                        if (null != res && res != winner) {
+                            res.disconnect();
                         }
+                    } catch (Exception ignore) {
+                        // failed attempts have nothing to release
                     }
+                }
+            }
+        }
+    }
+
+    private Response executeRequest(HttpMethod method, String url, PostParameter[] postParams,
+                                 boolean authenticated, OAuthToken token, RequestHeaders headers,
+                                 HttpValidators validators, boolean bufferBody) throws FitbitAPIException {
+        HttpEventListener listener = currentEventListener();
+        FitbitApiDeadline deadline = FitbitApiDeadline.current();
+        if (callTimeout > 0) {
+            deadline = FitbitApiDeadline.earlierOf(deadline, FitbitApiDeadline.after(callTimeout, TimeUnit.MILLISECONDS));
+        }
+        FitbitApiMetrics currentMetrics = metrics;
+        long start = null == currentMetrics ? 0 : System.nanoTime();
+        long bytesSent = 0;
+        int retriedCount = 0;
+        int retry = retryCount + 1;
+        Response res = null;
+        int responseCode = -1;
+        try {
+            for (retriedCount = 0; retriedCount < retry; retriedCount++) {
+                responseCode = -1;
+                if (null != deadline) {
+                    deadline.check("HTTP " + method + " " + url);
+                }
+                try {
+                    HttpURLConnection con;
+                    OutputStream osw = null;
+                    try {
+                        con = getConnection(url);
+                        applyDeadline(con, deadline);
+                        con.setDoInput(true);
+                        String authorization = setHeaders(method, url, postParams, con, authenticated, token, headers);
+                        if (null != validators) {
+                            validators.applyTo(con);
+                        }
+                        con.setRequestMethod(method.name());
+                        if (null != listener) {
+                            listener.requestSending(method.name(), url, redactedHeaders(authorization, headers),
+                                    null == postParams ? null : HttpRedaction.redactParameters(postParams));
+                        }
+                        if (null != postParams) {
+                            con.setRequestProperty("Content-Type",
+                                    "application/x-www-form-urlencoded");
+                            con.setDoOutput(true);
+                            String postParam = encodeParameters(postParams);
+                            byte[] bytes = postParam.getBytes("UTF-8");
+
+                            con.setRequestProperty("Content-Length",
+                                    Integer.toString(bytes.length));
+                            osw = con.getOutputStream();
+                            osw.write(bytes);
+                            bytesSent += bytes.length;
+                            osw.flush();
+                            osw.close();
+                        }
+                        res = new Response(con, bufferBody, responseSpillBytes, maxResponseBytes);
+                        responseCode = res.getStatusCode();
+                        if (null != listener) {
+                            listener.responseReceived(method.name(), url, responseCode, HttpRedaction.redactHeaders(con.getHeaderFields()));
+                        }
                     
-                    if (responseCode >= 200 && responseCode < 300) {
-                    	break;
-                    } else {
-                        if (responseCode < INTERNAL_SERVER_ERROR || retriedCount == retryCount) {
-                            throw new FitbitAPIException(getCause(responseCode), res);
+                        if (responseCode >= 200 && responseCode < 300
+                                || NOT_MODIFIED == responseCode && null != validators) {
+                        	break;
+                        } else {
+                            if (responseCode < INTERNAL_SERVER_ERROR || isLastAttempt(retriedCount, deadline)) {
+                                throw new FitbitAPIException(getCause(responseCode), res);
+                            }
+                            // will retry if the status code is INTERNAL_SERVER_ERROR
+                        }
+                    } finally {
+                        try {
+                            osw.close();
+                        } catch (Exception ignore) {
                         }
-                        // will retry if the status code is INTERNAL_SERVER_ERROR
                     }
-                } finally {
-                    try {
-                        osw.close();
-                    } catch (Exception ignore) {
+                } catch (IOException ioe) {
+                    // connection timeout or read timeout
+                    if (isLastAttempt(retriedCount, deadline)) {
+                        throw new FitbitAPIException(ioe.getMessage(), ioe, responseCode);
                     }
                 }
-            } catch (IOException ioe) {
-                // connection timeout or read timeout
-                if (retriedCount == retryCount) {
-                    throw new FitbitAPIException(ioe.getMessage(), ioe, responseCode);
+                try {
+                	if (log.isDebugEnabled() && null!=res) {
+                        res.asString();
+                    }
+                    if (null != listener) {
+                        listener.retrying(method.name(), url, retriedCount + 2, retryIntervalMillis);
+                    }
+                    Thread.sleep(retryIntervalMillis);
+                } catch (InterruptedException e) {
+                    // cancelled, by a hedge that won or by the caller: stop sending requests
+                    Thread.currentThread().interrupt();
+                    throw new FitbitAPIException("Interrupted while retrying HTTP " + method + " " + url, e, responseCode);
                 }
             }
-            try {
-            	if (log.isDebugEnabled() && null!=res) {
-                    res.asString();
-                }
-                log.debug("Sleeping " + retryIntervalMillis + " millisecs for next retry.");
-                Thread.sleep(retryIntervalMillis);
-            } catch (InterruptedException ignore) {
-                //nothing to do
+        } finally {
+            if (null != currentMetrics) {
+                record(currentMetrics, method, url, -1 == responseCode ? null : res, responseCode,
+                        System.nanoTime() - start, retriedCount, bytesSent);
             }
         }
         return res;
     }
 
+    private void record(FitbitApiMetrics metrics, HttpMethod method, String url, Response res, int responseCode,
+                        long networkNanos, int retries, long bytesSent) {
+        String endpoint = FitbitApiEndpoint.of(method.name(), url);
+        metrics.requestCompleted(endpoint, responseCode, networkNanos, Math.min(retries, retryCount), bytesSent);
+        if (null != res) {
+            res.recordTo(metrics, endpoint);
+            int limit = parseHeader(res, "Fitbit-Rate-Limit-Limit");
+            int remaining = parseHeader(res, "Fitbit-Rate-Limit-Remaining");
+            if (limit >= 0 && remaining >= 0) {
+                metrics.rateLimitReported(limit, remaining, parseHeader(res, "Fitbit-Rate-Limit-Reset"));
+            }
+        }
+    }
+
+    private static int parseHeader(Response res, String name) {
+        String value = res.getResponseHeader(name);
+        if (null == value) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A retry is not attempted once the deadline would pass while waiting for it
+     */
+    private boolean isLastAttempt(int retriedCount, FitbitApiDeadline deadline) {
+        if (retriedCount == retryCount) {
+            return true;
+        }
+        if (null != deadline && deadline.remainingMillis() <= retryIntervalMillis) {
+            if (log.isDebugEnabled()) {
+                log.debug("Not retrying, " + deadline.remainingMillis() + " millisecs left until the deadline.");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Shortens the timeouts of the connection to the time left until the deadline
+     */
+    private void applyDeadline(HttpURLConnection con, FitbitApiDeadline deadline) throws IOException {
+        if (null == deadline || isJDK14orEarlier) {
+            return;
+        }
+        long remaining = deadline.remainingMillis();
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Deadline exceeded");
+        }
+        int limit = (int) Math.min(remaining, Integer.MAX_VALUE);
+        con.setConnectTimeout(connectionTimeout > 0 ? Math.min(connectionTimeout, limit) : limit);
+        con.setReadTimeout(readTimeout > 0 ? Math.min(readTimeout, limit) : limit);
+    }
+
     public static String encodeParameters(PostParameter[] postParams) {
         StringBuffer buf = new StringBuffer();
         for (int j = 0; j < postParams.length; j++) {
@@ -507,19 +940,19 @@ public class HttpClient implements Serializable {
      *
      * @param connection    HttpURLConnection
      * @param authenticated boolean
+     * @param token         token used to sign the request
+     * @param headers       headers of the request besides Authorization
+     * @return the Authorization header set, null for unauthenticated requests
      */
-    private void setHeaders(HttpMethod method, String url, PostParameter[] params, HttpURLConnection connection, boolean authenticated) {
-    	if (log.isDebugEnabled()) {
-    		log.debug("Request: HTTP " + method.toString() + ' ' + url);
-    	}
-
+    private String setHeaders(HttpMethod method, String url, PostParameter[] params, HttpURLConnection connection, boolean authenticated, OAuthToken token,
+                              RequestHeaders headers) {
+        String authorization = null;
         if (authenticated) {
             if (basic == null && oauth == null) {
             }
-            String authorization;
             if (null != oauth) {
                 // use OAuth
-                authorization = oauth.generateAuthorizationHeader(method.toString(), url, params, oauthToken);
+                authorization = oauth.generateAuthorizationHeader(method.toString(), url, params, token);
             } else if (null != basic) {
                 // use Basic Auth
                 authorization = basic;
@@ -528,32 +961,57 @@ public class HttpClient implements Serializable {
                         "Neither user ID/password combination nor OAuth consumer key/secret combination supplied");
             }
             connection.addRequestProperty("Authorization", authorization);
-            log.debug("Authorization: " + authorization);
         }
-        for (String key : requestHeaders.keySet()) {
-            connection.addRequestProperty(key, requestHeaders.get(key));
-            log.debug("Request Header: '" + key + "' => '" + requestHeaders.get(key) + "'");
+        headers.applyTo(connection);
+        return authorization;
+    }
+
+    private Map<String, String> redactedHeaders(String authorization, RequestHeaders headers) {
+        Map<String, String> redacted = new LinkedHashMap<String, String>();
+        if (null != authorization) {
+            redacted.put("Authorization", HttpRedaction.redactHeader("Authorization", authorization));
         }
+        return headers.redactedTo(redacted);
     }
 
-    public void setRequestHeader(String name, String value) {
-        requestHeaders.put(name, value);
+    /**
+     * Sets a default header, sent with every request unless the headers attached to the calling thread override it
+     *
+     * @see RequestHeaders#attach()
+     */
+    public synchronized void setRequestHeader(String name, String value) {
+        requestHeaders = requestHeaders.with(name, value);
     }
 
     public String getRequestHeader(String name) {
         return requestHeaders.get(name);
     }
 
-    public void removeRequestHeader(String name) {
-        requestHeaders.remove(name);
+    public synchronized void removeRequestHeader(String name) {
+        requestHeaders = requestHeaders.without(name);
+    }
+
+    /**
+     * @return the default headers, a snapshot requests in flight keep using while they are changed
+     */
+    public RequestHeaders getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    /**
+     * Replaces all default headers at once
+     */
+    public synchronized void setRequestHeaders(RequestHeaders requestHeaders) {
+        this.requestHeaders = null == requestHeaders ? RequestHeaders.NONE : requestHeaders;
     }
 
     private HttpURLConnection getConnection(String url) throws IOException {
         HttpURLConnection con;
         if (proxyHost != null && !proxyHost.equals("")) {
             if (proxyAuthUser != null && !proxyAuthUser.equals("")) {
-                log.debug("Proxy AuthUser: " + proxyAuthUser);
-                log.debug("Proxy AuthPassword: " + proxyAuthPassword);
+                if (log.isDebugEnabled()) {
+                    log.debug("Proxy AuthUser: " + proxyAuthUser);
+                }
                 Authenticator.setDefault(new Authenticator() {
                     @Override
                     protected PasswordAuthentication
@@ -571,7 +1029,9 @@ public class HttpClient implements Serializable {
             }
             final Proxy proxy = new Proxy(Type.HTTP, InetSocketAddress
                     .createUnresolved(proxyHost, proxyPort));
-            log.debug("Opening proxied connection (" + proxyHost + ':' + proxyPort + ')');
+            if (log.isDebugEnabled()) {
+                log.debug("Opening proxied connection (" + proxyHost + ':' + proxyPort + ')');
+            }
             con = (HttpURLConnection) new URL(url).openConnection(proxy);
         } else {
             con = (HttpURLConnection) new URL(url).openConnection();
@@ -595,6 +1055,9 @@ public class HttpClient implements Serializable {
         if (connectionTimeout != that.connectionTimeout) return false;
         if (proxyPort != that.proxyPort) return false;
         if (readTimeout != that.readTimeout) return false;
+        if (callTimeout != that.callTimeout) return false;
+        if (responseSpillBytes != that.responseSpillBytes) return false;
+        if (maxResponseBytes != that.maxResponseBytes) return false;
         if (retryCount != that.retryCount) return false;
         if (retryIntervalMillis != that.retryIntervalMillis) return false;
         if (accessTokenURL != null ? !accessTokenURL.equals(that.accessTokenURL) : that.accessTokenURL != null)
@@ -636,6 +1099,9 @@ public class HttpClient implements Serializable {
         result = 31 * result + (proxyAuthPassword != null ? proxyAuthPassword.hashCode() : 0);
         result = 31 * result + connectionTimeout;
         result = 31 * result + readTimeout;
+        result = 31 * result + callTimeout;
+        result = 31 * result + responseSpillBytes;
+        result = 31 * result + maxResponseBytes;
         result = 31 * result + requestHeaders.hashCode();
         result = 31 * result + (oauth != null ? oauth.hashCode() : 0);
         result = 31 * result + requestTokenURL.hashCode();
@@ -0,0 +1,52 @@
+package com.fitbit.api.client.http;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives the events of requests made by {@link HttpClient}, for tracing and debugging.
+ * <p>
+ * Credentials in headers and parameters are redacted before they are passed on. Events are only created while a
+ * listener is set or debug logging of {@link HttpClient} is enabled, in which case they are logged by
+ * {@link LoggingHttpEventListener}. Listeners are called on the requesting threads.
+ */
+public interface HttpEventListener {
+
+    /**
+     * Called before a request, and each retry of it, is sent
+     *
+     * @param method HTTP method
+     * @param url request URL
+     * @param headers request headers, redacted
+     * @param parameters form encoded body, redacted; null for requests without body
+     */
+    void requestSending(String method, String url, Map<String, String> headers, String parameters);
+
+    /**
+     * Called when the response headers of a request have been received
+     *
+     * @param method HTTP method
+     * @param url request URL
+     * @param statusCode response status code
+     * @param headers response headers, redacted
+     */
+    void responseReceived(String method, String url, int statusCode, Map<String, List<String>> headers);
+
+    /**
+     * Called before waiting to retry a failed request
+     *
+     * @param method HTTP method
+     * @param url request URL
+     * @param attempt number of the attempt about to be made, 2 for the first retry
+     * @param delayMillis time until the retry
+     */
+    void retrying(String method, String url, int attempt, long delayMillis);
+
+    /**
+     * Called when a slow GET is sent a second time
+     *
+     * @param url request URL
+     * @param delayMillis time after which the request was hedged
+     */
+    void hedging(String url, long delayMillis);
+}
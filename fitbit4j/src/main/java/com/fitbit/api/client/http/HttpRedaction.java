@@ -0,0 +1,109 @@
+package com.fitbit.api.client.http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Masks credentials in headers, parameters and OAuth signature base strings, so that they can be logged
+ */
+public final class HttpRedaction {
+
+    public static final String MASK = "****";
+
+    private static final Set<String> SECRET_PARAMETERS = new HashSet<String>(Arrays.asList(
+            "oauth_token", "oauth_token_secret", "oauth_signature", "oauth_verifier",
+            "password", "client_secret", "access_token", "refresh_token"));
+
+    private static final Pattern OAUTH_SECRET = Pattern.compile("(oauth_(?:token|token_secret|signature|verifier)=\")[^\"]*(\")");
+
+    // parameters of a base string are percent encoded, and separated by an encoded '&'
+    private static final Pattern BASE_STRING_SECRET = Pattern.compile(
+            "((?:&|%26)(?:oauth_token|oauth_token_secret|oauth_signature|oauth_verifier|password|client_secret|access_token|refresh_token)%3D)(?:(?!%26)[^&])*");
+
+    private HttpRedaction() {
+    }
+
+    /**
+     * @param name header name
+     * @param value header value
+     *
+     * @return the value, with the credentials masked if it is an authorization or cookie header
+     */
+    public static String redactHeader(String name, String value) {
+        if (null == value || !isSecretHeader(name)) {
+            return value;
+        }
+        if ("Cookie".equalsIgnoreCase(name) || "Set-Cookie".equalsIgnoreCase(name)) {
+            return MASK;
+        }
+        if (value.startsWith("OAuth ")) {
+            return OAUTH_SECRET.matcher(value).replaceAll("$1" + MASK + "$2");
+        }
+        int space = value.indexOf(' ');
+        return space < 0 ? MASK : value.substring(0, space + 1) + MASK;
+    }
+
+    /**
+     * @param headers headers, as returned by {@link java.net.URLConnection#getHeaderFields()}
+     *
+     * @return the headers, copied with the credentials masked if they contain any
+     */
+    public static Map<String, List<String>> redactHeaders(Map<String, List<String>> headers) {
+        boolean secret = false;
+        for (String name : headers.keySet()) {
+            secret |= isSecretHeader(name);
+        }
+        if (!secret) {
+            return headers;
+        }
+        Map<String, List<String>> redacted = new LinkedHashMap<String, List<String>>(headers.size() * 2);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!isSecretHeader(header.getKey())) {
+                redacted.put(header.getKey(), header.getValue());
+                continue;
+            }
+            List<String> values = new ArrayList<String>(header.getValue().size());
+            for (String value : header.getValue()) {
+                values.add(redactHeader(header.getKey(), value));
+            }
+            redacted.put(header.getKey(), values);
+        }
+        return redacted;
+    }
+
+    /**
+     * @param baseString OAuth signature base string
+     *
+     * @return the base string, with the values of credentials masked
+     */
+    public static String redactSignatureBaseString(String baseString) {
+        return BASE_STRING_SECRET.matcher(baseString).replaceAll("$1" + MASK);
+    }
+
+    /**
+     * @param parameters request parameters
+     *
+     * @return the parameters form encoded, with the values of credentials masked
+     */
+    public static String redactParameters(PostParameter[] parameters) {
+        PostParameter[] redacted = new PostParameter[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            PostParameter parameter = parameters[i];
+            redacted[i] = SECRET_PARAMETERS.contains(parameter.getName())
+                    ? new PostParameter(parameter.getName(), MASK)
+                    : parameter;
+        }
+        return HttpClient.encodeParameters(redacted);
+    }
+
+    private static boolean isSecretHeader(String name) {
+        return null != name && ("Authorization".equalsIgnoreCase(name) || "Proxy-Authorization".equalsIgnoreCase(name)
+                || "Cookie".equalsIgnoreCase(name) || "Set-Cookie".equalsIgnoreCase(name));
+    }
+}
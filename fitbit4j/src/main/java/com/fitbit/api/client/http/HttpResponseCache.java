@@ -0,0 +1,507 @@
+package com.fitbit.api.client.http;
+
+import com.fitbit.api.client.FitbitApiThreadFactory;
+import com.fitbit.api.client.metrics.FitbitApiEndpoint;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of GET responses beneath the model layer, keyed by method, URL and the access token the request is signed
+ * with. Set on the {@link HttpClient}, it answers GETs of fresh responses without a request, makes GETs of stale
+ * responses with validators conditional and answers a 304 Not Modified with the kept body.
+ * <p/>
+ * Responses are fresh for the lifetime given by their Cache-Control max-age or Expires header, and not at all if
+ * they have neither or say no-cache. The lifetime can be {@link #setTimeToLive overridden} per endpoint, which
+ * also caches responses marked no-store. A POST or DELETE signed with a token makes the responses cached for that
+ * token stale, so a client never reads past its own writes.
+ * <p/>
+ * Bodies are kept as received, compressed if the API sent them compressed. The memory tier is bounded by the number
+ * of entries and their total size; entries it evicts move to the optional disk tier, itself bounded by size, and
+ * come back to memory when they are read again. The disk tier survives restarts. Evicted entries are written to disk
+ * by a background thread, so that requests do not wait for the disk.
+ * <p/>
+ * Writes are tracked for the last {@value #MAX_INVALIDATED_OWNERS} tokens. Older ones are merged into a single time
+ * before which every response is stale, which only costs extra revalidations.
+ */
+public class HttpResponseCache {
+
+    private static final Log log = LogFactory.getLog(HttpResponseCache.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024L;
+    static final int MAX_INVALIDATED_OWNERS = 4096;
+
+    /**
+     * Request headers selecting the units and language of the body
+     */
+    private static final String[] VARYING_HEADERS = {"Accept-Language", "Accept-Locale"};
+    private static final String[] KEPT_HEADERS = {"Content-Type", "ETag", "Last-Modified", "Date", "Cache-Control", "Expires"};
+
+    static final class Entry {
+        final String owner;
+        final HttpValidators validators;
+        final byte[] body;
+        final boolean compressed;
+        final Map<String, String> headers;
+        final long storedAt;
+        final long expiresAt;
+
+        Entry(String owner, HttpValidators validators, byte[] body, boolean compressed, Map<String, String> headers, long storedAt, long expiresAt) {
+            this.owner = owner;
+            this.validators = validators;
+            this.body = body;
+            this.compressed = compressed;
+            this.headers = headers;
+            this.storedAt = storedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long bytes;
+    private final HttpResponseDiskStore diskStore;
+    private final ConcurrentMap<String, Long> timeToLiveMillis = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, Long> invalidatedAt = new ConcurrentHashMap<String, Long>();
+    /**
+     * Time of the latest write among the tokens no longer tracked in {@link #invalidatedAt}
+     */
+    private volatile long invalidatedAllAt;
+    /**
+     * Evicted entries waiting to be written to disk
+     */
+    private final ConcurrentMap<String, Entry> pendingWrites = new ConcurrentHashMap<String, Entry>();
+    private final ThreadPoolExecutor diskWriter;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong storedCount = new AtomicLong();
+
+    public HttpResponseCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Cache in memory only
+     *
+     * @param maxEntries maximum number of responses
+     * @param maxBytes maximum total size of the bodies, larger bodies are not cached
+     */
+    public HttpResponseCache(int maxEntries, long maxBytes) {
+        this(maxEntries, maxBytes, null);
+    }
+
+    /**
+     * Cache in memory with a disk tier, opening the entries a previous instance left in the directory
+     *
+     * @param maxEntries maximum number of responses in memory
+     * @param maxBytes maximum total size of the bodies in memory
+     * @param directory directory of the disk tier, created if it does not exist
+     * @param maxDiskBytes maximum total size of the files in the directory
+     *
+     * @throws IOException if the directory can not be created or read
+     */
+    public HttpResponseCache(int maxEntries, long maxBytes, File directory, long maxDiskBytes) throws IOException {
+        this(maxEntries, maxBytes, new HttpResponseDiskStore(directory, maxDiskBytes));
+    }
+
+    private HttpResponseCache(int maxEntries, long maxBytes, HttpResponseDiskStore diskStore) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxEntries + " entries, " + maxBytes + " bytes");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.diskStore = diskStore;
+        if (null == diskStore) {
+            this.diskWriter = null;
+        } else {
+            this.diskWriter = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new FitbitApiThreadFactory("fitbit4j-response-cache"));
+            this.diskWriter.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * Overrides the lifetime the API gives the responses of an endpoint
+     *
+     * @param endpoint endpoint as named by {@link FitbitApiEndpoint}, e.g. "GET /1/user/{user}/devices.json"
+     * @param millis time responses stay fresh, 0 to revalidate them on every request, negative to remove the override
+     */
+    public void setTimeToLive(String endpoint, long millis) {
+        if (millis < 0) {
+            timeToLiveMillis.remove(endpoint);
+        } else {
+            timeToLiveMillis.put(endpoint, millis);
+        }
+    }
+
+    /**
+     * @return the overridden lifetime of the responses of the endpoint, -1 if the headers of the responses decide
+     */
+    public long getTimeToLive(String endpoint) {
+        Long millis = timeToLiveMillis.get(endpoint);
+        return null == millis ? -1 : millis;
+    }
+
+    /**
+     * @param headers headers of the request, those the body depends on are part of the key
+     */
+    static String key(String url, OAuthToken token, RequestHeaders headers) {
+        StringBuilder key = new StringBuilder("GET ").append(url);
+        if (null != token) {
+            key.append(' ').append(token.getToken());
+        }
+        for (String name : VARYING_HEADERS) {
+            String value = headers.get(name);
+            if (null != value) {
+                key.append('\n').append(name).append(": ").append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Identifies the token the cached responses were requested with, without keeping the token itself. Tokens
+     * sharing an id only make each other's responses stale more often.
+     */
+    static String owner(OAuthToken token) {
+        return null == token ? "" : Integer.toHexString(token.getToken().hashCode());
+    }
+
+    Entry get(String key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (null != entry || null == diskStore) {
+                return entry;
+            }
+        }
+        Entry entry = pendingWrites.remove(key);
+        if (null == entry) {
+            entry = diskStore.remove(key);
+        }
+        if (null != entry) {
+            put(key, entry);
+        }
+        return entry;
+    }
+
+    boolean isFresh(Entry entry, long now) {
+        Long invalidated = invalidatedAt.get(entry.owner);
+        return now < entry.expiresAt && entry.storedAt > invalidatedAllAt && (null == invalidated || entry.storedAt > invalidated);
+    }
+
+    /**
+     * Keeps the body of a 200 response to a GET if it is fresh for a while or can be revalidated
+     *
+     * @param key cache key
+     * @param url request url
+     * @param token token the request was signed with, null for unsigned requests
+     * @param res response with its body buffered
+     * @param now time the request was sent
+     */
+    void store(String key, String url, OAuthToken token, Response res, long now) {
+        byte[] body = res.getRawBody();
+        long timeToLive = null == body ? -1 : timeToLive(url, res, now);
+        HttpValidators validators = HttpValidators.of(res);
+        if (timeToLive < 0 || (timeToLive == 0 && null == validators)) {
+            remove(key);
+            return;
+        }
+        Map<String, String> headers = new HashMap<String, String>();
+        for (String name : KEPT_HEADERS) {
+            String value = res.getResponseHeader(name);
+            if (null != value) {
+                headers.put(name.toLowerCase(Locale.ENGLISH), value);
+            }
+        }
+        put(key, new Entry(owner(token), validators, body, res.isCompressed(), headers, now, now + timeToLive));
+        storedCount.incrementAndGet();
+    }
+
+    /**
+     * Renews a cached response the API answered 304 Not Modified for
+     *
+     * @return the renewed entry
+     */
+    Entry revalidated(String key, String url, Entry cached, Response notModified, long now) {
+        long timeToLive = Math.max(0, timeToLive(url, notModified, now));
+        HttpValidators validators = HttpValidators.of(notModified);
+        Entry renewed = new Entry(cached.owner, null == validators ? cached.validators : validators, cached.body,
+                cached.compressed, cached.headers, now, now + timeToLive);
+        put(key, renewed);
+        revalidatedCount.incrementAndGet();
+        return renewed;
+    }
+
+    /**
+     * Makes the responses cached for a token stale after it was used for a write
+     */
+    void invalidate(OAuthToken token) {
+        invalidatedAt.put(owner(token), System.currentTimeMillis());
+        if (invalidatedAt.size() > MAX_INVALIDATED_OWNERS) {
+            forgetOldestInvalidations();
+        }
+    }
+
+    /**
+     * Merges the older half of the tracked writes into {@link #invalidatedAllAt}
+     */
+    private synchronized void forgetOldestInvalidations() {
+        if (invalidatedAt.size() <= MAX_INVALIDATED_OWNERS) {
+            return;
+        }
+        long[] times = new long[invalidatedAt.size()];
+        int count = 0;
+        for (Long time : invalidatedAt.values()) {
+            if (count < times.length) {
+                times[count++] = time;
+            }
+        }
+        Arrays.sort(times, 0, count);
+        long cutoff = times[count / 2];
+        long all = invalidatedAllAt;
+        for (Map.Entry<String, Long> owner : invalidatedAt.entrySet()) {
+            long time = owner.getValue();
+            if (time <= cutoff && invalidatedAt.remove(owner.getKey(), time)) {
+                all = Math.max(all, time);
+            }
+        }
+        invalidatedAllAt = all;
+    }
+
+    void hit() {
+        hitCount.incrementAndGet();
+    }
+
+    void miss() {
+        missCount.incrementAndGet();
+    }
+
+    /**
+     * @return lifetime of the response in milliseconds, 0 if it has to be revalidated, -1 if it must not be stored
+     */
+    private long timeToLive(String url, Response res, long now) {
+        if (!timeToLiveMillis.isEmpty()) {
+            Long override = timeToLiveMillis.get(FitbitApiEndpoint.of("GET", url));
+            if (null != override) {
+                return override;
+            }
+        }
+        String cacheControl = res.getResponseHeader("Cache-Control");
+        if (null != cacheControl) {
+            long maxAge = -1;
+            for (String directive : cacheControl.toLowerCase(Locale.ENGLISH).split(",")) {
+                directive = directive.trim();
+                if ("no-store".equals(directive)) {
+                    return -1;
+                } else if ("no-cache".equals(directive)) {
+                    return 0;
+                } else if (directive.startsWith("max-age=")) {
+                    try {
+                        maxAge = Long.parseLong(directive.substring(8).trim()) * 1000;
+                    } catch (NumberFormatException e) {
+                        maxAge = 0;
+                    }
+                }
+            }
+            if (maxAge >= 0) {
+                return Math.max(0, maxAge - age(res));
+            }
+        }
+        String expires = res.getResponseHeader("Expires");
+        if (null != expires) {
+            long expiresAt = parseDate(expires);
+            String date = res.getResponseHeader("Date");
+            long dateAt = null == date ? now : parseDate(date);
+            return expiresAt > 0 && dateAt > 0 ? Math.max(0, expiresAt - dateAt) : 0;
+        }
+        return 0;
+    }
+
+    private static long age(Response res) {
+        String age = res.getResponseHeader("Age");
+        if (null == age) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(age.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return time of an HTTP date, 0 if it is invalid
+     */
+    private static long parseDate(String value) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value.trim()).getTime();
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        List<Map.Entry<String, Entry>> evicted = Collections.emptyList();
+        synchronized (this) {
+            Entry previous = entries.remove(key);
+            if (null != previous) {
+                bytes -= previous.body.length;
+            }
+            if (entry.body.length > maxBytes) {
+                return;
+            }
+            entries.put(key, entry);
+            bytes += entry.body.length;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+                Map.Entry<String, Entry> next = eldest.next();
+                bytes -= next.getValue().body.length;
+                eldest.remove();
+                if (null != diskStore) {
+                    if (evicted.isEmpty()) {
+                        evicted = new ArrayList<Map.Entry<String, Entry>>(2);
+                    }
+                    evicted.add(next);
+                }
+            }
+        }
+        for (Map.Entry<String, Entry> demoted : evicted) {
+            writeToDisk(demoted.getKey(), demoted.getValue());
+        }
+    }
+
+    /**
+     * Queues an evicted entry to be written to disk. An entry read or removed before its turn is not written.
+     */
+    private void writeToDisk(final String key, final Entry entry) {
+        if (pendingWrites.size() >= maxEntries) {
+            // the disk can not keep up, losing entries of a cache is fine
+            return;
+        }
+        pendingWrites.put(key, entry);
+        diskWriter.execute(new Runnable() {
+            public void run() {
+                // the store lock orders this write with the removals of the key
+                synchronized (diskStore) {
+                    if (!pendingWrites.remove(key, entry)) {
+                        return;
+                    }
+                    try {
+                        diskStore.write(key, entry);
+                    } catch (IOException e) {
+                        log.warn("Unable to move cached response to disk: " + e);
+                    }
+                }
+            }
+        });
+    }
+
+    void remove(String key) {
+        synchronized (this) {
+            Entry previous = entries.remove(key);
+            if (null != previous) {
+                bytes -= previous.body.length;
+            }
+        }
+        if (null != diskStore) {
+            pendingWrites.remove(key);
+            diskStore.remove(key);
+        }
+    }
+
+    /**
+     * Removes all responses, from disk too
+     */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            bytes = 0;
+        }
+        if (null != diskStore) {
+            pendingWrites.clear();
+            diskStore.clear();
+        }
+    }
+
+    /**
+     * @return number of responses in memory
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return total size of the bodies in memory
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return number of responses on disk, 0 without a disk tier
+     */
+    public int getDiskSize() {
+        return null == diskStore ? 0 : diskStore.size();
+    }
+
+    /**
+     * @return total size of the files on disk, 0 without a disk tier
+     */
+    public long getDiskBytes() {
+        return null == diskStore ? 0 : diskStore.getBytes();
+    }
+
+    /**
+     * @return number of GETs answered from the cache without a request
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return number of GETs answered with a cached body after a 304 Not Modified
+     */
+    public long getRevalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    /**
+     * @return number of GETs whose body was transferred
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return number of responses stored
+     */
+    public long getStoredCount() {
+        return storedCount.get();
+    }
+}
@@ -0,0 +1,213 @@
+package com.fitbit.api.client.http;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Disk tier of the {@link HttpResponseCache}: one file per response, named after a digest of its key so that neither
+ * URLs nor tokens show up on disk. Bounded by the total size of the files, least recently used first out. The
+ * directory is scanned on open, so that the entries of a previous instance are found again.
+ */
+final class HttpResponseDiskStore {
+
+    private static final Log log = LogFactory.getLog(HttpResponseDiskStore.class);
+
+    private static final int MAGIC = 0x46424852;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".response";
+
+    private final File directory;
+    private final long maxBytes;
+    /**
+     * File names and sizes, least recently used first
+     */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long bytes;
+
+    HttpResponseDiskStore(File directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Disk cache size must be positive: " + maxBytes);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + directory);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        if (null == files) {
+            throw new IOException("Unable to list cache directory " + directory);
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+        for (File file : files) {
+            index.put(file.getName(), file.length());
+            bytes += file.length();
+        }
+        evict();
+    }
+
+    synchronized void write(String key, HttpResponseCache.Entry entry) throws IOException {
+        String name = fileName(key);
+        File file = new File(directory, name);
+        File temporary = new File(directory, name + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(entry.owner);
+            out.writeLong(entry.storedAt);
+            out.writeLong(entry.expiresAt);
+            out.writeBoolean(entry.compressed);
+            writeNullable(out, null == entry.validators ? null : entry.validators.getETag());
+            writeNullable(out, null == entry.validators ? null : entry.validators.getLastModified());
+            out.writeInt(entry.headers.size());
+            for (Map.Entry<String, String> header : entry.headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+            out.writeInt(entry.body.length);
+            out.write(entry.body);
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            // renaming does not replace existing files everywhere
+            file.delete();
+            if (!temporary.renameTo(file)) {
+                temporary.delete();
+                throw new IOException("Unable to rename " + temporary + " to " + file);
+            }
+        }
+        Long previous = index.put(name, file.length());
+        bytes += file.length() - (null == previous ? 0 : previous);
+        evict();
+    }
+
+    /**
+     * @return the entry, removed from disk, null if there is none or it can not be read
+     */
+    synchronized HttpResponseCache.Entry remove(String key) {
+        String name = fileName(key);
+        Long size = index.remove(name);
+        if (null == size) {
+            return null;
+        }
+        bytes -= size;
+        File file = new File(directory, name);
+        try {
+            return read(file);
+        } catch (IOException e) {
+            log.warn("Unable to read cached response " + file + ": " + e);
+            return null;
+        } finally {
+            if (!file.delete()) {
+                log.warn("Unable to delete cached response " + file);
+            }
+        }
+    }
+
+    synchronized void clear() {
+        for (String name : index.keySet()) {
+            new File(directory, name).delete();
+        }
+        index.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> next = eldest.next();
+            bytes -= next.getValue();
+            eldest.remove();
+            new File(directory, next.getKey()).delete();
+        }
+    }
+
+    private static HttpResponseCache.Entry read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a cached response of this version");
+            }
+            String owner = in.readUTF();
+            long storedAt = in.readLong();
+            long expiresAt = in.readLong();
+            boolean compressed = in.readBoolean();
+            String eTag = readNullable(in);
+            String lastModified = readNullable(in);
+            int headerCount = in.readInt();
+            Map<String, String> headers = new HashMap<String, String>();
+            for (int i = 0; i < headerCount; i++) {
+                headers.put(in.readUTF(), in.readUTF());
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            HttpValidators validators = null == eTag && null == lastModified ? null : new HttpValidators(eTag, lastModified);
+            return new HttpResponseCache.Entry(owner, validators, body, compressed, headers, storedAt, expiresAt);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(null != value);
+        if (null != value) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
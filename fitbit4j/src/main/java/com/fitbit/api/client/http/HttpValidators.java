@@ -0,0 +1,76 @@
+package com.fitbit.api.client.http;
+
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+
+/**
+ * Validators of a response, the ETag and Last-Modified headers, sent back as If-None-Match and If-Modified-Since to
+ * have the API answer 304 Not Modified instead of the same body again.
+ */
+public final class HttpValidators implements Serializable {
+    private static final long serialVersionUID = -4286718650319474826L;
+
+    private final String eTag;
+    private final String lastModified;
+
+    public HttpValidators(String eTag, String lastModified) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param res response
+     *
+     * @return validators of the response, null if it has none
+     */
+    public static HttpValidators of(Response res) {
+        String eTag = res.getResponseHeader("ETag");
+        String lastModified = res.getResponseHeader("Last-Modified");
+        if (null == eTag && null == lastModified) {
+            return null;
+        }
+        return new HttpValidators(eTag, lastModified);
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    void applyTo(HttpURLConnection con) {
+        if (null != eTag) {
+            con.setRequestProperty("If-None-Match", eTag);
+        }
+        if (null != lastModified) {
+            con.setRequestProperty("If-Modified-Since", lastModified);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HttpValidators)) return false;
+
+        HttpValidators that = (HttpValidators) o;
+
+        if (eTag != null ? !eTag.equals(that.eTag) : that.eTag != null) return false;
+        if (lastModified != null ? !lastModified.equals(that.lastModified) : that.lastModified != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = eTag != null ? eTag.hashCode() : 0;
+        result = 31 * result + (lastModified != null ? lastModified.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpValidators{eTag='" + eTag + "', lastModified='" + lastModified + "'}";
+    }
+}
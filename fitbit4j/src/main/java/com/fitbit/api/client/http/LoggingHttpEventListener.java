@@ -0,0 +1,57 @@
+package com.fitbit.api.client.http;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Logs request events at debug level in the category of {@link HttpClient}
+ */
+public class LoggingHttpEventListener implements HttpEventListener {
+    private static final Log log = LogFactory.getLog(HttpClient.class);
+
+    static final LoggingHttpEventListener INSTANCE = new LoggingHttpEventListener();
+
+    public void requestSending(String method, String url, Map<String, String> headers, String parameters) {
+        if (log.isDebugEnabled()) {
+            StringBuilder message = new StringBuilder("HTTP ").append(method).append(' ').append(url);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                message.append("\n  Request Header: '").append(header.getKey()).append("' => '").append(header.getValue()).append('\'');
+            }
+            if (null != parameters) {
+                message.append("\n  HTTP Post Params: ").append(parameters);
+            }
+            log.debug(message);
+        }
+    }
+
+    public void responseReceived(String method, String url, int statusCode, Map<String, List<String>> headers) {
+        if (log.isDebugEnabled()) {
+            StringBuilder message = new StringBuilder("HTTP ").append(statusCode).append(" for ").append(method).append(' ').append(url);
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                for (String value : header.getValue()) {
+                    if (null != header.getKey()) {
+                        message.append("\n  Header: '").append(header.getKey()).append("' => '").append(HttpRedaction.redactHeader(header.getKey(), value)).append('\'');
+                    } else {
+                        message.append("\n  Header value: '").append(value).append('\'');
+                    }
+                }
+            }
+            log.debug(message);
+        }
+    }
+
+    public void retrying(String method, String url, int attempt, long delayMillis) {
+        if (log.isDebugEnabled()) {
+            log.debug("Sleeping " + delayMillis + " millisecs before attempt " + attempt + " of HTTP " + method + ' ' + url);
+        }
+    }
+
+    public void hedging(String url, long delayMillis) {
+        if (log.isDebugEnabled()) {
+            log.debug("Hedging HTTP GET " + url + " after " + delayMillis + " millisecs.");
+        }
+    }
+}
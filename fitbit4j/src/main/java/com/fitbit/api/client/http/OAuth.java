@@ -40,7 +40,6 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
 import java.util.Random;
 
@@ -84,9 +83,11 @@ public class OAuth implements Serializable {
                 .append(encode(constructRequestURL(url))).append('&');
         base.append(encode(normalizeRequestParameters(signatureBaseParams)));
         String oauthBaseString = base.toString();
-        log("OAuth base string:", oauthBaseString);
+        if (log.isTraceEnabled()) {
+            // the signature is a credential and not logged, the token is masked
+            log.trace("OAuth base string: " + HttpRedaction.redactSignatureBaseString(oauthBaseString));
+        }
         String signature = generateSignature(oauthBaseString, otoken);
-        log("OAuth signature:", signature);
 
         oauthHeaderParams.add(new PostParameter("oauth_signature", signature));
         return "OAuth " + encodeParameters(oauthHeaderParams, ",", true);
@@ -319,16 +320,6 @@ public class OAuth implements Serializable {
         this.consumerSecret = null != consumerSecret ? consumerSecret : "";
     }
 
-    private static void log(String message) {
-        if (log.isDebugEnabled()) {
-            log.debug("[" + new Date() + ']' + message);
-        }
-    }
-
-    private static void log(String message, String message2) {
-        log(message + message2);
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
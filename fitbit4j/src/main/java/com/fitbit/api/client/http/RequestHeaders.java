@@ -0,0 +1,233 @@
+package com.fitbit.api.client.http;
+
+import java.io.Serializable;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Immutable set of request headers. Changing a header makes a copy, so that a set can be shared between the threads
+ * sending requests and replaced while they do.
+ * <p>
+ * The {@link HttpClient} sends its default headers with every request. Headers attached to the current thread
+ * override the defaults for the requests the thread makes until they are detached, so that one client can call the
+ * API for users with different locales at the same time:
+ * <pre>
+ * RequestHeaders previous = RequestHeaders.of("Accept-Language", Locale.UK.toString()).attach();
+ * try {
+ *     Activities activities = agent.getActivities(user, FitbitUser.CURRENT_AUTHORIZED_USER, date);
+ * } finally {
+ *     RequestHeaders.detach(previous);
+ * }
+ * </pre>
+ * Header names are compared ignoring case.
+ */
+public final class RequestHeaders implements Serializable {
+    private static final long serialVersionUID = 3915442734917340284L;
+
+    public static final RequestHeaders NONE = new RequestHeaders(new String[0], new String[0]);
+
+    private static final ThreadLocal<RequestHeaders> CURRENT = new ThreadLocal<RequestHeaders>();
+
+    private final String[] names;
+    private final String[] values;
+
+    private RequestHeaders(String[] names, String[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    public static RequestHeaders of(String name, String value) {
+        return NONE.with(name, value);
+    }
+
+    /**
+     * @return headers attached to the current thread, null if there are none
+     */
+    public static RequestHeaders current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Attaches these headers to the current thread. Headers attached already stay in effect unless these override
+     * them.
+     *
+     * @return headers attached before, to be passed to {@link #detach}
+     */
+    public RequestHeaders attach() {
+        RequestHeaders previous = CURRENT.get();
+        CURRENT.set(null == previous ? this : previous.overriddenBy(this));
+        return previous;
+    }
+
+    /**
+     * Restores the headers attached before {@link #attach}
+     *
+     * @param previous headers returned by {@link #attach}, may be null
+     */
+    public static void detach(RequestHeaders previous) {
+        if (null == previous) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Wraps a task to run with the headers attached to the current thread when it was wrapped
+     *
+     * @param task task to run on another thread
+     *
+     * @return task attaching the headers while it runs, the task itself if there are none
+     */
+    public static <T> Callable<T> propagate(final Callable<T> task) {
+        final RequestHeaders headers = current();
+        if (null == headers) {
+            return task;
+        }
+        return new Callable<T>() {
+            public T call() throws Exception {
+                RequestHeaders previous = headers.attach();
+                try {
+                    return task.call();
+                } finally {
+                    detach(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param value value of the header, null to remove it
+     *
+     * @return copy of these headers with the header set
+     */
+    public RequestHeaders with(String name, String value) {
+        if (null == value) {
+            return without(name);
+        }
+        int index = indexOf(name);
+        if (index >= 0) {
+            if (value.equals(values[index])) {
+                return this;
+            }
+            String[] newValues = values.clone();
+            newValues[index] = value;
+            return new RequestHeaders(names, newValues);
+        }
+        String[] newNames = Arrays.copyOf(names, names.length + 1);
+        String[] newValues = Arrays.copyOf(values, values.length + 1);
+        newNames[names.length] = name;
+        newValues[values.length] = value;
+        return new RequestHeaders(newNames, newValues);
+    }
+
+    /**
+     * @return copy of these headers without the header
+     */
+    public RequestHeaders without(String name) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return this;
+        }
+        String[] newNames = new String[names.length - 1];
+        String[] newValues = new String[values.length - 1];
+        System.arraycopy(names, 0, newNames, 0, index);
+        System.arraycopy(values, 0, newValues, 0, index);
+        System.arraycopy(names, index + 1, newNames, index, names.length - index - 1);
+        System.arraycopy(values, index + 1, newValues, index, values.length - index - 1);
+        return new RequestHeaders(newNames, newValues);
+    }
+
+    /**
+     * @param overrides headers replacing those of the same name, may be null
+     *
+     * @return these headers with the overrides applied
+     */
+    public RequestHeaders overriddenBy(RequestHeaders overrides) {
+        if (null == overrides || overrides.isEmpty() || this == overrides) {
+            return this;
+        }
+        if (isEmpty()) {
+            return overrides;
+        }
+        RequestHeaders headers = this;
+        for (int i = 0; i < overrides.names.length; i++) {
+            headers = headers.with(overrides.names[i], overrides.values[i]);
+        }
+        return headers;
+    }
+
+    /**
+     * @return value of the header, null if it is not set
+     */
+    public String get(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : values[index];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public boolean isEmpty() {
+        return 0 == names.length;
+    }
+
+    /**
+     * @return the headers by name, in the order they were set
+     */
+    public Map<String, String> asMap() {
+        Map<String, String> map = new LinkedHashMap<String, String>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            map.put(names[i], values[i]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    void applyTo(HttpURLConnection con) {
+        for (int i = 0; i < names.length; i++) {
+            con.addRequestProperty(names[i], values[i]);
+        }
+    }
+
+    /**
+     * @return the headers with the values of sensitive ones redacted, for listeners and logs
+     */
+    Map<String, String> redactedTo(Map<String, String> headers) {
+        for (int i = 0; i < names.length; i++) {
+            headers.put(names[i], HttpRedaction.redactHeader(names[i], values[i]));
+        }
+        return headers;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RequestHeaders)) return false;
+
+        return asMap().equals(((RequestHeaders) o).asMap());
+    }
+
+    @Override
+    public int hashCode() {
+        return asMap().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestHeaders" + redactedTo(new LinkedHashMap<String, String>());
+    }
+}
@@ -29,11 +29,13 @@ package com.fitbit.api.client.http;
 import com.fitbit.api.FitbitAPIException;
 
 import com.fitbit.api.client.Configuration;
+import com.fitbit.api.client.metrics.FitbitApiMetrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
@@ -41,13 +43,24 @@ import javax.servlet.http.HttpServletResponse;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import java.io.BufferedReader;
+import javax.xml.stream.XMLStreamException;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -59,6 +72,8 @@ import java.util.zip.GZIPInputStream;
  */
 public class Response {
 	private static final Log log = LogFactory.getLog(Response.class);
+    private static final int DEFAULT_SPILL_BYTES = Configuration.getResponseSpillBytes();
+    private static final int DEFAULT_MAX_BYTES = Configuration.getMaxResponseBytes();
 
     private static ThreadLocal<DocumentBuilder> builders =
             new ThreadLocal<DocumentBuilder>() {
@@ -76,22 +91,50 @@ public class Response {
 
     protected int statusCode;
     private Document responseAsDocument;
+    private Object responseAsXml;
     private String responseAsString;
     protected InputStream is;
     private HttpURLConnection con;
     private boolean streamConsumed;
+    private boolean streamExposed;
+    private boolean bodyReleased;
+    private ResponseBodyDecoder parsedBody;
+    private long bodySize = -1;
+    private int spillBytes = DEFAULT_SPILL_BYTES;
+    private int maxBytes = DEFAULT_MAX_BYTES;
+    private FitbitApiMetrics metrics;
+    private String endpoint;
+    private boolean revalidated;
+    private boolean fromCache;
+    private boolean compressed;
+    private byte[] rawBody;
+    private Map<String, String> cachedHeaders;
 
 
     public Response(HttpURLConnection con) throws IOException {
+        this(con, false, DEFAULT_SPILL_BYTES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param bufferBody true to read the body of a 200 response into memory as received, so that it can be cached,
+     * unless it is larger than the spill size
+     * @param spillBytes size from which the body is written to a temporary file while it is read, 0 for none
+     * @param maxBytes size above which reading the body fails, as received or inflated, 0 for no limit
+     */
+    Response(HttpURLConnection con, boolean bufferBody, int spillBytes, int maxBytes) throws IOException {
         this.con = con;
+        this.spillBytes = spillBytes;
+        this.maxBytes = maxBytes;
         statusCode = con.getResponseCode();
         is = con.getErrorStream();
         if (null == is) {
             is = con.getInputStream();
         }
-        if (null != is && "gzip".equals(con.getContentEncoding())) {
-            // the response is gzipped
-            is = new GZIPInputStream(is);
+        compressed = "gzip".equals(con.getContentEncoding());
+        if (bufferBody && HttpServletResponse.SC_OK == statusCode && null != is
+                && (spillBytes <= 0 || con.getContentLength() <= spillBytes)) {
+            int limit = spillBytes <= 0 ? Integer.MAX_VALUE : spillBytes;
+            bufferRawBody(maxBytes > 0 ? Math.min(limit, maxBytes) : limit);
         }
     }
 
@@ -99,13 +142,102 @@ public class Response {
     /*package*/
 
     protected Response() { }
+
+    /**
+     * Response served from the cache without a request
+     */
+    Response(HttpResponseCache.Entry cached) throws IOException {
+        statusCode = HttpServletResponse.SC_OK;
+        rawBody = cached.body;
+        compressed = cached.compressed;
+        cachedHeaders = cached.headers;
+        is = new ByteArrayInputStream(rawBody);
+        fromCache = true;
+    }
+
+    /**
+     * Response to a conditional request answered with 304 Not Modified, carrying the cached body
+     */
+    Response(Response notModified, HttpResponseCache.Entry cached) throws IOException {
+        this(cached);
+        con = notModified.con;
+        if (null != notModified.is) {
+            // a 304 has no body, closing the stream lets the connection be reused
+            notModified.is.close();
+        }
+        revalidated = true;
+    }
+
+    /**
+     * Reads the body as received into memory, unless it turns out to be larger than the limit. A body larger than the
+     * maximum size is not read any further, reading it fails.
+     */
+    private void bufferRawBody(int limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+            if (maxBytes > 0 && out.size() > maxBytes) {
+                is.close();
+                disconnect();
+                is = new ExceededInputStream(maxBytes);
+                return;
+            }
+            if (out.size() > limit) {
+                // too large to keep, the rest is read when the body is
+                is = new SequenceInputStream(new ByteArrayInputStream(out.toByteArray()), is);
+                return;
+            }
+        }
+        is.close();
+        rawBody = out.toByteArray();
+        is = new ByteArrayInputStream(rawBody);
+    }
+
+    /**
+     * @return the body as received, compressed if {@link #isCompressed()}; null unless it was buffered
+     */
+    byte[] getRawBody() {
+        return rawBody;
+    }
+
+    boolean isCompressed() {
+        return compressed;
+    }
     
+    /**
+     * Reports the time reading and parsing the body takes to the metrics
+     */
+    void recordTo(FitbitApiMetrics metrics, String endpoint) {
+        this.metrics = metrics;
+        this.endpoint = endpoint;
+    }
+
     public int getStatusCode() {
         return statusCode;
     }
 
+    /**
+     * @return true if the API answered 304 Not Modified and the body is the one cached from an earlier response
+     */
+    public boolean isRevalidated() {
+        return revalidated;
+    }
+
+    /**
+     * @return true if the body is the one cached from an earlier response, revalidated or still fresh
+     */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
     public String getResponseHeader(String name) {
-        return con.getHeaderField(name);
+        String value = null == con ? null : con.getHeaderField(name);
+        if (null == value && null != cachedHeaders) {
+            value = cachedHeaders.get(name.toLowerCase(Locale.ENGLISH));
+        }
+        return value;
     }
 
     /**
@@ -123,6 +255,11 @@ public class Response {
         if (streamConsumed) {
             throw new IllegalStateException("Stream has already been consumed.");
         }
+        if (compressed && !streamExposed && null != is) {
+            // the response is gzipped
+            is = new DeferredGZIPInputStream(is);
+        }
+        streamExposed = true;
         return is;
     }
 
@@ -135,29 +272,14 @@ public class Response {
      */
     public String asString() throws FitbitAPIException {
         if (null == responseAsString) {
-            BufferedReader br;
+            if (bodyReleased) {
+                throw new FitbitAPIException("The response body of " + bodySize + " bytes was parsed without keeping it as a string");
+            }
+            if (null == is && !streamConsumed) {
+                return null;
+            }
             try {
-                InputStream stream = asStream();
-                if (null == stream) {
-                    return null;
-                }
-                br = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
-                StringBuffer buf = new StringBuffer();
-                String line;
-                while (null != (line = br.readLine())) {
-                    buf.append(line).append('\n');
-                }
-                responseAsString = buf.toString();
-                if (Configuration.isDalvik()) {
-                    responseAsString = unescape(responseAsString);
-                }
-                log.debug("Response string: " + responseAsString);
-                stream.close();
-                disconnect();
-                streamConsumed = true;
-            } catch (NullPointerException npe) {
-                // don't remember in which case npe can be thrown
-                throw new FitbitAPIException(npe.getMessage(), npe);
+                keepString(decodeBody());
             } catch (IOException ioe) {
                 throw new FitbitAPIException(ioe.getMessage(), ioe);
             }
@@ -165,6 +287,59 @@ public class Response {
         return responseAsString;
     }
 
+    /**
+     * Reads the body into the decoder of the calling thread, where it is kept until it is handed over
+     */
+    private ResponseBodyDecoder decodeBody() throws IOException {
+        if (streamConsumed) {
+            throw new IllegalStateException("Stream has already been consumed.");
+        }
+        if (maxBytes > 0 && !compressed && null != con && con.getContentLength() > maxBytes) {
+            is.close();
+            disconnect();
+            streamConsumed = true;
+            throw new IOException("Response body of " + con.getContentLength() + " bytes exceeds the maximum of " + maxBytes + " bytes");
+        }
+        long start = null == metrics ? 0 : System.nanoTime();
+        ResponseBodyDecoder decoder = ResponseBodyDecoder.get();
+        try {
+            if (streamExposed) {
+                // the caller may have read part of the stream already
+                bodySize = decoder.decode(is, false, spillBytes, maxBytes);
+            } else if (null != rawBody) {
+                bodySize = decoder.decode(rawBody, compressed, spillBytes, maxBytes);
+                is.close();
+            } else {
+                bodySize = decoder.decode(is, compressed, spillBytes, maxBytes);
+            }
+        } finally {
+            disconnect();
+            streamConsumed = true;
+        }
+        if (null != metrics) {
+            metrics.responseRead(endpoint, System.nanoTime() - start, bodySize);
+        }
+        return decoder;
+    }
+
+    private void keepString(ResponseBodyDecoder decoder) throws IOException {
+        responseAsString = decoder.asString();
+        if (Configuration.isDalvik()) {
+            responseAsString = unescape(responseAsString);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Response string: " + responseAsString);
+        }
+    }
+
+    /**
+     * @return true if the body is to be parsed straight from the decoder, without a string in between
+     */
+    private boolean parseFromDecoder() {
+        // on Dalvik the body needs to be unescaped as a string
+        return null == responseAsString && !streamConsumed && null != is && !Configuration.isDalvik();
+    }
+
     /**
      * Returns the response body as org.w3c.dom.Document.<br>
      * Disconnects the internal HttpURLConnection silently.
@@ -174,59 +349,310 @@ public class Response {
      */
     public Document asDocument() throws FitbitAPIException {
         if (null == responseAsDocument) {
+            InputStream body = null;
             try {
-                // it should be faster to read the inputstream directly.
-                // but makes it difficult to troubleshoot
-                responseAsDocument = builders.get().parse(new ByteArrayInputStream(asString().getBytes("UTF-8")));
+                body = openBody();
+                long start = null == metrics ? 0 : System.nanoTime();
+                responseAsDocument = builders.get().parse(body);
+                if (null != metrics) {
+                    metrics.responseParsed(endpoint, System.nanoTime() - start);
+                }
             } catch (SAXException saxe) {
-                throw new FitbitAPIException("The response body was not well-formed:\n" + responseAsString, saxe);
+                throw new FitbitAPIException("The response body was not well-formed:\n" + bodyForParseError(), saxe);
             } catch (IOException ioe) {
                 throw new FitbitAPIException("There's something with the connection.", ioe);
+            } finally {
+                closeBody(body);
             }
         }
         return responseAsDocument;
     }
 
+    /**
+     * Returns the body of an XML response as org.json.JSONObject or org.json.JSONArray, read with StAX straight from
+     * the received bytes. The tree is kept, the body is not.
+     *
+     * @see XmlResponseReader
+     */
+    private Object bindXml(boolean array) throws FitbitAPIException {
+        if (null == responseAsXml) {
+            InputStream body = null;
+            try {
+                body = openBody();
+                long start = null == metrics ? 0 : System.nanoTime();
+                XmlResponseReader reader = XmlResponseReader.getDefault();
+                responseAsXml = array ? reader.readArray(body) : reader.readObject(body);
+                if (null != metrics) {
+                    metrics.responseParsed(endpoint, System.nanoTime() - start);
+                }
+            } catch (XMLStreamException xmle) {
+                throw new FitbitAPIException("The response body was not well-formed:\n" + bodyForParseError(), xmle);
+            } catch (IOException ioe) {
+                throw new FitbitAPIException("There's something with the connection.", ioe);
+            } finally {
+                closeBody(body);
+            }
+        }
+        if (array != responseAsXml instanceof JSONArray) {
+            throw new FitbitAPIException("The XML response body was already read as a JSON" + (array ? "Object" : "Array"));
+        }
+        return responseAsXml;
+    }
+
+    /**
+     * Reads the body of an XML response with StAX and hands its elements over to the handler as they are read, without
+     * keeping the document.<br>
+     * The handler runs while the body is read. It may read other responses, but not this one: the body is handed over
+     * to the reader and is no longer available as a string or a stream.<br>
+     * Disconnects the internal HttpURLConnection silently.
+     *
+     * @return false if the handler stopped reading before the end of the document
+     * @throws FitbitAPIException
+     * @see XmlElementHandler
+     */
+    public boolean readXml(XmlElementHandler handler) throws FitbitAPIException {
+        InputStream body = null;
+        try {
+            body = openBody();
+            return XmlResponseReader.getDefault().read(body, handler);
+        } catch (XMLStreamException xmle) {
+            throw new FitbitAPIException("The response body was not well-formed:\n" + bodyForParseError(), xmle);
+        } catch (IOException ioe) {
+            throw new FitbitAPIException("There's something with the connection.", ioe);
+        } finally {
+            closeBody(body);
+        }
+    }
+
+    /**
+     * Returns the text of the first element at each of the paths of an XML response, reading the body only as far as
+     * it takes to find them all.<br>
+     * Disconnects the internal HttpURLConnection silently.
+     *
+     * @param paths slash separated element names below the root, for example <code>summary/steps</code>
+     * @return texts by path, without the paths that are not in the body
+     * @throws FitbitAPIException
+     */
+    public Map<String, String> asXmlValues(String... paths) throws FitbitAPIException {
+        final Set<String> wanted = new HashSet<String>(Arrays.asList(paths));
+        final Map<String, String> values = new LinkedHashMap<String, String>();
+        readXml(new XmlElementHandler() {
+            public boolean element(String path, String text) {
+                if (wanted.contains(path) && !values.containsKey(path)) {
+                    values.put(path, text);
+                }
+                return values.size() < wanted.size();
+            }
+        });
+        return values;
+    }
+
+    /**
+     * @return true if the Content-Type of the response is an XML one
+     */
+    public boolean isXml() {
+        String contentType = getResponseHeader("Content-Type");
+        return null != contentType && contentType.toLowerCase(Locale.ENGLISH).contains("xml");
+    }
+
+    /**
+     * Opens the body for a parser: straight from the decoder, as kept in memory or in its temporary file, unless the
+     * body is needed as a string anyway
+     */
+    private InputStream openBody() throws IOException, FitbitAPIException {
+        if (parseFromDecoder()) {
+            ResponseBodyDecoder decoder = decodeBody();
+            if (log.isDebugEnabled() && !decoder.isSpilled()) {
+                keepString(decoder);
+            } else {
+                parsedBody = decoder.isSpilled() ? null : decoder;
+                bodyReleased = true;
+                return decoder.asStream();
+            }
+        }
+        return new ByteArrayInputStream(asString().getBytes("UTF-8"));
+    }
+
+    private void closeBody(InputStream body) {
+        close(body);
+        if (null != parsedBody) {
+            parsedBody.release();
+            parsedBody = null;
+        }
+    }
+
+    /**
+     * @return the body for the message of a parse error, before {@link #closeBody(InputStream)}
+     */
+    private String bodyForParseError() {
+        if (null != parsedBody) {
+            try {
+                // still in the buffer of the decoder until it is released
+                return parsedBody.asString();
+            } catch (IOException ignore) {
+            }
+        }
+        return bodyForMessage();
+    }
+
     /**
      * Returns the response body as org.json.JSONObject.<br>
+     * The body of an XML response is read with {@link XmlResponseReader}.<br>
      * Disconnects the internal HttpURLConnection silently.
      *
      * @return response body as org.json.JSONObject
      * @throws FitbitAPIException
      */
     public JSONObject asJSONObject() throws FitbitAPIException {
-        try {
-            return new JSONObject(asString());
-        } catch (JSONException jsone) {
-            throw new FitbitAPIException(jsone.getMessage() + ':' + responseAsString, jsone);
+        if (isXml()) {
+            return (JSONObject) bindXml(false);
         }
+        return (JSONObject) parseJson(false);
     }
 
     /**
      * Returns the response body as org.json.JSONArray.<br>
+     * The body of an XML response is read with {@link XmlResponseReader}.<br>
      * Disconnects the internal HttpURLConnection silently.
      *
      * @return response body as org.json.JSONArray
      * @throws FitbitAPIException
      */
     public JSONArray asJSONArray() throws FitbitAPIException {
+        if (isXml()) {
+            return (JSONArray) bindXml(true);
+        }
+        return (JSONArray) parseJson(true);
+    }
+
+    /**
+     * Parses the body from its string, or from its temporary file if it was too large to keep in memory
+     */
+    private Object parseJson(boolean array) throws FitbitAPIException {
+        Reader spilledBody = null;
         try {
-            return new JSONArray(asString());
+            JSONTokener tokener;
+            if (parseFromDecoder()) {
+                ResponseBodyDecoder decoder = decodeBody();
+                if (decoder.isSpilled()) {
+                    spilledBody = new InputStreamReader(decoder.asStream(), "UTF-8");
+                    bodyReleased = true;
+                    if (log.isDebugEnabled()) {
+                        log.debug("Response body of " + bodySize + " bytes parsed from a temporary file");
+                    }
+                } else {
+                    keepString(decoder);
+                }
+            }
+            if (null != spilledBody) {
+                tokener = new JSONTokener(spilledBody);
+            } else {
+                String body = asString();
+                tokener = new JSONTokener(body);
+            }
+            long start = null == metrics ? 0 : System.nanoTime();
+            Object json = array ? new JSONArray(tokener) : new JSONObject(tokener);
+            if (null != metrics) {
+                metrics.responseParsed(endpoint, System.nanoTime() - start);
+            }
+            return json;
         } catch (JSONException jsone) {
-            throw new FitbitAPIException(jsone.getMessage() + ':' + responseAsString, jsone);
+            throw new FitbitAPIException(jsone.getMessage() + ':' + bodyForMessage(), jsone);
+        } catch (IOException ioe) {
+            throw new FitbitAPIException(ioe.getMessage(), ioe);
+        } finally {
+            close(spilledBody);
+        }
+    }
+
+    private String bodyForMessage() {
+        return bodyReleased ? "<" + bodySize + " bytes>" : responseAsString;
+    }
+
+    private static void close(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
         }
     }
 
     public InputStreamReader asReader() {
+        InputStream stream = asStream();
         try {
-            return new InputStreamReader(is, "UTF-8");
+            return new InputStreamReader(stream, "UTF-8");
         } catch (UnsupportedEncodingException uee) {
-            return new InputStreamReader(is);
+            return new InputStreamReader(stream);
         }
     }
 
     public void disconnect() {
-        con.disconnect();
+        // responses created without a connection have nothing to disconnect
+        if (null != con) {
+            con.disconnect();
+        }
+    }
+
+    /**
+     * Inflates a gzip body once it is read, so that responses read with {@link #asString()} never create the
+     * {@link GZIPInputStream} and its native inflater
+     */
+    private static final class DeferredGZIPInputStream extends FilterInputStream {
+        private boolean opened;
+
+        DeferredGZIPInputStream(InputStream compressed) {
+            super(compressed);
+        }
+
+        private InputStream open() throws IOException {
+            if (!opened) {
+                in = new GZIPInputStream(in);
+                opened = true;
+            }
+            return in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return open().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return open().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return open().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return open().available();
+        }
+    }
+
+    /**
+     * Stands for a body that was dropped as it exceeded the maximum size, failing whoever reads it
+     */
+    private static final class ExceededInputStream extends InputStream {
+        private final int maxBytes;
+
+        ExceededInputStream(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            throw new IOException("Response body exceeds the maximum of " + maxBytes + " bytes");
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return read();
+        }
     }
 
     private static Pattern escaped = Pattern.compile("&#([0-9]{3,5});");
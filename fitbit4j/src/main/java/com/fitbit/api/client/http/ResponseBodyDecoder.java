@@ -0,0 +1,485 @@
+package com.fitbit.api.client.http;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads response bodies in bulk, inflating gzip bodies itself instead of through a
+ * {@link java.util.zip.GZIPInputStream}. Each thread reuses one instance: its {@link Inflater}, its input buffer and
+ * its output buffer, which grows to the largest body kept in memory and is retained up to
+ * {@link #MAX_RETAINED_BYTES}.
+ * <p/>
+ * A body reaching the spill size is written to a temporary file as it is read, so that only the file is left
+ * to parse, and a body larger than the maximum size fails before it is read to its end. The decoded body is handed
+ * over as a string or a stream, after which the decoder is ready for the next body.
+ * <p/>
+ * A body handed over as a stream stays in the output buffer until it is released. Bodies decoded on the same thread
+ * meanwhile, for example by a {@link XmlElementHandler} reading another response, get a decoder of their own.
+ */
+final class ResponseBodyDecoder {
+
+    /**
+     * Largest output buffer kept between bodies, larger ones are dropped after use. Small, since every thread that
+     * ever read a body keeps one: most bodies of the API fit, larger ones get a buffer of their own.
+     */
+    static final int MAX_RETAINED_BYTES = 256 * 1024;
+
+    private static final int INPUT_BUFFER_BYTES = 16 * 1024;
+    private static final int INITIAL_OUTPUT_BYTES = 64 * 1024;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final ThreadLocal<ResponseBodyDecoder> decoders = new ThreadLocal<ResponseBodyDecoder>() {
+        @Override
+        protected ResponseBodyDecoder initialValue() {
+            return new ResponseBodyDecoder(true);
+        }
+    };
+
+    private final boolean pooled;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] inputBuffer = new byte[INPUT_BUFFER_BYTES];
+    private byte[] output = new byte[INITIAL_OUTPUT_BYTES];
+    /**
+     * The body last decoded: the output buffer, or the body itself if it needed no decoding
+     */
+    private byte[] decoded;
+    private int length;
+    /**
+     * True while a stream reads the body from the output buffer
+     */
+    private boolean lent;
+
+    private int spillBytes;
+    private long maxBytes;
+    private File spillFile;
+    private OutputStream spillOut;
+    private long spilled;
+
+    /**
+     * Source of the compressed bytes: a window of {@link #input}, refilled from {@link #source} if there is one
+     */
+    private InputStream source;
+    private byte[] input;
+    private int position;
+    private int limit;
+
+    private ResponseBodyDecoder(boolean pooled) {
+        this.pooled = pooled;
+    }
+
+    /**
+     * @return the decoder of the calling thread, or a new one if the body of that decoder is still being read
+     */
+    static ResponseBodyDecoder get() {
+        ResponseBodyDecoder decoder = decoders.get();
+        return decoder.lent ? new ResponseBodyDecoder(false) : decoder;
+    }
+
+    /**
+     * Reads a body to its end and closes the stream
+     *
+     * @param spillBytes size from which the body is written to a temporary file, 0 to keep it in memory
+     * @param maxBytes size above which reading the body fails, 0 for no limit
+     *
+     * @return size of the body, once inflated
+     */
+    long decode(InputStream in, boolean gzip, int spillBytes, long maxBytes) throws IOException {
+        boolean done = false;
+        start(spillBytes, maxBytes);
+        try {
+            if (gzip) {
+                source = in;
+                input = inputBuffer;
+                position = 0;
+                limit = 0;
+                inflateMembers();
+            } else {
+                int read;
+                do {
+                    int free = reserve(1);
+                    read = in.read(output, length, free);
+                    if (read > 0) {
+                        length += read;
+                        checkSize();
+                    }
+                } while (read >= 0);
+            }
+            finish();
+            done = true;
+            return size();
+        } finally {
+            source = null;
+            input = null;
+            in.close();
+            if (!done) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Decodes a body kept in memory
+     *
+     * @return size of the body, once inflated
+     */
+    long decode(byte[] body, boolean gzip, int spillBytes, long maxBytes) throws IOException {
+        start(spillBytes, maxBytes);
+        if (!gzip) {
+            decoded = body;
+            length = body.length;
+            checkSize();
+            return length;
+        }
+        if (body.length >= 18) {
+            // ISIZE, the size of the last member modulo 2^32, is usually the size of the whole body
+            int size = (body[body.length - 4] & 0xff) | (body[body.length - 3] & 0xff) << 8
+                    | (body[body.length - 2] & 0xff) << 16 | (body[body.length - 1] & 0xff) << 24;
+            // deflate does not compress better than about 1:1032, a larger size is not to be trusted
+            if (size > 0 && size / 1032 <= body.length && (spillBytes <= 0 || size < spillBytes)) {
+                // one byte more, the inflater only reports the end of the stream while it has room for output
+                reserve(size + 1);
+            }
+        }
+        boolean done = false;
+        try {
+            input = body;
+            position = 0;
+            limit = body.length;
+            inflateMembers();
+            finish();
+            done = true;
+            return size();
+        } finally {
+            input = null;
+            if (!done) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * @return true if the body last decoded was written to a temporary file
+     */
+    boolean isSpilled() {
+        return null != spillFile;
+    }
+
+    /**
+     * @return the body last decoded, as a string
+     */
+    String asString() throws IOException {
+        try {
+            if (null == decoded) {
+                throw new IOException("The response body was already handed over");
+            }
+            if (null == spillFile) {
+                return new String(decoded, 0, length, "UTF-8");
+            }
+            if (spilled > Integer.MAX_VALUE) {
+                throw new IOException("Response body of " + spilled + " bytes is too large for a string");
+            }
+            // a string has at most as many chars as its UTF-8 encoding has bytes
+            char[] chars = new char[(int) spilled];
+            Reader reader = new InputStreamReader(new FileInputStream(spillFile), "UTF-8");
+            try {
+                int count = 0;
+                int read;
+                while (count < chars.length && (read = reader.read(chars, count, chars.length - count)) > 0) {
+                    count += read;
+                }
+                return new String(chars, 0, count);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * @return the body last decoded, as a stream to be read before the next body is decoded on this thread. A body
+     * kept in memory stays in the decoder until it is {@link #release() released}, a body written to a temporary
+     * file belongs to the stream and is deleted when it is closed.
+     */
+    InputStream asStream() throws IOException {
+        if (null == spillFile) {
+            lent = true;
+            return new ByteArrayInputStream(decoded, 0, length);
+        }
+        final File file = spillFile;
+        // the file belongs to the stream from now on
+        spillFile = null;
+        release();
+        return new BufferedInputStream(new FileInputStream(file), INPUT_BUFFER_BYTES) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    delete(file);
+                }
+            }
+        };
+    }
+
+    /**
+     * Forgets the body last decoded, deleting its temporary file and dropping the output buffer if it grew beyond the
+     * retained size
+     */
+    void release() {
+        clear();
+        if (!pooled) {
+            inflater.end();
+        }
+    }
+
+    private void clear() {
+        if (null != spillOut) {
+            try {
+                spillOut.close();
+            } catch (IOException ignore) {
+            }
+            spillOut = null;
+        }
+        if (null != spillFile) {
+            delete(spillFile);
+            spillFile = null;
+        }
+        if (output.length > MAX_RETAINED_BYTES) {
+            output = new byte[INITIAL_OUTPUT_BYTES];
+        }
+        decoded = null;
+        length = 0;
+        spilled = 0;
+        lent = false;
+    }
+
+    private void start(int spillBytes, long maxBytes) {
+        clear();
+        this.spillBytes = spillBytes;
+        this.maxBytes = maxBytes;
+        decoded = output;
+    }
+
+    private void finish() throws IOException {
+        if (spillBytes > 0 && length >= spillBytes) {
+            // whether the inflater filled the buffer up to the spill size or left a byte free depends on its input
+            spill();
+        }
+        if (null != spillOut) {
+            spill();
+            spillOut.close();
+            spillOut = null;
+        }
+    }
+
+    private long size() {
+        return null == spillFile ? length : spilled;
+    }
+
+    private void checkSize() throws IOException {
+        if (maxBytes > 0 && spilled + length > maxBytes) {
+            throw new IOException("Response body exceeds the maximum of " + maxBytes + " bytes");
+        }
+    }
+
+    /**
+     * Inflates the gzip members of the input one after the other, the way {@link java.util.zip.GZIPInputStream}
+     * does, ignoring whatever follows the last one
+     */
+    private void inflateMembers() throws IOException {
+        readHeader();
+        while (true) {
+            long size = inflateMember();
+            long expectedCrc = readIntLE() & 0xffffffffL;
+            long expectedSize = readIntLE() & 0xffffffffL;
+            if (expectedCrc != crc.getValue()) {
+                throw new ZipException("Corrupt gzip body: crc mismatch");
+            }
+            if (expectedSize != (size & 0xffffffffL)) {
+                throw new ZipException("Corrupt gzip body: size mismatch");
+            }
+            if (!available() || !nextMemberFollows()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return size of the member, once inflated
+     */
+    private long inflateMember() throws IOException {
+        inflater.reset();
+        crc.reset();
+        long size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!available()) {
+                        throw new EOFException("Unexpected end of gzip body");
+                    }
+                    inflater.setInput(input, position, limit - position);
+                    position = limit;
+                }
+                int free = reserve(1);
+                int inflated = inflater.inflate(output, length, free);
+                if (inflated > 0) {
+                    crc.update(output, length, inflated);
+                    length += inflated;
+                    size += inflated;
+                    checkSize();
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Corrupt gzip body: preset dictionary");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt gzip body: " + e.getMessage());
+        }
+        // hand back what the inflater took beyond the end of the member
+        position = limit - inflater.getRemaining();
+        return size;
+    }
+
+    private void readHeader() throws IOException {
+        if (readShortLE() != GZIP_MAGIC) {
+            throw new ZipException("Not in gzip format");
+        }
+        if (readByte() != 8) {
+            throw new ZipException("Unsupported gzip compression method");
+        }
+        int flags = readByte();
+        // modification time, extra flags and operating system
+        skip(6);
+        if ((flags & FEXTRA) != 0) {
+            skip(readShortLE());
+        }
+        if ((flags & FNAME) != 0) {
+            while (readByte() != 0) {
+                // file name
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readByte() != 0) {
+                // comment
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(2);
+        }
+    }
+
+    /**
+     * Reads the header of the next member if the input continues with one
+     */
+    private boolean nextMemberFollows() throws IOException {
+        if (limit - position >= 2 && ((input[position] & 0xff) | (input[position + 1] & 0xff) << 8) != GZIP_MAGIC) {
+            return false;
+        }
+        try {
+            readHeader();
+            return true;
+        } catch (ZipException e) {
+            return false;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if there are bytes left in the input window, after refilling it if necessary
+     */
+    private boolean available() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        if (null == source) {
+            return false;
+        }
+        int read = source.read(inputBuffer, 0, inputBuffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private int readByte() throws IOException {
+        if (!available()) {
+            throw new EOFException("Unexpected end of gzip body");
+        }
+        return input[position++] & 0xff;
+    }
+
+    private int readShortLE() throws IOException {
+        return readByte() | readByte() << 8;
+    }
+
+    private int readIntLE() throws IOException {
+        return readShortLE() | readShortLE() << 16;
+    }
+
+    private void skip(int bytes) throws IOException {
+        for (int i = 0; i < bytes; i++) {
+            readByte();
+        }
+    }
+
+    /**
+     * Makes room in the output buffer for at least the given number of bytes more, moving its content to the
+     * temporary file once the body reaches the spill size
+     *
+     * @return free space in the output buffer
+     */
+    private int reserve(int bytes) throws IOException {
+        if (spillBytes > 0 && length + bytes > spillBytes) {
+            spill();
+        }
+        if (output.length - length < bytes) {
+            int capacity = Math.max(output.length * 2, length + bytes);
+            if (spillBytes > 0) {
+                capacity = Math.max(Math.min(capacity, spillBytes), length + bytes);
+            }
+            byte[] grown = new byte[capacity];
+            System.arraycopy(output, 0, grown, 0, length);
+            output = grown;
+            decoded = output;
+        }
+        int free = output.length - length;
+        return spillBytes > 0 ? Math.min(free, Math.max(bytes, spillBytes - length)) : free;
+    }
+
+    private void spill() throws IOException {
+        if (null == spillOut) {
+            spillFile = File.createTempFile("fitbit4j-response", ".tmp");
+            spillOut = new FileOutputStream(spillFile);
+        }
+        spillOut.write(output, 0, length);
+        spilled += length;
+        length = 0;
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+}
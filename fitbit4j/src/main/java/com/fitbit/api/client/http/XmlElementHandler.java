@@ -0,0 +1,22 @@
+package com.fitbit.api.client.http;
+
+import com.fitbit.api.FitbitAPIException;
+
+/**
+ * Receives the elements of an XML response as it is read, for callers that need a few fields of a large document
+ * without building it in memory.
+ *
+ * @see Response#readXml(XmlElementHandler)
+ */
+public interface XmlElementHandler {
+
+    /**
+     * Called for each element without child elements, in document order
+     *
+     * @param path names of the enclosing elements below the root and of the element itself, separated by slashes,
+     * for example <code>summary/steps</code>
+     * @param text text of the element, empty if it has none
+     * @return false to stop reading the document
+     */
+    boolean element(String path, String text) throws FitbitAPIException;
+}
@@ -0,0 +1,286 @@
+package com.fitbit.api.client.http;
+
+import com.fitbit.api.FitbitAPIException;
+import com.fitbit.api.common.model.timeseries.TimeSeriesResourceType;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads XML responses with StAX, element by element, into the {@link JSONObject} and {@link JSONArray} trees the model
+ * classes are built from, so that an XML response binds like its JSON counterpart without a DOM in between.
+ * <p/>
+ * The children of the root element become the properties of the object. An element with child elements becomes an
+ * object, an element without becomes its text. Elements repeated under the same parent become an array, and so do the
+ * children of the list elements, which are arrays even when they hold one item or none: XML does not tell a list of one
+ * from a single value. A list element holding text alone is a value of the same name, like the fat of a food summary.
+ */
+public final class XmlResponseReader {
+
+    /**
+     * Elements of the API responses holding lists, the arrays the model classes read, time series included
+     */
+    public static final Set<String> LIST_ELEMENTS = Collections.unmodifiableSet(listElements(
+            "activities", "activityLevels", "apiSubscriptions", "average", "bp", "categories", "dataset", "distances",
+            "errors", "fat", "foods", "friends", "glucose", "heart", "mealFoods", "meals", "scaleInviteSendingResults",
+            "scaleInvites", "scaleMeasurements", "scaleUsers", "scales", "servings", "sleep", "subCategories", "units",
+            "water", "weight"));
+
+    private static final XmlResponseReader DEFAULT = new XmlResponseReader(LIST_ELEMENTS);
+
+    private static ThreadLocal<XMLInputFactory> factories =
+            new ThreadLocal<XMLInputFactory>() {
+                @Override
+                protected XMLInputFactory initialValue() {
+                    XMLInputFactory factory = XMLInputFactory.newInstance();
+                    // responses have no business declaring or resolving entities
+                    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+                    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+                    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+                    return factory;
+                }
+            };
+
+    private final Set<String> listElements;
+
+    /**
+     * @param listElements names of the elements whose children always make an array
+     */
+    public XmlResponseReader(Collection<String> listElements) {
+        this.listElements = new HashSet<String>(listElements);
+    }
+
+    /**
+     * @return the reader for the list elements of the API responses
+     */
+    public static XmlResponseReader getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the children of the root element as an object
+     */
+    public JSONObject readObject(InputStream body) throws XMLStreamException {
+        XMLStreamReader reader = open(body);
+        try {
+            nextElement(reader);
+            Object root = new Binder(reader).element(false);
+            if (!(root instanceof JSONObject)) {
+                // a root element without children
+                return new JSONObject();
+            }
+            return (JSONObject) root;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the items of the list that is the only child of the root element, or the children of the root element
+     * if it holds something else
+     */
+    public JSONArray readArray(InputStream body) throws XMLStreamException {
+        XMLStreamReader reader = open(body);
+        try {
+            nextElement(reader);
+            Object items = new Binder(reader).element(true);
+            if (!(items instanceof JSONArray)) {
+                // a root element holding text alone
+                return new JSONArray();
+            }
+            JSONArray root = (JSONArray) items;
+            if (1 == root.length() && root.opt(0) instanceof JSONArray) {
+                return (JSONArray) root.opt(0);
+            }
+            return root;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Hands the elements without children over to the handler until the document ends or the handler stops it
+     *
+     * @return false if the handler stopped reading
+     */
+    public boolean read(InputStream body, XmlElementHandler handler) throws XMLStreamException, FitbitAPIException {
+        XMLStreamReader reader = open(body);
+        try {
+            nextElement(reader);
+            StringBuilder path = new StringBuilder();
+            // lengths of the path up to each open element, below the root
+            int[] lengths = new int[16];
+            int depth = 0;
+            boolean leaf = false;
+            StringBuilder text = new StringBuilder();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (depth == lengths.length) {
+                            lengths = Arrays.copyOf(lengths, depth * 2);
+                        }
+                        lengths[depth++] = path.length();
+                        if (path.length() > 0) {
+                            path.append('/');
+                        }
+                        path.append(reader.getLocalName());
+                        text.setLength(0);
+                        leaf = true;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        if (leaf) {
+                            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (0 == depth) {
+                            // the end of the root
+                            return true;
+                        }
+                        if (leaf && !handler.element(path.toString(), text.toString())) {
+                            return false;
+                        }
+                        leaf = false;
+                        path.setLength(lengths[--depth]);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return true;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Set<String> listElements(String... names) {
+        Set<String> elements = new HashSet<String>(Arrays.asList(names));
+        for (TimeSeriesResourceType type : TimeSeriesResourceType.values()) {
+            elements.add(type.getResourcePath().substring(1).replace('/', '-'));
+        }
+        return elements;
+    }
+
+    private static XMLStreamReader open(InputStream body) throws XMLStreamException {
+        return factories.get().createXMLStreamReader(body);
+    }
+
+    /**
+     * Moves to the next start element, the root when the document has just been opened
+     */
+    private static void nextElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (XMLStreamConstants.START_ELEMENT == reader.next()) {
+                return;
+            }
+        }
+        throw new XMLStreamException("The document has no root element");
+    }
+
+    /**
+     * Builds the tree of one document, reusing one buffer for the text of all elements
+     */
+    private final class Binder {
+        private final XMLStreamReader reader;
+        private final StringBuilder text = new StringBuilder();
+
+        Binder(XMLStreamReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Reads the element the reader is at the start of, up to and including its end
+         *
+         * @param list true for an array of the children
+         * @return a {@link JSONArray} for a list, a {@link JSONObject} for an element with child elements or
+         * attributes, a string otherwise
+         */
+        Object element(boolean list) throws XMLStreamException {
+            JSONArray items = list ? new JSONArray() : null;
+            JSONObject object = null;
+            // names of the children repeated so far, arrays of their values
+            Set<String> repeated = null;
+            try {
+                if (!list && reader.getAttributeCount() > 0) {
+                    object = new JSONObject();
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        object.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                    }
+                }
+                text.setLength(0);
+                while (true) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            String name = reader.getLocalName();
+                            Object child = element(listElements.contains(name));
+                            if (list) {
+                                items.put(child);
+                            } else {
+                                if (null == object) {
+                                    object = new JSONObject();
+                                }
+                                Object previous = object.opt(name);
+                                if (null == previous) {
+                                    object.put(name, child);
+                                } else if (null != repeated && repeated.contains(name)) {
+                                    ((JSONArray) previous).put(child);
+                                } else {
+                                    if (null == repeated) {
+                                        repeated = new HashSet<String>();
+                                    }
+                                    repeated.add(name);
+                                    object.put(name, new JSONArray().put(previous).put(child));
+                                }
+                            }
+                            text.setLength(0);
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            String value = isBlank(text) ? "" : text.toString();
+                            if (list) {
+                                return 0 == items.length() && value.length() > 0 ? value : items;
+                            }
+                            if (null == object) {
+                                return value;
+                            }
+                            if (value.length() > 0 && !object.has("content")) {
+                                // text next to attributes
+                                object.put("content", value);
+                            }
+                            return object;
+                        case XMLStreamConstants.END_DOCUMENT:
+                            throw new XMLStreamException("The document ended inside an element");
+                        default:
+                            break;
+                    }
+                }
+            } catch (JSONException e) {
+                throw new XMLStreamException(e.getMessage(), reader.getLocation(), e);
+            }
+        }
+    }
+
+    private static boolean isBlank(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
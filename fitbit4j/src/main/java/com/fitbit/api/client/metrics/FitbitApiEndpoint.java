@@ -0,0 +1,91 @@
+package com.fitbit.api.client.metrics;
+
+/**
+ * Names requests by endpoint, so that requests for different users, dates and resources are counted together.
+ */
+public final class FitbitApiEndpoint {
+
+    private FitbitApiEndpoint() {
+    }
+
+    /**
+     * Reduces a request to its method and path, replacing the user id, dates, times and numeric ids by placeholders:
+     * {@code GET https://api.fitbit.com/1/user/228TQ4/foods/log/date/2011-08-01.json} becomes
+     * {@code GET /1/user/{user}/foods/log/date/{date}.json}
+     *
+     * @param method HTTP method
+     * @param url request URL
+     *
+     * @return endpoint name
+     */
+    public static String of(String method, String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : url.indexOf('/', start + 3);
+        if (start < 0) {
+            return method + " /";
+        }
+        int end = url.indexOf('?', start);
+        if (end < 0) {
+            end = url.length();
+        }
+        StringBuilder name = new StringBuilder(method.length() + end - start).append(method).append(' ');
+        boolean userFollows = false;
+        int segmentStart = start + 1;
+        while (segmentStart <= end) {
+            int segmentEnd = url.indexOf('/', segmentStart);
+            if (segmentEnd < 0 || segmentEnd > end) {
+                segmentEnd = end;
+            }
+            name.append('/');
+            int suffix = url.lastIndexOf('.', segmentEnd - 1);
+            if (suffix < segmentStart) {
+                suffix = segmentEnd;
+            }
+            if (segmentStart == start + 1) {
+                // API version
+                suffix = segmentStart;
+            } else if (userFollows && segmentEnd > segmentStart) {
+                name.append("{user}");
+            } else if (isDigits(url, segmentStart, suffix)) {
+                name.append("{id}");
+            } else if (isDate(url, segmentStart, suffix)) {
+                name.append("{date}");
+            } else if (isTime(url, segmentStart, suffix)) {
+                name.append("{time}");
+            } else {
+                suffix = segmentStart;
+            }
+            name.append(url, suffix, segmentEnd);
+            userFollows = segmentEnd - segmentStart == 4 && url.startsWith("user", segmentStart);
+            segmentStart = segmentEnd + 1;
+        }
+        return name.toString();
+    }
+
+    private static boolean isDigits(String s, int from, int to) {
+        if (from == to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * yyyy-MM-dd
+     */
+    private static boolean isDate(String s, int from, int to) {
+        return to - from == 10 && s.charAt(from + 4) == '-' && s.charAt(from + 7) == '-'
+                && isDigits(s, from, from + 4) && isDigits(s, from + 5, from + 7) && isDigits(s, from + 8, to);
+    }
+
+    /**
+     * HH:mm
+     */
+    private static boolean isTime(String s, int from, int to) {
+        return to - from == 5 && s.charAt(from + 2) == ':' && isDigits(s, from, from + 2) && isDigits(s, from + 3, to);
+    }
+}
@@ -0,0 +1,133 @@
+package com.fitbit.api.client.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of the metrics of one endpoint. Network times span all attempts of a request up to the response headers,
+ * read and parse times the response body.
+ */
+public class FitbitApiEndpointStats {
+
+    private final String endpoint;
+    private final long requests;
+    private final long errors;
+    private final long retries;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final Map<String, Long> statusCounts;
+    private final double networkMeanMillis;
+    private final double networkMedianMillis;
+    private final double network99thPercentileMillis;
+    private final double networkMaxMillis;
+    private final double readMeanMillis;
+    private final double read99thPercentileMillis;
+    private final double parseMeanMillis;
+    private final double parse99thPercentileMillis;
+
+    @ConstructorProperties({"endpoint", "requests", "errors", "retries", "bytesSent", "bytesReceived", "statusCounts",
+            "networkMeanMillis", "networkMedianMillis", "network99thPercentileMillis", "networkMaxMillis",
+            "readMeanMillis", "read99thPercentileMillis", "parseMeanMillis", "parse99thPercentileMillis"})
+    public FitbitApiEndpointStats(String endpoint, long requests, long errors, long retries, long bytesSent,
+                                  long bytesReceived, Map<String, Long> statusCounts, double networkMeanMillis,
+                                  double networkMedianMillis, double network99thPercentileMillis,
+                                  double networkMaxMillis, double readMeanMillis, double read99thPercentileMillis,
+                                  double parseMeanMillis, double parse99thPercentileMillis) {
+        this.endpoint = endpoint;
+        this.requests = requests;
+        this.errors = errors;
+        this.retries = retries;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.statusCounts = Collections.unmodifiableMap(statusCounts);
+        this.networkMeanMillis = networkMeanMillis;
+        this.networkMedianMillis = networkMedianMillis;
+        this.network99thPercentileMillis = network99thPercentileMillis;
+        this.networkMaxMillis = networkMaxMillis;
+        this.readMeanMillis = readMeanMillis;
+        this.read99thPercentileMillis = read99thPercentileMillis;
+        this.parseMeanMillis = parseMeanMillis;
+        this.parse99thPercentileMillis = parse99thPercentileMillis;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return requests that failed with a status code other than 2xx or without a response
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return number of requests by status code of their last attempt, "-1" for requests without a response
+     */
+    public Map<String, Long> getStatusCounts() {
+        return statusCounts;
+    }
+
+    public double getNetworkMeanMillis() {
+        return networkMeanMillis;
+    }
+
+    public double getNetworkMedianMillis() {
+        return networkMedianMillis;
+    }
+
+    public double getNetwork99thPercentileMillis() {
+        return network99thPercentileMillis;
+    }
+
+    public double getNetworkMaxMillis() {
+        return networkMaxMillis;
+    }
+
+    public double getReadMeanMillis() {
+        return readMeanMillis;
+    }
+
+    public double getRead99thPercentileMillis() {
+        return read99thPercentileMillis;
+    }
+
+    public double getParseMeanMillis() {
+        return parseMeanMillis;
+    }
+
+    public double getParse99thPercentileMillis() {
+        return parse99thPercentileMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "FitbitApiEndpointStats{" +
+                "endpoint='" + endpoint + '\'' +
+                ", requests=" + requests +
+                ", errors=" + errors +
+                ", retries=" + retries +
+                ", statusCounts=" + statusCounts +
+                ", networkMedianMillis=" + networkMedianMillis +
+                ", network99thPercentileMillis=" + network99thPercentileMillis +
+                ", parseMeanMillis=" + parseMeanMillis +
+                '}';
+    }
+}
@@ -0,0 +1,50 @@
+package com.fitbit.api.client.metrics;
+
+/**
+ * Receives measurements of API requests from the HTTP client.
+ * <p>
+ * Endpoints are request paths with user ids, dates and numeric ids replaced by placeholders, such as
+ * {@code GET /1/user/{user}/activities/date/{date}.json}. Implementations are called on the requesting threads and
+ * must be thread-safe and fast. Without metrics set on the client nothing is measured.
+ *
+ * @see FitbitApiMetricsRecorder
+ */
+public interface FitbitApiMetrics {
+
+    /**
+     * Called when a request has completed, after its last attempt
+     *
+     * @param endpoint endpoint of the request
+     * @param statusCode status code of the last attempt, -1 if no response was received
+     * @param networkNanos time from the first attempt until the response headers of the last one were received
+     * @param retries number of attempts after the first
+     * @param bytesSent size of the request body
+     */
+    void requestCompleted(String endpoint, int statusCode, long networkNanos, int retries, long bytesSent);
+
+    /**
+     * Called when the response body has been read
+     *
+     * @param endpoint endpoint of the request
+     * @param readNanos time reading the body took
+     * @param bytesReceived size of the body after decompression
+     */
+    void responseRead(String endpoint, long readNanos, long bytesReceived);
+
+    /**
+     * Called when the response body has been parsed
+     *
+     * @param endpoint endpoint of the request
+     * @param parseNanos time parsing the body took
+     */
+    void responseParsed(String endpoint, long parseNanos);
+
+    /**
+     * Called with the rate limit headers of a response
+     *
+     * @param limit requests allowed per window
+     * @param remaining requests left in the current window
+     * @param resetSeconds seconds until the window resets, -1 if unknown
+     */
+    void rateLimitReported(int limit, int remaining, int resetSeconds);
+}
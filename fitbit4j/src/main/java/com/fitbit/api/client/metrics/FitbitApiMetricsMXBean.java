@@ -0,0 +1,36 @@
+package com.fitbit.api.client.metrics;
+
+import java.util.List;
+
+/**
+ * JMX view of the metrics of {@link FitbitApiMetricsRecorder}
+ */
+public interface FitbitApiMetricsMXBean {
+
+    long getRequestCount();
+
+    long getErrorCount();
+
+    long getRetryCount();
+
+    /**
+     * @return rate limit of the last response reporting one, -1 if none did
+     */
+    int getRateLimit();
+
+    int getRateLimitRemaining();
+
+    /**
+     * @return share of the rate limit left, 1 if no response reported a rate limit
+     */
+    double getRateLimitHeadroom();
+
+    /**
+     * @return seconds until the rate limit window resets, as of the last response reporting it
+     */
+    int getRateLimitResetSeconds();
+
+    List<FitbitApiEndpointStats> getEndpoints();
+
+    void reset();
+}
@@ -0,0 +1,223 @@
+package com.fitbit.api.client.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default {@link FitbitApiMetrics}, keeping latency histograms and counters per endpoint in memory:
+ * <pre>
+ * FitbitApiMetricsRecorder metrics = new FitbitApiMetricsRecorder();
+ * agent.setMetrics(metrics);
+ * metrics.registerMBean("default");
+ * ...
+ * for (FitbitApiEndpointStats stats : metrics.getEndpoints()) {
+ *     log.info(stats);
+ * }
+ * </pre>
+ * Recording takes a few atomic increments and does not lock.
+ */
+public class FitbitApiMetricsRecorder implements FitbitApiMetrics, FitbitApiMetricsMXBean {
+
+    public static final String OBJECT_NAME_PREFIX = "com.fitbit.api:type=Metrics,name=";
+
+    /**
+     * Endpoints beyond this number are counted as {@link #OTHER_ENDPOINT}, bounding the memory taken
+     */
+    public static final int MAX_ENDPOINTS = 500;
+    public static final String OTHER_ENDPOINT = "other";
+
+    private final ConcurrentMap<String, Stats> endpoints = new ConcurrentHashMap<String, Stats>();
+    private volatile int rateLimit = -1;
+    private volatile int rateLimitRemaining = -1;
+    private volatile int rateLimitResetSeconds = -1;
+
+    public void requestCompleted(String endpoint, int statusCode, long networkNanos, int retries, long bytesSent) {
+        Stats stats = statsOf(endpoint);
+        stats.requests.incrementAndGet();
+        // 304 Not Modified answers a conditional GET from the response cache
+        if ((statusCode < 200 || statusCode >= 300) && statusCode != 304) {
+            stats.errors.incrementAndGet();
+        }
+        if (retries > 0) {
+            stats.retries.addAndGet(retries);
+        }
+        if (bytesSent > 0) {
+            stats.bytesSent.addAndGet(bytesSent);
+        }
+        stats.network.record(networkNanos);
+        AtomicLong statusCount = stats.statusCounts.get(statusCode);
+        if (null == statusCount) {
+            statusCount = new AtomicLong();
+            AtomicLong existing = stats.statusCounts.putIfAbsent(statusCode, statusCount);
+            if (null != existing) {
+                statusCount = existing;
+            }
+        }
+        statusCount.incrementAndGet();
+    }
+
+    public void responseRead(String endpoint, long readNanos, long bytesReceived) {
+        Stats stats = statsOf(endpoint);
+        stats.read.record(readNanos);
+        stats.bytesReceived.addAndGet(bytesReceived);
+    }
+
+    public void responseParsed(String endpoint, long parseNanos) {
+        statsOf(endpoint).parse.record(parseNanos);
+    }
+
+    public void rateLimitReported(int limit, int remaining, int resetSeconds) {
+        rateLimit = limit;
+        rateLimitRemaining = remaining;
+        rateLimitResetSeconds = resetSeconds;
+    }
+
+    private Stats statsOf(String endpoint) {
+        Stats stats = endpoints.get(endpoint);
+        if (null == stats) {
+            if (endpoints.size() >= MAX_ENDPOINTS) {
+                endpoint = OTHER_ENDPOINT;
+                stats = endpoints.get(endpoint);
+            }
+            if (null == stats) {
+                stats = new Stats();
+                Stats existing = endpoints.putIfAbsent(endpoint, stats);
+                if (null != existing) {
+                    stats = existing;
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @param endpoint endpoint name, as made by {@link FitbitApiEndpoint#of}
+     *
+     * @return latency histogram of the endpoint, null if it had no requests
+     */
+    public LatencyHistogram getNetworkLatency(String endpoint) {
+        Stats stats = endpoints.get(endpoint);
+        return null == stats ? null : stats.network;
+    }
+
+    public long getRequestCount() {
+        long count = 0;
+        for (Stats stats : endpoints.values()) {
+            count += stats.requests.get();
+        }
+        return count;
+    }
+
+    public long getErrorCount() {
+        long count = 0;
+        for (Stats stats : endpoints.values()) {
+            count += stats.errors.get();
+        }
+        return count;
+    }
+
+    public long getRetryCount() {
+        long count = 0;
+        for (Stats stats : endpoints.values()) {
+            count += stats.retries.get();
+        }
+        return count;
+    }
+
+    public int getRateLimit() {
+        return rateLimit;
+    }
+
+    public int getRateLimitRemaining() {
+        return rateLimitRemaining;
+    }
+
+    public double getRateLimitHeadroom() {
+        int limit = rateLimit;
+        int remaining = rateLimitRemaining;
+        return limit <= 0 || remaining < 0 ? 1 : Math.min(1, (double) remaining / limit);
+    }
+
+    public int getRateLimitResetSeconds() {
+        return rateLimitResetSeconds;
+    }
+
+    /**
+     * @return snapshot of the metrics of every endpoint, by endpoint name
+     */
+    public List<FitbitApiEndpointStats> getEndpoints() {
+        List<FitbitApiEndpointStats> snapshot = new ArrayList<FitbitApiEndpointStats>(endpoints.size());
+        for (Map.Entry<String, Stats> entry : endpoints.entrySet()) {
+            snapshot.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        Collections.sort(snapshot, new Comparator<FitbitApiEndpointStats>() {
+            public int compare(FitbitApiEndpointStats a, FitbitApiEndpointStats b) {
+                return a.getEndpoint().compareTo(b.getEndpoint());
+            }
+        });
+        return snapshot;
+    }
+
+    public void reset() {
+        endpoints.clear();
+        rateLimit = -1;
+        rateLimitRemaining = -1;
+        rateLimitResetSeconds = -1;
+    }
+
+    /**
+     * Registers the recorder with the platform MBean server
+     *
+     * @param name name distinguishing this recorder from others in the same JVM
+     *
+     * @return object name the recorder was registered under
+     *
+     * @throws JMException if the name is invalid or already registered
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public void unregisterMBean(ObjectName objectName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    private static final class Stats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicLong bytesReceived = new AtomicLong();
+        final ConcurrentMap<Integer, AtomicLong> statusCounts = new ConcurrentHashMap<Integer, AtomicLong>();
+        final LatencyHistogram network = new LatencyHistogram();
+        final LatencyHistogram read = new LatencyHistogram();
+        final LatencyHistogram parse = new LatencyHistogram();
+
+        FitbitApiEndpointStats snapshot(String endpoint) {
+            Map<String, Long> counts = new TreeMap<String, Long>();
+            for (Map.Entry<Integer, AtomicLong> entry : statusCounts.entrySet()) {
+                counts.put(String.valueOf(entry.getKey()), entry.getValue().get());
+            }
+            return new FitbitApiEndpointStats(endpoint, requests.get(), errors.get(), retries.get(), bytesSent.get(),
+                    bytesReceived.get(), counts, network.getMeanMillis(), network.getPercentileMillis(0.5),
+                    network.getPercentileMillis(0.99), network.getMaxMillis(), read.getMeanMillis(),
+                    read.getPercentileMillis(0.99), parse.getMeanMillis(), parse.getPercentileMillis(0.99));
+        }
+    }
+}
@@ -4,15 +4,28 @@ import com.fitbit.api.APIUtil;
 import com.fitbit.api.FitbitAPIException;
 import com.fitbit.api.FitbitAPISecurityException;
 import com.fitbit.api.client.FitbitAPIEntityCache;
+import com.fitbit.api.client.FitbitApiCachedEntity;
 import com.fitbit.api.client.FitbitApiClientAgent;
 import com.fitbit.api.client.FitbitApiCredentialsCache;
+import com.fitbit.api.client.FitbitApiEntityCacheKey;
 import com.fitbit.api.client.FitbitApiSubscriptionStorage;
 import com.fitbit.api.client.LocalSubscriptionDetail;
 import com.fitbit.api.client.LocalUserDetail;
 import com.fitbit.api.client.http.AccessToken;
 import com.fitbit.api.client.http.TempCredentials;
 import com.fitbit.api.common.model.activities.Activities;
+import com.fitbit.api.common.model.activities.Activity;
+import com.fitbit.api.common.model.activities.ActivityCatalog;
+import com.fitbit.api.common.model.activities.ActivityCategory;
+import com.fitbit.api.common.model.body.BodyWithGoals;
+import com.fitbit.api.common.model.foods.Food;
+import com.fitbit.api.common.model.foods.FoodUnit;
+import com.fitbit.api.common.model.foods.FoodUnitCatalog;
 import com.fitbit.api.common.model.foods.Foods;
+import com.fitbit.api.common.model.foods.Meal;
+import com.fitbit.api.common.model.sleep.Sleep;
+import com.fitbit.api.common.service.FitbitApiService;
+import com.fitbit.api.common.service.FitbitDateCodec;
 import com.fitbit.api.model.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -22,17 +35,97 @@ import org.json.JSONException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 public class FitbitAPIClientService<C extends FitbitApiClientAgent> {
     protected static final Log log = LogFactory.getLog(FitbitAPIClientService.class);
 
+    /**
+     * Cached collections whose content changes when a notification for the key collection arrives.
+     * Notifications without a collection type affect all of them.
+     */
+    private static final Map<APICollectionType, Set<APICollectionType>> AFFECTED_COLLECTIONS = new EnumMap<APICollectionType, Set<APICollectionType>>(APICollectionType.class);
+
+    static {
+        for (APICollectionType type : APICollectionType.values()) {
+            AFFECTED_COLLECTIONS.put(type, EnumSet.of(type));
+        }
+        // meals are composed of foods, body measurements include the weight
+        AFFECTED_COLLECTIONS.get(APICollectionType.foods).add(APICollectionType.meals);
+        AFFECTED_COLLECTIONS.get(APICollectionType.body).add(APICollectionType.weight);
+        AFFECTED_COLLECTIONS.get(APICollectionType.weight).add(APICollectionType.body);
+    }
+
+    public static final long DEFAULT_CATALOG_TIME_TO_LIVE_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final long DEFAULT_CATALOG_REFRESH_AFTER_MILLIS = 6 * 60 * 60 * 1000L;
+    public static final long DEFAULT_MEALS_TIME_TO_LIVE_MILLIS = 15 * 60 * 1000L;
+    public static final long DEFAULT_MEALS_REFRESH_AFTER_MILLIS = 5 * 60 * 1000L;
+    public static final int DEFAULT_MAX_FOOD_SEARCH_INDEXES = 1000;
+    private static final int MIN_MEALS_SWEEP_SIZE = 64;
+
     protected C client;
 
     protected FitbitAPIEntityCache entityCache;
     protected FitbitApiCredentialsCache credentialsCache;
     protected FitbitApiSubscriptionStorage subscriptionStore;
     protected String subscriberSecret;
+    protected ExecutorService refreshAheadExecutor;
+    protected ExecutorService revalidationExecutor;
+    protected FitbitApiFreshnessPolicy freshnessPolicy = new FitbitApiCollectionFreshnessPolicy();
+    protected FitbitApiCacheReadMode readMode = FitbitApiCacheReadMode.FRESH;
+    protected long maxStalenessMillis;
+    private final ConcurrentMap<RefreshTask, RefreshTask> pendingRefreshes = new ConcurrentHashMap<RefreshTask, RefreshTask>();
+
+    private final FitbitApiReferenceData<FoodUnitCatalog> foodUnitCatalog = new FitbitApiReferenceData<FoodUnitCatalog>(
+            "food units", DEFAULT_CATALOG_TIME_TO_LIVE_MILLIS, DEFAULT_CATALOG_REFRESH_AFTER_MILLIS) {
+        @Override
+        protected FoodUnitCatalog load() throws FitbitAPIException {
+            return new FoodUnitCatalog(client.getFoodUnits());
+        }
+
+        @Override
+        protected void loaded(FoodUnitCatalog catalog) {
+            // let parsed foods share the units of the first catalog loaded, without replacing the one of another service
+            FoodUnitCatalog.shareIfAbsent(catalog);
+        }
+    };
+    private final FitbitApiReferenceData<ActivityCatalog> activityCatalog = new FitbitApiReferenceData<ActivityCatalog>(
+            "activity categories", DEFAULT_CATALOG_TIME_TO_LIVE_MILLIS, DEFAULT_CATALOG_REFRESH_AFTER_MILLIS) {
+        @Override
+        protected ActivityCatalog load() throws FitbitAPIException {
+            return new ActivityCatalog(client.getActivityCategories(null));
+        }
+    };
+    private final ConcurrentMap<LocalUserDetail, FitbitApiReferenceData<List<Meal>>> meals = new ConcurrentHashMap<LocalUserDetail, FitbitApiReferenceData<List<Meal>>>();
+    private volatile long mealsTimeToLiveMillis = DEFAULT_MEALS_TIME_TO_LIVE_MILLIS;
+    private volatile long mealsRefreshAfterMillis = DEFAULT_MEALS_REFRESH_AFTER_MILLIS;
+    /**
+     * Number of users with meals from which expired meals are dropped when meals of another user are loaded
+     */
+    private volatile int mealsSweepSize = MIN_MEALS_SWEEP_SIZE;
+    private volatile int maxFoodSearchIndexes = DEFAULT_MAX_FOOD_SEARCH_INDEXES;
+    /**
+     * Food indexes of the users who searched most recently, guarded by itself
+     */
+    private final Map<LocalUserDetail, FitbitApiFoodSearchIndex> foodSearchIndexes = new LinkedHashMap<LocalUserDetail, FitbitApiFoodSearchIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LocalUserDetail, FitbitApiFoodSearchIndex> eldest) {
+            return size() > maxFoodSearchIndexes;
+        }
+    };
 
     public FitbitAPIClientService(C client, String consumerKey, String consumerSecret,
                                   FitbitApiCredentialsCache credentialsCache, FitbitAPIEntityCache entityCache,
@@ -116,43 +209,455 @@ public class FitbitAPIClientService<C extends FitbitApiClientAgent> {
         return (Foods) getCollectionForDate(user, date, APICollectionType.foods);
     }
 
+    public Sleep getSleep(LocalUserDetail user, LocalDate date) throws FitbitAPIException {
+        return (Sleep) getCollectionForDate(user, date, APICollectionType.sleep);
+    }
+
+    public BodyWithGoals getBodyWithGoals(LocalUserDetail user, LocalDate date) throws FitbitAPIException {
+        return (BodyWithGoals) getCollectionForDate(user, date, APICollectionType.body);
+    }
+
     public Object getCollectionForDate(LocalUserDetail user, LocalDate date, APICollectionType type) throws FitbitAPIException {
-        // Get cache key for collection:
-        String cacheKey = getCacheKey(date, type);
         // Get the resource credentials:
         APIResourceCredentials credentials = credentialsCache.getResourceCredentials(user);
+        // Get cache key for collection:
+        FitbitApiEntityCacheKey cacheKey = getCacheKey(credentials, date, type);
         // First consult the cache:
-        Object result = getFromCache(user, credentials, cacheKey);
-        // If not in cache, retrieve from the API service and place in cache:
-        if (null == result) {
-            result = client.getCollectionForDate(user, FitbitUser.CURRENT_AUTHORIZED_USER, type, date);
-            putInCache(result, credentials, cacheKey);
+        FitbitApiCachedEntity cached = getCachedEntity(user, credentials, cacheKey);
+        if (null != cached) {
+            long now = System.currentTimeMillis();
+            long age = cached.getAgeMillis(now);
+            long maxAge = freshnessPolicy.getMaxAgeMillis(cacheKey, now);
+            // compared before subtracting, a negative age would overflow against NEVER_EXPIRES
+            if (age <= maxAge) {
+                return cached.getEntity();
+            }
+            if (readMode == FitbitApiCacheReadMode.STALE_WHILE_REVALIDATE && age - maxAge <= maxStalenessMillis && null != revalidationExecutor) {
+                scheduleRefresh(new RefreshTask(user, credentials, cacheKey), revalidationExecutor, false);
+                return cached.getEntity();
+            }
         }
-        return result;
+        // If not in cache or stale, revalidate or retrieve from the API service and place in cache:
+        FitbitApiCachedEntity fetched = client.getCollectionForDate(user, FitbitUser.CURRENT_AUTHORIZED_USER, type, date, cached);
+        putInCache(fetched, credentials, cacheKey);
+        return fetched.getEntity();
+    }
+
+    public FitbitApiFreshnessPolicy getFreshnessPolicy() {
+        return freshnessPolicy;
+    }
+
+    /**
+     * Sets the policy deciding how long cached entities stay fresh. The default policy keeps them until a notification evicts them.
+     *
+     * @param freshnessPolicy freshness policy
+     */
+    public void setFreshnessPolicy(FitbitApiFreshnessPolicy freshnessPolicy) {
+        this.freshnessPolicy = freshnessPolicy;
+    }
+
+    public FitbitApiCacheReadMode getReadMode() {
+        return readMode;
+    }
+
+    /**
+     * Sets how entities that are no longer fresh are served
+     *
+     * @param readMode read mode
+     * @param maxStalenessMillis how long past its maximum age a stale entity may still be returned while it is revalidated
+     * @param revalidationExecutor executor running the background revalidations, owned by the caller
+     */
+    public void setReadMode(FitbitApiCacheReadMode readMode, long maxStalenessMillis, ExecutorService revalidationExecutor) {
+        if (readMode == FitbitApiCacheReadMode.STALE_WHILE_REVALIDATE && null == revalidationExecutor) {
+            throw new IllegalArgumentException("Stale-while-revalidate reads need an executor to revalidate on.");
+        }
+        this.readMode = readMode;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.revalidationExecutor = revalidationExecutor;
+    }
+
+    /**
+     * Sets the executor refreshing evicted entities and reference data ahead of reads
+     *
+     * @param refreshAheadExecutor executor, owned by the caller, null to only load on reads
+     */
+    public void setRefreshAheadExecutor(ExecutorService refreshAheadExecutor) {
+        this.refreshAheadExecutor = refreshAheadExecutor;
+        foodUnitCatalog.setRefreshExecutor(refreshAheadExecutor);
+        activityCatalog.setRefreshExecutor(refreshAheadExecutor);
+        for (FitbitApiReferenceData<List<Meal>> userMeals : meals.values()) {
+            userMeals.setRefreshExecutor(refreshAheadExecutor);
+        }
+    }
+
+    public ExecutorService getRefreshAheadExecutor() {
+        return refreshAheadExecutor;
+    }
+
+    /**
+     * Returns the food units catalog, loading it from the API once it has expired
+     *
+     * @return catalog of all valid food units
+     *
+     * @throws FitbitAPIException if the catalog had to be loaded and that failed
+     */
+    public FoodUnitCatalog getFoodUnitCatalog() throws FitbitAPIException {
+        return foodUnitCatalog.get();
+    }
+
+    public List<FoodUnit> getFoodUnits() throws FitbitAPIException {
+        return getFoodUnitCatalog().getUnits();
+    }
+
+    /**
+     * @param unitId unit id
+     *
+     * @return food unit, null if there is no unit with the id
+     *
+     * @throws FitbitAPIException if the catalog had to be loaded and that failed
+     */
+    public FoodUnit getFoodUnit(int unitId) throws FitbitAPIException {
+        return getFoodUnitCatalog().getUnit(unitId);
     }
 
+    /**
+     * Returns the catalog of public activities, loading it from the API once it has expired.
+     * Custom activities of users are not part of it.
+     *
+     * @return activities catalog
+     *
+     * @throws FitbitAPIException if the catalog had to be loaded and that failed
+     */
+    public ActivityCatalog getActivityCatalog() throws FitbitAPIException {
+        return activityCatalog.get();
+    }
+
+    public List<ActivityCategory> getActivityCategories() throws FitbitAPIException {
+        return getActivityCatalog().getCategories();
+    }
+
+    /**
+     * Returns an activity from the catalog, asking the API for activities it does not contain
+     *
+     * @param user authorized user
+     * @param activityId activity id
+     *
+     * @return activity
+     *
+     * @throws FitbitAPIException if the activity had to be fetched and that failed
+     */
+    public Activity getActivity(LocalUserDetail user, long activityId) throws FitbitAPIException {
+        Activity activity = getActivityCatalog().getActivity(activityId);
+        return null != activity ? activity : client.getActivity(user, activityId);
+    }
+
+    /**
+     * Returns the meals of a user, loading them from the API once they have expired or foods of the user were updated.
+     * Expired meals of other users are dropped whenever the number of users with meals has doubled.
+     *
+     * @param user authorized user
+     *
+     * @return meals of the user
+     *
+     * @throws FitbitAPIException if the meals had to be loaded and that failed
+     */
+    public List<Meal> getMeals(final LocalUserDetail user) throws FitbitAPIException {
+        FitbitApiReferenceData<List<Meal>> userMeals = meals.get(user);
+        if (null == userMeals) {
+            if (meals.size() >= mealsSweepSize) {
+                dropExpiredMeals();
+            }
+            userMeals = new FitbitApiReferenceData<List<Meal>>("meals of " + user.getUserId(), mealsTimeToLiveMillis, mealsRefreshAfterMillis) {
+                @Override
+                protected List<Meal> load() throws FitbitAPIException {
+                    return Collections.unmodifiableList(client.getMeals(user));
+                }
+            };
+            userMeals.setRefreshExecutor(refreshAheadExecutor);
+            FitbitApiReferenceData<List<Meal>> existing = meals.putIfAbsent(user, userMeals);
+            if (null != existing) {
+                userMeals = existing;
+            }
+        }
+        return userMeals.get();
+    }
+
+    /**
+     * Drops expired meals of all users, including meals that could not be loaded within their time to live
+     */
+    public void dropExpiredMeals() {
+        for (Map.Entry<LocalUserDetail, FitbitApiReferenceData<List<Meal>>> entry : meals.entrySet()) {
+            if (entry.getValue().isExpired()) {
+                meals.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        mealsSweepSize = Math.max(MIN_MEALS_SWEEP_SIZE, 2 * meals.size());
+    }
+
+    /**
+     * @return number of users whose meals are kept
+     */
+    int getMealsUserCount() {
+        return meals.size();
+    }
+
+    /**
+     * Drops the meals of a user
+     *
+     * @param user local user
+     */
+    public void dropMeals(LocalUserDetail user) {
+        FitbitApiReferenceData<List<Meal>> userMeals = meals.remove(user);
+        if (null != userMeals) {
+            userMeals.invalidate();
+        }
+    }
+
+    /**
+     * Sets how long the food units and activity catalogs are kept
+     *
+     * @param timeToLiveMillis time after which a catalog is loaded again before it is returned
+     * @param refreshAfterMillis time after which reads reload a catalog in the background
+     */
+    public void setCatalogTimeToLive(long timeToLiveMillis, long refreshAfterMillis) {
+        foodUnitCatalog.setTimeToLive(timeToLiveMillis, refreshAfterMillis);
+        activityCatalog.setTimeToLive(timeToLiveMillis, refreshAfterMillis);
+    }
+
+    /**
+     * Sets how long the meals of a user are kept. Notifications of food updates drop them earlier.
+     *
+     * @param timeToLiveMillis time after which meals are loaded again before they are returned
+     * @param refreshAfterMillis time after which reads reload meals in the background
+     */
+    public void setMealsTimeToLive(long timeToLiveMillis, long refreshAfterMillis) {
+        if (refreshAfterMillis > timeToLiveMillis) {
+            throw new IllegalArgumentException("Refresh interval " + refreshAfterMillis + " exceeds the time to live " + timeToLiveMillis);
+        }
+        mealsTimeToLiveMillis = timeToLiveMillis;
+        mealsRefreshAfterMillis = refreshAfterMillis;
+        for (FitbitApiReferenceData<List<Meal>> userMeals : meals.values()) {
+            userMeals.setTimeToLive(timeToLiveMillis, refreshAfterMillis);
+        }
+    }
+
+    /**
+     * Drops the food units and activity catalogs, so that the next reads load them again
+     */
+    public void invalidateCatalogs() {
+        foodUnitCatalog.invalidate();
+        activityCatalog.invalidate();
+    }
+
+    /**
+     * Returns the local food index of a user, creating an empty one on first use. Only the indexes of the
+     * {@link #setMaxFoodSearchIndexes most recent} users are kept, the others are created anew.
+     *
+     * @param user authorized user
+     *
+     * @return food index of the user
+     */
+    public FitbitApiFoodSearchIndex getFoodSearchIndex(LocalUserDetail user) {
+        synchronized (foodSearchIndexes) {
+            FitbitApiFoodSearchIndex index = foodSearchIndexes.get(user);
+            if (null == index) {
+                index = new FitbitApiFoodSearchIndex();
+                foodSearchIndexes.put(user, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Sets how many users keep a local food index, dropping the indexes of the least recent users beyond it
+     *
+     * @param maxFoodSearchIndexes maximum number of indexes
+     */
+    public void setMaxFoodSearchIndexes(int maxFoodSearchIndexes) {
+        if (maxFoodSearchIndexes < 1) {
+            throw new IllegalArgumentException("At least one food index has to be kept, given " + maxFoodSearchIndexes);
+        }
+        synchronized (foodSearchIndexes) {
+            this.maxFoodSearchIndexes = maxFoodSearchIndexes;
+            Iterator<LocalUserDetail> users = foodSearchIndexes.keySet().iterator();
+            while (foodSearchIndexes.size() > maxFoodSearchIndexes) {
+                users.next();
+                users.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the local food index of a user
+     *
+     * @param user local user
+     */
+    public void dropFoodSearchIndex(LocalUserDetail user) {
+        synchronized (foodSearchIndexes) {
+            foodSearchIndexes.remove(user);
+        }
+    }
+
+    /**
+     * Adds the favorite, frequent and recent foods of a user to the user's local food index, ranking them above
+     * foods only found by searches
+     *
+     * @param user authorized user
+     *
+     * @throws FitbitAPIException if the foods can not be loaded
+     */
+    public void indexUserFoods(LocalUserDetail user) throws FitbitAPIException {
+        FitbitApiFoodSearchIndex index = getFoodSearchIndex(user);
+        index.addAll(client.getFavoriteFoods(user, FitbitUser.CURRENT_AUTHORIZED_USER), FitbitApiFoodSearchIndex.Source.FAVORITE);
+        index.addLoggedFoods(client.getFrequentFoods(user, FitbitUser.CURRENT_AUTHORIZED_USER), FitbitApiFoodSearchIndex.Source.FREQUENT);
+        index.addLoggedFoods(client.getRecentFoods(user, FitbitUser.CURRENT_AUTHORIZED_USER), FitbitApiFoodSearchIndex.Source.RECENT);
+    }
+
+    /**
+     * Searches foods for autocomplete. Queries are answered from the user's local food index when it has enough
+     * matches or the API was already searched for the query; otherwise the API is searched and its results are
+     * added to the index.
+     *
+     * @param user authorized user
+     * @param query words typed so far
+     * @param limit maximum number of foods
+     *
+     * @return matching foods
+     *
+     * @throws FitbitAPIException if the API had to be searched and that failed
+     */
+    public List<Food> searchFoods(LocalUserDetail user, String query, int limit) throws FitbitAPIException {
+        FitbitApiFoodSearchIndex index = getFoodSearchIndex(user);
+        List<Food> local = index.search(query, limit);
+        if (local.size() >= limit || index.isSearched(query)) {
+            return local;
+        }
+        List<Food> found = client.searchFoods(user, query);
+        index.addAll(found, FitbitApiFoodSearchIndex.Source.SEARCH);
+        index.markSearched(query);
+        return found.size() > limit ? new ArrayList<Food>(found.subList(0, limit)) : found;
+    }
+
+    public FitbitApiEntityCacheKey getCacheKey(APIResourceCredentials credentials, LocalDate date, APICollectionType type) {
+        return FitbitApiEntityCacheKey.of(resolveOwnerId(credentials, FitbitUser.CURRENT_AUTHORIZED_USER), type, date, APIFormat.JSON);
+    }
+
+    /**
+     * @return url of the collection, the cache key of earlier versions
+     * @deprecated use {@link #getCacheKey(APIResourceCredentials, LocalDate, APICollectionType)}
+     */
+    @Deprecated
     public String getCacheKey(LocalDate date, APICollectionType type) {
-        return APIUtil.constructFullUrl(
-                client.getApiBaseUrl(),
-                client.getApiVersion(),
-                FitbitUser.CURRENT_AUTHORIZED_USER,
-                type,
-                date,
-                APIFormat.JSON
-        );
+        return client.getUrlTemplates().collectionForDate(type).render(FitbitUser.CURRENT_AUTHORIZED_USER, date);
+    }
+
+    /**
+     * Maps a collection url returned by {@link #getCacheKey(LocalDate, APICollectionType)} to the cache key of the
+     * collection, so that entities cached through the deprecated methods are evicted by notifications too
+     *
+     * @return cache key, null if the url is not one of a collection for a date
+     */
+    private FitbitApiEntityCacheKey toCacheKey(APIResourceCredentials credentials, String url) {
+        int dateStart = url.lastIndexOf("/date/") + "/date/".length();
+        int dateEnd = url.lastIndexOf('.');
+        if (dateStart < "/date/".length() || dateEnd - dateStart != FitbitApiService.LOCAL_DATE_PATTERN.length()) {
+            return null;
+        }
+        LocalDate date;
+        try {
+            date = FitbitDateCodec.parseDate(url.substring(dateStart, dateEnd));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        for (APICollectionType type : APICollectionType.values()) {
+            if (url.equals(getCacheKey(date, type))) {
+                return getCacheKey(credentials, date, type);
+            }
+        }
+        return null;
     }
 
+    /**
+     * Resolves the owner of cached entities to a single id, so that entries fetched for {@link FitbitUser#CURRENT_AUTHORIZED_USER}
+     * and notifications naming the user's encoded id map to the same cache key.
+     *
+     * @param credentials credentials the entity is cached under
+     * @param owner owner as given by the request or the notification
+     *
+     * @return the encoded id of the authorized user if the owner is that user (or is not known yet), the owner id otherwise
+     */
+    protected String resolveOwnerId(APIResourceCredentials credentials, FitbitResourceOwner owner) {
+        String authorizedUserId = null == credentials ? null : credentials.getResourceId();
+        if (null == owner || FitbitUser.CURRENT_AUTHORIZED_USER.equals(owner) || null == authorizedUserId || authorizedUserId.equals(owner.getId())) {
+            return null == authorizedUserId ? FitbitUser.CURRENT_AUTHORIZED_USER.getId() : authorizedUserId;
+        }
+        return owner.getId();
+    }
+
+    public Object getFromCache(LocalUserDetail user, APIResourceCredentials credentials, FitbitApiEntityCacheKey cacheKey) {
+        FitbitApiCachedEntity cached = getCachedEntity(user, credentials, cacheKey);
+        return null == cached ? null : cached.getEntity();
+    }
+
+    /**
+     * @deprecated use {@link #getFromCache(LocalUserDetail, APIResourceCredentials, FitbitApiEntityCacheKey)}
+     */
+    @Deprecated
     public Object getFromCache(LocalUserDetail user, APIResourceCredentials credentials, String cacheKey) {
+        FitbitApiEntityCacheKey key = toCacheKey(credentials, cacheKey);
+        if (null != key) {
+            return getFromCache(user, credentials, key);
+        }
         if (null != subscriptionStore && null != subscriptionStore.getBySubscriptionId(user.getUserId()) && null != entityCache) {
-            return entityCache.get(credentials, cacheKey);
+            Object value = entityCache.get(credentials, cacheKey);
+            return value instanceof FitbitApiCachedEntity ? ((FitbitApiCachedEntity) value).getEntity() : value;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the cached entity along with the time it was fetched. Entities are only served from the cache for
+     * users with a subscription, as notifications are what keeps them up to date.
+     *
+     * @param user local user
+     * @param credentials credentials of the user
+     * @param cacheKey cache key of the entity
+     *
+     * @return cached entity or null
+     */
+    public FitbitApiCachedEntity getCachedEntity(LocalUserDetail user, APIResourceCredentials credentials, FitbitApiEntityCacheKey cacheKey) {
+        if (null != subscriptionStore && null != subscriptionStore.getBySubscriptionId(user.getUserId()) && null != entityCache) {
+            Object value = entityCache.get(credentials, cacheKey);
+            if (null == value || value instanceof FitbitApiCachedEntity) {
+                return (FitbitApiCachedEntity) value;
+            }
+            // placed into the cache by someone else, we can not tell its age
+            return new FitbitApiCachedEntity(value, System.currentTimeMillis());
         } else {
             return null;
         }
     }
 
-    public void putInCache(Object result, APIResourceCredentials credentials, String cacheKey) {
+    public void putInCache(Object result, APIResourceCredentials credentials, FitbitApiEntityCacheKey cacheKey) {
+        putInCache(new FitbitApiCachedEntity(result, System.currentTimeMillis()), credentials, cacheKey);
+    }
+
+    public void putInCache(FitbitApiCachedEntity cached, APIResourceCredentials credentials, FitbitApiEntityCacheKey cacheKey) {
         if (null != entityCache) {
-            entityCache.put(credentials, cacheKey, result);
+            entityCache.put(credentials, cacheKey, cached);
+        }
+    }
+
+    /**
+     * @deprecated use {@link #putInCache(Object, APIResourceCredentials, FitbitApiEntityCacheKey)}
+     */
+    @Deprecated
+    public void putInCache(Object result, APIResourceCredentials credentials, String cacheKey) {
+        FitbitApiEntityCacheKey key = toCacheKey(credentials, cacheKey);
+        if (null != key) {
+            putInCache(result, credentials, key);
+        } else if (null != entityCache) {
+            entityCache.put(credentials, cacheKey, new FitbitApiCachedEntity(result, System.currentTimeMillis()));
         }
     }
 
@@ -206,6 +711,8 @@ public class FitbitAPIClientService<C extends FitbitApiClientAgent> {
         if (null != subscription) {
             subscriptionStore.delete(subscription);
         }
+        dropFoodSearchIndex(user);
+        dropMeals(user);
     }
 
     public void evictUpdatedResourcesFromCache(String subscriberId, InputStream updateMessageStream, String serverSignature) throws FitbitAPIException {
@@ -246,42 +753,22 @@ public class FitbitAPIClientService<C extends FitbitApiClientAgent> {
 
                 sub.setLastUpdateNotificationDate(new Date());
 
-                APIResourceCredentials credentials = credentialsCache.getResourceCredentials(new LocalUserDetail(resource.getSubscriptionId()));
-
-                String cacheKeyWithUserId =
-                        APIUtil.constructFullUrl(
-                                client.getApiBaseUrl(),
-                                client.getApiVersion(),
-                                resource.getOwner(),
-                                resource.getCollectionType(),
-                                resource.getDate(),
-                                APIFormat.JSON
-                        );
-
-                Activities entity = (Activities) entityCache.get(credentials, cacheKeyWithUserId);
-                if (null != entity) {
-                    log.info("Evicting entity " + cacheKeyWithUserId);
-                    entityCache.remove(credentials, cacheKeyWithUserId);
-                } else {
-                    log.info("There is no cached version of entity " + cacheKeyWithUserId);
+                LocalUserDetail user = new LocalUserDetail(resource.getSubscriptionId());
+                Set<APICollectionType> affectedTypes = getAffectedCollectionTypes(resource.getCollectionType());
+                if (affectedTypes.contains(APICollectionType.meals)) {
+                    // meals are not kept per day, any food update may have changed them
+                    dropMeals(user);
+                }
+
+                if (null == resource.getDate()) {
+                    log.info("Update notification for subscription " + resource.getSubscriptionId() + " does not name a day, nothing to evict.");
+                    continue;
                 }
 
-                String cacheKeyWithPlaceholder =
-                        APIUtil.constructFullUrl(
-                                client.getApiBaseUrl(),
-                                client.getApiVersion(),
-                                FitbitUser.CURRENT_AUTHORIZED_USER,
-                                resource.getCollectionType(),
-                                resource.getDate(),
-                                APIFormat.JSON
-                        );
-
-                entity = (Activities) entityCache.get(credentials, cacheKeyWithPlaceholder);
-                if (null != entity) {
-                    log.info("Evicting entity " + cacheKeyWithPlaceholder);
-                    entityCache.remove(credentials, cacheKeyWithPlaceholder);
-                } else {
-                    log.info("There is no cached version of entity " + cacheKeyWithPlaceholder);
+                APIResourceCredentials credentials = credentialsCache.getResourceCredentials(user);
+                String ownerId = resolveOwnerId(credentials, resource.getOwner());
+                for (APICollectionType type : affectedTypes) {
+                    evict(user, credentials, FitbitApiEntityCacheKey.of(ownerId, type, resource.getDate(), APIFormat.JSON));
                 }
             }
         } catch (IOException e) {
@@ -291,4 +778,139 @@ public class FitbitAPIClientService<C extends FitbitApiClientAgent> {
         }
     }
 
+    /**
+     * Returns the cached collections affected by an update of the given collection
+     *
+     * @param notifiedType collection named by the update notification, null if the notification covers all collections
+     *
+     * @return collections to evict
+     */
+    protected Set<APICollectionType> getAffectedCollectionTypes(APICollectionType notifiedType) {
+        if (null == notifiedType) {
+            return EnumSet.allOf(APICollectionType.class);
+        }
+        return Collections.unmodifiableSet(AFFECTED_COLLECTIONS.get(notifiedType));
+    }
+
+    protected void evict(LocalUserDetail user, APIResourceCredentials credentials, FitbitApiEntityCacheKey cacheKey) {
+        boolean evicted = null != entityCache && null != entityCache.remove(credentials, cacheKey);
+        RefreshTask task = new RefreshTask(user, credentials, cacheKey);
+        RefreshTask pending = pendingRefreshes.get(task);
+        if (null != pending && pending.markStale()) {
+            // a refresh or revalidation is in flight, it fetches again instead of storing what it got before the update
+            log.info("Evicted entity " + cacheKey + ", pending refresh will refetch it");
+            return;
+        }
+        if (!evicted) {
+            if (log.isDebugEnabled()) {
+                log.debug("There is no cached version of entity " + cacheKey);
+            }
+            return;
+        }
+        log.info("Evicted entity " + cacheKey);
+        if (null != refreshAheadExecutor) {
+            scheduleRefresh(task, refreshAheadExecutor, true);
+        }
+    }
+
+    /**
+     * Schedules a refresh unless one is already pending for the entity
+     *
+     * @param task refresh to schedule
+     * @param executor executor to run it on
+     * @param supersede true if the entity has changed since a pending refresh started, which then has to fetch again
+     */
+    private void scheduleRefresh(RefreshTask task, ExecutorService executor, boolean supersede) {
+        while (true) {
+            RefreshTask pending = pendingRefreshes.putIfAbsent(task, task);
+            if (null == pending) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    pendingRefreshes.remove(task);
+                    log.warn("Refresh of entity " + task.cacheKey + " was rejected: " + e);
+                }
+                return;
+            }
+            if (!supersede || pending.markStale()) {
+                // the running refresh fetches again before it stores anything
+                return;
+            }
+            // the pending refresh has just completed, schedule a new one
+        }
+    }
+
+    /**
+     * Refetches an evicted or stale entity and puts it back into the cache. There is at most one task per user and entity. A task that is marked stale while its fetch is in
+     * flight fetches again, so that an entity older than the latest notification is never stored.
+     */
+    private final class RefreshTask implements Runnable {
+        private final LocalUserDetail user;
+        private final APIResourceCredentials credentials;
+        private final FitbitApiEntityCacheKey cacheKey;
+        private boolean stale;
+        private boolean done;
+
+        RefreshTask(LocalUserDetail user, APIResourceCredentials credentials, FitbitApiEntityCacheKey cacheKey) {
+            this.user = user;
+            this.credentials = credentials;
+            this.cacheKey = cacheKey;
+        }
+
+        synchronized boolean markStale() {
+            if (done) {
+                return false;
+            }
+            stale = true;
+            return true;
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    // revalidates a stale entity, an evicted one is fetched
+                    Object current = null == entityCache ? null : entityCache.get(credentials, cacheKey);
+                    FitbitApiCachedEntity fetched = client.getCollectionForDate(user, FitbitUser.CURRENT_AUTHORIZED_USER, cacheKey.getCollectionType(), cacheKey.getDate(),
+                            current instanceof FitbitApiCachedEntity ? (FitbitApiCachedEntity) current : null);
+                    synchronized (this) {
+                        if (!stale) {
+                            if (null != fetched.getEntity()) {
+                                putInCache(fetched, credentials, cacheKey);
+                            }
+                            finish();
+                            return;
+                        }
+                        stale = false;
+                    }
+                }
+            } catch (FitbitAPIException e) {
+                log.warn("Unable to refresh entity " + cacheKey + ": " + e);
+            } catch (RuntimeException e) {
+                log.warn("Unable to refresh entity " + cacheKey + ": " + e, e);
+            }
+            synchronized (this) {
+                finish();
+            }
+        }
+
+        private void finish() {
+            done = true;
+            pendingRefreshes.remove(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            @SuppressWarnings("unchecked")
+            RefreshTask that = (RefreshTask) o;
+            return user.getUserId().equals(that.user.getUserId()) && cacheKey.equals(that.cacheKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * user.getUserId().hashCode() + cacheKey.hashCode();
+        }
+    }
+
 }
@@ -0,0 +1,15 @@
+package com.fitbit.api.client.service;
+
+/**
+ * How {@link FitbitAPIClientService} serves cached entities that are no longer fresh.
+ */
+public enum FitbitApiCacheReadMode {
+    /**
+     * Stale entities are refetched before the read returns.
+     */
+    FRESH,
+    /**
+     * Stale entities within the staleness bound are returned immediately while a single background fetch revalidates them.
+     */
+    STALE_WHILE_REVALIDATE
+}
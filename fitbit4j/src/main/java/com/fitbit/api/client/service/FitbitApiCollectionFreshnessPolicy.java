@@ -0,0 +1,54 @@
+package com.fitbit.api.client.service;
+
+import com.fitbit.api.client.FitbitApiEntityCacheKey;
+import com.fitbit.api.common.service.FitbitDateCodec;
+import com.fitbit.api.model.APICollectionType;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Freshness policy with separate maximum ages per collection for the current day, which keeps changing while the
+ * user's devices sync, and for past days. Collections without a configured age never expire, so an unconfigured
+ * policy keeps entities until a notification evicts them.
+ * <p>
+ * Example: {@code new FitbitApiCollectionFreshnessPolicy().setTodayMaxAge(APICollectionType.activities, 5 * 60 * 1000)}
+ */
+public class FitbitApiCollectionFreshnessPolicy implements FitbitApiFreshnessPolicy {
+
+    private final Map<APICollectionType, Long> todayMaxAges = new EnumMap<APICollectionType, Long>(APICollectionType.class);
+    private final Map<APICollectionType, Long> pastDaysMaxAges = new EnumMap<APICollectionType, Long>(APICollectionType.class);
+    private DateTimeZone timeZone = DateTimeZone.getDefault();
+
+    public synchronized FitbitApiCollectionFreshnessPolicy setTodayMaxAge(APICollectionType collectionType, long maxAgeMillis) {
+        todayMaxAges.put(collectionType, maxAgeMillis);
+        return this;
+    }
+
+    public synchronized FitbitApiCollectionFreshnessPolicy setPastDaysMaxAge(APICollectionType collectionType, long maxAgeMillis) {
+        pastDaysMaxAges.put(collectionType, maxAgeMillis);
+        return this;
+    }
+
+    /**
+     * Sets the time zone deciding which day is today, the system default unless set.
+     *
+     * @param timeZone time zone of the users
+     *
+     * @return this policy
+     */
+    public synchronized FitbitApiCollectionFreshnessPolicy setTimeZone(DateTimeZone timeZone) {
+        this.timeZone = timeZone;
+        return this;
+    }
+
+    public synchronized long getMaxAgeMillis(FitbitApiEntityCacheKey cacheKey, long now) {
+        int today = FitbitDateCodec.epochDay(new LocalDate(now, timeZone));
+        Long maxAge = cacheKey.getEpochDay() >= today
+                ? todayMaxAges.get(cacheKey.getCollectionType())
+                : pastDaysMaxAges.get(cacheKey.getCollectionType());
+        return maxAge == null ? NEVER_EXPIRES : maxAge;
+    }
+}
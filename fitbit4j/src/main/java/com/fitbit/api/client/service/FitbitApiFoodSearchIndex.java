@@ -0,0 +1,498 @@
+package com.fitbit.api.client.service;
+
+import com.fitbit.api.common.model.foods.Food;
+import com.fitbit.api.common.model.foods.LoggedFood;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local index of foods for prefix autocomplete.
+ * <p>
+ * Food names and brands are split into lower-case words without accents and stored in a trie whose nodes keep the
+ * {@link #TOP_RESULTS_PER_PREFIX best ranked} foods below them, so that typical queries are answered from a single
+ * node. Every query word matches the beginning of a word of the food, e.g. "gr ap" finds "Apple, Green".
+ * <p>
+ * Foods rank by how they became known: favorites before frequent, recent and searched foods. The index is updated
+ * incrementally and is safe for concurrent use.
+ */
+public class FitbitApiFoodSearchIndex {
+
+    public static final int TOP_RESULTS_PER_PREFIX = 16;
+    private static final int MAX_SEARCHED_QUERIES = 256;
+
+    /**
+     * How a food became known, each adding its weight to the rank of the food once
+     */
+    public enum Source {
+        SEARCH(1),
+        RECENT(20),
+        FREQUENT(40),
+        FAVORITE(100);
+
+        private final int weight;
+
+        Source(int weight) {
+            this.weight = weight;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+    }
+
+    private static final Comparator<Entry> BY_RANK = new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+            if (a.score != b.score) {
+                return a.score > b.score ? -1 : 1;
+            }
+            int byName = a.sortName.compareTo(b.sortName);
+            if (byName != 0) {
+                return byName;
+            }
+            return a.foodId < b.foodId ? -1 : a.foodId == b.foodId ? 0 : 1;
+        }
+    };
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node();
+    private final Map<Long, Entry> entries = new HashMap<Long, Entry>();
+    private final Map<String, Boolean> searchedQueries = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_SEARCHED_QUERIES;
+        }
+    };
+
+    public void add(Food food, Source source) {
+        lock.writeLock().lock();
+        try {
+            addEntry(food, false, source);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(Collection<Food> foods, Source source) {
+        lock.writeLock().lock();
+        try {
+            for (Food food : foods) {
+                addEntry(food, false, source);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds logged foods, such as recent or frequent ones. Foods already known from search results or favorites keep
+     * their details, the logged food only contributes its rank.
+     *
+     * @param loggedFoods logged foods
+     * @param source how the foods became known
+     */
+    public void addLoggedFoods(Collection<LoggedFood> loggedFoods, Source source) {
+        lock.writeLock().lock();
+        try {
+            for (LoggedFood loggedFood : loggedFoods) {
+                Food food = new Food(loggedFood.getFoodId(), loggedFood.getName(), loggedFood.getBrand(), loggedFood.getAccessLevel(),
+                        loggedFood.getCalories(), loggedFood.getAmount(), loggedFood.getUnit(), loggedFood.getUnits());
+                addEntry(food, true, source);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param foodId food id
+     *
+     * @return true if the food was indexed
+     */
+    public boolean remove(long foodId) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.remove(foodId);
+            if (null == entry) {
+                return false;
+            }
+            // rebuilding the best ranked entries of a node collects the terminal ones, which must not include it anymore
+            for (String token : entry.tokens) {
+                Node node = find(token);
+                if (null != node && null != node.terminal) {
+                    node.terminal.remove(entry);
+                }
+            }
+            for (Node node : pathNodes(entry, false)) {
+                node.count--;
+                if (node.removeFromTop(entry)) {
+                    node.rebuildTop();
+                }
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the best ranked foods matching a query
+     *
+     * @param query words typed so far
+     * @param limit maximum number of foods
+     *
+     * @return matching foods, best ranked first
+     */
+    public List<Food> search(String query, int limit) {
+        String[] tokens = tokenize(query);
+        if (tokens.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            // start from the most selective word
+            Node selective = null;
+            for (String token : tokens) {
+                Node node = find(token);
+                if (null == node || node.count == 0) {
+                    return Collections.emptyList();
+                }
+                if (null == selective || node.count < selective.count) {
+                    selective = node;
+                }
+            }
+            List<Food> result = new ArrayList<Food>(Math.min(limit, selective.count));
+            for (int i = 0; i < selective.topSize && result.size() < limit; i++) {
+                Entry entry = selective.top[i];
+                if (tokens.length == 1 || entry.matches(tokens)) {
+                    result.add(entry.food);
+                }
+            }
+            if (result.size() == limit || selective.count == selective.topSize) {
+                return result;
+            }
+            // the best ranked foods of the node are not enough, look at all of them
+            List<Entry> candidates = new ArrayList<Entry>();
+            selective.collectMatching(tokens, candidates);
+            Collections.sort(candidates, BY_RANK);
+            result.clear();
+            Entry previous = null;
+            for (int i = 0; i < candidates.size() && result.size() < limit; i++) {
+                // an entry with several words below the node is collected once per word
+                Entry entry = candidates.get(i);
+                if (entry != previous) {
+                    result.add(entry.food);
+                    previous = entry;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param query query
+     *
+     * @return true if the results of the API for the query were added to the index
+     */
+    public boolean isSearched(String query) {
+        String key = normalize(query);
+        lock.writeLock().lock();
+        try {
+            return null != searchedQueries.get(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void markSearched(String query) {
+        String key = normalize(query);
+        lock.writeLock().lock();
+        try {
+            searchedQueries.put(key, Boolean.TRUE);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ********************************************************************* */
+
+    private void addEntry(Food food, boolean fromLoggedFood, Source source) {
+        Entry entry = entries.get(food.getFoodId());
+        if (null == entry) {
+            entry = new Entry(food, fromLoggedFood);
+            entries.put(entry.foodId, entry);
+            entry.addSource(source);
+            for (String token : entry.tokens) {
+                Node node = root;
+                for (int i = 0; i < token.length(); i++) {
+                    node = node.child(token.charAt(i), true);
+                }
+                if (null == node.terminal) {
+                    node.terminal = new ArrayList<Entry>(1);
+                }
+                node.terminal.add(entry);
+            }
+            for (Node node : pathNodes(entry, true)) {
+                node.count++;
+                node.offer(entry);
+            }
+            return;
+        }
+        if (entry.fromLoggedFood && !fromLoggedFood) {
+            // searched and favorite foods carry the full details, the name is the same
+            entry.food = food;
+            entry.fromLoggedFood = false;
+        }
+        if (entry.addSource(source)) {
+            // ranks only grow, so the entry can only move up in the nodes that list it
+            for (Node node : pathNodes(entry, false)) {
+                node.removeFromTop(entry);
+                node.offer(entry);
+            }
+        }
+    }
+
+    /**
+     * @return distinct nodes on the paths of all words of the entry, the root excluded
+     */
+    private Collection<Node> pathNodes(Entry entry, boolean create) {
+        Map<Node, Boolean> nodes = new IdentityHashMap<Node, Boolean>();
+        for (String token : entry.tokens) {
+            Node node = root;
+            for (int i = 0; i < token.length() && null != node; i++) {
+                node = node.child(token.charAt(i), create);
+                if (null != node) {
+                    nodes.put(node, Boolean.TRUE);
+                }
+            }
+        }
+        return nodes.keySet();
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && null != node; i++) {
+            node = node.child(prefix.charAt(i), false);
+        }
+        return node;
+    }
+
+    static String normalize(String text) {
+        if (null == text) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+                space = false;
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK && !space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == ' ') {
+            sb.setLength(length - 1);
+        }
+        return sb.toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    static String[] tokenize(String text) {
+        String normalized = normalize(text);
+        return normalized.length() == 0 ? new String[0] : normalized.split(" ");
+    }
+
+    private static final class Entry {
+        final long foodId;
+        final String[] tokens;
+        final String sortName;
+        Food food;
+        boolean fromLoggedFood;
+        int score;
+        private int sources;
+
+        Entry(Food food, boolean fromLoggedFood) {
+            this.foodId = food.getFoodId();
+            this.food = food;
+            this.fromLoggedFood = fromLoggedFood;
+            this.sortName = normalize(food.getName());
+            String brand = food.getBrand();
+            String[] nameTokens = tokenize(food.getName());
+            String[] brandTokens = null == brand ? new String[0] : tokenize(brand);
+            String[] all = Arrays.copyOf(nameTokens, nameTokens.length + brandTokens.length);
+            System.arraycopy(brandTokens, 0, all, nameTokens.length, brandTokens.length);
+            this.tokens = all;
+        }
+
+        boolean addSource(Source source) {
+            int bit = 1 << source.ordinal();
+            if ((sources & bit) != 0) {
+                return false;
+            }
+            sources |= bit;
+            score += source.getWeight();
+            return true;
+        }
+
+        boolean matches(String[] queryTokens) {
+            for (String queryToken : queryTokens) {
+                boolean found = false;
+                for (String token : tokens) {
+                    if (token.startsWith(queryToken)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Trie node with sorted child arrays instead of maps to keep the index compact
+     */
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        char[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        /**
+         * Entries having a word that ends here
+         */
+        List<Entry> terminal;
+        /**
+         * Number of distinct entries having a word with this prefix
+         */
+        int count;
+        final Entry[] top = new Entry[TOP_RESULTS_PER_PREFIX];
+        int topSize;
+
+        Node child(char key, boolean create) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            if (!create) {
+                return null;
+            }
+            int insertAt = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newKeys[insertAt] = key;
+            Node child = new Node();
+            newChildren[insertAt] = child;
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        /**
+         * Inserts the entry into the best ranked ones if it ranks high enough
+         */
+        void offer(Entry entry) {
+            if (topSize == top.length && BY_RANK.compare(entry, top[topSize - 1]) >= 0) {
+                return;
+            }
+            int position = topSize < top.length ? topSize : topSize - 1;
+            while (position > 0 && BY_RANK.compare(entry, top[position - 1]) < 0) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = entry;
+            if (topSize < top.length) {
+                topSize++;
+            }
+        }
+
+        boolean removeFromTop(Entry entry) {
+            for (int i = 0; i < topSize; i++) {
+                if (top[i] == entry) {
+                    System.arraycopy(top, i + 1, top, i, topSize - i - 1);
+                    top[--topSize] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void rebuildTop() {
+            Arrays.fill(top, null);
+            topSize = 0;
+            for (Entry entry : collect()) {
+                offer(entry);
+            }
+        }
+
+        /**
+         * @return all distinct entries having a word with this prefix
+         */
+        Set<Entry> collect() {
+            Map<Entry, Boolean> collected = new IdentityHashMap<Entry, Boolean>(count * 2);
+            collect(this, collected);
+            return collected.keySet();
+        }
+
+        /**
+         * Adds the entries with a word ending below this node that match all query words, possibly several times
+         */
+        void collectMatching(String[] queryTokens, List<Entry> matching) {
+            if (null != terminal) {
+                for (Entry entry : terminal) {
+                    if (entry.matches(queryTokens)) {
+                        matching.add(entry);
+                    }
+                }
+            }
+            for (Node child : children) {
+                child.collectMatching(queryTokens, matching);
+            }
+        }
+
+        private static void collect(Node node, Map<Entry, Boolean> collected) {
+            if (null != node.terminal) {
+                for (Entry entry : node.terminal) {
+                    collected.put(entry, Boolean.TRUE);
+                }
+            }
+            for (Node child : node.children) {
+                collect(child, collected);
+            }
+        }
+    }
+}
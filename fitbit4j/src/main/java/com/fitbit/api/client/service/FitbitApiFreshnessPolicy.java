@@ -0,0 +1,19 @@
+package com.fitbit.api.client.service;
+
+import com.fitbit.api.client.FitbitApiEntityCacheKey;
+
+/**
+ * Decides how long a cached collection entity stays fresh.
+ */
+public interface FitbitApiFreshnessPolicy {
+
+    long NEVER_EXPIRES = Long.MAX_VALUE;
+
+    /**
+     * @param cacheKey key of the cached entity
+     * @param now current time in milliseconds since the epoch
+     *
+     * @return maximum age in milliseconds of a fresh entity, {@link #NEVER_EXPIRES} if it stays fresh until evicted by a notification
+     */
+    long getMaxAgeMillis(FitbitApiEntityCacheKey cacheKey, long now);
+}
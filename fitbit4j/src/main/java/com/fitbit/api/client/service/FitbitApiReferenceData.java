@@ -0,0 +1,187 @@
+package com.fitbit.api.client.service;
+
+import com.fitbit.api.FitbitAPIException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Slow-changing data loaded from the API, such as catalogs, kept for a time to live.
+ * <p>
+ * Reads of data older than the refresh interval return it and reload it in the background, so that callers only wait
+ * for the API when the data is missing or has outlived its time to live. Concurrent loads are coalesced.
+ *
+ * @param <T> type of the data
+ */
+public abstract class FitbitApiReferenceData<T> {
+    private static final Log log = LogFactory.getLog(FitbitApiReferenceData.class);
+
+    private final String name;
+    private volatile long timeToLiveMillis;
+    private volatile long refreshAfterMillis;
+    private volatile ExecutorService refreshExecutor;
+
+    private volatile Loaded<T> loaded;
+    private final Object loadLock = new Object();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    /**
+     * Incremented on invalidation, so that loads started before do not store outdated data
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+    private final long createdAt = System.currentTimeMillis();
+
+    /**
+     * @param name name used in log messages
+     * @param timeToLiveMillis time after which the data has to be loaded again before it is returned
+     * @param refreshAfterMillis time after which reads trigger a background reload, at most the time to live
+     */
+    protected FitbitApiReferenceData(String name, long timeToLiveMillis, long refreshAfterMillis) {
+        this.name = name;
+        setTimeToLive(timeToLiveMillis, refreshAfterMillis);
+    }
+
+    /**
+     * Loads the data from the API
+     *
+     * @return data
+     *
+     * @throws FitbitAPIException if the data can not be loaded
+     */
+    protected abstract T load() throws FitbitAPIException;
+
+    /**
+     * Returns the data, loading it if it is missing or expired
+     *
+     * @return data
+     *
+     * @throws FitbitAPIException if the data had to be loaded and that failed
+     */
+    public T get() throws FitbitAPIException {
+        Loaded<T> current = loaded;
+        long now = System.currentTimeMillis();
+        if (null != current && now - current.loadedAt < timeToLiveMillis) {
+            if (now - current.loadedAt >= refreshAfterMillis) {
+                refreshInBackground();
+            }
+            return current.value;
+        }
+        synchronized (loadLock) {
+            current = loaded;
+            if (null != current && System.currentTimeMillis() - current.loadedAt < timeToLiveMillis) {
+                return current.value;
+            }
+            return reload();
+        }
+    }
+
+    /**
+     * @return the data if it is loaded, without loading it or checking its age
+     */
+    public T peek() {
+        Loaded<T> current = loaded;
+        return null == current ? null : current.value;
+    }
+
+    /**
+     * @return true if the data has outlived its time to live, or nothing was loaded within the time to live since this
+     * was created
+     */
+    public boolean isExpired() {
+        Loaded<T> current = loaded;
+        return System.currentTimeMillis() - (null == current ? createdAt : current.loadedAt) >= timeToLiveMillis;
+    }
+
+    /**
+     * Drops the data, so that the next read loads it again
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        loaded = null;
+    }
+
+    public void setTimeToLive(long timeToLiveMillis, long refreshAfterMillis) {
+        if (refreshAfterMillis > timeToLiveMillis) {
+            throw new IllegalArgumentException("Refresh interval " + refreshAfterMillis + " exceeds the time to live " + timeToLiveMillis);
+        }
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.refreshAfterMillis = refreshAfterMillis;
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    public long getRefreshAfterMillis() {
+        return refreshAfterMillis;
+    }
+
+    /**
+     * Sets the executor of background reloads. Without one, data is only reloaded once it has expired.
+     *
+     * @param refreshExecutor executor, may be null
+     */
+    public void setRefreshExecutor(ExecutorService refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Called with the freshly loaded data before it is returned to readers, for example to publish an index of it
+     *
+     * @param value loaded data
+     */
+    protected void loaded(T value) {
+    }
+
+    private T reload() throws FitbitAPIException {
+        int loadGeneration = generation.get();
+        T value = load();
+        if (loadGeneration == generation.get()) {
+            loaded(value);
+            loaded = new Loaded<T>(value, System.currentTimeMillis());
+        } else {
+            log.debug("Reference data " + name + " was invalidated while loading, not keeping it");
+        }
+        return value;
+    }
+
+    private void refreshInBackground() {
+        ExecutorService executor = refreshExecutor;
+        if (null == executor || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        synchronized (loadLock) {
+                            reload();
+                        }
+                    } catch (FitbitAPIException e) {
+                        log.warn("Unable to refresh reference data " + name + ", keeping the loaded data: " + e);
+                    } catch (RuntimeException e) {
+                        log.warn("Unable to refresh reference data " + name + ", keeping the loaded data: " + e, e);
+                    } finally {
+                        refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+            log.debug("Background refresh of reference data " + name + " rejected: " + e);
+        }
+    }
+
+    private static final class Loaded<T> {
+        final T value;
+        final long loadedAt;
+
+        Loaded(T value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.fitbit.api.common.model.achievement;
 
-import com.fitbit.api.common.service.FitbitApiService;
+import com.fitbit.api.common.service.FitbitDateCodec;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -28,19 +28,19 @@ public class BestAchievement {
 
     public BestAchievement(JSONObject jsonObject) throws JSONException {
         if (jsonObject.has("caloriesOut")) {
-            this.caloriesOut = new BestAchievementItem(jsonObject.getJSONObject("caloriesOut").getDouble("value"), FitbitApiService.LOCAL_DATE_FORMATTER.parseDateTime(jsonObject.getJSONObject("caloriesOut").getString("date")).toLocalDate());
+            this.caloriesOut = new BestAchievementItem(jsonObject.getJSONObject("caloriesOut").getDouble("value"), FitbitDateCodec.parseDate(jsonObject.getJSONObject("caloriesOut").getString("date")));
         }
         if (jsonObject.has("floors")) {
-            this.floors = new BestAchievementItem(jsonObject.getJSONObject("floors").getDouble("value"), FitbitApiService.LOCAL_DATE_FORMATTER.parseDateTime(jsonObject.getJSONObject("floors").getString("date")).toLocalDate());
+            this.floors = new BestAchievementItem(jsonObject.getJSONObject("floors").getDouble("value"), FitbitDateCodec.parseDate(jsonObject.getJSONObject("floors").getString("date")));
         }
         if (jsonObject.has("distance")) {
-            this.distance = new BestAchievementItem(jsonObject.getJSONObject("distance").getDouble("value"), FitbitApiService.LOCAL_DATE_FORMATTER.parseDateTime(jsonObject.getJSONObject("distance").getString("date")).toLocalDate());
+            this.distance = new BestAchievementItem(jsonObject.getJSONObject("distance").getDouble("value"), FitbitDateCodec.parseDate(jsonObject.getJSONObject("distance").getString("date")));
         }
         if (jsonObject.has("steps")) {
-            this.steps = new BestAchievementItem(jsonObject.getJSONObject("steps").getDouble("value"), FitbitApiService.LOCAL_DATE_FORMATTER.parseDateTime(jsonObject.getJSONObject("steps").getString("date")).toLocalDate());
+            this.steps = new BestAchievementItem(jsonObject.getJSONObject("steps").getDouble("value"), FitbitDateCodec.parseDate(jsonObject.getJSONObject("steps").getString("date")));
         }
         if (jsonObject.has("activeScore")) {
-            this.activeScore = new BestAchievementItem(jsonObject.getJSONObject("activeScore").getDouble("value"), FitbitApiService.LOCAL_DATE_FORMATTER.parseDateTime(jsonObject.getJSONObject("activeScore").getString("date")).toLocalDate());
+            this.activeScore = new BestAchievementItem(jsonObject.getJSONObject("activeScore").getDouble("value"), FitbitDateCodec.parseDate(jsonObject.getJSONObject("activeScore").getString("date")));
         }
     }
 
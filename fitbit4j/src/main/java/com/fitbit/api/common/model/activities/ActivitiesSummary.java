@@ -21,6 +21,23 @@ public class ActivitiesSummary {
     private int veryActiveMinutes;
     private List<ActivityDistance> distances;
 
+    public ActivitiesSummary(int caloriesOut, int activityCalories, int marginalCalories, int activeScore, int steps,
+                             Integer floors, Double elevation, int sedentaryMinutes, int lightlyActiveMinutes,
+                             int fairlyActiveMinutes, int veryActiveMinutes, List<ActivityDistance> distances) {
+        this.caloriesOut = caloriesOut;
+        this.activityCalories = activityCalories;
+        this.marginalCalories = marginalCalories;
+        this.activeScore = activeScore;
+        this.steps = steps;
+        this.floors = floors;
+        this.elevation = elevation;
+        this.sedentaryMinutes = sedentaryMinutes;
+        this.lightlyActiveMinutes = lightlyActiveMinutes;
+        this.fairlyActiveMinutes = fairlyActiveMinutes;
+        this.veryActiveMinutes = veryActiveMinutes;
+        this.distances = distances;
+    }
+
     public ActivitiesSummary(JSONObject json) throws JSONException {
         caloriesOut = json.getInt("caloriesOut");
         activityCalories = json.getInt("activityCalories");
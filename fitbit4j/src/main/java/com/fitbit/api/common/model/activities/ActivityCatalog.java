@@ -0,0 +1,54 @@
+package com.fitbit.api.common.model.activities;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable tree of activity categories with an index of all activities it contains by id.
+ */
+public final class ActivityCatalog {
+
+    private final List<ActivityCategory> categories;
+    private final Map<Long, Activity> activitiesById = new HashMap<Long, Activity>();
+
+    public ActivityCatalog(List<ActivityCategory> categories) {
+        this.categories = Collections.unmodifiableList(categories);
+        for (ActivityCategory category : categories) {
+            index(category);
+        }
+    }
+
+    private void index(ActivityCategory category) {
+        if (null != category.getActivities()) {
+            for (DisplayableActivity activity : category.getActivities()) {
+                if (activity instanceof Activity) {
+                    activitiesById.put(activity.getId(), (Activity) activity);
+                }
+            }
+        }
+        if (null != category.getSubCategories()) {
+            for (ActivityCategory subCategory : category.getSubCategories()) {
+                index(subCategory);
+            }
+        }
+    }
+
+    public List<ActivityCategory> getCategories() {
+        return categories;
+    }
+
+    /**
+     * @param id activity id
+     *
+     * @return activity, null if the catalog does not contain it
+     */
+    public Activity getActivity(long id) {
+        return activitiesById.get(id);
+    }
+
+    public int getActivityCount() {
+        return activitiesById.size();
+    }
+}
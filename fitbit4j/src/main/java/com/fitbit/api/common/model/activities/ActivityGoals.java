@@ -15,6 +15,14 @@ public class ActivityGoals {
     public ActivityGoals() {
     }
 
+    public ActivityGoals(Integer caloriesOut, Integer steps, Double distance, Integer activeScore, Integer floors) {
+        this.caloriesOut = caloriesOut;
+        this.steps = steps;
+        this.distance = distance;
+        this.activeScore = activeScore;
+        this.floors = floors;
+    }
+
     public ActivityGoals(JSONObject json) throws JSONException {
         if (StringUtils.isNotBlank(json.optString("caloriesOut"))) {
             caloriesOut = json.getInt("caloriesOut");
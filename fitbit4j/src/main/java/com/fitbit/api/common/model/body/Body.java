@@ -29,6 +29,11 @@ public class Body {
         this.calf = calf;
     }
 
+    public Body(double weight, double bmi, double fat, double neck, double bicep, double forearm, double chest, double waist, double hips, double thigh, double calf) {
+        this(weight, fat, neck, bicep, forearm, chest, waist, hips, thigh, calf);
+        this.bmi = bmi;
+    }
+
     public Body(JSONObject bodyJson) throws JSONException {
         weight = bodyJson.getDouble("weight");
         bmi = bodyJson.getDouble("bmi");
@@ -8,6 +8,11 @@ public class BodyGoals {
     private Double weight;
     private Double fat;
 
+    public BodyGoals(Double weight, Double fat) {
+        this.weight = weight;
+        this.fat = fat;
+    }
+
     public BodyGoals(JSONObject json) throws JSONException {
         if (json.has("weight")) {
             weight = json.getDouble("weight");
@@ -0,0 +1,818 @@
+package com.fitbit.api.common.model.codec;
+
+import com.fitbit.api.common.model.activities.Activities;
+import com.fitbit.api.common.model.activities.ActivitiesSummary;
+import com.fitbit.api.common.model.activities.ActivityDistance;
+import com.fitbit.api.common.model.activities.ActivityGoals;
+import com.fitbit.api.common.model.activities.ActivityLog;
+import com.fitbit.api.common.model.body.Body;
+import com.fitbit.api.common.model.body.BodyGoals;
+import com.fitbit.api.common.model.body.BodyWithGoals;
+import com.fitbit.api.common.model.body.WeightLog;
+import com.fitbit.api.common.model.foods.FoodLog;
+import com.fitbit.api.common.model.foods.FoodUnit;
+import com.fitbit.api.common.model.foods.FoodUnitCatalog;
+import com.fitbit.api.common.model.foods.Foods;
+import com.fitbit.api.common.model.foods.FoodsGoals;
+import com.fitbit.api.common.model.foods.FoodsSummary;
+import com.fitbit.api.common.model.foods.LoggedFood;
+import com.fitbit.api.common.model.foods.Meal;
+import com.fitbit.api.common.model.foods.NutritionalValues;
+import com.fitbit.api.common.model.sleep.Sleep;
+import com.fitbit.api.common.model.sleep.SleepLog;
+import com.fitbit.api.common.model.sleep.SleepSummary;
+import com.fitbit.api.common.model.timeseries.Data;
+import com.fitbit.api.common.model.timeseries.IntradayData;
+import com.fitbit.api.common.model.timeseries.IntradayDataset;
+import com.fitbit.api.common.model.timeseries.IntradaySummary;
+import com.fitbit.api.common.model.user.Gender;
+import com.fitbit.api.common.model.user.UserInfo;
+import com.fitbit.api.common.service.FitbitDateCodec;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format of the collection and user model classes, used to keep entities in caches and stores
+ * outside of the heap at a fraction of the size of their JSON or java.io serialized forms.
+ * <p>
+ * {@link #encode} starts the data with {@link #FORMAT_VERSION}, followed by a type tag and the fields of the
+ * entity in declaration order. Nested entities of a known type are written without a tag. Tags are never reused,
+ * so data written by an older version stays readable when types are added.
+ * <p>
+ * Supported types: {@link Activities}, {@link Foods}, {@link Meal}, {@link FoodUnit}, {@link Sleep}, {@link Body},
+ * {@link BodyWithGoals}, {@link WeightLog}, {@link UserInfo}, {@link Data}, {@link IntradaySummary}, strings and
+ * lists of any of these.
+ */
+public final class BinaryModelCodec {
+
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_LIST = 1;
+    private static final int TAG_STRING = 2;
+    private static final int TAG_ACTIVITIES = 10;
+    private static final int TAG_FOODS = 20;
+    private static final int TAG_MEAL = 21;
+    private static final int TAG_FOOD_UNIT = 22;
+    private static final int TAG_SLEEP = 30;
+    private static final int TAG_BODY = 40;
+    private static final int TAG_BODY_WITH_GOALS = 41;
+    private static final int TAG_WEIGHT_LOG = 42;
+    private static final int TAG_USER_INFO = 50;
+    private static final int TAG_DATA = 60;
+    private static final int TAG_INTRADAY_SUMMARY = 61;
+
+    private static final int TIMES_AS_SECONDS = 0;
+    private static final int TIMES_AS_STRINGS = 1;
+
+    private static final Map<Class<?>, Integer> TAGS = new HashMap<Class<?>, Integer>();
+
+    static {
+        TAGS.put(String.class, TAG_STRING);
+        TAGS.put(Activities.class, TAG_ACTIVITIES);
+        TAGS.put(Foods.class, TAG_FOODS);
+        TAGS.put(Meal.class, TAG_MEAL);
+        TAGS.put(FoodUnit.class, TAG_FOOD_UNIT);
+        TAGS.put(Sleep.class, TAG_SLEEP);
+        TAGS.put(Body.class, TAG_BODY);
+        TAGS.put(BodyWithGoals.class, TAG_BODY_WITH_GOALS);
+        TAGS.put(WeightLog.class, TAG_WEIGHT_LOG);
+        TAGS.put(UserInfo.class, TAG_USER_INFO);
+        TAGS.put(Data.class, TAG_DATA);
+        TAGS.put(IntradaySummary.class, TAG_INTRADAY_SUMMARY);
+    }
+
+    private static final LocalDate EPOCH = new LocalDate(1970, 1, 1);
+    private static final Gender[] GENDERS = Gender.values();
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    /**
+     * Intraday times of whole minutes, shared by all decoded datasets
+     */
+    private static final String[] MINUTE_TIMES = new String[24 * 60];
+
+    private BinaryModelCodec() {
+    }
+
+    /**
+     * @param value entity
+     *
+     * @return true if the entity and all entities it contains can be encoded
+     */
+    public static boolean supports(Object value) {
+        if (null == value) {
+            return true;
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!supports(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return TAGS.containsKey(value.getClass());
+    }
+
+    /**
+     * Encodes an entity, reusing the output buffer of the current thread
+     *
+     * @param value entity
+     *
+     * @return binary form, starting with the format version
+     *
+     * @throws IOException if the entity or one it contains is of an unsupported type
+     */
+    public static byte[] encode(Object value) throws IOException {
+        BinaryModelOutput out = BinaryModelOutput.forCurrentThread();
+        out.writeVarInt(FORMAT_VERSION);
+        writeObject(out, value);
+        return out.toByteArray();
+    }
+
+    public static Object decode(byte[] data) throws IOException {
+        return decode(data, 0, data.length);
+    }
+
+    public static Object decode(byte[] data, int offset, int length) throws IOException {
+        BinaryModelInput in = new BinaryModelInput(data, offset, length);
+        int version = in.readVarInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported binary model format version " + version);
+        }
+        return readObject(in);
+    }
+
+    public static void writeObject(BinaryModelOutput out, Object value) throws IOException {
+        if (null == value) {
+            out.writeVarInt(TAG_NULL);
+            return;
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeVarInt(TAG_LIST);
+            out.writeVarInt(list.size());
+            for (Object element : list) {
+                writeObject(out, element);
+            }
+            return;
+        }
+        Integer tag = TAGS.get(value.getClass());
+        if (null == tag) {
+            throw new IOException("Unsupported type for binary model format: " + value.getClass().getName());
+        }
+        out.writeVarInt(tag);
+        switch (tag) {
+            case TAG_STRING:
+                out.writeString((String) value);
+                break;
+            case TAG_ACTIVITIES:
+                writeActivities(out, (Activities) value);
+                break;
+            case TAG_FOODS:
+                writeFoods(out, (Foods) value);
+                break;
+            case TAG_MEAL:
+                writeMeal(out, (Meal) value);
+                break;
+            case TAG_FOOD_UNIT:
+                writeFoodUnit(out, (FoodUnit) value);
+                break;
+            case TAG_SLEEP:
+                writeSleep(out, (Sleep) value);
+                break;
+            case TAG_BODY:
+                writeBody(out, (Body) value);
+                break;
+            case TAG_BODY_WITH_GOALS:
+                writeBodyWithGoals(out, (BodyWithGoals) value);
+                break;
+            case TAG_WEIGHT_LOG:
+                writeWeightLog(out, (WeightLog) value);
+                break;
+            case TAG_USER_INFO:
+                writeUserInfo(out, (UserInfo) value);
+                break;
+            case TAG_DATA:
+                writeData(out, (Data) value);
+                break;
+            case TAG_INTRADAY_SUMMARY:
+                writeIntradaySummary(out, (IntradaySummary) value);
+                break;
+            default:
+                throw new IllegalStateException("No writer for tag " + tag);
+        }
+    }
+
+    public static Object readObject(BinaryModelInput in) throws IOException {
+        int tag = in.readVarInt();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_LIST:
+                int size = in.readSize();
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readObject(in));
+                }
+                return list;
+            case TAG_STRING:
+                return in.readString();
+            case TAG_ACTIVITIES:
+                return readActivities(in);
+            case TAG_FOODS:
+                return readFoods(in);
+            case TAG_MEAL:
+                return readMeal(in);
+            case TAG_FOOD_UNIT:
+                return readFoodUnit(in);
+            case TAG_SLEEP:
+                return readSleep(in);
+            case TAG_BODY:
+                return readBody(in);
+            case TAG_BODY_WITH_GOALS:
+                return readBodyWithGoals(in);
+            case TAG_WEIGHT_LOG:
+                return readWeightLog(in);
+            case TAG_USER_INFO:
+                return readUserInfo(in);
+            case TAG_DATA:
+                return readData(in);
+            case TAG_INTRADAY_SUMMARY:
+                return readIntradaySummary(in);
+            default:
+                throw new IOException("Unknown type tag " + tag + " in binary model data");
+        }
+    }
+
+    /* ********************************************************************* */
+
+    private static void writeActivities(BinaryModelOutput out, Activities activities) {
+        ActivitiesSummary summary = activities.getSummary();
+        out.writeBoolean(null != summary);
+        if (null != summary) {
+            out.writeSignedInt(summary.getCaloriesOut());
+            out.writeSignedInt(summary.getActivityCalories());
+            out.writeSignedInt(summary.getMarginalCalories());
+            out.writeSignedInt(summary.getActiveScore());
+            out.writeSignedInt(summary.getSteps());
+            out.writeNullableInt(summary.getFloors());
+            out.writeNullableDouble(summary.getElevation());
+            out.writeSignedInt(summary.getSedentaryMinutes());
+            out.writeSignedInt(summary.getLightlyActiveMinutes());
+            out.writeSignedInt(summary.getFairlyActiveMinutes());
+            out.writeSignedInt(summary.getVeryActiveMinutes());
+            List<ActivityDistance> distances = summary.getDistances();
+            out.writeVarInt(null == distances ? 0 : distances.size() + 1);
+            if (null != distances) {
+                for (ActivityDistance distance : distances) {
+                    out.writeString(distance.getActivity());
+                    out.writeCompactDouble(distance.getDistance());
+                }
+            }
+        }
+        List<ActivityLog> logs = activities.getActivities();
+        out.writeVarInt(null == logs ? 0 : logs.size() + 1);
+        if (null != logs) {
+            for (ActivityLog log : logs) {
+                out.writeSignedLong(log.getLogId());
+                out.writeSignedLong(log.getActivityId());
+                out.writeString(log.getName());
+                out.writeString(log.getDescription());
+                out.writeNullableLong(log.getActivityParentId());
+                out.writeString(log.getActivityParentName());
+                out.writeString(log.getStartTime());
+                out.writeBoolean(log.getHasStartTime());
+                out.writeSignedInt(log.getDuration());
+                out.writeNullableDouble(log.getDistance());
+                out.writeSignedInt(log.getCalories());
+                out.writeNullableInt(log.getSteps());
+                out.writeBoolean(log.isFavorite());
+            }
+        }
+        ActivityGoals goals = activities.getActivityGoals();
+        out.writeBoolean(null != goals);
+        if (null != goals) {
+            out.writeNullableInt(goals.getCaloriesOut());
+            out.writeNullableInt(goals.getSteps());
+            out.writeNullableDouble(goals.getDistance());
+            out.writeNullableInt(goals.getActiveScore());
+            out.writeNullableInt(goals.getFloors());
+        }
+    }
+
+    private static Activities readActivities(BinaryModelInput in) throws IOException {
+        ActivitiesSummary summary = null;
+        if (in.readBoolean()) {
+            int caloriesOut = in.readSignedInt();
+            int activityCalories = in.readSignedInt();
+            int marginalCalories = in.readSignedInt();
+            int activeScore = in.readSignedInt();
+            int steps = in.readSignedInt();
+            Integer floors = in.readNullableInt();
+            Double elevation = in.readNullableDouble();
+            int sedentaryMinutes = in.readSignedInt();
+            int lightlyActiveMinutes = in.readSignedInt();
+            int fairlyActiveMinutes = in.readSignedInt();
+            int veryActiveMinutes = in.readSignedInt();
+            List<ActivityDistance> distances = null;
+            int size = in.readSize();
+            if (size > 0) {
+                distances = new ArrayList<ActivityDistance>(size - 1);
+                for (int i = 1; i < size; i++) {
+                    distances.add(new ActivityDistance(in.readString(), in.readCompactDouble()));
+                }
+            }
+            summary = new ActivitiesSummary(caloriesOut, activityCalories, marginalCalories, activeScore, steps, floors,
+                    elevation, sedentaryMinutes, lightlyActiveMinutes, fairlyActiveMinutes, veryActiveMinutes, distances);
+        }
+        List<ActivityLog> logs = null;
+        int size = in.readSize();
+        if (size > 0) {
+            logs = new ArrayList<ActivityLog>(size - 1);
+            for (int i = 1; i < size; i++) {
+                long logId = in.readSignedLong();
+                long activityId = in.readSignedLong();
+                String name = in.readString();
+                String description = in.readString();
+                Long activityParentId = in.readNullableLong();
+                String activityParentName = in.readString();
+                String startTime = in.readString();
+                boolean hasStartTime = in.readBoolean();
+                int duration = in.readSignedInt();
+                Double distance = in.readNullableDouble();
+                int calories = in.readSignedInt();
+                Integer steps = in.readNullableInt();
+                boolean isFavorite = in.readBoolean();
+                logs.add(new ActivityLog(logId, activityId, name, description, activityParentId, activityParentName,
+                        startTime, hasStartTime, duration, distance, calories, steps, isFavorite));
+            }
+        }
+        ActivityGoals goals = null;
+        if (in.readBoolean()) {
+            goals = new ActivityGoals(in.readNullableInt(), in.readNullableInt(), in.readNullableDouble(),
+                    in.readNullableInt(), in.readNullableInt());
+        }
+        return new Activities(summary, logs, goals);
+    }
+
+    private static void writeFoods(BinaryModelOutput out, Foods foods) {
+        FoodsSummary summary = foods.getSummary();
+        out.writeBoolean(null != summary);
+        if (null != summary) {
+            writeNutritionalValues(out, summary);
+            out.writeCompactDouble(summary.getWater());
+        }
+        List<FoodLog> logs = foods.getFoods();
+        out.writeVarInt(null == logs ? 0 : logs.size() + 1);
+        if (null != logs) {
+            for (FoodLog log : logs) {
+                out.writeSignedLong(log.getLogId());
+                writeLoggedFood(out, log.getLoggedFood());
+                writeNutritionalValues(out, log.getNutritionalValues());
+                out.writeBoolean(log.isFavorite());
+                // the log date is only exposed through an accessor that throws when it is not set
+                writeDate(out, log.getLogDate().length() == 0 ? null : log.logDate());
+            }
+        }
+        FoodsGoals goals = foods.getFoodsGoals();
+        out.writeBoolean(null != goals);
+        if (null != goals) {
+            out.writeSignedInt(goals.getCalories());
+        }
+    }
+
+    private static Foods readFoods(BinaryModelInput in) throws IOException {
+        FoodsSummary summary = null;
+        if (in.readBoolean()) {
+            NutritionalValues values = readNutritionalValues(in);
+            summary = new FoodsSummary(values.getCalories(), values.getFat(), values.getFiber(), values.getCarbs(),
+                    values.getSodium(), values.getProtein(), in.readCompactDouble());
+        }
+        List<FoodLog> logs = null;
+        int size = in.readSize();
+        if (size > 0) {
+            logs = new ArrayList<FoodLog>(size - 1);
+            for (int i = 1; i < size; i++) {
+                long logId = in.readSignedLong();
+                LoggedFood loggedFood = readLoggedFood(in);
+                NutritionalValues values = readNutritionalValues(in);
+                boolean favorite = in.readBoolean();
+                logs.add(new FoodLog(logId, loggedFood, values, favorite, readDate(in)));
+            }
+        }
+        FoodsGoals goals = in.readBoolean() ? new FoodsGoals(in.readSignedInt()) : null;
+        return new Foods(summary, logs, goals);
+    }
+
+    private static void writeNutritionalValues(BinaryModelOutput out, NutritionalValues values) {
+        out.writeBoolean(null != values);
+        if (null != values) {
+            out.writeSignedInt(values.getCalories());
+            out.writeCompactDouble(values.getFat());
+            out.writeCompactDouble(values.getFiber());
+            out.writeCompactDouble(values.getCarbs());
+            out.writeCompactDouble(values.getSodium());
+            out.writeCompactDouble(values.getProtein());
+        }
+    }
+
+    private static NutritionalValues readNutritionalValues(BinaryModelInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new NutritionalValues(in.readSignedInt(), in.readCompactDouble(), in.readCompactDouble(),
+                in.readCompactDouble(), in.readCompactDouble(), in.readCompactDouble());
+    }
+
+    private static void writeLoggedFood(BinaryModelOutput out, LoggedFood food) {
+        out.writeBoolean(null != food);
+        if (null != food) {
+            out.writeSignedLong(food.getFoodId());
+            out.writeString(food.getName());
+            out.writeString(food.getBrand());
+            out.writeString(food.getAccessLevel());
+            out.writeSignedInt(food.getCalories());
+            out.writeCompactDouble(food.getAmount());
+            writeFoodUnit(out, food.getUnit());
+            out.writeSignedInt(food.getMealTypeId());
+            out.writeIntArray(food.getUnits());
+        }
+    }
+
+    private static LoggedFood readLoggedFood(BinaryModelInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long foodId = in.readSignedLong();
+        String name = in.readString();
+        String brand = in.readString();
+        String accessLevel = in.readString();
+        int calories = in.readSignedInt();
+        double amount = in.readCompactDouble();
+        FoodUnit unit = readFoodUnit(in);
+        byte mealTypeId = (byte) in.readSignedInt();
+        return new LoggedFood(foodId, name, brand, accessLevel, calories, amount, unit, mealTypeId, in.readIntArray());
+    }
+
+    private static void writeFoodUnit(BinaryModelOutput out, FoodUnit unit) {
+        out.writeBoolean(null != unit);
+        if (null != unit) {
+            out.writeSignedLong(unit.getId());
+            out.writeString(unit.getName());
+            out.writeString(unit.getPlural());
+        }
+    }
+
+    private static FoodUnit readFoodUnit(BinaryModelInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return FoodUnitCatalog.resolve((int) in.readSignedLong(), in.readString(), in.readString());
+    }
+
+    private static void writeMeal(BinaryModelOutput out, Meal meal) {
+        out.writeSignedLong(meal.getId());
+        out.writeString(meal.getName());
+        out.writeString(meal.getDescription());
+        List<LoggedFood> foods = meal.getMealFoods();
+        out.writeVarInt(null == foods ? 0 : foods.size() + 1);
+        if (null != foods) {
+            for (LoggedFood food : foods) {
+                writeLoggedFood(out, food);
+            }
+        }
+    }
+
+    private static Meal readMeal(BinaryModelInput in) throws IOException {
+        long id = in.readSignedLong();
+        String name = in.readString();
+        String description = in.readString();
+        List<LoggedFood> foods = null;
+        int size = in.readSize();
+        if (size > 0) {
+            foods = new ArrayList<LoggedFood>(size - 1);
+            for (int i = 1; i < size; i++) {
+                foods.add(readLoggedFood(in));
+            }
+        }
+        return new Meal(id, name, description, foods);
+    }
+
+    private static void writeSleep(BinaryModelOutput out, Sleep sleep) {
+        SleepSummary summary = sleep.getSummary();
+        out.writeBoolean(null != summary);
+        if (null != summary) {
+            out.writeSignedInt(summary.getTotalSleepRecords());
+            out.writeSignedInt(summary.getTotalMinutesAsleep());
+            out.writeSignedInt(summary.getTotalTimeInBed());
+        }
+        List<SleepLog> logs = sleep.getSleepLogs();
+        out.writeVarInt(null == logs ? 0 : logs.size() + 1);
+        if (null != logs) {
+            for (SleepLog log : logs) {
+                out.writeSignedLong(log.getLogId());
+                out.writeString(log.getStartTime());
+                out.writeBoolean(log.isMainSleep());
+                out.writeSignedLong(log.getDuration());
+                out.writeSignedInt(log.getMinutesToFallAsleep());
+                out.writeSignedInt(log.getMinutesAsleep());
+                out.writeSignedInt(log.getMinutesAwake());
+                out.writeSignedInt(log.getMinutesAfterWakeup());
+                out.writeSignedInt(log.getAwakeningsCount());
+                out.writeSignedInt(log.getTimeInBed());
+                out.writeSignedInt(log.getEfficiency());
+            }
+        }
+    }
+
+    private static Sleep readSleep(BinaryModelInput in) throws IOException {
+        SleepSummary summary = null;
+        if (in.readBoolean()) {
+            summary = new SleepSummary(in.readSignedInt(), in.readSignedInt(), in.readSignedInt());
+        }
+        List<SleepLog> logs = null;
+        int size = in.readSize();
+        if (size > 0) {
+            logs = new ArrayList<SleepLog>(size - 1);
+            for (int i = 1; i < size; i++) {
+                long logId = in.readSignedLong();
+                String startTime = in.readString();
+                boolean mainSleep = in.readBoolean();
+                long duration = in.readSignedLong();
+                logs.add(new SleepLog(logId, startTime, mainSleep, duration, in.readSignedInt(), in.readSignedInt(),
+                        in.readSignedInt(), in.readSignedInt(), in.readSignedInt(), in.readSignedInt(), in.readSignedInt()));
+            }
+        }
+        return new Sleep(summary, logs);
+    }
+
+    private static void writeBody(BinaryModelOutput out, Body body) {
+        out.writeCompactDouble(body.getWeight());
+        out.writeCompactDouble(body.getBmi());
+        out.writeCompactDouble(body.getFat());
+        out.writeCompactDouble(body.getNeck());
+        out.writeCompactDouble(body.getBicep());
+        out.writeCompactDouble(body.getForearm());
+        out.writeCompactDouble(body.getChest());
+        out.writeCompactDouble(body.getWaist());
+        out.writeCompactDouble(body.getHips());
+        out.writeCompactDouble(body.getThigh());
+        out.writeCompactDouble(body.getCalf());
+    }
+
+    private static Body readBody(BinaryModelInput in) throws IOException {
+        return new Body(in.readCompactDouble(), in.readCompactDouble(), in.readCompactDouble(), in.readCompactDouble(),
+                in.readCompactDouble(), in.readCompactDouble(), in.readCompactDouble(), in.readCompactDouble(),
+                in.readCompactDouble(), in.readCompactDouble(), in.readCompactDouble());
+    }
+
+    private static void writeBodyWithGoals(BinaryModelOutput out, BodyWithGoals bodyWithGoals) {
+        Body body = bodyWithGoals.getBody();
+        out.writeBoolean(null != body);
+        if (null != body) {
+            writeBody(out, body);
+        }
+        BodyGoals goals = bodyWithGoals.getBodyGoals();
+        out.writeBoolean(null != goals);
+        if (null != goals) {
+            out.writeNullableDouble(goals.getWeight());
+            out.writeNullableDouble(goals.getFat());
+        }
+    }
+
+    private static BodyWithGoals readBodyWithGoals(BinaryModelInput in) throws IOException {
+        Body body = in.readBoolean() ? readBody(in) : null;
+        BodyGoals goals = in.readBoolean() ? new BodyGoals(in.readNullableDouble(), in.readNullableDouble()) : null;
+        return new BodyWithGoals(body, goals);
+    }
+
+    private static void writeWeightLog(BinaryModelOutput out, WeightLog log) {
+        out.writeSignedLong(log.getLogId());
+        out.writeCompactDouble(log.getWeight());
+        out.writeCompactDouble(log.getBmi());
+        writeDate(out, log.getDate());
+        out.writeString(log.getTime());
+    }
+
+    private static WeightLog readWeightLog(BinaryModelInput in) throws IOException {
+        return new WeightLog(in.readSignedLong(), in.readCompactDouble(), in.readCompactDouble(), readDate(in), in.readString());
+    }
+
+    private static void writeUserInfo(BinaryModelOutput out, UserInfo user) {
+        out.writeString(user.getEncodedId());
+        out.writeString(user.getDisplayName());
+        out.writeSignedInt(null == user.getGender() ? -1 : user.getGender().ordinal());
+        writeDate(out, user.dateOfBirth());
+        out.writeCompactDouble(user.getHeight());
+        out.writeCompactDouble(user.getWeight());
+        out.writeCompactDouble(user.getStrideLengthWalking());
+        out.writeCompactDouble(user.getStrideLengthRunning());
+        out.writeString(user.getFullName());
+        out.writeString(user.getNickname());
+        out.writeString(user.getCountry());
+        out.writeString(user.getState());
+        out.writeString(user.getCity());
+        out.writeString(user.getAboutMe());
+        writeDate(out, user.getMemberSince());
+        out.writeString(null == user.timezone() ? null : user.timezone().getID());
+        out.writeSignedInt(user.getOffsetFromUTCMillis());
+        out.writeString(user.getLocale());
+        out.writeString(user.getAvatar());
+        out.writeString(user.getWeightUnit());
+        out.writeString(user.getDistanceUnit());
+        out.writeString(user.getHeightUnit());
+        out.writeString(user.getWaterUnit());
+        out.writeString(user.getGlucoseUnit());
+    }
+
+    private static UserInfo readUserInfo(BinaryModelInput in) throws IOException {
+        String encodedId = in.readString();
+        String displayName = in.readString();
+        int genderOrdinal = in.readSignedInt();
+        if (genderOrdinal >= GENDERS.length) {
+            throw new IOException("Unknown gender " + genderOrdinal + " in binary model data");
+        }
+        Gender gender = genderOrdinal < 0 ? null : GENDERS[genderOrdinal];
+        LocalDate dateOfBirth = readDate(in);
+        double height = in.readCompactDouble();
+        double weight = in.readCompactDouble();
+        double strideLengthWalking = in.readCompactDouble();
+        double strideLengthRunning = in.readCompactDouble();
+        String fullName = in.readString();
+        String nickname = in.readString();
+        String country = in.readString();
+        String state = in.readString();
+        String city = in.readString();
+        String aboutMe = in.readString();
+        LocalDate memberSince = readDate(in);
+        String timezoneId = in.readString();
+        DateTimeZone timezone = null == timezoneId ? null : DateTimeZone.forID(timezoneId);
+        return new UserInfo(encodedId, displayName, gender, dateOfBirth, height, weight, strideLengthWalking,
+                strideLengthRunning, fullName, nickname, country, state, city, aboutMe, memberSince, timezone,
+                in.readSignedInt(), in.readString(), in.readString(), in.readString(), in.readString(), in.readString(),
+                in.readString(), in.readString());
+    }
+
+    private static void writeData(BinaryModelOutput out, Data data) {
+        out.writeString(data.getDateTime());
+        out.writeString(data.getValue());
+    }
+
+    private static Data readData(BinaryModelInput in) throws IOException {
+        return new Data(in.readString(), in.readString());
+    }
+
+    private static void writeIntradaySummary(BinaryModelOutput out, IntradaySummary summary) {
+        Data data = summary.getSummary();
+        out.writeBoolean(null != data);
+        if (null != data) {
+            writeData(out, data);
+        }
+        IntradayDataset dataset = summary.getIntradayDataset();
+        out.writeBoolean(null != dataset);
+        if (null != dataset) {
+            writeIntradayDataset(out, dataset);
+        }
+    }
+
+    private static IntradaySummary readIntradaySummary(BinaryModelInput in) throws IOException {
+        Data data = in.readBoolean() ? readData(in) : null;
+        IntradayDataset dataset = in.readBoolean() ? readIntradayDataset(in) : null;
+        return new IntradaySummary(data, dataset);
+    }
+
+    /**
+     * Writes the data points column by column: times as deltas of seconds of the day when they all are in the
+     * HH:mm:ss form, values as compact doubles and levels only if any data point has one
+     */
+    private static void writeIntradayDataset(BinaryModelOutput out, IntradayDataset dataset) {
+        out.writeSignedInt(dataset.getDatasetInterval());
+        List<IntradayData> points = dataset.getDataset();
+        if (null == points) {
+            points = Collections.emptyList();
+        }
+        int size = points.size();
+        out.writeVarInt(size);
+        boolean timesAsSeconds = true;
+        boolean hasLevels = false;
+        for (IntradayData point : points) {
+            timesAsSeconds &= secondOfDay(point.getTime()) >= 0;
+            hasLevels |= null != point.getLevel();
+        }
+        out.writeByte(timesAsSeconds ? TIMES_AS_SECONDS : TIMES_AS_STRINGS);
+        int previous = 0;
+        for (IntradayData point : points) {
+            if (timesAsSeconds) {
+                int second = secondOfDay(point.getTime());
+                out.writeSignedInt(second - previous);
+                previous = second;
+            } else {
+                out.writeString(point.getTime());
+            }
+        }
+        for (IntradayData point : points) {
+            out.writeCompactDouble(point.getValue());
+        }
+        out.writeBoolean(hasLevels);
+        if (hasLevels) {
+            for (IntradayData point : points) {
+                out.writeNullableInt(point.getLevel());
+            }
+        }
+    }
+
+    private static IntradayDataset readIntradayDataset(BinaryModelInput in) throws IOException {
+        int interval = in.readSignedInt();
+        int size = in.readSize();
+        boolean timesAsSeconds = in.readByte() == TIMES_AS_SECONDS;
+        String[] times = new String[size];
+        int second = 0;
+        for (int i = 0; i < size; i++) {
+            if (timesAsSeconds) {
+                second += in.readSignedInt();
+                times[i] = formatSecondOfDay(second);
+            } else {
+                times[i] = in.readString();
+            }
+        }
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = in.readCompactDouble();
+        }
+        boolean hasLevels = in.readBoolean();
+        List<IntradayData> points = new ArrayList<IntradayData>(size);
+        for (int i = 0; i < size; i++) {
+            points.add(hasLevels ? new IntradayData(times[i], values[i], in.readNullableInt()) : new IntradayData(times[i], values[i]));
+        }
+        return new IntradayDataset(interval, points);
+    }
+
+    /**
+     * @param time time in the HH:mm:ss form
+     *
+     * @return second of the day, -1 if the time is not in the expected form
+     */
+    static int secondOfDay(String time) {
+        if (null == time || time.length() != 8 || time.charAt(2) != ':' || time.charAt(5) != ':') {
+            return -1;
+        }
+        int hours = twoDigits(time, 0);
+        int minutes = twoDigits(time, 3);
+        int seconds = twoDigits(time, 6);
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) {
+            return -1;
+        }
+        return (hours * 60 + minutes) * 60 + seconds;
+    }
+
+    private static int twoDigits(String s, int index) {
+        int high = s.charAt(index) - '0';
+        int low = s.charAt(index + 1) - '0';
+        if (high < 0 || high > 9 || low < 0 || low > 9) {
+            return -1;
+        }
+        return high * 10 + low;
+    }
+
+    static String formatSecondOfDay(int second) throws IOException {
+        if (second < 0 || second >= SECONDS_PER_DAY) {
+            throw new IOException("Invalid time of day " + second + " in binary model data");
+        }
+        boolean wholeMinute = second % 60 == 0;
+        if (wholeMinute) {
+            String cached = MINUTE_TIMES[second / 60];
+            if (null != cached) {
+                return cached;
+            }
+        }
+        char[] chars = {
+                (char) ('0' + second / 36000), (char) ('0' + second / 3600 % 10), ':',
+                (char) ('0' + second / 600 % 6), (char) ('0' + second / 60 % 10), ':',
+                (char) ('0' + second % 60 / 10), (char) ('0' + second % 10)
+        };
+        String time = new String(chars);
+        if (wholeMinute) {
+            // racing threads store equal strings, either is fine
+            MINUTE_TIMES[second / 60] = time;
+        }
+        return time;
+    }
+
+    private static void writeDate(BinaryModelOutput out, LocalDate date) {
+        out.writeBoolean(null != date);
+        if (null != date) {
+            out.writeSignedInt(FitbitDateCodec.epochDay(date));
+        }
+    }
+
+    private static LocalDate readDate(BinaryModelInput in) throws IOException {
+        return in.readBoolean() ? EPOCH.plusDays(in.readSignedInt()) : null;
+    }
+}
@@ -0,0 +1,187 @@
+package com.fitbit.api.common.model.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads data written by {@link BinaryModelOutput} from a byte array. Not thread safe.
+ */
+public final class BinaryModelInput {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+    private final List<String> dictionary = new ArrayList<String>();
+
+    public BinaryModelInput(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    public BinaryModelInput(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    public int readByte() throws IOException {
+        if (position >= limit) {
+            throw new EOFException("Unexpected end of binary model data");
+        }
+        return buffer[position++];
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public byte[] readBytes() throws IOException {
+        int length = readVarInt();
+        if (length < 0 || length > limit - position) {
+            throw new EOFException("Unexpected end of binary model data");
+        }
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    public int readVarInt() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint in binary model data");
+    }
+
+    public long readVarLong() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint in binary model data");
+    }
+
+    public int readSignedInt() throws IOException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readSignedLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public double readDouble() throws IOException {
+        if (limit - position < 8) {
+            throw new EOFException("Unexpected end of binary model data");
+        }
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (buffer[position++] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    public double readCompactDouble() throws IOException {
+        long header = readVarLong();
+        if (header == 1) {
+            return readDouble();
+        }
+        long zigzag = header >>> 1;
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public Integer readNullableInt() throws IOException {
+        return readBoolean() ? Integer.valueOf(readSignedInt()) : null;
+    }
+
+    public Long readNullableLong() throws IOException {
+        return readBoolean() ? Long.valueOf(readSignedLong()) : null;
+    }
+
+    public Double readNullableDouble() throws IOException {
+        return readBoolean() ? Double.valueOf(readDouble()) : null;
+    }
+
+    public String readString() throws IOException {
+        int header = readVarInt();
+        if (header == 0) {
+            return null;
+        }
+        if ((header & 1) != 0) {
+            int index = header >>> 1;
+            if (index >= dictionary.size()) {
+                throw new IOException("Unknown string reference " + index + " in binary model data");
+            }
+            return dictionary.get(index);
+        }
+        int length = (header >>> 1) - 1;
+        if (length > limit - position) {
+            throw new EOFException("Unexpected end of binary model data");
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            int b = readByte();
+            if (b >= 0) {
+                chars[i] = (char) b;
+            } else {
+                int c = b & 0x7F;
+                b = readByte();
+                if (b >= 0) {
+                    c |= b << 7;
+                } else {
+                    c |= (b & 0x7F) << 7;
+                    c |= readByte() << 14;
+                }
+                chars[i] = (char) c;
+            }
+        }
+        String value = new String(chars);
+        dictionary.add(value);
+        return value;
+    }
+
+    public int[] readIntArray() throws IOException {
+        int header = readVarInt();
+        if (header == 0) {
+            return null;
+        }
+        int length = header - 1;
+        if (length > limit - position) {
+            throw new EOFException("Unexpected end of binary model data");
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = readSignedInt();
+        }
+        return values;
+    }
+
+    /**
+     * Reads a collection size and checks it against the bytes left, every element taking at least one byte,
+     * so that corrupt data can not trigger huge allocations
+     *
+     * @return size, which may be one more than the element count for collections that can be null
+     */
+    int readSize() throws IOException {
+        int size = readVarInt();
+        if (size < 0 || size > limit - position + 1) {
+            throw new IOException("Invalid size " + size + " in binary model data");
+        }
+        return size;
+    }
+}
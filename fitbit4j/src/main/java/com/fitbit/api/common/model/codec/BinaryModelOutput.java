@@ -0,0 +1,207 @@
+package com.fitbit.api.common.model.codec;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Growable output buffer of the binary model format.
+ * <p>
+ * Integers are written as varints, signed ones zigzag encoded first so that small negative numbers stay short.
+ * Strings are dictionary coded: the first occurrence is written in full, every following one as a reference to it.
+ * Instances are reused per thread through {@link #forCurrentThread()} and are not thread safe.
+ */
+public final class BinaryModelOutput {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    /**
+     * Buffers grown beyond this are not kept for reuse
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    static final long MAX_COMPACT_INTEGRAL = 1L << 52;
+
+    private static final ThreadLocal<BinaryModelOutput> CURRENT = new ThreadLocal<BinaryModelOutput>() {
+        @Override
+        protected BinaryModelOutput initialValue() {
+            return new BinaryModelOutput();
+        }
+    };
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int position;
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+    public BinaryModelOutput() {
+    }
+
+    /**
+     * @return the output of the current thread, emptied
+     */
+    public static BinaryModelOutput forCurrentThread() {
+        BinaryModelOutput output = CURRENT.get();
+        output.reset();
+        return output;
+    }
+
+    public void reset() {
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        position = 0;
+        dictionary.clear();
+    }
+
+    public int size() {
+        return position;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeBytes(byte[] bytes) {
+        writeVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Writes an unsigned int in 1 to 5 bytes
+     *
+     * @param value value, negative values take 5 bytes
+     */
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeSignedInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeSignedLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (bits >>> shift);
+        }
+    }
+
+    /**
+     * Writes a double as a varint when it holds a small integral value, as is the case for most measures,
+     * and in 9 bytes otherwise
+     *
+     * @param value value
+     */
+    public void writeCompactDouble(double value) {
+        long integral = (long) value;
+        if (integral == value && integral > -MAX_COMPACT_INTEGRAL && integral < MAX_COMPACT_INTEGRAL
+                && (integral != 0 || Double.doubleToRawLongBits(value) == 0)) {
+            writeVarLong(((integral << 1) ^ (integral >> 63)) << 1);
+        } else {
+            writeByte(1);
+            writeDouble(value);
+        }
+    }
+
+    public void writeNullableInt(Integer value) {
+        writeBoolean(null != value);
+        if (null != value) {
+            writeSignedInt(value);
+        }
+    }
+
+    public void writeNullableLong(Long value) {
+        writeBoolean(null != value);
+        if (null != value) {
+            writeSignedLong(value);
+        }
+    }
+
+    public void writeNullableDouble(Double value) {
+        writeBoolean(null != value);
+        if (null != value) {
+            writeDouble(value);
+        }
+    }
+
+    /**
+     * Writes a string, or a reference to it if it was written before.
+     * The header is 0 for null, an odd number for a reference and an even number for the length of a new string.
+     *
+     * @param value string, may be null
+     */
+    public void writeString(String value) {
+        if (null == value) {
+            writeVarInt(0);
+            return;
+        }
+        Integer index = dictionary.get(value);
+        if (null != index) {
+            writeVarInt((index << 1) | 1);
+            return;
+        }
+        dictionary.put(value, dictionary.size());
+        int length = value.length();
+        writeVarInt((length + 1) << 1);
+        ensureCapacity(length * 3);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x4000) {
+                buffer[position++] = (byte) ((c & 0x7F) | 0x80);
+                buffer[position++] = (byte) (c >>> 7);
+            } else {
+                buffer[position++] = (byte) ((c & 0x7F) | 0x80);
+                buffer[position++] = (byte) (((c >>> 7) & 0x7F) | 0x80);
+                buffer[position++] = (byte) (c >>> 14);
+            }
+        }
+    }
+
+    public void writeIntArray(int[] values) {
+        if (null == values) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(values.length + 1);
+        for (int value : values) {
+            writeSignedInt(value);
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (position + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + additional));
+        }
+    }
+}
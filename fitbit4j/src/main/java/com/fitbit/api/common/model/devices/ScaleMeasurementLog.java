@@ -1,6 +1,6 @@
 package com.fitbit.api.common.model.devices;
 
-import com.fitbit.api.common.service.FitbitApiService;
+import com.fitbit.api.common.service.FitbitDateCodec;
 import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 import org.json.JSONArray;
@@ -38,8 +38,8 @@ public class ScaleMeasurementLog {
         if (jsonObject.has("weight")) {
             this.weight = jsonObject.getDouble("weight");
         }
-        this.date = FitbitApiService.LOCAL_DATE_FORMATTER.parseLocalDate(jsonObject.getString("date"));
-        this.time = FitbitApiService.LOCAL_TIME_HOURS_MINUTES_SECONDS_FORMATTER.parseLocalTime(jsonObject.getString("time"));
+        this.date = FitbitDateCodec.parseDate(jsonObject.getString("date"));
+        this.time = FitbitDateCodec.parseTime(jsonObject.getString("time"));
         if (jsonObject.has("userId")) {
             this.userId = jsonObject.getString("userId");
         }
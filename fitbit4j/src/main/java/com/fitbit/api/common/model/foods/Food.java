@@ -45,7 +45,7 @@ public class Food {
         accessLevel = json.optString("accessLevel");
         calories = json.getInt("calories");
         defaultServingSize = json.getInt("defaultServingSize");
-        defaultUnit = new FoodUnit(json.getJSONObject("defaultUnit"));
+        defaultUnit = FoodUnitCatalog.resolve(json.getJSONObject("defaultUnit"));
         if(json.has("servings")) {
             servings = Serving.jsonArrayToServingList(json.getJSONArray("servings"));
         }
@@ -3,6 +3,7 @@ package com.fitbit.api.common.model.foods;
 import com.fitbit.api.FitbitAPIException;
 import com.fitbit.api.client.http.Response;
 import com.fitbit.api.common.service.FitbitApiService;
+import com.fitbit.api.common.service.FitbitDateCodec;
 import org.joda.time.LocalDate;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -99,6 +100,6 @@ public class FoodLog {
 
     public String getLogDate() {
         // TODO cache date string
-        return null == logDate ? "" : FitbitApiService.LOCAL_DATE_FORMATTER.print(logDate);
+        return null == logDate ? "" : FitbitDateCodec.formatDate(logDate);
     }
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+package com.fitbit.api.common.model.foods;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable catalog of the valid food units, indexed by id.
+ * <p>
+ * Once a catalog is {@link #setShared shared}, parsed foods and servings reuse its units instead of creating a
+ * {@link FoodUnit} per row. Units that differ from the catalog entry of their id are still created from the data.
+ */
+public final class FoodUnitCatalog {
+
+    private static final FoodUnitCatalog EMPTY = new FoodUnitCatalog(Collections.<FoodUnit>emptyList());
+
+    private static volatile FoodUnitCatalog shared = EMPTY;
+
+    private final List<FoodUnit> units;
+    private final Map<Long, FoodUnit> unitsById;
+
+    public FoodUnitCatalog(List<FoodUnit> units) {
+        this.units = Collections.unmodifiableList(units);
+        Map<Long, FoodUnit> byId = new HashMap<Long, FoodUnit>(units.size() * 2);
+        for (FoodUnit unit : units) {
+            byId.put(unit.getId(), unit);
+        }
+        this.unitsById = byId;
+    }
+
+    public static FoodUnitCatalog getShared() {
+        return shared;
+    }
+
+    /**
+     * Sets the catalog resolving the units of parsed entities
+     *
+     * @param catalog catalog, null to stop sharing units
+     */
+    public static synchronized void setShared(FoodUnitCatalog catalog) {
+        shared = null == catalog ? EMPTY : catalog;
+    }
+
+    /**
+     * Shares the catalog unless one is shared already. A unit is only reused when it equals the data, so an earlier
+     * catalog stays correct when the units of the API change.
+     *
+     * @param catalog catalog
+     *
+     * @return whether the catalog was shared
+     */
+    public static synchronized boolean shareIfAbsent(FoodUnitCatalog catalog) {
+        if (shared != EMPTY) {
+            return false;
+        }
+        shared = catalog;
+        return true;
+    }
+
+    /**
+     * Returns the unit of the shared catalog matching the JSON representation, or a new one if there is none
+     *
+     * @param json unit JSON
+     *
+     * @return food unit
+     *
+     * @throws JSONException if the JSON is not a food unit
+     */
+    public static FoodUnit resolve(JSONObject json) throws JSONException {
+        FoodUnit unit = shared.getUnit(json.getInt("id"));
+        if (null != unit && unit.getName().equals(json.getString("name")) && unit.getPlural().equals(json.getString("plural"))) {
+            return unit;
+        }
+        return new FoodUnit(json);
+    }
+
+    /**
+     * Returns the unit of the shared catalog equal to the given values, or a new one if there is none
+     *
+     * @param id unit id
+     * @param name unit name
+     * @param plural plural of the name
+     *
+     * @return food unit
+     */
+    public static FoodUnit resolve(int id, String name, String plural) {
+        FoodUnit unit = shared.getUnit(id);
+        if (null != unit && unit.getName().equals(name) && unit.getPlural().equals(plural)) {
+            return unit;
+        }
+        return new FoodUnit(id, name, plural);
+    }
+
+    public List<FoodUnit> getUnits() {
+        return units;
+    }
+
+    /**
+     * @param id unit id
+     *
+     * @return unit, null if the catalog does not contain it
+     */
+    public FoodUnit getUnit(long id) {
+        return unitsById.get(id);
+    }
+
+    public int size() {
+        return units.size();
+    }
+}
@@ -46,7 +46,7 @@ public class LoggedFood {
         accessLevel = json.optString("accessLevel");
         calories = json.getInt("calories");
         amount = json.getDouble("amount");
-        unit = new FoodUnit(json.getJSONObject("unit"));
+        unit = FoodUnitCatalog.resolve(json.getJSONObject("unit"));
         //noinspection NumericCastThatLosesPrecision
         mealTypeId = (byte) json.getInt("mealTypeId");
     }
@@ -30,7 +30,7 @@ public class Serving {
         this.unitId = jsonObject.getInt("unitId");
         this.servingSize = jsonObject.getDouble("servingSize");
         this.multiplier = jsonObject.getDouble("multiplier");
-        this.unit = new FoodUnit(jsonObject.getJSONObject("unit"));
+        this.unit = FoodUnitCatalog.resolve(jsonObject.getJSONObject("unit"));
     }
 
     public static List<Serving> jsonArrayToServingList(JSONArray array) throws JSONException {
@@ -15,6 +15,12 @@ public class SleepSummary {
         this.totalTimeInBed = 0;
     }
 
+    public SleepSummary(int totalSleepRecords, int totalMinutesAsleep, int totalTimeInBed) {
+        this.totalSleepRecords = totalSleepRecords;
+        this.totalMinutesAsleep = totalMinutesAsleep;
+        this.totalTimeInBed = totalTimeInBed;
+    }
+
     public SleepSummary(JSONObject json) throws JSONException {
         totalSleepRecords = json.getInt("totalSleepRecords");
         totalMinutesAsleep = json.getInt("totalMinutesAsleep");
@@ -18,6 +18,11 @@ public class IntradayData {
         this.value = value;
     }
 
+    public IntradayData(String time, double value, Integer level) {
+        this(time, value);
+        this.level = level;
+    }
+
     public IntradayData(JSONObject json) throws JSONException {
         value = json.getDouble("value");
         time = json.getString("time");
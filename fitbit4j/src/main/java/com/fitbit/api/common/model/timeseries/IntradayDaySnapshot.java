@@ -0,0 +1,123 @@
+package com.fitbit.api.common.model.timeseries;
+
+import com.fitbit.api.common.service.FitbitDateCodec;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Column-oriented view of several intraday time series of one user for a single day.
+ * Every resource is aligned on the minute of the day (0 - 1439); minutes without a data point hold {@link Double#NaN}.
+ */
+public class IntradayDaySnapshot {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    public static final int NO_LEVEL = -1;
+
+    private final LocalDate date;
+    private final Map<TimeSeriesResourceType, double[]> values = new EnumMap<TimeSeriesResourceType, double[]>(TimeSeriesResourceType.class);
+    private final Map<TimeSeriesResourceType, int[]> levels = new EnumMap<TimeSeriesResourceType, int[]>(TimeSeriesResourceType.class);
+    private final Map<TimeSeriesResourceType, Data> summaries = new EnumMap<TimeSeriesResourceType, Data>(TimeSeriesResourceType.class);
+
+    public IntradayDaySnapshot(LocalDate date, Map<TimeSeriesResourceType, IntradaySummary> intradaySummaries) {
+        this.date = date;
+        for (Map.Entry<TimeSeriesResourceType, IntradaySummary> entry : intradaySummaries.entrySet()) {
+            addColumn(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void addColumn(TimeSeriesResourceType resourceType, IntradaySummary intradaySummary) {
+        double[] column = new double[MINUTES_PER_DAY];
+        Arrays.fill(column, Double.NaN);
+        int[] levelColumn = null;
+        IntradayDataset dataset = intradaySummary.getIntradayDataset();
+        if (dataset != null) {
+            for (IntradayData data : dataset.getDataset()) {
+                int minute = minuteOfDay(data.getTime());
+                if (minute < 0) {
+                    continue;
+                }
+                column[minute] = data.getValue();
+                if (data.getLevel() != null) {
+                    if (levelColumn == null) {
+                        levelColumn = new int[MINUTES_PER_DAY];
+                        Arrays.fill(levelColumn, NO_LEVEL);
+                    }
+                    levelColumn[minute] = data.getLevel();
+                }
+            }
+        }
+        values.put(resourceType, column);
+        if (levelColumn != null) {
+            levels.put(resourceType, levelColumn);
+        }
+        summaries.put(resourceType, intradaySummary.getSummary());
+    }
+
+    /**
+     * Converts an intraday "HH:mm" or "HH:mm:ss" time to the minute of the day.
+     *
+     * @param time time as returned by the intraday API
+     *
+     * @return minute of the day or -1 if the time can not be read
+     */
+    static int minuteOfDay(String time) {
+        return FitbitDateCodec.minuteOfDay(time);
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public Set<TimeSeriesResourceType> getResourceTypes() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    public boolean contains(TimeSeriesResourceType resourceType) {
+        return values.containsKey(resourceType);
+    }
+
+    /**
+     * Returns the column of a resource. The array is shared with the snapshot and must not be modified.
+     *
+     * @param resourceType type of a resource
+     *
+     * @return values indexed by minute of the day or null if the resource is not part of the snapshot
+     */
+    public double[] getColumn(TimeSeriesResourceType resourceType) {
+        return values.get(resourceType);
+    }
+
+    /**
+     * Returns the activity levels of a resource. The array is shared with the snapshot and must not be modified.
+     *
+     * @param resourceType type of a resource
+     *
+     * @return levels indexed by minute of the day ({@link #NO_LEVEL} if missing) or null if the resource reports no levels
+     */
+    public int[] getLevels(TimeSeriesResourceType resourceType) {
+        return levels.get(resourceType);
+    }
+
+    public double getValue(TimeSeriesResourceType resourceType, int minuteOfDay) {
+        double[] column = values.get(resourceType);
+        return column == null ? Double.NaN : column[minuteOfDay];
+    }
+
+    public boolean hasValue(TimeSeriesResourceType resourceType, int minuteOfDay) {
+        return !Double.isNaN(getValue(resourceType, minuteOfDay));
+    }
+
+    public Data getSummary(TimeSeriesResourceType resourceType) {
+        return summaries.get(resourceType);
+    }
+
+    public static LocalTime getTime(int minuteOfDay) {
+        return FitbitDateCodec.time(minuteOfDay);
+    }
+}
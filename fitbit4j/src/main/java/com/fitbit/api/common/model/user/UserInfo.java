@@ -1,6 +1,7 @@
 package com.fitbit.api.common.model.user;
 
 import com.fitbit.api.common.service.FitbitApiService;
+import com.fitbit.api.common.service.FitbitDateCodec;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 import org.json.JSONArray;
@@ -41,6 +42,37 @@ public class UserInfo {
     private String waterUnit;
     private String glucoseUnit;
 
+    public UserInfo(String encodedId, String displayName, Gender gender, LocalDate dateOfBirth, double height, double weight,
+                    double strideLengthWalking, double strideLengthRunning, String fullName, String nickname, String country,
+                    String state, String city, String aboutMe, LocalDate memberSince, DateTimeZone timezone, int offsetFromUTCMillis,
+                    String locale, String avatar, String weightUnit, String distanceUnit, String heightUnit, String waterUnit,
+                    String glucoseUnit) {
+        this.encodedId = encodedId;
+        this.displayName = displayName;
+        this.gender = gender;
+        this.dateOfBirth = dateOfBirth;
+        this.height = height;
+        this.weight = weight;
+        this.strideLengthWalking = strideLengthWalking;
+        this.strideLengthRunning = strideLengthRunning;
+        this.fullName = fullName;
+        this.nickname = nickname;
+        this.country = country;
+        this.state = state;
+        this.city = city;
+        this.aboutMe = aboutMe;
+        this.memberSince = memberSince;
+        this.timezone = timezone;
+        this.offsetFromUTCMillis = offsetFromUTCMillis;
+        this.locale = locale;
+        this.avatar = avatar;
+        this.weightUnit = weightUnit;
+        this.distanceUnit = distanceUnit;
+        this.heightUnit = heightUnit;
+        this.waterUnit = waterUnit;
+        this.glucoseUnit = glucoseUnit;
+    }
+
     public UserInfo(JSONObject json) throws JSONException {
         this(json, true);
     }
@@ -97,7 +129,7 @@ public class UserInfo {
     }
 
     public String getDateOfBirth() {
-        return null == dateOfBirth ? "" : FitbitApiService.LOCAL_DATE_FORMATTER.print(dateOfBirth);
+        return null == dateOfBirth ? "" : FitbitDateCodec.formatDate(dateOfBirth);
     }
 
     public LocalDate dateOfBirth() {
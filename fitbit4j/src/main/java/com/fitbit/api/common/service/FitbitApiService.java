@@ -31,7 +31,7 @@ public class FitbitApiService {
         if (StringUtils.isEmpty(date)) return null;
 
         try {
-            return FitbitApiService.LOCAL_DATE_FORMATTER.parseDateTime(date).toLocalDate();
+            return FitbitDateCodec.parseDate(date);
         } catch (Exception e) {
             log.error(e);
         }
@@ -71,7 +71,7 @@ public class FitbitApiService {
         if (StringUtils.isEmpty(date)) return null;
 
         try {
-            return FitbitApiService.LOCAL_TIME_HOURS_MINUTES_FORMATTER.parseDateTime(date).toLocalTime();
+            return FitbitDateCodec.parseTime(date);
         } catch (Exception e) {
             log.error(e);
         }
@@ -0,0 +1,251 @@
+package com.fitbit.api.common.service;
+
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+/**
+ * Reads and writes the dates and times of the API, <code>yyyy-MM-dd</code>, <code>yyyy-MM</code>, <code>HH:mm</code>
+ * and <code>HH:mm:ss</code>, without a formatter. Dates are read digit by digit into the day since the epoch, and the
+ * days of the years 1970 to 2099 map to shared {@link LocalDate} instances and their text, built on first use, so that
+ * reading and writing a date of that range allocates nothing once it has been seen. The minutes of the day are shared
+ * the same way.
+ * <p/>
+ * Text that is not in the canonical form, like a date with one digit months, is left to the Joda-Time formatters the
+ * client used before, so that it reads as it used to.
+ */
+public final class FitbitDateCodec {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormat.forPattern(FitbitApiService.LOCAL_DATE_PATTERN);
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormat.forPattern("yyyy-MM");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormat.forPattern(FitbitApiService.LOCAL_TIME_HOURS_MINUTES_PATTERN);
+    private static final DateTimeFormatter TIME_SECONDS_FORMATTER = DateTimeFormat.forPattern(FitbitApiService.LOCAL_TIME_HOURS_MINUTES_SECONDS_PATTERN);
+
+    private static final int FIRST_CACHED_YEAR = 1970;
+    private static final int LAST_CACHED_YEAR = 2099;
+    private static final int FIRST_CACHED_DAY = (int) epochDay(FIRST_CACHED_YEAR, 1, 1);
+    private static final int CACHED_DAYS = (int) epochDay(LAST_CACHED_YEAR + 1, 1, 1) - FIRST_CACHED_DAY;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    // LocalDate, LocalTime and String are immutable, so threads racing to fill a slot at worst build it twice
+    private static final LocalDate[] DATES = new LocalDate[CACHED_DAYS];
+    private static final String[] DATE_TEXTS = new String[CACHED_DAYS];
+    private static final LocalTime[] TIMES = new LocalTime[MINUTES_PER_DAY];
+    private static final String[] TIME_TEXTS = new String[MINUTES_PER_DAY];
+
+    private FitbitDateCodec() {
+    }
+
+    /**
+     * @param text date in yyyy-MM-dd form
+     *
+     * @return the date
+     * @throws IllegalArgumentException if the text is not a valid date
+     */
+    public static LocalDate parseDate(CharSequence text) {
+        if (null != text && 10 == text.length() && '-' == text.charAt(4) && '-' == text.charAt(7)) {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 2);
+            int day = digits(text, 8, 2);
+            checkDate(text, year, month, day);
+            return date(year, month, day);
+        }
+        if (null == text || 0 == text.length()) {
+            throw new IllegalArgumentException("Invalid empty date.");
+        }
+        return DATE_FORMATTER.parseLocalDate(text.toString());
+    }
+
+    /**
+     * @param text month in yyyy-MM form
+     *
+     * @return the first day of the month
+     * @throws IllegalArgumentException if the text is not a valid month
+     */
+    public static LocalDate parseMonth(CharSequence text) {
+        if (null != text && 7 == text.length() && '-' == text.charAt(4)) {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 2);
+            checkDate(text, year, month, 1);
+            return date(year, month, 1);
+        }
+        if (null == text || 0 == text.length()) {
+            throw new IllegalArgumentException("Invalid empty month.");
+        }
+        return MONTH_FORMATTER.parseLocalDate(text.toString());
+    }
+
+    /**
+     * @param text time in HH:mm or HH:mm:ss form
+     *
+     * @return the time
+     * @throws IllegalArgumentException if the text is not a valid time
+     */
+    public static LocalTime parseTime(CharSequence text) {
+        int minute = minuteOfDay(text);
+        if (minute >= 0) {
+            int seconds = 5 == text.length() ? 0 : digits(text, 6, 2);
+            return 0 == seconds ? time(minute) : new LocalTime(minute / 60, minute % 60, seconds);
+        }
+        if (null == text || 0 == text.length()) {
+            throw new IllegalArgumentException("Invalid empty time.");
+        }
+        return (text.length() > 5 ? TIME_SECONDS_FORMATTER : TIME_FORMATTER).parseLocalTime(text.toString());
+    }
+
+    /**
+     * Reads the minute of the day of a time in HH:mm or HH:mm:ss form. Seconds are checked but not counted.
+     *
+     * @return minute of the day, -1 if the text is not a valid time
+     */
+    public static int minuteOfDay(CharSequence text) {
+        if (null == text || (5 != text.length() && 8 != text.length()) || ':' != text.charAt(2)) {
+            return -1;
+        }
+        int hours = digits(text, 0, 2);
+        int minutes = digits(text, 3, 2);
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return -1;
+        }
+        if (8 == text.length()) {
+            int seconds = digits(text, 6, 2);
+            if (':' != text.charAt(5) || seconds < 0 || seconds > 59) {
+                return -1;
+            }
+        }
+        return hours * 60 + minutes;
+    }
+
+    /**
+     * @return the shared time of a minute of the day
+     */
+    public static LocalTime time(int minuteOfDay) {
+        LocalTime time = TIMES[minuteOfDay];
+        if (null == time) {
+            time = new LocalTime(minuteOfDay / 60, minuteOfDay % 60);
+            TIMES[minuteOfDay] = time;
+        }
+        return time;
+    }
+
+    /**
+     * @return the date in yyyy-MM-dd form
+     */
+    public static String formatDate(LocalDate date) {
+        int year = date.getYear();
+        if (year < FIRST_CACHED_YEAR || year > LAST_CACHED_YEAR) {
+            return DATE_FORMATTER.print(date);
+        }
+        int index = (int) epochDay(year, date.getMonthOfYear(), date.getDayOfMonth()) - FIRST_CACHED_DAY;
+        String text = DATE_TEXTS[index];
+        if (null == text) {
+            text = appendDate(new StringBuilder(10), year, date.getMonthOfYear(), date.getDayOfMonth()).toString();
+            DATE_TEXTS[index] = text;
+        }
+        return text;
+    }
+
+    /**
+     * Appends the date in yyyy-MM-dd form
+     *
+     * @return the buffer
+     */
+    public static StringBuilder appendDate(StringBuilder sb, LocalDate date) {
+        int year = date.getYear();
+        if (year < 1000 || year > 9999) {
+            return sb.append(DATE_FORMATTER.print(date));
+        }
+        return appendDate(sb, year, date.getMonthOfYear(), date.getDayOfMonth());
+    }
+
+    /**
+     * @return the hours and minutes of the time in HH:mm form
+     */
+    public static String formatTime(LocalTime time) {
+        int minute = time.getHourOfDay() * 60 + time.getMinuteOfHour();
+        String text = TIME_TEXTS[minute];
+        if (null == text) {
+            StringBuilder sb = new StringBuilder(5);
+            appendTwoDigits(sb, time.getHourOfDay()).append(':');
+            text = appendTwoDigits(sb, time.getMinuteOfHour()).toString();
+            TIME_TEXTS[minute] = text;
+        }
+        return text;
+    }
+
+    /**
+     * @return days since 1970-01-01, computed without allocating
+     */
+    public static int epochDay(LocalDate date) {
+        return (int) epochDay(date.getYear(), date.getMonthOfYear(), date.getDayOfMonth());
+    }
+
+    private static LocalDate date(int year, int month, int day) {
+        if (year < FIRST_CACHED_YEAR || year > LAST_CACHED_YEAR) {
+            return new LocalDate(year, month, day);
+        }
+        int index = (int) epochDay(year, month, day) - FIRST_CACHED_DAY;
+        LocalDate date = DATES[index];
+        if (null == date) {
+            date = new LocalDate(year, month, day);
+            DATES[index] = date;
+        }
+        return date;
+    }
+
+    private static StringBuilder appendDate(StringBuilder sb, int year, int month, int day) {
+        sb.append(year).append('-');
+        return appendTwoDigits(appendTwoDigits(sb, month).append('-'), day);
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * Days since 1970-01-01 of a date of the proleptic Gregorian calendar
+     */
+    private static long epochDay(int year, int month, int day) {
+        // counts years from March, so that the leap day is the last day of its year
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static boolean isValid(int year, int month, int day) {
+        if (year < 0 || month < 1 || month > 12 || day < 1) {
+            return false;
+        }
+        if (2 == month && 29 == day) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+        }
+        return day <= DAYS_IN_MONTH[month - 1];
+    }
+
+    private static void checkDate(CharSequence text, int year, int month, int day) {
+        if (!isValid(year, month, day)) {
+            throw new IllegalArgumentException("Invalid date: '" + text + "'");
+        }
+    }
+
+    /**
+     * @return the number the digits spell, negative if one of them is not a digit
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,153 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.client.http.HttpValidators;
+import com.fitbit.api.common.model.activities.Activities;
+import com.fitbit.api.common.model.body.BodyWithGoals;
+import com.fitbit.api.common.model.body.WeightLog;
+import com.fitbit.api.common.model.foods.FoodUnit;
+import com.fitbit.api.common.model.foods.Foods;
+import com.fitbit.api.common.model.sleep.Sleep;
+import com.fitbit.api.model.APICollectionType;
+import com.fitbit.api.model.APIFormat;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.fitbit.api.client.http.ResponseFixtures.fixture;
+import static com.fitbit.api.common.model.ModelAssert.assertModelsEqual;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FitbitApiBinaryEntitySerializerTest {
+
+    private static final long STORED_AT = 1309392000000L;
+
+    private final FitbitApiBinaryEntitySerializer serializer = new FitbitApiBinaryEntitySerializer();
+
+    @Test
+    public void cachedEntitiesOfEveryCollectionRoundTrip() throws Exception {
+        List<Object> entities = new ArrayList<Object>();
+        entities.add(Activities.constructActivities(fixture("activities.json")));
+        entities.add(Foods.constructFoods(fixture("foods.json")));
+        entities.add(Sleep.constructSleep(fixture("sleep.json")));
+        entities.add(BodyWithGoals.constructBodyWithGoals(fixture("body.json")));
+        entities.add(Arrays.asList(new WeightLog(1L, 80.5, 24.1, new LocalDate(2011, 6, 29), "08:00:00")));
+        for (Object entity : entities) {
+            FitbitApiCachedEntity cached = roundTrip(new FitbitApiCachedEntity(entity, STORED_AT));
+            assertEquals(STORED_AT, cached.getStoredAt());
+            assertNull(cached.getValidators());
+            assertModelsEqual(entity, cached.getEntity());
+        }
+    }
+
+    @Test
+    public void validatorsRoundTrip() throws Exception {
+        Activities activities = Activities.constructActivities(fixture("activities.json"));
+        for (HttpValidators validators : new HttpValidators[]{
+                new HttpValidators("\"activities-1\"", "Wed, 29 Jun 2011 00:00:00 GMT"),
+                new HttpValidators("W/\"weak\"", null),
+                new HttpValidators(null, "Wed, 29 Jun 2011 00:00:00 GMT")}) {
+            FitbitApiCachedEntity cached = roundTrip(new FitbitApiCachedEntity(activities, STORED_AT, validators));
+            assertEquals(STORED_AT, cached.getStoredAt());
+            assertEquals(validators, cached.getValidators());
+            assertModelsEqual(activities, cached.getEntity());
+        }
+    }
+
+    @Test
+    public void modelsAndCacheKeysRoundTrip() throws Exception {
+        FoodUnit unit = new FoodUnit(91, "cup", "cups");
+        assertModelsEqual(unit, serializer.deserialize(serializer.serialize(unit)));
+        for (APICollectionType type : APICollectionType.values()) {
+            for (APIFormat format : APIFormat.values()) {
+                FitbitApiEntityCacheKey key = FitbitApiEntityCacheKey.of("ABC123", type, new LocalDate(1969, 12, 31), format);
+                assertEquals(key, serializer.deserialize(serializer.serialize(key)));
+            }
+        }
+    }
+
+    @Test
+    public void otherValuesFallBackToJavaSerialization() throws Exception {
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        map.put("steps", 10234);
+        assertEquals(map, serializer.deserialize(serializer.serialize(map)));
+        FitbitApiCachedEntity cached = roundTrip(new FitbitApiCachedEntity(map, STORED_AT));
+        assertEquals(map, cached.getEntity());
+        assertEquals(STORED_AT, cached.getStoredAt());
+    }
+
+    /**
+     * Entries stored before validated entities were added are still read, and written the same way
+     */
+    @Test
+    public void entriesWrittenBeforeValidatorsAreRead() throws Exception {
+        byte[] activitiesEntry = stored("cached-activities.bin");
+        FitbitApiCachedEntity activities = (FitbitApiCachedEntity) serializer.deserialize(activitiesEntry);
+        assertEquals(STORED_AT, activities.getStoredAt());
+        assertNull(activities.getValidators());
+        assertModelsEqual(Activities.constructActivities(fixture("activities.json")), activities.getEntity());
+        assertArrayEquals(activitiesEntry, serializer.serialize(activities));
+
+        byte[] foodsEntry = stored("cached-foods.bin");
+        FitbitApiCachedEntity foods = (FitbitApiCachedEntity) serializer.deserialize(foodsEntry);
+        assertModelsEqual(Foods.constructFoods(fixture("foods.json")), foods.getEntity());
+        assertArrayEquals(foodsEntry, serializer.serialize(foods));
+
+        byte[] keyEntry = stored("cache-key.bin");
+        assertEquals(FitbitApiEntityCacheKey.of("ABC123", APICollectionType.activities, new LocalDate(2011, 6, 29), APIFormat.JSON),
+                serializer.deserialize(keyEntry));
+    }
+
+    @Test
+    public void unknownKindAndVersionAreRejected() throws Exception {
+        byte[] data = serializer.serialize(new FitbitApiCachedEntity("text", STORED_AT));
+        byte[] unknownKind = data.clone();
+        unknownKind[1] = 9;
+        assertFails(unknownKind);
+        byte[] unknownVersion = data.clone();
+        unknownVersion[0]++;
+        assertFails(unknownVersion);
+    }
+
+    private FitbitApiCachedEntity roundTrip(FitbitApiCachedEntity cached) throws IOException {
+        Object deserialized = serializer.deserialize(serializer.serialize(cached));
+        assertTrue(String.valueOf(deserialized), deserialized instanceof FitbitApiCachedEntity);
+        return (FitbitApiCachedEntity) deserialized;
+    }
+
+    private void assertFails(byte[] data) {
+        try {
+            serializer.deserialize(data);
+            fail("deserialized " + Arrays.toString(data));
+        } catch (IOException expected) {
+        }
+    }
+
+    private static byte[] stored(String name) throws IOException {
+        InputStream in = FitbitApiBinaryEntitySerializerTest.class.getResourceAsStream("serialized/" + name);
+        assertNotNull(name, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.FitbitAPIException;
+import com.fitbit.api.client.http.AccessToken;
+import com.fitbit.api.client.http.PostParameter;
+import com.fitbit.api.client.http.Response;
+import com.fitbit.api.common.model.timeseries.TimeSeriesResourceType;
+import com.fitbit.api.model.FitbitUser;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FitbitApiClientAgentAsyncTest {
+
+    private final LocalUserDetail user = new LocalUserDetail("user");
+    private final AtomicInteger posts = new AtomicInteger();
+    private final CountDownLatch postStarted = new CountDownLatch(1);
+    private volatile CountDownLatch postReleased;
+    // deadline each request ran with
+    private final List<FitbitApiDeadline> deadlines = Collections.synchronizedList(new ArrayList<FitbitApiDeadline>());
+    private final CountDownLatch getReleased = new CountDownLatch(1);
+    private volatile boolean getStalled;
+    private FitbitApiClientAgent agent;
+
+    @Before
+    public void setUp() {
+        FitbitApiClientConfiguration configuration = FitbitApiClientConfiguration.builder()
+                .setAsyncThreads(1)
+                .setRateLimit(1000, 1000)
+                .build();
+        agent = new FitbitApiClientAgent(configuration) {
+            @Override
+            protected AccessToken getAccessToken(LocalUserDetail localUser) {
+                return new AccessToken("token", "secret");
+            }
+
+            @Override
+            protected Object postLogEntry(FitbitApiBatchLogEntry entry, AccessToken accessToken) throws FitbitAPIException {
+                deadlines.add(FitbitApiDeadline.current());
+                int post = posts.incrementAndGet();
+                postStarted.countDown();
+                if (null != postReleased) {
+                    try {
+                        postReleased.await();
+                    } catch (InterruptedException e) {
+                        throw new FitbitAPIException("Interrupted", e);
+                    }
+                }
+                return "log " + post;
+            }
+
+            @Override
+            protected Response httpGet(String url, AccessToken accessToken) throws FitbitAPIException {
+                deadlines.add(FitbitApiDeadline.current());
+                if (getStalled) {
+                    try {
+                        getReleased.await();
+                    } catch (InterruptedException e) {
+                        throw new FitbitAPIException("Interrupted", e);
+                    }
+                }
+                throw new FitbitAPIException("not found", 404);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        getReleased.countDown();
+        agent.getAsyncExecutor().shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void batchWrittenFromAsyncTaskRunsInline() throws Exception {
+        final List<FitbitApiBatchLogEntry> entries = new ArrayList<FitbitApiBatchLogEntry>();
+        for (int i = 0; i < 3; i++) {
+            entries.add(new FitbitApiBatchLogEntry(FitbitApiBatchLogEntry.Type.WATER, Collections.<PostParameter>emptyList()));
+        }
+        // the only thread of the pool writes a batch, which would wait for that thread forever if it were submitted
+        Future<List<FitbitApiBatchLogResult>> nested = agent.getAsyncExecutor().submit(new Callable<List<FitbitApiBatchLogResult>>() {
+            public List<FitbitApiBatchLogResult> call() throws Exception {
+                return agent.logBatch(user, entries);
+            }
+        });
+        List<FitbitApiBatchLogResult> results = nested.get(5, TimeUnit.SECONDS);
+        assertEquals(3, results.size());
+        for (FitbitApiBatchLogResult result : results) {
+            assertTrue(result.isSuccess());
+        }
+        assertEquals(3, posts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void batchFromCallingThreadUsesPool() throws Exception {
+        List<FitbitApiBatchLogEntry> entries = new ArrayList<FitbitApiBatchLogEntry>();
+        for (int i = 0; i < 5; i++) {
+            entries.add(new FitbitApiBatchLogEntry(FitbitApiBatchLogEntry.Type.WATER, Collections.<PostParameter>emptyList()));
+        }
+        assertEquals(5, agent.logBatch(user, entries, 2).size());
+        assertEquals(5, posts.get());
+    }
+
+    @Test
+    public void entryStoredWhileRegisteringIsNotWrittenAgain() throws Exception {
+        // the first lookup misses, the concurrent batch stores the entry before this one registers its own
+        agent.setIdempotencyStore(new FitbitApiIdempotencyStore() {
+            private int lookups;
+
+            public synchronized Object getResult(LocalUserDetail user, String idempotencyKey) {
+                return ++lookups > 1 ? "earlier log" : null;
+            }
+
+            public void storeResult(LocalUserDetail user, String idempotencyKey, Object result) {
+            }
+        });
+        List<FitbitApiBatchLogResult> results = agent.logBatch(user, Collections.singletonList(keyed("key")));
+        assertEquals("earlier log", results.get(0).getLog());
+        assertTrue(results.get(0).isReplayed());
+        assertEquals(0, posts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void failedBatchDoesNotCancelWritesOfConcurrentBatch() throws Exception {
+        postReleased = new CountDownLatch(1);
+        final List<FitbitApiBatchLogEntry> entries = Collections.singletonList(keyed("key"));
+        final List<List<FitbitApiBatchLogResult>> firstResults = Collections.synchronizedList(new ArrayList<List<FitbitApiBatchLogResult>>());
+        Thread first = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    firstResults.add(agent.logBatch(user, entries));
+                } catch (FitbitAPIException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        first.start();
+        postStarted.await();
+        // the second batch waits for the write of the first, and is interrupted while it does
+        Thread second = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    agent.logBatch(user, entries);
+                } catch (FitbitAPIException expected) {
+                }
+            }
+        };
+        second.start();
+        while (second.getState() != Thread.State.WAITING && second.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+        second.interrupt();
+        second.join();
+        postReleased.countDown();
+        first.join();
+        FitbitApiBatchLogResult result = firstResults.get(0).get(0);
+        assertTrue(result.isSuccess());
+        assertFalse(result.isReplayed());
+        assertEquals("log 1", result.getLog());
+        assertEquals(1, posts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void batchTasksInheritDeadlineOfCaller() throws Exception {
+        List<FitbitApiBatchLogEntry> entries = new ArrayList<FitbitApiBatchLogEntry>();
+        for (int i = 0; i < 3; i++) {
+            entries.add(new FitbitApiBatchLogEntry(FitbitApiBatchLogEntry.Type.WATER, Collections.<PostParameter>emptyList()));
+        }
+        FitbitApiDeadline deadline = FitbitApiDeadline.after(1, TimeUnit.MINUTES);
+        FitbitApiDeadline previous = deadline.attach();
+        try {
+            assertEquals(3, agent.logBatch(user, entries, 2).size());
+        } finally {
+            FitbitApiDeadline.detach(previous);
+        }
+        assertEquals(Arrays.asList(deadline, deadline, deadline), deadlines);
+    }
+
+    @Test(timeout = 10000)
+    public void intradayTasksInheritDeadlineOfCaller() throws Exception {
+        FitbitApiDeadline deadline = FitbitApiDeadline.after(1, TimeUnit.MINUTES);
+        FitbitApiDeadline previous = deadline.attach();
+        try {
+            agent.getIntraDaySnapshot(user, FitbitUser.CURRENT_AUTHORIZED_USER, new LocalDate(2011, 6, 29),
+                    Arrays.asList(TimeSeriesResourceType.STEPS, TimeSeriesResourceType.CALORIES_OUT));
+            fail("failed requests were merged");
+        } catch (FitbitAPIException expected) {
+        } finally {
+            FitbitApiDeadline.detach(previous);
+        }
+        assertFalse(deadlines.isEmpty());
+        for (FitbitApiDeadline seen : deadlines) {
+            assertSame(deadline, seen);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void intradayWaitEndsAtDeadline() throws Exception {
+        getStalled = true;
+        long start = System.nanoTime();
+        FitbitApiDeadline previous = FitbitApiDeadline.after(300, TimeUnit.MILLISECONDS).attach();
+        try {
+            agent.getIntraDaySnapshot(user, FitbitUser.CURRENT_AUTHORIZED_USER, new LocalDate(2011, 6, 29),
+                    Collections.singletonList(TimeSeriesResourceType.STEPS));
+            fail("stalled request completed");
+        } catch (FitbitAPIException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Deadline"));
+        } finally {
+            FitbitApiDeadline.detach(previous);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 3000);
+    }
+
+    private static FitbitApiBatchLogEntry keyed(String idempotencyKey) {
+        return new FitbitApiBatchLogEntry(FitbitApiBatchLogEntry.Type.WATER, Collections.<PostParameter>emptyList(), idempotencyKey);
+    }
+}
@@ -0,0 +1,121 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.FitbitAPIException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FitbitApiDeadlineTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        FitbitApiDeadline.detach(null);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void laterDeadlineDoesNotExtendEarlierOne() {
+        FitbitApiDeadline outer = FitbitApiDeadline.after(1, TimeUnit.SECONDS);
+        FitbitApiDeadline inner = FitbitApiDeadline.after(1, TimeUnit.HOURS);
+        assertNull(outer.attach());
+        FitbitApiDeadline previous = inner.attach();
+        assertSame(outer, previous);
+        assertSame(outer, FitbitApiDeadline.current());
+        FitbitApiDeadline.detach(previous);
+        assertSame(outer, FitbitApiDeadline.current());
+        FitbitApiDeadline.detach(null);
+        assertNull(FitbitApiDeadline.current());
+    }
+
+    @Test
+    public void earlierDeadlineShortensLaterOne() {
+        FitbitApiDeadline outer = FitbitApiDeadline.after(1, TimeUnit.HOURS);
+        FitbitApiDeadline inner = FitbitApiDeadline.after(1, TimeUnit.SECONDS);
+        outer.attach();
+        FitbitApiDeadline previous = inner.attach();
+        assertSame(inner, FitbitApiDeadline.current());
+        FitbitApiDeadline.detach(previous);
+        assertSame(outer, FitbitApiDeadline.current());
+    }
+
+    @Test
+    public void earlierOfIgnoresMissingDeadlines() {
+        FitbitApiDeadline deadline = FitbitApiDeadline.after(1, TimeUnit.SECONDS);
+        assertSame(deadline, FitbitApiDeadline.earlierOf(null, deadline));
+        assertSame(deadline, FitbitApiDeadline.earlierOf(deadline, null));
+        assertNull(FitbitApiDeadline.earlierOf(null, null));
+    }
+
+    @Test
+    public void passedDeadlineFailsCheck() throws Exception {
+        FitbitApiDeadline deadline = FitbitApiDeadline.after(0, TimeUnit.MILLISECONDS);
+        assertTrue(deadline.isExpired());
+        assertEquals(0, deadline.remainingMillis());
+        try {
+            deadline.check("HTTP GET");
+            fail("passed deadline was not reported");
+        } catch (FitbitAPIException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("HTTP GET"));
+        }
+        FitbitApiDeadline.after(1, TimeUnit.MINUTES).check("HTTP GET");
+    }
+
+    @Test
+    public void remainingTimeDecreases() throws Exception {
+        FitbitApiDeadline deadline = FitbitApiDeadline.after(10, TimeUnit.SECONDS);
+        long remaining = deadline.remainingMillis();
+        assertTrue(String.valueOf(remaining), remaining > 9000 && remaining <= 10000);
+        Thread.sleep(20);
+        assertTrue(deadline.remainingMillis() < remaining);
+        assertFalse(deadline.isExpired());
+    }
+
+    @Test
+    public void propagatedTaskRunsWithDeadlineOfWrappingThread() throws Exception {
+        Callable<FitbitApiDeadline> current = new Callable<FitbitApiDeadline>() {
+            public FitbitApiDeadline call() {
+                return FitbitApiDeadline.current();
+            }
+        };
+        assertSame(current, FitbitApiDeadline.propagate(current));
+        FitbitApiDeadline deadline = FitbitApiDeadline.after(1, TimeUnit.MINUTES);
+        deadline.attach();
+        Callable<FitbitApiDeadline> propagated = FitbitApiDeadline.propagate(current);
+        FitbitApiDeadline.detach(null);
+        assertSame(deadline, executor.submit(propagated).get());
+        // the deadline is detached from the pool thread once the task is done
+        assertNull(executor.submit(current).get());
+    }
+
+    @Test
+    public void propagatedRunnableRunsWithDeadlineOfWrappingThread() throws Exception {
+        final FitbitApiDeadline[] seen = new FitbitApiDeadline[1];
+        FitbitApiDeadline deadline = FitbitApiDeadline.after(1, TimeUnit.MINUTES);
+        FitbitApiDeadline previous = deadline.attach();
+        Runnable propagated;
+        try {
+            propagated = FitbitApiDeadline.propagate(new Runnable() {
+                public void run() {
+                    seen[0] = FitbitApiDeadline.current();
+                }
+            });
+        } finally {
+            FitbitApiDeadline.detach(previous);
+        }
+        executor.submit(propagated).get();
+        assertSame(deadline, seen[0]);
+    }
+}
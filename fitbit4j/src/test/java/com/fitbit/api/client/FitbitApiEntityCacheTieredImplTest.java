@@ -0,0 +1,200 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.model.APIResourceCredentials;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FitbitApiEntityCacheTieredImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final APIResourceCredentials credentials = new APIResourceCredentials("user", null, null);
+    private File file;
+    private FitbitApiEntityCacheTieredImpl cache;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "entities.cache");
+        cache = new FitbitApiEntityCacheTieredImpl(file, 16);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        cache.close();
+    }
+
+    private void reopen() throws IOException {
+        cache.close();
+        cache = new FitbitApiEntityCacheTieredImpl(file, 16);
+    }
+
+    @Test
+    public void reopenReplaysPutsAndRemoves() throws IOException {
+        cache.put(credentials, "a", "first");
+        cache.put(credentials, "b", "second");
+        cache.put(credentials, "b", "third");
+        cache.remove(credentials, "a");
+        reopen();
+        assertNull(cache.get(credentials, "a"));
+        assertEquals("third", cache.get(credentials, "b"));
+    }
+
+    @Test
+    public void removeReturnsValueOnlyStoredInFile() throws IOException {
+        cache.put(credentials, "a", "first");
+        reopen();
+        assertEquals("first", cache.remove(credentials, "a"));
+        assertNull(cache.remove(credentials, "a"));
+    }
+
+    @Test
+    public void tornRecordIsTruncated() throws IOException {
+        cache.put(credentials, "a", "first");
+        cache.put(credentials, "b", "second");
+        cache.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 3);
+        } finally {
+            raf.close();
+        }
+        cache = new FitbitApiEntityCacheTieredImpl(file, 16);
+        assertEquals("first", cache.get(credentials, "a"));
+        assertNull(cache.get(credentials, "b"));
+        // appends go after the last whole record
+        cache.put(credentials, "c", "third");
+        reopen();
+        assertEquals("first", cache.get(credentials, "a"));
+        assertEquals("third", cache.get(credentials, "c"));
+    }
+
+    @Test
+    public void corruptRecordEndsReplay() throws IOException {
+        cache.put(credentials, "a", "first");
+        long firstRecordEnd = file.length();
+        cache.put(credentials, "b", "second");
+        cache.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long position = file.length() - 1;
+            raf.seek(position);
+            int last = raf.read();
+            raf.seek(position);
+            raf.write(last ^ 0xff);
+        } finally {
+            raf.close();
+        }
+        cache = new FitbitApiEntityCacheTieredImpl(file, 16);
+        assertEquals("first", cache.get(credentials, "a"));
+        assertNull(cache.get(credentials, "b"));
+        assertEquals(firstRecordEnd, file.length());
+    }
+
+    @Test
+    public void compactionKeepsLiveEntries() throws IOException {
+        String padding = pad(1000);
+        cache.put(credentials, "kept", "kept" + padding);
+        for (int i = 0; i < 2000; i++) {
+            cache.put(credentials, "replaced", i + padding);
+        }
+        assertTrue("file was not compacted: " + file.length(), file.length() < 1024 * 1024);
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        assertEquals("kept" + padding, cache.get(credentials, "kept"));
+        reopen();
+        assertEquals("kept" + padding, cache.get(credentials, "kept"));
+        assertEquals(1999 + padding, cache.get(credentials, "replaced"));
+    }
+
+    @Test
+    public void finishedCompactionIsAdopted() throws IOException {
+        cache.put(credentials, "a", "first");
+        cache.close();
+        // a crash after the data file was deleted, before the copy was renamed
+        assertTrue(file.renameTo(new File(file.getPath() + ".compact")));
+        cache = new FitbitApiEntityCacheTieredImpl(file, 16);
+        assertEquals("first", cache.get(credentials, "a"));
+        assertFalse(new File(file.getPath() + ".compact").exists());
+    }
+
+    @Test
+    public void unfinishedCompactionIsDiscarded() throws IOException {
+        cache.put(credentials, "a", "first");
+        cache.close();
+        File compacted = new File(file.getPath() + ".compact");
+        FileOutputStream out = new FileOutputStream(compacted);
+        try {
+            out.write(new byte[]{0, 0, 0, 42, 1, 2});
+        } finally {
+            out.close();
+        }
+        cache = new FitbitApiEntityCacheTieredImpl(file, 16);
+        assertEquals("first", cache.get(credentials, "a"));
+        assertFalse(compacted.exists());
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentPutsLeaveBothTiersWithTheSameValue() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            final String key = "key" + round;
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                final int writer = t;
+                Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int i = 0; i < 20; i++) {
+                            cache.put(credentials, key, writer + "-" + i);
+                        }
+                    }
+                };
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        List<Object> hot = new ArrayList<Object>();
+        for (int round = 0; round < 50; round++) {
+            hot.add(cache.get(credentials, "key" + round));
+        }
+        cache.close();
+        // a single entry on the heap, so that nothing is read back from it
+        cache = new FitbitApiEntityCacheTieredImpl(file, 1);
+        for (int round = 0; round < 50; round++) {
+            assertEquals("key" + round, hot.get(round), cache.get(credentials, "key" + round));
+        }
+    }
+
+    private static String pad(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,234 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.client.http.PostParameter;
+import com.fitbit.api.client.http.RequestHeaders;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FitbitApiLogJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private FitbitApiLogJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "logs.journal");
+        journal = new FitbitApiLogJournal(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+    }
+
+    private void reopen() throws IOException {
+        journal.close();
+        journal = new FitbitApiLogJournal(file);
+    }
+
+    @Test
+    public void unacknowledgedEntriesAreRecoveredInOrder() throws IOException {
+        journal.append("a", entry("1", "key"), null);
+        journal.append("b", entry("2", null), null);
+        reopen();
+        List<FitbitApiLogJournal.JournaledEntry> entries = journal.getUnacknowledged();
+        assertEquals(2, entries.size());
+        assertEquals("a", entries.get(0).localUserId);
+        assertEquals("key", entries.get(0).entry.getIdempotencyKey());
+        assertEquals(FitbitApiBatchLogEntry.Type.WATER, entries.get(0).entry.getType());
+        assertEquals(Collections.singletonList(new PostParameter("amount", "1")), entries.get(0).entry.getParams());
+        assertEquals("b", entries.get(1).localUserId);
+        assertEquals(null, entries.get(1).entry.getIdempotencyKey());
+    }
+
+    @Test
+    public void requestHeadersAreRecovered() throws IOException {
+        RequestHeaders headers = RequestHeaders.of("Accept-Language", "en_GB").with("Accept-Locale", "en_GB");
+        journal.append("a", entry("1", null), headers);
+        journal.append("a", entry("2", null), null);
+        reopen();
+        List<FitbitApiLogJournal.JournaledEntry> entries = journal.getUnacknowledged();
+        assertEquals(headers, entries.get(0).headers);
+        assertNull(entries.get(1).headers);
+    }
+
+    @Test
+    public void recordsWithoutHeadersAreRecovered() throws IOException {
+        journal.close();
+        // an entry as journaled before request headers were kept
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(1);
+        out.writeLong(7);
+        out.writeUTF("a");
+        out.writeUTF(FitbitApiBatchLogEntry.Type.WATER.name());
+        out.writeBoolean(false);
+        out.writeInt(1);
+        out.writeUTF("amount");
+        out.writeUTF("1");
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray());
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.writeInt(body.size());
+            raf.writeInt((int) crc.getValue());
+            raf.write(body.toByteArray());
+        } finally {
+            raf.close();
+        }
+        journal = new FitbitApiLogJournal(file);
+        List<FitbitApiLogJournal.JournaledEntry> entries = journal.getUnacknowledged();
+        assertEquals(1, entries.size());
+        assertEquals(7, entries.get(0).sequence);
+        assertEquals("1", entries.get(0).entry.getParams().get(0).getValue());
+        assertNull(entries.get(0).headers);
+    }
+
+    @Test
+    public void acknowledgedEntriesAreNotRecovered() throws IOException {
+        FitbitApiLogJournal.JournaledEntry first = journal.append("a", entry("1", null), null);
+        FitbitApiLogJournal.JournaledEntry second = journal.append("a", entry("2", null), null);
+        journal.acknowledge(first.sequence);
+        reopen();
+        assertEquals(sequences(second), sequences(journal.getUnacknowledged()));
+        // sequence numbers are not reused after a restart
+        assertTrue(journal.append("a", entry("3", null), null).sequence > second.sequence);
+    }
+
+    @Test
+    public void tornRecordIsTruncated() throws IOException {
+        FitbitApiLogJournal.JournaledEntry first = journal.append("a", entry("1", null), null);
+        journal.append("a", entry("2", null), null);
+        journal.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 3);
+        } finally {
+            raf.close();
+        }
+        journal = new FitbitApiLogJournal(file);
+        assertEquals(sequences(first), sequences(journal.getUnacknowledged()));
+        // appends go after the last whole record
+        FitbitApiLogJournal.JournaledEntry third = journal.append("a", entry("3", null), null);
+        reopen();
+        assertEquals(sequences(first, third), sequences(journal.getUnacknowledged()));
+    }
+
+    @Test
+    public void checksumMismatchEndsRecovery() throws IOException {
+        FitbitApiLogJournal.JournaledEntry first = journal.append("a", entry("1", null), null);
+        long firstRecordEnd = file.length();
+        journal.append("a", entry("2", null), null);
+        journal.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long position = file.length() - 1;
+            raf.seek(position);
+            int last = raf.read();
+            raf.seek(position);
+            raf.write(last ^ 0xff);
+        } finally {
+            raf.close();
+        }
+        journal = new FitbitApiLogJournal(file);
+        assertEquals(sequences(first), sequences(journal.getUnacknowledged()));
+        assertEquals(firstRecordEnd, file.length());
+    }
+
+    @Test
+    public void compactionKeepsUnacknowledgedEntries() throws IOException {
+        String padding = pad(1000);
+        List<FitbitApiLogJournal.JournaledEntry> kept = new ArrayList<FitbitApiLogJournal.JournaledEntry>();
+        for (int i = 0; i < 2000; i++) {
+            FitbitApiLogJournal.JournaledEntry journaled = journal.append("a", entry(i + padding, null), null);
+            if (i % 100 == 0) {
+                kept.add(journaled);
+            } else {
+                journal.acknowledge(journaled.sequence);
+            }
+        }
+        assertTrue("journal was not compacted: " + file.length(), file.length() < 1024 * 1024);
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        // appends after the compaction follow the copied records
+        kept.add(journal.append("a", entry("last", null), null));
+        reopen();
+        assertEquals(sequences(kept.toArray(new FitbitApiLogJournal.JournaledEntry[kept.size()])), sequences(journal.getUnacknowledged()));
+        assertEquals(100 + padding, journal.getUnacknowledged().get(1).entry.getParams().get(0).getValue());
+    }
+
+    @Test
+    public void finishedCompactionIsAdopted() throws IOException {
+        FitbitApiLogJournal.JournaledEntry first = journal.append("a", entry("1", null), null);
+        journal.close();
+        // a crash after the journal was deleted, before the copy was renamed
+        assertTrue(file.renameTo(new File(file.getPath() + ".compact")));
+        journal = new FitbitApiLogJournal(file);
+        assertEquals(sequences(first), sequences(journal.getUnacknowledged()));
+        assertFalse(new File(file.getPath() + ".compact").exists());
+    }
+
+    @Test
+    public void unfinishedCompactionIsDiscarded() throws IOException {
+        FitbitApiLogJournal.JournaledEntry first = journal.append("a", entry("1", null), null);
+        journal.close();
+        File compacted = new File(file.getPath() + ".compact");
+        FileOutputStream out = new FileOutputStream(compacted);
+        try {
+            out.write(new byte[]{0, 0, 0, 42, 1, 2});
+        } finally {
+            out.close();
+        }
+        journal = new FitbitApiLogJournal(file);
+        assertEquals(sequences(first), sequences(journal.getUnacknowledged()));
+        assertFalse(compacted.exists());
+    }
+
+    private static FitbitApiBatchLogEntry entry(String amount, String idempotencyKey) {
+        return new FitbitApiBatchLogEntry(FitbitApiBatchLogEntry.Type.WATER,
+                Collections.singletonList(new PostParameter("amount", amount)), idempotencyKey);
+    }
+
+    private static List<Long> sequences(FitbitApiLogJournal.JournaledEntry... entries) {
+        List<Long> sequences = new ArrayList<Long>();
+        for (FitbitApiLogJournal.JournaledEntry journaled : entries) {
+            sequences.add(journaled.sequence);
+        }
+        return sequences;
+    }
+
+    private static List<Long> sequences(List<FitbitApiLogJournal.JournaledEntry> entries) {
+        return sequences(entries.toArray(new FitbitApiLogJournal.JournaledEntry[entries.size()]));
+    }
+
+    private static String pad(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+}
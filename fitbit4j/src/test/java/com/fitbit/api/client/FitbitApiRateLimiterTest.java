@@ -0,0 +1,75 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.FitbitAPIException;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FitbitApiRateLimiterTest {
+
+    @Test
+    public void burstIsTakenBackToBack() {
+        FitbitApiRateLimiter limiter = new FitbitApiRateLimiter(1, 3);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test(timeout = 5000)
+    public void acquireWaitsForNextPermit() throws Exception {
+        FitbitApiRateLimiter limiter = new FitbitApiRateLimiter(10, 1);
+        limiter.acquire();
+        long start = System.nanoTime();
+        limiter.acquire();
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waited + "ms", waited >= 50);
+    }
+
+    @Test(timeout = 5000)
+    public void acquireWithinDeadlineWaits() throws Exception {
+        FitbitApiRateLimiter limiter = new FitbitApiRateLimiter(10, 1);
+        limiter.acquire();
+        FitbitApiDeadline previous = FitbitApiDeadline.after(2, TimeUnit.SECONDS).attach();
+        try {
+            limiter.acquire();
+        } finally {
+            FitbitApiDeadline.detach(previous);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void acquireFailsFastWhenPermitComesAfterDeadline() throws Exception {
+        FitbitApiRateLimiter limiter = new FitbitApiRateLimiter(1, 1);
+        limiter.acquire();
+        FitbitApiDeadline previous = FitbitApiDeadline.after(500, TimeUnit.MILLISECONDS).attach();
+        long start = System.nanoTime();
+        try {
+            limiter.acquire();
+            fail("permit taken after the deadline");
+        } catch (FitbitAPIException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Deadline"));
+        } finally {
+            FitbitApiDeadline.detach(previous);
+        }
+        // failed without waiting for the deadline to pass
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 250);
+    }
+
+    @Test(timeout = 5000)
+    public void interruptStopsWaiting() throws Exception {
+        FitbitApiRateLimiter limiter = new FitbitApiRateLimiter(1, 1);
+        limiter.acquire();
+        Thread.currentThread().interrupt();
+        try {
+            limiter.acquire();
+            fail("permit taken while interrupted");
+        } catch (FitbitAPIException expected) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.fitbit.api.client;
+
+import com.fitbit.api.FitbitAPIException;
+import com.fitbit.api.client.http.AccessToken;
+import com.fitbit.api.client.http.PostParameter;
+import com.fitbit.api.client.http.RequestHeaders;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FitbitApiWriteBehindQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LocalUserDetail user = new LocalUserDetail("user");
+    private final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> languages = Collections.synchronizedList(new ArrayList<String>());
+    // amounts whose write throws this error once
+    private final List<String> failOnce = Collections.synchronizedList(new ArrayList<String>());
+    private volatile Exception failure;
+    private File journalFile;
+    private FitbitApiWriteBehindQueue queue;
+
+    @Before
+    public void setUp() throws IOException {
+        journalFile = new File(folder.getRoot(), "logs.journal");
+        queue = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.close();
+    }
+
+    private FitbitApiWriteBehindQueue open() throws IOException {
+        FitbitApiClientConfiguration configuration = FitbitApiClientConfiguration.builder()
+                .setRateLimit(1000, 1000)
+                .build();
+        FitbitApiClientAgent agent = new FitbitApiClientAgent(configuration) {
+            @Override
+            protected AccessToken getAccessToken(LocalUserDetail localUser) {
+                return new AccessToken("token", "secret");
+            }
+
+            @Override
+            protected Object postLogEntry(FitbitApiBatchLogEntry entry, AccessToken accessToken) throws FitbitAPIException {
+                String amount = entry.getParams().get(0).getValue();
+                RequestHeaders headers = RequestHeaders.current();
+                languages.add(null == headers ? null : headers.get("Accept-Language"));
+                if (failOnce.remove(amount)) {
+                    if (failure instanceof FitbitAPIException) {
+                        throw (FitbitAPIException) failure;
+                    }
+                    throw (RuntimeException) failure;
+                }
+                written.add(amount);
+                return amount;
+            }
+        };
+        FitbitApiWriteBehindQueue opened = new FitbitApiWriteBehindQueue(agent, journalFile, 2);
+        opened.setRetryPolicy(3, 1, 10);
+        opened.setListener(new FitbitApiWriteBehindQueue.Listener() {
+            public void logged(LocalUserDetail user, FitbitApiBatchLogEntry entry, Object log) {
+            }
+
+            public void failed(LocalUserDetail user, FitbitApiBatchLogEntry entry, FitbitAPIException error) {
+                failed.add(entry.getParams().get(0).getValue());
+            }
+        });
+        return opened;
+    }
+
+    @Test(timeout = 10000)
+    public void entriesOfUserAreWrittenInOrder() throws Exception {
+        List<String> submitted = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            queue.submit(user, entry(String.valueOf(i)));
+            submitted.add(String.valueOf(i));
+        }
+        assertTrue(queue.awaitDrained(5, TimeUnit.SECONDS));
+        assertEquals(submitted, written);
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test(timeout = 10000)
+    public void retryableFailureIsRetried() throws Exception {
+        failure = new FitbitAPIException("unavailable", 503);
+        failOnce.add("1");
+        queue.submit(user, entry("1"));
+        queue.submit(user, entry("2"));
+        assertTrue(queue.awaitDrained(5, TimeUnit.SECONDS));
+        assertEquals(list("1", "2"), written);
+        assertEquals(0, failed.size());
+    }
+
+    @Test(timeout = 10000)
+    public void unexpectedErrorDropsEntryWithoutHoldingUpLaterOnes() throws Exception {
+        failure = new NullPointerException("no token");
+        failOnce.add("1");
+        queue.submit(user, entry("1"));
+        queue.submit(user, entry("2"));
+        assertTrue(queue.awaitDrained(5, TimeUnit.SECONDS));
+        assertEquals(list("1"), failed);
+        assertEquals(list("2"), written);
+    }
+
+    @Test(timeout = 10000)
+    public void idleUserCanSubmitAgain() throws Exception {
+        queue.submit(user, entry("1"));
+        assertTrue(queue.awaitDrained(5, TimeUnit.SECONDS));
+        queue.submit(user, entry("2"));
+        assertTrue(queue.awaitDrained(5, TimeUnit.SECONDS));
+        assertEquals(list("1", "2"), written);
+    }
+
+    @Test(timeout = 10000)
+    public void entriesAreWrittenWithHeadersOfSubmittingThread() throws Exception {
+        RequestHeaders previous = RequestHeaders.of("Accept-Language", "en_GB").attach();
+        try {
+            queue.submit(user, entry("1"));
+        } finally {
+            RequestHeaders.detach(previous);
+        }
+        queue.submit(user, entry("2"));
+        assertTrue(queue.awaitDrained(5, TimeUnit.SECONDS));
+        assertEquals(list("en_GB", null), languages);
+    }
+
+    @Test(timeout = 10000)
+    public void entriesLeftInJournalAreWrittenAfterReopen() throws Exception {
+        queue.setRetryPolicy(3, 60000, 60000);
+        failure = new FitbitAPIException("unavailable", 503);
+        failOnce.add("1");
+        RequestHeaders previous = RequestHeaders.of("Accept-Language", "de_DE").attach();
+        try {
+            queue.submit(user, entry("1"));
+        } finally {
+            RequestHeaders.detach(previous);
+        }
+        assertFalse(queue.awaitDrained(200, TimeUnit.MILLISECONDS));
+        queue.close();
+        queue = open();
+        assertTrue(queue.awaitDrained(5, TimeUnit.SECONDS));
+        assertEquals(list("1"), written);
+        assertEquals(list("de_DE", "de_DE"), languages);
+    }
+
+    private static FitbitApiBatchLogEntry entry(String amount) {
+        return new FitbitApiBatchLogEntry(FitbitApiBatchLogEntry.Type.WATER, Collections.singletonList(new PostParameter("amount", amount)));
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, values);
+        return list;
+    }
+}
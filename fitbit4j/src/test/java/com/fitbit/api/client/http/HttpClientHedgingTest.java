@@ -0,0 +1,238 @@
+package com.fitbit.api.client.http;
+
+import com.fitbit.api.FitbitAPIException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Hedged GETs against a local server answering each request, by the order it arrives in, with its own delay and status
+ */
+public class HttpClientHedgingTest {
+
+    private static final long STREAMED_BYTES = 64L * 1024 * 1024;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger hedges = new AtomicInteger();
+    // delay and status of each request by its number, starting at 1
+    private final Map<Integer, Long> delays = new ConcurrentHashMap<Integer, Long>();
+    private final Map<Integer, Integer> statuses = new ConcurrentHashMap<Integer, Integer>();
+    private volatile long defaultDelay;
+    // the first request waits for this latch and then streams a body until the client goes away
+    private volatile CountDownLatch firstReleased;
+    private final AtomicLong streamed = new AtomicLong();
+    private final CountDownLatch streamEnded = new CountDownLatch(1);
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private final ExecutorService hedgeExecutor = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private String url;
+    private HttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                int request = requests.incrementAndGet();
+                CountDownLatch latch = firstReleased;
+                if (1 == request && null != latch) {
+                    await(latch);
+                    stream(exchange);
+                    return;
+                }
+                Long delay = delays.get(request);
+                sleep(null == delay ? defaultDelay : delay);
+                Integer status = statuses.get(request);
+                byte[] body = ("request " + request).getBytes("UTF-8");
+                exchange.sendResponseHeaders(null == status ? 200 : status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/1/user/-/profile.json";
+        client = new HttpClient();
+        client.setRetryCount(0);
+        client.setEventListener(new HttpEventListener() {
+            public void requestSending(String method, String url, Map<String, String> headers, String parameters) {
+            }
+
+            public void responseReceived(String method, String url, int statusCode, Map<String, List<String>> headers) {
+            }
+
+            public void retrying(String method, String url, int attempt, long delayMillis) {
+            }
+
+            public void hedging(String url, long delayMillis) {
+                hedges.incrementAndGet();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (null != firstReleased) {
+            firstReleased.countDown();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        hedgeExecutor.shutdownNow();
+    }
+
+    private HedgingPolicy policy(double budgetRatio, long delayMillis) {
+        HedgingPolicy policy = new HedgingPolicy(0.5, budgetRatio, delayMillis, delayMillis);
+        policy.setExecutor(hedgeExecutor);
+        client.setHedgingPolicy(policy);
+        return policy;
+    }
+
+    @Test(timeout = 10000)
+    public void fastRequestIsNotHedged() throws Exception {
+        policy(1, 2000);
+        assertEquals("request 1", client.get(url, false).asString());
+        assertEquals(0, hedges.get());
+        assertEquals(1, requests.get());
+    }
+
+    @Test(timeout = 10000)
+    public void slowRequestIsHedgedAndFasterResponseWins() throws Exception {
+        firstReleased = new CountDownLatch(1);
+        HedgingPolicy policy = policy(1, 100);
+        long start = System.nanoTime();
+        assertEquals("request 2", client.get(url, false).asString());
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed + "ms", elapsed >= 100 && elapsed < 5000);
+        assertEquals(1, hedges.get());
+        assertEquals(2, requests.get());
+        assertEquals(1.0, policy.getHedgedRatio(), 0);
+    }
+
+    @Test(timeout = 10000)
+    public void losingResponseIsDisconnected() throws Exception {
+        firstReleased = new CountDownLatch(1);
+        policy(1, 100);
+        assertEquals("request 2", client.get(url, false).asString());
+        // the first request answers only now, after it lost
+        firstReleased.countDown();
+        assertTrue("losing response was not disconnected", streamEnded.await(5, TimeUnit.SECONDS));
+        assertTrue("whole body was read", streamed.get() < STREAMED_BYTES);
+    }
+
+    @Test(timeout = 20000)
+    public void budgetCapsHedgesAtBudgetRatio() throws Exception {
+        // every request is slower than the hedge delay, only the budget stops them from being hedged
+        defaultDelay = 60;
+        HedgingPolicy policy = policy(0.25, 10);
+        int gets = 20;
+        for (int i = 0; i < gets; i++) {
+            client.get(url, false).asString();
+        }
+        // the budget starts with one hedge and earns a quarter of one per request
+        assertTrue(hedges.get() + " hedges", hedges.get() <= 1 + gets * 0.25);
+        assertTrue(hedges.get() + " hedges", hedges.get() >= gets * 0.25);
+        assertEquals(hedges.get() / (double) gets, policy.getHedgedRatio(), 0.0001);
+    }
+
+    @Test(timeout = 10000)
+    public void noBudgetMeansNoHedge() throws Exception {
+        delays.put(1, 300L);
+        policy(0, 10);
+        // the initial budget allows one hedge, none are earned afterwards
+        client.get(url, false).asString();
+        delays.put(3, 300L);
+        assertEquals("request 3", client.get(url, false).asString());
+        assertEquals(1, hedges.get());
+    }
+
+    @Test(timeout = 10000)
+    public void failedFirstRequestFallsBackToHedge() throws Exception {
+        delays.put(1, 200L);
+        statuses.put(1, 404);
+        delays.put(2, 400L);
+        policy(1, 50);
+        assertEquals("request 2", client.get(url, false).asString());
+        assertEquals(1, hedges.get());
+    }
+
+    @Test(timeout = 10000)
+    public void failedHedgeFallsBackToFirstRequest() throws Exception {
+        delays.put(1, 300L);
+        statuses.put(2, 404);
+        policy(1, 50);
+        assertEquals("request 1", client.get(url, false).asString());
+        assertEquals(1, hedges.get());
+    }
+
+    @Test(timeout = 10000)
+    public void failureOfBothRequestsIsThrown() throws Exception {
+        delays.put(1, 200L);
+        statuses.put(1, 404);
+        statuses.put(2, 401);
+        delays.put(2, 300L);
+        policy(1, 50);
+        try {
+            client.get(url, false);
+            fail("failed requests returned a response");
+        } catch (FitbitAPIException e) {
+            assertTrue(Arrays.asList(401, 404).contains(e.getStatusCode()));
+        }
+        assertEquals(2, requests.get());
+    }
+
+    private void stream(HttpExchange exchange) {
+        byte[] chunk = new byte[64 * 1024];
+        Arrays.fill(chunk, (byte) ' ');
+        try {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            while (streamed.get() < STREAMED_BYTES) {
+                out.write(chunk);
+                streamed.addAndGet(chunk.length);
+            }
+            out.close();
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            streamEnded.countDown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.fitbit.api.client.http;
+
+import com.fitbit.api.FitbitAPIException;
+import com.fitbit.api.client.FitbitApiDeadline;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpClientRetryTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch firstRequest = new CountDownLatch(1);
+    // holds back responses while the test runs if set
+    private volatile CountDownLatch stalled;
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                CountDownLatch latch = stalled;
+                if (null != latch) {
+                    try {
+                        latch.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignore) {
+                    }
+                }
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                firstRequest.countDown();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/1/user/-/profile.json";
+    }
+
+    @After
+    public void tearDown() {
+        FitbitApiDeadline.detach(null);
+        if (null != stalled) {
+            stalled.countDown();
+        }
+        server.stop(0);
+    }
+
+    @Test(timeout = 10000)
+    public void interruptStopsRetries() throws Exception {
+        final HttpClient client = new HttpClient();
+        client.setRetryCount(100);
+        client.setRetryIntervalSecs(1);
+        final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+        final AtomicReference<Boolean> interrupted = new AtomicReference<Boolean>();
+        Thread caller = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    client.get(url, false);
+                } catch (Throwable e) {
+                    thrown.set(e);
+                }
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        };
+        caller.start();
+        assertTrue(firstRequest.await(5, TimeUnit.SECONDS));
+        caller.interrupt();
+        caller.join(5000);
+        assertFalse("still retrying", caller.isAlive());
+        assertTrue(String.valueOf(thrown.get()), thrown.get() instanceof FitbitAPIException);
+        assertTrue(interrupted.get());
+        assertEquals(1, requests.get());
+    }
+
+    @Test(timeout = 10000)
+    public void retriesUpToRetryCount() throws Exception {
+        HttpClient client = new HttpClient();
+        client.setRetryCount(2);
+        client.setRetryIntervalSecs(0);
+        assertFails(client);
+        assertEquals(3, requests.get());
+    }
+
+    @Test(timeout = 10000)
+    public void deadlineStopsRetries() throws Exception {
+        HttpClient client = new HttpClient();
+        client.setRetryCount(100);
+        client.setRetryIntervalSecs(1);
+        long start = System.nanoTime();
+        FitbitApiDeadline previous = FitbitApiDeadline.after(1500, TimeUnit.MILLISECONDS).attach();
+        try {
+            assertFails(client);
+        } finally {
+            FitbitApiDeadline.detach(previous);
+        }
+        // retried once, the second retry would have started after the deadline
+        assertEquals(2, requests.get());
+        assertTrue(elapsedMillis(start) < 1500);
+    }
+
+    @Test(timeout = 10000)
+    public void callTimeoutStopsRetries() throws Exception {
+        HttpClient client = new HttpClient();
+        client.setRetryCount(100);
+        client.setRetryIntervalSecs(1);
+        client.setCallTimeout(1500);
+        assertFails(client);
+        assertEquals(2, requests.get());
+    }
+
+    @Test(timeout = 10000)
+    public void passedDeadlineSendsNoRequest() throws Exception {
+        HttpClient client = new HttpClient();
+        FitbitApiDeadline previous = FitbitApiDeadline.after(0, TimeUnit.MILLISECONDS).attach();
+        try {
+            assertFails(client);
+        } finally {
+            FitbitApiDeadline.detach(previous);
+        }
+        assertEquals(0, requests.get());
+    }
+
+    @Test(timeout = 10000)
+    public void deadlineShortensReadTimeout() throws Exception {
+        stalled = new CountDownLatch(1);
+        HttpClient client = new HttpClient();
+        client.setRetryCount(3);
+        client.setRetryIntervalSecs(1);
+        client.setReadTimeout(30000);
+        long start = System.nanoTime();
+        FitbitApiDeadline previous = FitbitApiDeadline.after(500, TimeUnit.MILLISECONDS).attach();
+        try {
+            assertFails(client);
+        } finally {
+            FitbitApiDeadline.detach(previous);
+        }
+        long elapsed = elapsedMillis(start);
+        assertTrue(elapsed + "ms", elapsed >= 400 && elapsed < 3000);
+        assertEquals(1, requests.get());
+    }
+
+    @Test(timeout = 10000)
+    public void callTimeoutShortensReadTimeout() throws Exception {
+        stalled = new CountDownLatch(1);
+        HttpClient client = new HttpClient();
+        client.setRetryCount(0);
+        client.setReadTimeout(30000);
+        client.setCallTimeout(500);
+        long start = System.nanoTime();
+        assertFails(client);
+        long elapsed = elapsedMillis(start);
+        assertTrue(elapsed + "ms", elapsed >= 400 && elapsed < 3000);
+    }
+
+    private void assertFails(HttpClient client) {
+        try {
+            client.get(url, false);
+            fail("request succeeded");
+        } catch (FitbitAPIException expected) {
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
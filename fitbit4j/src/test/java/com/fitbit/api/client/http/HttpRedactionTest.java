@@ -0,0 +1,57 @@
+package com.fitbit.api.client.http;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class HttpRedactionTest {
+
+    @Test
+    public void signatureBaseStringMasksTokenAndSecretParameters() {
+        String base = "POST&https%3A%2F%2Fapi.fitbit.com%2F1%2Fuser%2F-%2Ffoods%2Flog.json"
+                + "&amount%3D1%26oauth_consumer_key%3Dkey%26oauth_nonce%3D42%26oauth_token%3Dabc%252Fdef%26password%3Dsecret%26unitId%3D2";
+        assertEquals("POST&https%3A%2F%2Fapi.fitbit.com%2F1%2Fuser%2F-%2Ffoods%2Flog.json"
+                + "&amount%3D1%26oauth_consumer_key%3Dkey%26oauth_nonce%3D42%26oauth_token%3D****%26password%3D****%26unitId%3D2",
+                HttpRedaction.redactSignatureBaseString(base));
+    }
+
+    @Test
+    public void signatureBaseStringMasksFirstParameter() {
+        assertEquals("GET&http%3A%2F%2Fexample.com&oauth_token%3D****%26oauth_version%3D1.0",
+                HttpRedaction.redactSignatureBaseString("GET&http%3A%2F%2Fexample.com&oauth_token%3Dabc%26oauth_version%3D1.0"));
+    }
+
+    @Test
+    public void authorizationHeaderKeepsNonSecretParameters() {
+        assertEquals("OAuth oauth_consumer_key=\"key\",oauth_token=\"****\",oauth_signature=\"****\"",
+                HttpRedaction.redactHeader("Authorization", "OAuth oauth_consumer_key=\"key\",oauth_token=\"abc\",oauth_signature=\"sig\""));
+        assertEquals("Basic ****", HttpRedaction.redactHeader("Proxy-Authorization", "Basic dXNlcjpwYXNz"));
+    }
+
+    @Test
+    public void responseHeadersMaskCookies() {
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        headers.put(null, Collections.singletonList("HTTP/1.1 200 OK"));
+        headers.put("Content-Type", Collections.singletonList("application/json"));
+        headers.put("Set-Cookie", Arrays.asList("session=abc; Path=/", "other=def"));
+        Map<String, List<String>> redacted = HttpRedaction.redactHeaders(headers);
+        assertEquals(Arrays.asList("****", "****"), redacted.get("Set-Cookie"));
+        assertEquals(headers.get("Content-Type"), redacted.get("Content-Type"));
+        assertEquals(headers.get(null), redacted.get(null));
+    }
+
+    @Test
+    public void headersWithoutCredentialsAreNotCopied() {
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        headers.put(null, Collections.singletonList("HTTP/1.1 200 OK"));
+        headers.put("ETag", Collections.singletonList("\"1\""));
+        assertSame(headers, HttpRedaction.redactHeaders(headers));
+    }
+}
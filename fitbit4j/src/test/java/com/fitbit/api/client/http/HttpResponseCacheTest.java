@@ -0,0 +1,180 @@
+package com.fitbit.api.client.http;
+
+import com.fitbit.api.FitbitAPIException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpResponseCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<String> ifNoneMatch = new CopyOnWriteArrayList<String>();
+    private volatile String cacheControl = "max-age=60";
+    private HttpServer server;
+    private String baseUrl;
+    private HttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String etag = "\"" + exchange.getRequestURI().getPath() + "\"";
+                String validator = exchange.getRequestHeaders().getFirst("If-None-Match");
+                if (null != validator) {
+                    ifNoneMatch.add(validator);
+                }
+                exchange.getResponseHeaders().add("ETag", etag);
+                exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+                if (etag.equals(validator)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = ("{\"path\":\"" + exchange.getRequestURI().getPath() + "\"}").getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        client = new HttpClient();
+        client.setOAuthConsumer("key", "secret");
+        client.setResponseCache(new HttpResponseCache());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void freshResponseIsServedWithoutRequest() throws Exception {
+        assertEquals("{\"path\":\"/a\"}", client.get(baseUrl + "/a", false).asString());
+        assertEquals("{\"path\":\"/a\"}", client.get(baseUrl + "/a", false).asString());
+        assertEquals(1, requests.get());
+        assertEquals(1, client.getResponseCache().getHitCount());
+    }
+
+    @Test
+    public void staleResponseIsRevalidated() throws Exception {
+        cacheControl = "no-cache";
+        client.get(baseUrl + "/a", false).asString();
+        Response revalidated = client.get(baseUrl + "/a", false);
+        assertEquals(200, revalidated.getStatusCode());
+        assertEquals("{\"path\":\"/a\"}", revalidated.asString());
+        assertEquals(2, requests.get());
+        assertEquals(Collections.singletonList("\"/a\""), ifNoneMatch);
+        assertEquals(1, client.getResponseCache().getRevalidatedCount());
+    }
+
+    @Test
+    public void writeMakesResponsesOfTokenStale() throws Exception {
+        AccessToken token = new AccessToken("token", "secret");
+        AccessToken other = new AccessToken("other", "secret");
+        client.get(baseUrl + "/a", token).asString();
+        client.get(baseUrl + "/a", other).asString();
+        client.post(baseUrl + "/a", new PostParameter[0], token).asString();
+        assertEquals(3, requests.get());
+        client.get(baseUrl + "/a", other).asString();
+        assertEquals(3, requests.get());
+        client.get(baseUrl + "/a", token).asString();
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void forgottenWritesStillMakeOlderResponsesStale() {
+        HttpResponseCache cache = new HttpResponseCache();
+        long storedAt = System.currentTimeMillis() - 1000;
+        AccessToken writer = new AccessToken("writer", "secret");
+        HttpResponseCache.Entry entry = entry(writer, storedAt);
+        cache.invalidate(writer);
+        for (int i = 0; i < 2 * HttpResponseCache.MAX_INVALIDATED_OWNERS; i++) {
+            cache.invalidate(new AccessToken("token" + i, "secret"));
+        }
+        long now = System.currentTimeMillis();
+        assertFalse(cache.isFresh(entry, now));
+        // responses stored after the writes stay fresh
+        assertTrue(cache.isFresh(entry(writer, now + 1), now + 1));
+    }
+
+    @Test(timeout = 10000)
+    public void evictedResponsesMoveToDisk() throws Exception {
+        HttpResponseCache cache = new HttpResponseCache(1, 1024, folder.newFolder("responses"), 1024 * 1024);
+        client.setResponseCache(cache);
+        client.get(baseUrl + "/a", false).asString();
+        client.get(baseUrl + "/b", false).asString();
+        // read back before or after the background write, without a request either way
+        assertEquals("{\"path\":\"/a\"}", client.get(baseUrl + "/a", false).asString());
+        assertEquals(2, requests.get());
+        while (cache.getDiskSize() < 1) {
+            Thread.sleep(10);
+        }
+        assertEquals("{\"path\":\"/b\"}", client.get(baseUrl + "/b", false).asString());
+        assertEquals(2, requests.get());
+    }
+
+    @Test(timeout = 10000)
+    public void bodyLargerThanMaximumIsNotBuffered() throws Exception {
+        final long available = 64L * 1024 * 1024;
+        final AtomicLong sent = new AtomicLong();
+        server.createContext("/large", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                byte[] chunk = new byte[64 * 1024];
+                Arrays.fill(chunk, (byte) ' ');
+                try {
+                    while (sent.get() < available) {
+                        out.write(chunk);
+                        sent.addAndGet(chunk.length);
+                    }
+                    out.close();
+                } catch (IOException e) {
+                    // the client stopped reading
+                }
+            }
+        });
+        client.setResponseSpillBytes(0);
+        client.setMaxResponseBytes(256 * 1024);
+        Response response = client.get(baseUrl + "/large", false);
+        try {
+            response.asString();
+            fail("body larger than the maximum was read");
+        } catch (FitbitAPIException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exceeds the maximum"));
+        }
+        assertTrue("whole body was sent", sent.get() < available);
+    }
+
+    private static HttpResponseCache.Entry entry(OAuthToken token, long storedAt) {
+        return new HttpResponseCache.Entry(HttpResponseCache.owner(token), null, new byte[0], false,
+                Collections.<String, String>emptyMap(), storedAt, storedAt + 60000);
+    }
+}
@@ -0,0 +1,282 @@
+package com.fitbit.api.client.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResponseBodyDecoderTest {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void inflatesLikeGZIPInputStream() throws IOException {
+        for (int size : new int[]{0, 1, 100, 16 * 1024 - 1, 16 * 1024 + 1, 100000, 1000000}) {
+            for (boolean compressible : new boolean[]{true, false}) {
+                byte[] data = data(size, compressible);
+                byte[] gzip = gzip(data);
+                assertArrayEquals("size " + size, gunzip(gzip), decodeStream(gzip, 0));
+                assertArrayEquals("size " + size, data, decodeBytes(gzip, 0));
+            }
+        }
+    }
+
+    @Test
+    public void inflatesAllMembers() throws IOException {
+        byte[] first = data(70000, true);
+        byte[] second = data(30000, false);
+        byte[] third = new byte[0];
+        byte[] body = concat(gzip(first), gzip(second), gzip(third));
+        byte[] expected = concat(first, second, third);
+        assertArrayEquals(gunzip(body), expected);
+        assertArrayEquals(expected, decodeStream(body, 0));
+        assertArrayEquals(expected, decodeBytes(body, 0));
+    }
+
+    @Test
+    public void ignoresWhatFollowsLastMember() throws IOException {
+        byte[] data = data(1000, true);
+        byte[] body = concat(gzip(data), new byte[]{0, 0, 0, 0, 1});
+        assertArrayEquals(data, decodeStream(body, 0));
+        assertArrayEquals(data, decodeBytes(body, 0));
+    }
+
+    @Test
+    public void skipsOptionalHeaderFields() throws IOException {
+        byte[] data = data(5000, true);
+        for (int flags : new int[]{FEXTRA, FNAME, FCOMMENT, FHCRC, FEXTRA | FNAME | FCOMMENT | FHCRC}) {
+            byte[] body = concat(member(data, flags), member(data, flags));
+            byte[] expected = concat(data, data);
+            assertArrayEquals("flags " + flags, gunzip(body), expected);
+            assertArrayEquals("flags " + flags, expected, decodeStream(body, 0));
+            assertArrayEquals("flags " + flags, expected, decodeBytes(body, 0));
+        }
+    }
+
+    @Test
+    public void corruptChecksumFails() throws IOException {
+        byte[] body = gzip(data(5000, true));
+        body[body.length - 8] ^= 1;
+        assertFails(body, ZipException.class);
+    }
+
+    @Test
+    public void corruptSizeFails() throws IOException {
+        byte[] body = gzip(data(5000, true));
+        body[body.length - 4] ^= 1;
+        assertFails(body, ZipException.class);
+    }
+
+    @Test
+    public void corruptSecondMemberFails() throws IOException {
+        byte[] body = concat(gzip(data(5000, true)), gzip(data(5000, true)));
+        body[body.length - 8] ^= 1;
+        assertFails(body, ZipException.class);
+    }
+
+    @Test
+    public void notGzipFails() throws IOException {
+        assertFails("{\"plain\":true}".getBytes("UTF-8"), ZipException.class);
+    }
+
+    @Test
+    public void truncatedBodyFails() throws IOException {
+        byte[] body = member(data(20000, false), FNAME | FEXTRA);
+        for (int length : new int[]{1, 5, 12, 20, 100, body.length / 2, body.length - 8, body.length - 1}) {
+            assertFails(Arrays.copyOf(body, length), IOException.class);
+        }
+    }
+
+    @Test
+    public void bodiesReachingSpillSizeAreSpilled() throws IOException {
+        int spill = 32 * 1024;
+        for (int size : new int[]{spill - 1, spill, spill + 1, 3 * spill}) {
+            byte[] data = data(size, true);
+            byte[] gzip = gzip(data);
+            ResponseBodyDecoder decoder = ResponseBodyDecoder.get();
+            assertEquals(size, decoder.decode(new ByteArrayInputStream(data), false, spill, 0));
+            assertEquals("size " + size, size >= spill, decoder.isSpilled());
+            assertArrayEquals(data, read(decoder));
+            assertEquals(size, decoder.decode(new ByteArrayInputStream(gzip), true, spill, 0));
+            assertEquals("size " + size, size >= spill, decoder.isSpilled());
+            assertArrayEquals(data, read(decoder));
+            assertEquals(size, decoder.decode(gzip, true, spill, 0));
+            assertEquals("size " + size, size >= spill, decoder.isSpilled());
+            assertArrayEquals(data, read(decoder));
+            // the output buffer of a body kept in memory never outgrows the spill size
+            assertArrayEquals(data, decodeBytes(gzip, spill));
+        }
+    }
+
+    @Test
+    public void bodiesAboveMaximumSizeFail() throws IOException {
+        int max = 10000;
+        byte[] data = data(max, true);
+        ResponseBodyDecoder decoder = ResponseBodyDecoder.get();
+        assertEquals(max, decoder.decode(new ByteArrayInputStream(gzip(data)), true, 0, max));
+        decoder.release();
+        byte[] larger = data(max + 1, true);
+        for (boolean gzip : new boolean[]{true, false}) {
+            try {
+                decoder.decode(new ByteArrayInputStream(gzip ? gzip(larger) : larger), gzip, 4096, max);
+                fail("body above the maximum was decoded");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("maximum"));
+            }
+        }
+    }
+
+    @Test
+    public void bodyHandedOverAsStreamIsKeptFromLaterDecodes() throws IOException {
+        byte[] first = data(1000, true);
+        ResponseBodyDecoder decoder = ResponseBodyDecoder.get();
+        decoder.decode(new ByteArrayInputStream(gzip(first)), true, 0, 0);
+        InputStream stream = decoder.asStream();
+        byte[] second = data(1000, true);
+        assertArrayEquals(second, decodeStream(gzip(second), 0));
+        assertArrayEquals(first, readFully(stream));
+        decoder.release();
+    }
+
+    private byte[] data(int size, boolean compressible) {
+        byte[] data = new byte[size];
+        if (compressible) {
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) ('a' + random.nextInt(4));
+            }
+        } else {
+            random.nextBytes(data);
+        }
+        return data;
+    }
+
+    private static byte[] decodeStream(byte[] body, int spillBytes) throws IOException {
+        ResponseBodyDecoder decoder = ResponseBodyDecoder.get();
+        decoder.decode(new ByteArrayInputStream(body), true, spillBytes, 0);
+        return read(decoder);
+    }
+
+    private static byte[] decodeBytes(byte[] body, int spillBytes) throws IOException {
+        ResponseBodyDecoder decoder = ResponseBodyDecoder.get();
+        decoder.decode(body, true, spillBytes, 0);
+        return read(decoder);
+    }
+
+    private static byte[] read(ResponseBodyDecoder decoder) throws IOException {
+        try {
+            return readFully(decoder.asStream());
+        } finally {
+            decoder.release();
+        }
+    }
+
+    private static void assertFails(byte[] body, Class<? extends IOException> expected) {
+        for (boolean stream : new boolean[]{true, false}) {
+            try {
+                if (stream) {
+                    decodeStream(body, 0);
+                } else {
+                    decodeBytes(body, 0);
+                }
+                fail("decoded " + body.length + " bytes");
+            } catch (IOException e) {
+                assertTrue(e.toString(), expected.isInstance(e));
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return a gzip member with the optional header fields of the flags
+     */
+    private static byte[] member(byte[] data, int flags) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{0x1f, (byte) 0x8b, 8, (byte) flags, 0, 0, 0, 0, 0, (byte) 255});
+        if ((flags & FEXTRA) != 0) {
+            out.write(new byte[]{6, 0, 'A', 'B', 2, 0, 1, 2});
+        }
+        if ((flags & FNAME) != 0) {
+            out.write("activities.json\0".getBytes("ISO-8859-1"));
+        }
+        if ((flags & FCOMMENT) != 0) {
+            out.write("comment\0".getBytes("ISO-8859-1"));
+        }
+        if ((flags & FHCRC) != 0) {
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(out.toByteArray());
+            writeShortLE(out, (int) headerCrc.getValue());
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeShortLE(out, (int) crc.getValue());
+        writeShortLE(out, (int) (crc.getValue() >>> 16));
+        writeShortLE(out, data.length);
+        writeShortLE(out, data.length >>> 16);
+        return out.toByteArray();
+    }
+
+    private static void writeShortLE(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        return readFully(new GZIPInputStream(new ByteArrayInputStream(body)));
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,60 @@
+package com.fitbit.api.client.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Responses of the API served from strings and from the files next to this class
+ */
+public final class ResponseFixtures {
+
+    private ResponseFixtures() {
+    }
+
+    /**
+     * @param name file name, such as activities.json
+     *
+     * @return response with the content of the file, of the content type its extension stands for
+     */
+    public static Response fixture(String name) throws IOException {
+        return response(new String(bytes(name), "UTF-8"), name.endsWith(".xml") ? "text/xml;charset=UTF-8" : "application/json");
+    }
+
+    public static byte[] bytes(String name) throws IOException {
+        InputStream in = ResponseFixtures.class.getResourceAsStream(name);
+        assertNotNull(name, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    public static Response response(final String body, final String contentType) {
+        return new Response() {
+            {
+                statusCode = 200;
+                try {
+                    is = new ByteArrayInputStream(body.getBytes("UTF-8"));
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+
+            @Override
+            public String getResponseHeader(String name) {
+                return "Content-Type".equals(name) ? contentType : null;
+            }
+        };
+    }
+}
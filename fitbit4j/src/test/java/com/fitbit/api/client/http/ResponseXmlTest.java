@@ -0,0 +1,125 @@
+package com.fitbit.api.client.http;
+
+import com.fitbit.api.FitbitAPIException;
+import com.fitbit.api.common.model.activities.Activities;
+import com.fitbit.api.common.model.body.BodyWithGoals;
+import com.fitbit.api.common.model.foods.Foods;
+import com.fitbit.api.common.model.sleep.Sleep;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.fitbit.api.client.http.ResponseFixtures.fixture;
+import static com.fitbit.api.client.http.ResponseFixtures.response;
+import static com.fitbit.api.common.model.ModelAssert.assertModelsEqual;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResponseXmlTest {
+
+    @Test
+    public void activitiesBindLikeJson() throws Exception {
+        assertModelsEqual(Activities.constructActivities(fixture("activities.json")),
+                Activities.constructActivities(fixture("activities.xml")), "activities");
+    }
+
+    @Test
+    public void foodsBindLikeJson() throws Exception {
+        Foods xml = Foods.constructFoods(fixture("foods.xml"));
+        assertModelsEqual(Foods.constructFoods(fixture("foods.json")), xml, "foods");
+        // a list element holding text is the fat value, a list of one unit is still a list
+        assertEquals(49.2, xml.getSummary().getFat(), 0);
+        assertEquals(1, xml.getFoods().get(1).getLoggedFood().getUnits().length);
+    }
+
+    @Test
+    public void sleepBindsLikeJson() throws Exception {
+        assertModelsEqual(Sleep.constructSleep(fixture("sleep.json")), Sleep.constructSleep(fixture("sleep.xml")), "sleep");
+    }
+
+    @Test
+    public void bodyWithGoalsBindsLikeJson() throws Exception {
+        BodyWithGoals xml = BodyWithGoals.constructBodyWithGoals(fixture("body.xml"));
+        assertModelsEqual(BodyWithGoals.constructBodyWithGoals(fixture("body.json")), xml, "body");
+        assertEquals(80.55, xml.getBody().getWeight(), 0);
+    }
+
+    @Test
+    public void handlerMayReadOtherResponses() throws Exception {
+        final String other = largeJson();
+        final List<String> steps = new ArrayList<String>();
+        boolean completed = response(largeXml(""), "text/xml").readXml(new XmlElementHandler() {
+            public boolean element(String path, String text) throws FitbitAPIException {
+                if (steps.isEmpty()) {
+                    // decoded on this thread while the body of the outer response is being read
+                    assertEquals(other, response(other, "application/json").asString());
+                }
+                steps.add(text);
+                return true;
+            }
+        });
+        assertTrue(completed);
+        assertEquals(ITEMS, steps.size());
+        for (int i = 0; i < ITEMS; i++) {
+            assertEquals(String.valueOf(i), steps.get(i));
+        }
+    }
+
+    @Test
+    public void malformedBodyFailsAfterHandlerReadOtherResponse() throws Exception {
+        final String other = largeJson();
+        try {
+            response(largeXml("<unclosed>"), "text/xml").readXml(new XmlElementHandler() {
+                boolean first = true;
+
+                public boolean element(String path, String text) throws FitbitAPIException {
+                    if (first) {
+                        first = false;
+                        response(other, "application/json").asString();
+                    }
+                    return true;
+                }
+            });
+            fail("malformed body was read");
+        } catch (FitbitAPIException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("<step>0</step>"));
+        }
+    }
+
+    @Test
+    public void bodyReadByHandlerIsNotAvailableToIt() throws Exception {
+        final Response response = response(largeXml(""), "text/xml");
+        final List<FitbitAPIException> failures = new ArrayList<FitbitAPIException>();
+        response.readXml(new XmlElementHandler() {
+            public boolean element(String path, String text) {
+                try {
+                    response.asString();
+                } catch (FitbitAPIException e) {
+                    failures.add(e);
+                }
+                return false;
+            }
+        });
+        assertEquals(1, failures.size());
+    }
+
+    private static final int ITEMS = 5000;
+
+    private static String largeXml(String tail) {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><result><steps>");
+        for (int i = 0; i < ITEMS; i++) {
+            sb.append("<step>").append(i).append("</step>");
+        }
+        return sb.append("</steps>").append(tail).append("</result>").toString();
+    }
+
+    private static String largeJson() {
+        StringBuilder sb = new StringBuilder("{\"values\":[");
+        for (int i = 0; i < ITEMS * 4; i++) {
+            sb.append(i > 0 ? "," : "").append('"').append(Integer.toHexString(i)).append('"');
+        }
+        return sb.append("]}").toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.fitbit.api.client.http;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class XmlResponseReaderTest {
+
+    private final XmlResponseReader reader = XmlResponseReader.getDefault();
+
+    @Test
+    public void listElementOfOneItemIsArray() throws Exception {
+        JSONObject json = reader.readObject(xml("<result><foods><food><name>Apple</name></food></foods></result>"));
+        JSONArray foods = json.getJSONArray("foods");
+        assertEquals(1, foods.length());
+        assertEquals("Apple", foods.getJSONObject(0).getString("name"));
+    }
+
+    @Test
+    public void emptyListElementIsEmptyArray() throws Exception {
+        assertEquals(0, reader.readObject(xml("<result><foods/><sleep>\n  </sleep></result>")).getJSONArray("foods").length());
+        assertEquals(0, reader.readObject(xml("<result><sleep>\n  </sleep></result>")).getJSONArray("sleep").length());
+    }
+
+    @Test
+    public void listElementHoldingTextIsValue() throws Exception {
+        JSONObject json = reader.readObject(xml("<result><summary><fat>12.5</fat><weight>80</weight></summary></result>"));
+        assertEquals("12.5", json.getJSONObject("summary").getString("fat"));
+        assertEquals(80, json.getJSONObject("summary").getInt("weight"));
+    }
+
+    @Test
+    public void repeatedElementsBecomeArray() throws Exception {
+        JSONObject json = reader.readObject(xml("<result><day><value>1</value><value>2</value><value>3</value><other>x</other></day></result>"));
+        JSONArray values = json.getJSONObject("day").getJSONArray("value");
+        assertEquals(3, values.length());
+        assertEquals("3", values.getString(2));
+        assertEquals("x", json.getJSONObject("day").getString("other"));
+    }
+
+    @Test
+    public void singleElementOutsideListIsValue() throws Exception {
+        JSONObject json = reader.readObject(xml("<result><day><value>1</value></day></result>"));
+        assertEquals("1", json.getJSONObject("day").getString("value"));
+    }
+
+    @Test
+    public void attributesBecomeProperties() throws Exception {
+        JSONObject json = reader.readObject(xml("<result><unit id=\"147\" plural=\"grams\">gram</unit></result>"));
+        JSONObject unit = json.getJSONObject("unit");
+        assertEquals("147", unit.getString("id"));
+        assertEquals("grams", unit.getString("plural"));
+        assertEquals("gram", unit.getString("content"));
+    }
+
+    @Test
+    public void arrayIsItemsOfOnlyList() throws Exception {
+        JSONArray units = reader.readArray(xml("<result><units><unit><id>1</id></unit><unit><id>2</id></unit></units></result>"));
+        assertEquals(2, units.length());
+        assertEquals(2, units.getJSONObject(1).getInt("id"));
+    }
+
+    @Test
+    public void timeSeriesAreLists() throws Exception {
+        JSONObject json = reader.readObject(xml("<result><activities-steps><value><dateTime>2011-04-27</dateTime><value>5490</value></value></activities-steps></result>"));
+        assertEquals("5490", json.getJSONArray("activities-steps").getJSONObject(0).getString("value"));
+    }
+
+    @Test
+    public void handlerReceivesLeafPathsUntilStopped() throws Exception {
+        final Map<String, String> seen = new LinkedHashMap<String, String>();
+        boolean completed = reader.read(xml("<result><summary><steps>10</steps><floors>2</floors></summary><goals><steps>20</steps></goals></result>"),
+                new XmlElementHandler() {
+                    public boolean element(String path, String text) {
+                        seen.put(path, text);
+                        return !"summary/floors".equals(path);
+                    }
+                });
+        assertFalse(completed);
+        assertEquals("{summary/steps=10, summary/floors=2}", seen.toString());
+        assertTrue(reader.read(xml("<result/>"), new XmlElementHandler() {
+            public boolean element(String path, String text) {
+                return true;
+            }
+        }));
+    }
+
+    private static InputStream xml(String document) throws Exception {
+        return new ByteArrayInputStream(document.getBytes("UTF-8"));
+    }
+}
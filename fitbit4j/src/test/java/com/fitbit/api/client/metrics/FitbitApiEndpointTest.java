@@ -0,0 +1,62 @@
+package com.fitbit.api.client.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FitbitApiEndpointTest {
+
+    private static final String API = "https://api.fitbit.com";
+
+    @Test
+    public void userAndDateAreReplaced() {
+        assertEquals("GET /1/user/{user}/foods/log/date/{date}.json",
+                FitbitApiEndpoint.of("GET", API + "/1/user/228TQ4/foods/log/date/2011-08-01.json"));
+        assertEquals("GET /1/user/{user}/activities/date/{date}.xml",
+                FitbitApiEndpoint.of("GET", API + "/1/user/-/activities/date/2011-08-01.xml"));
+    }
+
+    @Test
+    public void datesAndTimesOfIntradaySeriesAreReplaced() {
+        assertEquals("GET /1/user/{user}/activities/steps/date/{date}/1d/15min/time/{time}/{time}.json",
+                FitbitApiEndpoint.of("GET", API + "/1/user/-/activities/steps/date/2011-08-01/1d/15min/time/12:30/14:00.json"));
+        assertEquals("GET /1/user/{user}/body/weight/date/{date}/{date}.json",
+                FitbitApiEndpoint.of("GET", API + "/1/user/-/body/weight/date/2011-08-01/2011-08-31.json"));
+    }
+
+    @Test
+    public void numericIdsAreReplaced() {
+        assertEquals("DELETE /1/user/{user}/foods/log/{id}.json",
+                FitbitApiEndpoint.of("DELETE", API + "/1/user/-/foods/log/12345.json"));
+        assertEquals("GET /1/foods/{id}.json", FitbitApiEndpoint.of("GET", API + "/1/foods/82782.json"));
+        assertEquals("POST /1/user/{user}/activities/log/{id}",
+                FitbitApiEndpoint.of("POST", API + "/1/user/-/activities/log/42"));
+    }
+
+    @Test
+    public void versionAndNamesAreKept() {
+        assertEquals("GET /1/foods/units.json", FitbitApiEndpoint.of("GET", API + "/1/foods/units.json"));
+        assertEquals("GET /1.2/user/{user}/sleep.json", FitbitApiEndpoint.of("GET", API + "/1.2/user/-/sleep.json"));
+        // segments only resembling ids, dates and times
+        assertEquals("GET /1/user/{user}/activities/log/steps/date/2011-8-01/1d.json",
+                FitbitApiEndpoint.of("GET", API + "/1/user/-/activities/log/steps/date/2011-8-01/1d.json"));
+        assertEquals("GET /1/foods/12ab.json", FitbitApiEndpoint.of("GET", API + "/1/foods/12ab.json"));
+        assertEquals("GET /1/user/{user}/time/1:30.json", FitbitApiEndpoint.of("GET", API + "/1/user/-/time/1:30.json"));
+    }
+
+    @Test
+    public void queryIsDropped() {
+        assertEquals("GET /1/foods/search.json",
+                FitbitApiEndpoint.of("GET", API + "/1/foods/search.json?query=apple%2Fpie"));
+        assertEquals("GET /1/user/{user}/profile.json",
+                FitbitApiEndpoint.of("GET", API + "/1/user/228TQ4/profile.json?locale=en_US"));
+    }
+
+    @Test
+    public void missingPathAndUser() {
+        assertEquals("GET /", FitbitApiEndpoint.of("GET", API));
+        assertEquals("GET /", FitbitApiEndpoint.of("GET", API + "/"));
+        assertEquals("GET /1/user/", FitbitApiEndpoint.of("GET", API + "/1/user/"));
+        assertEquals("GET /1/user/{user}/profile.json", FitbitApiEndpoint.of("GET", "/1/user/-/profile.json"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.fitbit.api.client.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesHaveBucketEach() {
+        for (int micros = 0; micros < 16; micros++) {
+            assertEquals(micros, LatencyHistogram.bucketOf(micros));
+            assertEquals(micros, LatencyHistogram.upperBoundOf(micros));
+        }
+    }
+
+    @Test
+    public void bucketsAtPowersOfTwo() {
+        assertEquals(15, LatencyHistogram.bucketOf(15));
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(16, LatencyHistogram.upperBoundOf(16));
+        assertEquals(31, LatencyHistogram.bucketOf(31));
+        assertEquals(31, LatencyHistogram.upperBoundOf(31));
+        // from 32 on, buckets are two microseconds wide
+        assertEquals(32, LatencyHistogram.bucketOf(32));
+        assertEquals(32, LatencyHistogram.bucketOf(33));
+        assertEquals(33, LatencyHistogram.upperBoundOf(32));
+        assertEquals(33, LatencyHistogram.bucketOf(34));
+        assertEquals(47, LatencyHistogram.bucketOf(63));
+        assertEquals(48, LatencyHistogram.bucketOf(64));
+        assertEquals(67, LatencyHistogram.upperBoundOf(48));
+    }
+
+    @Test
+    public void largestValueFallsIntoLastBucket() {
+        int last = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+        assertEquals(60 * 16 - 1, last);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(last));
+        assertEquals(last - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE - (1L << 58)));
+    }
+
+    @Test
+    public void bucketsAreContiguousAndBoundRelativeError() {
+        long lowerBound = 0;
+        for (int bucket = 0; bucket <= LatencyHistogram.bucketOf(Long.MAX_VALUE); bucket++) {
+            long upperBound = LatencyHistogram.upperBoundOf(bucket);
+            assertTrue("bucket " + bucket, upperBound >= lowerBound);
+            assertEquals(bucket, LatencyHistogram.bucketOf(lowerBound));
+            assertEquals(bucket, LatencyHistogram.bucketOf(upperBound));
+            // a bucket is at most a sixteenth of the values it holds wide
+            assertTrue("bucket " + bucket, (upperBound - lowerBound) <= lowerBound / 16);
+            if (upperBound == Long.MAX_VALUE) {
+                break;
+            }
+            lowerBound = upperBound + 1;
+        }
+    }
+
+    @Test
+    public void percentilesAreUpperBoundsOfRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Long> values = new ArrayList<Long>();
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            long micros = 1 + (long) Math.exp(random.nextDouble() * Math.log(10000000));
+            values.add(micros);
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        Long[] sorted = values.toArray(new Long[values.size()]);
+        Arrays.sort(sorted);
+        for (double percentile : new double[]{0.01, 0.5, 0.9, 0.99, 0.999, 1}) {
+            long exact = sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+            double reported = histogram.getPercentileMillis(percentile) * 1000;
+            assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " > " + exact, reported <= exact * 17 / 16.0);
+        }
+        assertEquals(sorted[sorted.length - 1] / 1000.0, histogram.getPercentileMillis(1), 0);
+        assertEquals(sorted[sorted.length - 1] / 1000.0, histogram.getMaxMillis(), 0);
+        assertEquals(10000, histogram.getCount());
+    }
+
+    @Test
+    public void percentileIsCappedByMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(1000));
+        // 1000 falls into the bucket up to 1023
+        assertEquals(1.0, histogram.getPercentileMillis(0.99), 0);
+        assertEquals(1.0, histogram.getPercentileMillis(0), 0);
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMillis(0.5), 0);
+        assertEquals(0, histogram.getMeanMillis(), 0);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(2));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(4));
+        assertEquals(3.0, histogram.getMeanMillis(), 0);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMillis(0.5), 0);
+        assertEquals(0, histogram.getMaxMillis(), 0);
+    }
+
+    @Test
+    public void negativeDurationsCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5000);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMillis(1), 0);
+    }
+}
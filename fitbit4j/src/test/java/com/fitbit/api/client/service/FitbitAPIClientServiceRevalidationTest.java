@@ -0,0 +1,207 @@
+package com.fitbit.api.client.service;
+
+import com.fitbit.api.client.FitbitApiCachedEntity;
+import com.fitbit.api.client.FitbitApiClientAgent;
+import com.fitbit.api.client.FitbitApiClientConfiguration;
+import com.fitbit.api.client.FitbitApiCredentialsCacheMapImpl;
+import com.fitbit.api.client.FitbitApiEntityCacheKey;
+import com.fitbit.api.client.FitbitApiEntityCacheMapImpl;
+import com.fitbit.api.client.FitbitApiSubscriptionStorageInMemoryImpl;
+import com.fitbit.api.client.LocalSubscriptionDetail;
+import com.fitbit.api.client.LocalUserDetail;
+import com.fitbit.api.client.http.AccessToken;
+import com.fitbit.api.client.http.HttpValidators;
+import com.fitbit.api.common.model.activities.Activities;
+import com.fitbit.api.model.APICollectionType;
+import com.fitbit.api.model.APIResourceCredentials;
+import com.fitbit.api.model.FitbitUser;
+import com.fitbit.api.model.SubscriptionDetail;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Conditional requests of collections against a local API answering 304 Not Modified to the current ETag
+ */
+public class FitbitAPIClientServiceRevalidationTest {
+
+    private static final String ETAG = "\"activities-1\"";
+
+    private final LocalUserDetail user = new LocalUserDetail("user");
+    private final LocalDate date = new LocalDate(2011, 6, 29);
+    // If-None-Match of each request, null for unconditional ones
+    private final List<String> validators = new CopyOnWriteArrayList<String>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private HttpServer server;
+    private byte[] body;
+    private FitbitApiClientAgent agent;
+    private APIResourceCredentials credentials;
+    private FitbitApiEntityCacheKey cacheKey;
+    private FitbitAPIClientService<FitbitApiClientAgent> service;
+
+    @Before
+    public void setUp() throws IOException {
+        body = fixture("/com/fitbit/api/client/http/activities.json");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                validators.add(String.valueOf(ifNoneMatch));
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                if (ETAG.equals(ifNoneMatch)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        agent = new FitbitApiClientAgent("127.0.0.1:" + server.getAddress().getPort(), "http://127.0.0.1", null,
+                FitbitApiClientConfiguration.builder().build()) {
+            @Override
+            protected AccessToken getAccessToken(LocalUserDetail localUser) {
+                return new AccessToken("token", "secret");
+            }
+        };
+        FitbitApiCredentialsCacheMapImpl credentialsCache = new FitbitApiCredentialsCacheMapImpl();
+        credentials = new APIResourceCredentials(user.getUserId(), null, null);
+        credentials.setResourceId("ABC123");
+        credentialsCache.saveResourceCredentials(user, credentials);
+        FitbitApiSubscriptionStorageInMemoryImpl subscriptionStore = new FitbitApiSubscriptionStorageInMemoryImpl();
+        subscriptionStore.save(new LocalSubscriptionDetail(new SubscriptionDetail("subscriber", user.getUserId(), null, null), true));
+        service = new FitbitAPIClientService<FitbitApiClientAgent>(agent, "key", "secret", credentialsCache,
+                new FitbitApiEntityCacheMapImpl(), subscriptionStore);
+        cacheKey = service.getCacheKey(credentials, date, APICollectionType.activities);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        server.stop(0);
+    }
+
+    @Test
+    public void agentReturnsCachedEntityRestampedOnNotModified() throws Exception {
+        FitbitApiCachedEntity fetched = agent.getCollectionForDate(user, FitbitUser.CURRENT_AUTHORIZED_USER, APICollectionType.activities, date, null);
+        assertTrue(fetched.getEntity() instanceof Activities);
+        assertEquals(new HttpValidators(ETAG, null), fetched.getValidators());
+        FitbitApiCachedEntity old = new FitbitApiCachedEntity(fetched.getEntity(), 1000, fetched.getValidators());
+        FitbitApiCachedEntity revalidated = agent.getCollectionForDate(user, FitbitUser.CURRENT_AUTHORIZED_USER, APICollectionType.activities, date, old);
+        assertSame(fetched.getEntity(), revalidated.getEntity());
+        assertEquals(fetched.getValidators(), revalidated.getValidators());
+        assertTrue(revalidated.getStoredAt() >= fetched.getStoredAt());
+        assertEquals(list("null", ETAG), validators);
+    }
+
+    @Test
+    public void agentFetchesWithoutValidators() throws Exception {
+        FitbitApiCachedEntity cached = new FitbitApiCachedEntity("cached without validators", 1000);
+        FitbitApiCachedEntity fetched = agent.getCollectionForDate(user, FitbitUser.CURRENT_AUTHORIZED_USER, APICollectionType.activities, date, cached);
+        assertTrue(fetched.getEntity() instanceof Activities);
+        assertEquals(list("null"), validators);
+    }
+
+    @Test
+    public void serviceRevalidatesStaleEntityWithItsValidators() throws Exception {
+        service.setFreshnessPolicy(maxAge(0));
+        Object first = service.getCollectionForDate(user, date, APICollectionType.activities);
+        FitbitApiCachedEntity stored = cached();
+        assertSame(first, stored.getEntity());
+        assertEquals(ETAG, stored.getValidators().getETag());
+        Thread.sleep(5);
+        assertSame(first, service.getCollectionForDate(user, date, APICollectionType.activities));
+        FitbitApiCachedEntity restamped = cached();
+        assertTrue(restamped.getStoredAt() > stored.getStoredAt());
+        assertEquals(stored.getValidators(), restamped.getValidators());
+        assertEquals(list("null", ETAG), validators);
+    }
+
+    @Test(timeout = 10000)
+    public void backgroundRevalidationRestampsStaleEntity() throws Exception {
+        service.setFreshnessPolicy(maxAge(60000));
+        service.setReadMode(FitbitApiCacheReadMode.STALE_WHILE_REVALIDATE, 60000, executor);
+        Object first = service.getCollectionForDate(user, date, APICollectionType.activities);
+        long storedAt = System.currentTimeMillis() - 90000;
+        service.putInCache(new FitbitApiCachedEntity(first, storedAt, cached().getValidators()), credentials, cacheKey);
+        assertSame(first, service.getCollectionForDate(user, date, APICollectionType.activities));
+        while (cached().getStoredAt() == storedAt) {
+            Thread.sleep(10);
+        }
+        assertSame(first, cached().getEntity());
+        assertEquals(list("null", ETAG), validators);
+    }
+
+    @Test(timeout = 10000)
+    public void evictedEntityIsRefetchedUnconditionally() throws Exception {
+        service.setRefreshAheadExecutor(executor);
+        Object first = service.getCollectionForDate(user, date, APICollectionType.activities);
+        service.evict(user, credentials, cacheKey);
+        while (null == cached()) {
+            Thread.sleep(10);
+        }
+        FitbitApiCachedEntity refetched = cached();
+        assertTrue(refetched.getEntity() instanceof Activities);
+        assertTrue(first != refetched.getEntity());
+        assertNotNull(refetched.getValidators());
+        assertEquals(list("null", "null"), validators);
+    }
+
+    private FitbitApiCachedEntity cached() {
+        return service.getCachedEntity(user, credentials, cacheKey);
+    }
+
+    private static FitbitApiFreshnessPolicy maxAge(final long maxAgeMillis) {
+        return new FitbitApiFreshnessPolicy() {
+            public long getMaxAgeMillis(FitbitApiEntityCacheKey cacheKey, long now) {
+                return maxAgeMillis;
+            }
+        };
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new CopyOnWriteArrayList<String>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        InputStream in = FitbitAPIClientServiceRevalidationTest.class.getResourceAsStream(name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.fitbit.api.client.service;
+
+import com.fitbit.api.FitbitAPIException;
+import com.fitbit.api.client.FitbitApiCachedEntity;
+import com.fitbit.api.client.FitbitApiClientAgent;
+import com.fitbit.api.client.FitbitApiClientConfiguration;
+import com.fitbit.api.client.FitbitApiCredentialsCacheMapImpl;
+import com.fitbit.api.client.FitbitApiEntityCacheKey;
+import com.fitbit.api.client.FitbitApiEntityCacheMapImpl;
+import com.fitbit.api.client.FitbitApiSubscriptionStorageInMemoryImpl;
+import com.fitbit.api.client.LocalSubscriptionDetail;
+import com.fitbit.api.client.LocalUserDetail;
+import com.fitbit.api.common.model.foods.LoggedFood;
+import com.fitbit.api.common.model.foods.Meal;
+import com.fitbit.api.model.APICollectionType;
+import com.fitbit.api.model.APIResourceCredentials;
+import com.fitbit.api.model.FitbitUser;
+import com.fitbit.api.model.SubscriptionDetail;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FitbitAPIClientServiceTest {
+
+    private final LocalUserDetail user = new LocalUserDetail("user");
+    private final LocalDate date = new LocalDate(2011, 6, 29);
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final AtomicInteger mealLoads = new AtomicInteger();
+    private final FitbitApiEntityCacheMapImpl entityCache = new FitbitApiEntityCacheMapImpl();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private APIResourceCredentials credentials;
+    private FitbitApiEntityCacheKey cacheKey;
+    private FitbitAPIClientService<FitbitApiClientAgent> service;
+
+    @Before
+    public void setUp() {
+        FitbitApiClientAgent agent = new FitbitApiClientAgent(FitbitApiClientConfiguration.builder().build()) {
+            @Override
+            public FitbitApiCachedEntity getCollectionForDate(LocalUserDetail localUser, FitbitUser fitbitUser, APICollectionType type,
+                                                              LocalDate date, FitbitApiCachedEntity cached) throws FitbitAPIException {
+                return new FitbitApiCachedEntity("fetched " + fetches.incrementAndGet(), System.currentTimeMillis());
+            }
+
+            @Override
+            public List<Meal> getMeals(LocalUserDetail localUser) {
+                String name = localUser.getUserId() + " " + mealLoads.incrementAndGet();
+                return Collections.singletonList(new Meal(1, name, null, Collections.<LoggedFood>emptyList()));
+            }
+        };
+        FitbitApiCredentialsCacheMapImpl credentialsCache = new FitbitApiCredentialsCacheMapImpl();
+        credentials = new APIResourceCredentials(user.getUserId(), null, null);
+        credentials.setResourceId("ABC123");
+        credentialsCache.saveResourceCredentials(user, credentials);
+        FitbitApiSubscriptionStorageInMemoryImpl subscriptionStore = new FitbitApiSubscriptionStorageInMemoryImpl();
+        subscriptionStore.save(new LocalSubscriptionDetail(new SubscriptionDetail("subscriber", user.getUserId(), null, null), true));
+        service = new FitbitAPIClientService<FitbitApiClientAgent>(agent, "key", "secret", credentialsCache, entityCache, subscriptionStore);
+        cacheKey = service.getCacheKey(credentials, date, APICollectionType.activities);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void freshEntityIsServedFromCache() throws Exception {
+        service.setFreshnessPolicy(maxAge(60000));
+        cache("cached", System.currentTimeMillis() - 30000);
+        assertEquals("cached", service.getCollectionForDate(user, date, APICollectionType.activities));
+        assertEquals(0, fetches.get());
+    }
+
+    @Test
+    public void neverExpiringEntityStoredAheadOfClockIsFresh() throws Exception {
+        // stamped by another host or before the clock was set back
+        cache("cached", System.currentTimeMillis() + 10000);
+        assertEquals("cached", service.getCollectionForDate(user, date, APICollectionType.activities));
+        assertEquals(0, fetches.get());
+    }
+
+    @Test
+    public void staleEntityIsFetched() throws Exception {
+        service.setFreshnessPolicy(maxAge(60000));
+        cache("cached", System.currentTimeMillis() - 90000);
+        assertEquals("fetched 1", service.getCollectionForDate(user, date, APICollectionType.activities));
+        assertEquals("fetched 1", cached().getEntity());
+    }
+
+    @Test(timeout = 10000)
+    public void staleEntityIsServedWhileRevalidated() throws Exception {
+        service.setFreshnessPolicy(maxAge(60000));
+        service.setReadMode(FitbitApiCacheReadMode.STALE_WHILE_REVALIDATE, 60000, executor);
+        cache("cached", System.currentTimeMillis() - 90000);
+        assertEquals("cached", service.getCollectionForDate(user, date, APICollectionType.activities));
+        while (!"fetched 1".equals(cached().getEntity())) {
+            Thread.sleep(10);
+        }
+        assertEquals("fetched 1", service.getCollectionForDate(user, date, APICollectionType.activities));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void tooStaleEntityIsFetchedDespiteStaleReads() throws Exception {
+        service.setFreshnessPolicy(maxAge(60000));
+        service.setReadMode(FitbitApiCacheReadMode.STALE_WHILE_REVALIDATE, 60000, executor);
+        cache("cached", System.currentTimeMillis() - 180000);
+        assertEquals("fetched 1", service.getCollectionForDate(user, date, APICollectionType.activities));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void foodSearchIndexesOfLeastRecentUsersAreDropped() {
+        service.setMaxFoodSearchIndexes(2);
+        FitbitApiFoodSearchIndex index = service.getFoodSearchIndex(user);
+        service.getFoodSearchIndex(new LocalUserDetail("other"));
+        assertSame(index, service.getFoodSearchIndex(user));
+        service.getFoodSearchIndex(new LocalUserDetail("third"));
+        assertSame(index, service.getFoodSearchIndex(user));
+        // the index of "other" was dropped for the one of "third", the one of "third" for this one
+        service.getFoodSearchIndex(new LocalUserDetail("other"));
+        assertSame(index, service.getFoodSearchIndex(user));
+        service.setMaxFoodSearchIndexes(1);
+        assertSame(index, service.getFoodSearchIndex(user));
+    }
+
+    @Test
+    public void droppedFoodSearchIndexIsCreatedAnew() {
+        FitbitApiFoodSearchIndex index = service.getFoodSearchIndex(user);
+        service.dropFoodSearchIndex(user);
+        assertNotSame(index, service.getFoodSearchIndex(user));
+    }
+
+    @Test
+    public void mealsAreLoadedOncePerTimeToLive() throws Exception {
+        assertEquals("user 1", service.getMeals(user).get(0).getName());
+        assertEquals("user 1", service.getMeals(user).get(0).getName());
+        assertEquals(1, mealLoads.get());
+    }
+
+    @Test
+    public void expiredMealsAreLoadedAgain() throws Exception {
+        service.setMealsTimeToLive(50, 50);
+        assertEquals("user 1", service.getMeals(user).get(0).getName());
+        Thread.sleep(60);
+        assertEquals("user 2", service.getMeals(user).get(0).getName());
+    }
+
+    @Test(timeout = 10000)
+    public void mealsAreRefreshedAhead() throws Exception {
+        service.setMealsTimeToLive(60000, 0);
+        assertEquals("user 1", service.getMeals(user).get(0).getName());
+        // the executor is applied to meals already kept
+        service.setRefreshAheadExecutor(executor);
+        assertEquals("user 1", service.getMeals(user).get(0).getName());
+        while (mealLoads.get() < 2) {
+            Thread.sleep(5);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals("user 2", service.getMeals(user).get(0).getName());
+    }
+
+    @Test
+    public void droppedMealsAreLoadedAgain() throws Exception {
+        service.getMeals(user);
+        service.dropMeals(user);
+        assertEquals(0, service.getMealsUserCount());
+        assertEquals("user 2", service.getMeals(user).get(0).getName());
+    }
+
+    @Test
+    public void expiredMealsOfOtherUsersAreDropped() throws Exception {
+        service.setMealsTimeToLive(200, 200);
+        for (int i = 0; i < 100; i++) {
+            service.getMeals(new LocalUserDetail("expiring" + i));
+        }
+        // the sweep at 64 users found nothing expired, the next one is due at 128
+        assertEquals(100, service.getMealsUserCount());
+        Thread.sleep(250);
+        for (int i = 0; i < 28; i++) {
+            service.getMeals(new LocalUserDetail("recent" + i));
+        }
+        assertEquals(128, service.getMealsUserCount());
+        service.getMeals(user);
+        assertEquals(29, service.getMealsUserCount());
+        service.setMealsTimeToLive(60000, 60000);
+        service.dropExpiredMeals();
+        assertEquals(29, service.getMealsUserCount());
+    }
+
+    private void cache(Object entity, long storedAt) {
+        service.putInCache(new FitbitApiCachedEntity(entity, storedAt), credentials, cacheKey);
+    }
+
+    private FitbitApiCachedEntity cached() {
+        return service.getCachedEntity(user, credentials, cacheKey);
+    }
+
+    private static FitbitApiFreshnessPolicy maxAge(final long maxAgeMillis) {
+        return new FitbitApiFreshnessPolicy() {
+            public long getMaxAgeMillis(FitbitApiEntityCacheKey cacheKey, long now) {
+                return maxAgeMillis;
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.fitbit.api.client.service;
+
+import com.fitbit.api.common.model.foods.Food;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FitbitApiFoodSearchIndexTest {
+
+    private final FitbitApiFoodSearchIndex index = new FitbitApiFoodSearchIndex();
+
+    @Test
+    public void wordsOfNameAndBrandMatchByPrefix() {
+        index.add(food(1, "Apple, Green", "Orchard"), FitbitApiFoodSearchIndex.Source.SEARCH);
+        index.add(food(2, "Grapes", null), FitbitApiFoodSearchIndex.Source.SEARCH);
+        assertEquals(list("Apple, Green"), names(index.search("gr ap", 10)));
+        assertEquals(list("Apple, Green"), names(index.search("orch", 10)));
+        assertEquals(list("Apple, Green", "Grapes"), names(index.search("gr", 10)));
+    }
+
+    @Test
+    public void betterSourcesRankFirst() {
+        index.add(food(1, "Apple", null), FitbitApiFoodSearchIndex.Source.SEARCH);
+        index.add(food(2, "Apricot", null), FitbitApiFoodSearchIndex.Source.SEARCH);
+        index.add(food(2, "Apricot", null), FitbitApiFoodSearchIndex.Source.FAVORITE);
+        assertEquals(list("Apricot", "Apple"), names(index.search("ap", 10)));
+    }
+
+    @Test
+    public void removedFoodIsNotFound() {
+        index.add(food(1, "Apple", null), FitbitApiFoodSearchIndex.Source.SEARCH);
+        index.add(food(2, "Apricot", null), FitbitApiFoodSearchIndex.Source.SEARCH);
+        assertTrue(index.remove(1));
+        assertFalse(index.remove(1));
+        assertEquals(1, index.size());
+        assertEquals(list("Apricot"), names(index.search("ap", 1)));
+        assertEquals(list("Apricot"), names(index.search("ap", 10)));
+        assertEquals(list(), names(index.search("apple", 10)));
+    }
+
+    @Test
+    public void removedFoodIsReplacedInBestRanked() {
+        // more foods than a node keeps as its best ranked ones
+        for (int i = 0; i < FitbitApiFoodSearchIndex.TOP_RESULTS_PER_PREFIX + 4; i++) {
+            index.add(food(i, "Apple " + (char) ('a' + i), null), FitbitApiFoodSearchIndex.Source.SEARCH);
+        }
+        index.add(food(0, "Apple a", null), FitbitApiFoodSearchIndex.Source.FAVORITE);
+        index.remove(0);
+        List<String> found = names(index.search("app", 3));
+        assertEquals(list("Apple b", "Apple c", "Apple d"), found);
+        assertEquals(FitbitApiFoodSearchIndex.TOP_RESULTS_PER_PREFIX + 3, names(index.search("app", 100)).size());
+    }
+
+    @Test
+    public void foodAddedAgainAfterRemovalIsFound() {
+        index.add(food(1, "Apple", null), FitbitApiFoodSearchIndex.Source.SEARCH);
+        index.remove(1);
+        index.add(food(1, "Apple", null), FitbitApiFoodSearchIndex.Source.RECENT);
+        assertEquals(list("Apple"), names(index.search("ap", 10)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void accentsAndCaseAreIgnored() {
+        index.add(food(1, "Crème Brûlée", null), FitbitApiFoodSearchIndex.Source.SEARCH);
+        assertEquals(list("Crème Brûlée"), names(index.search("CREME bru", 10)));
+    }
+
+    private static Food food(long id, String name, String brand) {
+        return new Food(id, name, brand, "PUBLIC", 100, 1, null, new int[0]);
+    }
+
+    private static List<String> names(List<Food> foods) {
+        List<String> names = new ArrayList<String>();
+        for (Food food : foods) {
+            names.add(food.getName());
+        }
+        return names;
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<String>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,172 @@
+package com.fitbit.api.client.service;
+
+import com.fitbit.api.FitbitAPIException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FitbitApiReferenceDataTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // loads fail while set
+    private volatile boolean failing;
+    // background loads wait for this latch if set
+    private volatile CountDownLatch loadReleased;
+    private final CountDownLatch loadWaiting = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private FitbitApiReferenceData<String> data(long timeToLiveMillis, long refreshAfterMillis) {
+        return new FitbitApiReferenceData<String>("test", timeToLiveMillis, refreshAfterMillis) {
+            @Override
+            protected String load() throws FitbitAPIException {
+                CountDownLatch latch = loadReleased;
+                if (null != latch) {
+                    loadWaiting.countDown();
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        throw new FitbitAPIException("Interrupted", e);
+                    }
+                }
+                if (failing) {
+                    throw new FitbitAPIException("unavailable", 503);
+                }
+                return "load " + loads.incrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    public void dataIsLoadedOncePerTimeToLive() throws Exception {
+        FitbitApiReferenceData<String> data = data(60000, 60000);
+        assertNull(data.peek());
+        assertEquals("load 1", data.get());
+        assertEquals("load 1", data.get());
+        assertEquals("load 1", data.peek());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void expiredDataIsLoadedBeforeItIsReturned() throws Exception {
+        FitbitApiReferenceData<String> data = data(50, 50);
+        data.setRefreshExecutor(executor);
+        assertEquals("load 1", data.get());
+        Thread.sleep(60);
+        assertTrue(data.isExpired());
+        assertEquals("load 2", data.get());
+        assertFalse(data.isExpired());
+    }
+
+    @Test(timeout = 10000)
+    public void dataIsRefreshedAheadInBackground() throws Exception {
+        FitbitApiReferenceData<String> data = data(60000, 0);
+        data.setRefreshExecutor(executor);
+        assertEquals("load 1", data.get());
+        loadReleased = new CountDownLatch(1);
+        // returned right away, reloaded in the background
+        assertEquals("load 1", data.get());
+        assertEquals("load 1", data.get());
+        loadReleased.countDown();
+        while (!"load 2".equals(data.peek())) {
+            Thread.sleep(5);
+        }
+        // concurrent reads while reloading triggered a single reload
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void dataIsNotRefreshedAheadWithoutExecutor() throws Exception {
+        FitbitApiReferenceData<String> data = data(60000, 0);
+        assertEquals("load 1", data.get());
+        assertEquals("load 1", data.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test(timeout = 10000)
+    public void failedRefreshKeepsLoadedData() throws Exception {
+        FitbitApiReferenceData<String> data = data(60000, 0);
+        data.setRefreshExecutor(executor);
+        assertEquals("load 1", data.get());
+        failing = true;
+        assertEquals("load 1", data.get());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals("load 1", data.peek());
+        assertFalse(data.isExpired());
+    }
+
+    @Test
+    public void failedLoadIsThrownAndRetried() throws Exception {
+        FitbitApiReferenceData<String> data = data(60000, 60000);
+        failing = true;
+        try {
+            data.get();
+            fail("failed load returned data");
+        } catch (FitbitAPIException expected) {
+        }
+        failing = false;
+        assertEquals("load 1", data.get());
+    }
+
+    @Test
+    public void invalidatedDataIsLoadedAgain() throws Exception {
+        FitbitApiReferenceData<String> data = data(60000, 60000);
+        assertEquals("load 1", data.get());
+        data.invalidate();
+        assertNull(data.peek());
+        assertEquals("load 2", data.get());
+    }
+
+    @Test(timeout = 10000)
+    public void dataInvalidatedWhileLoadingIsNotKept() throws Exception {
+        final FitbitApiReferenceData<String> data = data(60000, 0);
+        data.setRefreshExecutor(executor);
+        assertEquals("load 1", data.get());
+        loadReleased = new CountDownLatch(1);
+        data.get();
+        loadWaiting.await();
+        data.invalidate();
+        loadReleased.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertNull(data.peek());
+    }
+
+    @Test
+    public void neverLoadedDataExpiresAfterTimeToLive() throws Exception {
+        FitbitApiReferenceData<String> data = data(50, 50);
+        assertFalse(data.isExpired());
+        Thread.sleep(60);
+        assertTrue(data.isExpired());
+    }
+
+    @Test
+    public void refreshIntervalCanNotExceedTimeToLive() {
+        FitbitApiReferenceData<String> data = data(1000, 500);
+        try {
+            data.setTimeToLive(1000, 2000);
+            fail("refresh interval longer than the time to live");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(1000, data.getTimeToLiveMillis());
+        assertEquals(500, data.getRefreshAfterMillis());
+    }
+}
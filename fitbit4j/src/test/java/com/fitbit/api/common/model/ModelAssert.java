@@ -0,0 +1,68 @@
+package com.fitbit.api.common.model;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares model objects, which do not implement equals, field by field
+ */
+public final class ModelAssert {
+
+    private ModelAssert() {
+    }
+
+    public static void assertModelsEqual(Object expected, Object actual) throws IllegalAccessException {
+        assertModelsEqual(expected, actual, null == expected ? "model" : expected.getClass().getSimpleName());
+    }
+
+    /**
+     * Compares the fields of two models, recursing into the model objects they hold
+     *
+     * @param path name of the compared value, for failure messages
+     */
+    public static void assertModelsEqual(Object expected, Object actual, String path) throws IllegalAccessException {
+        if (null == expected || null == actual) {
+            assertEquals(path, expected, actual);
+            return;
+        }
+        if (expected instanceof List) {
+            // any list implementation will do
+            assertTrue(path + " is not a list", actual instanceof List);
+            List<?> expectedItems = (List<?>) expected;
+            List<?> actualItems = (List<?>) actual;
+            assertEquals(path + " size", expectedItems.size(), actualItems.size());
+            for (int i = 0; i < expectedItems.size(); i++) {
+                assertModelsEqual(expectedItems.get(i), actualItems.get(i), path + "[" + i + "]");
+            }
+            return;
+        }
+        assertEquals(path, expected.getClass(), actual.getClass());
+        if (expected instanceof String || expected instanceof Number || expected instanceof Boolean
+                || expected instanceof Character || expected instanceof Enum
+                || expected.getClass().getName().startsWith("org.joda.")) {
+            assertEquals(path, expected, actual);
+        } else if (expected.getClass().isArray()) {
+            assertEquals(path + " length", Array.getLength(expected), Array.getLength(actual));
+            for (int i = 0; i < Array.getLength(expected); i++) {
+                assertModelsEqual(Array.get(expected, i), Array.get(actual, i), path + "[" + i + "]");
+            }
+        } else {
+            assertFalse(path + " is not a model", expected.getClass().getName().startsWith("java."));
+            for (Class<?> type = expected.getClass(); Object.class != type; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    assertModelsEqual(field.get(expected), field.get(actual), path + "." + field.getName());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.fitbit.api.common.model.codec;
+
+import com.fitbit.api.common.model.activities.Activities;
+import com.fitbit.api.common.model.body.Body;
+import com.fitbit.api.common.model.body.BodyWithGoals;
+import com.fitbit.api.common.model.body.WeightLog;
+import com.fitbit.api.common.model.foods.FoodUnit;
+import com.fitbit.api.common.model.foods.Foods;
+import com.fitbit.api.common.model.foods.LoggedFood;
+import com.fitbit.api.common.model.foods.Meal;
+import com.fitbit.api.common.model.sleep.Sleep;
+import com.fitbit.api.common.model.timeseries.Data;
+import com.fitbit.api.common.model.timeseries.IntradayData;
+import com.fitbit.api.common.model.timeseries.IntradayDataset;
+import com.fitbit.api.common.model.timeseries.IntradaySummary;
+import com.fitbit.api.common.model.user.Gender;
+import com.fitbit.api.common.model.user.UserInfo;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.fitbit.api.client.http.ResponseFixtures.fixture;
+import static com.fitbit.api.common.model.ModelAssert.assertModelsEqual;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryModelCodecTest {
+
+    private static final LocalDate DATE = new LocalDate(2011, 6, 29);
+
+    @Test
+    public void activitiesRoundTrip() throws Exception {
+        assertRoundTrip(Activities.constructActivities(fixture("activities.json")));
+        assertRoundTrip(Activities.constructActivities(fixture("activities.xml")));
+        assertRoundTrip(new Activities(null, null, null));
+    }
+
+    @Test
+    public void foodsRoundTrip() throws Exception {
+        assertRoundTrip(Foods.constructFoods(fixture("foods.json")));
+        assertRoundTrip(new Foods(null, null, null));
+    }
+
+    @Test
+    public void sleepRoundTrips() throws Exception {
+        assertRoundTrip(Sleep.constructSleep(fixture("sleep.json")));
+        assertRoundTrip(new Sleep(null, null));
+    }
+
+    @Test
+    public void bodyRoundTrips() throws Exception {
+        BodyWithGoals body = BodyWithGoals.constructBodyWithGoals(fixture("body.json"));
+        assertRoundTrip(body);
+        assertRoundTrip(body.getBody());
+        assertRoundTrip(new BodyWithGoals(new Body(80.5, 24.1, 20, 0, 0, 0, 0, 0, 0, 0, 0), null));
+    }
+
+    @Test
+    public void weightLogRoundTrips() throws Exception {
+        assertRoundTrip(new WeightLog(1234L, 80.55, 24.08, DATE, "23:59:59"));
+        assertRoundTrip(new WeightLog(-1L, 0, 0, null, null));
+    }
+
+    @Test
+    public void foodUnitAndMealRoundTrip() throws Exception {
+        FoodUnit cup = new FoodUnit(91, "cup", "cups");
+        assertRoundTrip(cup);
+        LoggedFood apple = new LoggedFood(81L, "Apple", "", "PUBLIC", 95, 1.5, cup, (byte) 1, new int[]{91, 226, 311});
+        LoggedFood unknown = new LoggedFood(82L, "Homemade", null, "PRIVATE", 0, 0, null, (byte) 7, null);
+        assertRoundTrip(new Meal(12L, "Breakfast", "Weekday breakfast", Arrays.asList(apple, unknown)));
+        assertRoundTrip(new Meal(13L, "Empty", null, Collections.<LoggedFood>emptyList()));
+    }
+
+    @Test
+    public void userInfoRoundTrips() throws Exception {
+        assertRoundTrip(new UserInfo("228TQ4", "Jo", Gender.FEMALE, new LocalDate(1980, 2, 29), 170.5, 60.2, 70, 90,
+                "Jo Doe", "jo", "US", "CA", "San Francisco", "About éè ☃", DATE,
+                DateTimeZone.forID("America/Los_Angeles"), -25200000, "en_US", "http://example.com/a.png",
+                "en_US", "en_US", "en_US", "en_US", "en_US"));
+        assertRoundTrip(new UserInfo("228TQ5", null, Gender.NA, null, 0, 0, 0, 0, null, null, null, null, null, null,
+                null, null, 0, null, null, null, null, null, null, null));
+    }
+
+    @Test
+    public void dataAndIntradaySummaryRoundTrip() throws Exception {
+        Data total = new Data("2011-06-29", "10234");
+        assertRoundTrip(total);
+        List<IntradayData> minutes = new ArrayList<IntradayData>();
+        for (int minute = 0; minute < 24 * 60; minute += 15) {
+            minutes.add(new IntradayData(String.format("%02d:%02d:00", minute / 60, minute % 60), minute * 0.5));
+        }
+        assertRoundTrip(new IntradaySummary(total, new IntradayDataset(15, minutes)));
+        // seconds, levels and times in an unexpected form
+        assertRoundTrip(new IntradaySummary(total, new IntradayDataset(1, Arrays.asList(
+                new IntradayData("00:00:01", 1.25, 2), new IntradayData("23:59:59", 0, null)))));
+        assertRoundTrip(new IntradaySummary(null, new IntradayDataset(1, Arrays.asList(
+                new IntradayData("12:30", 3), new IntradayData("24:00:00", 4), new IntradayData(null, 5)))));
+        assertRoundTrip(new IntradaySummary(total, null));
+    }
+
+    @Test
+    public void listsStringsAndNullRoundTrip() throws Exception {
+        assertRoundTrip(Arrays.asList(new WeightLog(1L, 80, 24, DATE, "08:00:00"), null, "text",
+                Arrays.asList(new FoodUnit(1, "g", "g"))));
+        assertRoundTrip(Collections.emptyList());
+        assertRoundTrip("");
+        assertNull(BinaryModelCodec.decode(BinaryModelCodec.encode(null)));
+    }
+
+    @Test
+    public void minuteTimesAreShared() throws Exception {
+        IntradaySummary summary = new IntradaySummary(null, new IntradayDataset(1,
+                Collections.singletonList(new IntradayData("10:15:00", 1))));
+        IntradaySummary first = (IntradaySummary) BinaryModelCodec.decode(BinaryModelCodec.encode(summary));
+        IntradaySummary second = (IntradaySummary) BinaryModelCodec.decode(BinaryModelCodec.encode(summary));
+        assertSame(first.getIntradayDataset().getDataset().get(0).getTime(),
+                second.getIntradayDataset().getDataset().get(0).getTime());
+    }
+
+    @Test
+    public void unsupportedTypesAreRejected() throws Exception {
+        assertTrue(BinaryModelCodec.supports(Arrays.asList("a", new FoodUnit(1, "g", "g"))));
+        assertFalse(BinaryModelCodec.supports(Arrays.asList("a", 1)));
+        assertFalse(BinaryModelCodec.supports(new StringBuilder()));
+        try {
+            BinaryModelCodec.encode(Arrays.asList("a", 1));
+            fail("integer was encoded");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void unknownVersionAndTagAreRejected() throws Exception {
+        byte[] data = BinaryModelCodec.encode("text");
+        data[0] = (byte) (BinaryModelCodec.FORMAT_VERSION + 1);
+        assertFails(data);
+        assertFails(new byte[]{BinaryModelCodec.FORMAT_VERSION, 99});
+    }
+
+    @Test
+    public void truncatedDataIsRejected() throws Exception {
+        byte[] data = BinaryModelCodec.encode(Foods.constructFoods(fixture("foods.json")));
+        for (int length = 1; length < data.length; length += 7) {
+            assertFails(Arrays.copyOf(data, length));
+        }
+    }
+
+    private static void assertFails(byte[] data) {
+        try {
+            BinaryModelCodec.decode(data);
+            fail("decoded " + Arrays.toString(data));
+        } catch (IOException expected) {
+        }
+    }
+
+    private static void assertRoundTrip(Object value) throws Exception {
+        byte[] encoded = BinaryModelCodec.encode(value);
+        Object decoded = BinaryModelCodec.decode(encoded);
+        assertModelsEqual(value, decoded);
+        // decoding from within a larger array
+        byte[] padded = new byte[encoded.length + 6];
+        System.arraycopy(encoded, 0, padded, 3, encoded.length);
+        assertModelsEqual(value, BinaryModelCodec.decode(padded, 3, encoded.length));
+        assertEquals(encoded.length, BinaryModelCodec.encode(decoded).length);
+    }
+}
@@ -0,0 +1,58 @@
+package com.fitbit.api.common.service;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FitbitDateCodecTest {
+
+    private static final LocalDate EPOCH = new LocalDate(1970, 1, 1);
+
+    @Test
+    public void epochDayMatchesJodaTime() {
+        for (LocalDate date = new LocalDate(1600, 1, 1); date.getYear() < 2400; date = date.plusDays(1)) {
+            assertEquals(date.toString(), Days.daysBetween(EPOCH, date).getDays(), FitbitDateCodec.epochDay(date));
+        }
+    }
+
+    @Test
+    public void datesRoundTrip() {
+        for (LocalDate date = new LocalDate(1960, 1, 1); date.getYear() < 2110; date = date.plusDays(1)) {
+            String text = date.toString("yyyy-MM-dd");
+            assertEquals(text, FitbitDateCodec.formatDate(date));
+            assertEquals(date, FitbitDateCodec.parseDate(text));
+        }
+    }
+
+    @Test
+    public void cachedDatesAreShared() {
+        assertSame(FitbitDateCodec.parseDate("2012-02-29"), FitbitDateCodec.parseDate("2012-02-29"));
+    }
+
+    @Test
+    public void nonCanonicalDatesFallBackToFormatter() {
+        assertEquals(new LocalDate(2012, 3, 4), FitbitDateCodec.parseDate("2012-3-4"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDateIsRejected() {
+        FitbitDateCodec.parseDate("2013-02-29");
+    }
+
+    @Test
+    public void timesRoundTrip() {
+        for (int minute = 0; minute < 24 * 60; minute++) {
+            LocalTime time = new LocalTime(minute / 60, minute % 60);
+            String text = time.toString("HH:mm");
+            assertEquals(text, FitbitDateCodec.formatTime(time));
+            assertEquals(time, FitbitDateCodec.parseTime(text));
+            assertEquals(minute, FitbitDateCodec.minuteOfDay(text + ":00"));
+        }
+        assertEquals(new LocalTime(7, 8, 9), FitbitDateCodec.parseTime("07:08:09"));
+        assertEquals(-1, FitbitDateCodec.minuteOfDay("24:00"));
+    }
+}